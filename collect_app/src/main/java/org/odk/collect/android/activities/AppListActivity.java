@@ -18,6 +18,8 @@ package org.odk.collect.android.activities;
 
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -60,6 +62,12 @@ abstract class AppListActivity extends CollectAbstractActivity {
     private static final String IS_SEARCH_BOX_SHOWN = "isSearchBoxShown";
     private static final String SEARCH_TEXT = "searchText";
 
+    /**
+     * How long to wait after the search text changes before filtering the list so that it's not
+     * reloaded for every character typed.
+     */
+    private static final long FILTER_DELAY_MILLIS = 300;
+
     protected CursorAdapter listAdapter;
     protected LinkedHashSet<Long> selectedInstances = new LinkedHashSet<>();
     protected int[] sortingOptions;
@@ -75,6 +83,9 @@ abstract class AppListActivity extends CollectAbstractActivity {
 
     private SearchView searchView;
 
+    private final Handler filterHandler = new Handler(Looper.getMainLooper());
+    private final Runnable filterRunnable = this::updateAdapter;
+
     private boolean canHideProgressBar;
     private boolean progressBarVisible;
 
@@ -140,6 +151,12 @@ abstract class AppListActivity extends CollectAbstractActivity {
         restoreSelectedSortingOrder();
     }
 
+    @Override
+    protected void onDestroy() {
+        filterHandler.removeCallbacks(filterRunnable);
+        super.onDestroy();
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -175,6 +192,7 @@ abstract class AppListActivity extends CollectAbstractActivity {
             @Override
             public boolean onQueryTextSubmit(String query) {
                 filterText = query;
+                filterHandler.removeCallbacks(filterRunnable);
                 updateAdapter();
                 searchView.clearFocus();
                 return false;
@@ -183,7 +201,8 @@ abstract class AppListActivity extends CollectAbstractActivity {
             @Override
             public boolean onQueryTextChange(String newText) {
                 filterText = newText;
-                updateAdapter();
+                filterHandler.removeCallbacks(filterRunnable);
+                filterHandler.postDelayed(filterRunnable, FILTER_DELAY_MILLIS);
                 return false;
             }
         });
@@ -49,9 +49,9 @@ public class HierarchyListAdapter extends RecyclerView.Adapter<HierarchyListAdap
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         holder.bind(hierarchyElements.get(position), listener);
-        if (hierarchyElements.get(position).getIcon() != null) {
+        if (hierarchyElements.get(position).getIcon() != 0) {
             holder.icon.setVisibility(View.VISIBLE);
-            holder.icon.setImageDrawable(hierarchyElements.get(position).getIcon());
+            holder.icon.setImageResource(hierarchyElements.get(position).getIcon());
         } else {
             holder.icon.setVisibility(View.GONE);
         }
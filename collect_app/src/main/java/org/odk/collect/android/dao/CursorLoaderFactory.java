@@ -5,6 +5,8 @@ import android.net.Uri;
 import androidx.loader.content.CursorLoader;
 
 import org.odk.collect.android.application.Collect;
+import org.odk.collect.android.database.DatabaseConstants;
+import org.odk.collect.android.database.FullTextSearch;
 import org.odk.collect.android.database.forms.DatabaseFormColumns;
 import org.odk.collect.android.database.instances.DatabaseInstanceColumns;
 import org.odk.collect.android.projects.CurrentProjectProvider;
@@ -14,6 +16,9 @@ import org.odk.collect.forms.instances.Instance;
 
 public class CursorLoaderFactory {
 
+    private static final String INSTANCES_SEARCH_SELECTION = FullTextSearch.getSelection(DatabaseConstants.INSTANCES_FTS_TABLE_NAME);
+    private static final String FORMS_SEARCH_SELECTION = FullTextSearch.getSelection(DatabaseConstants.FORMS_FTS_TABLE_NAME);
+
     private final CurrentProjectProvider currentProjectProvider;
 
     public CursorLoaderFactory(CurrentProjectProvider currentProjectProvider) {
@@ -29,15 +34,16 @@ public class CursorLoaderFactory {
 
     public CursorLoader createSentInstancesCursorLoader(CharSequence charSequence, String sortOrder) {
         CursorLoader cursorLoader;
-        if (charSequence.length() == 0) {
+        String matchExpression = FullTextSearch.getMatchExpression(charSequence);
+        if (matchExpression == null) {
             cursorLoader = createSentInstancesCursorLoader(sortOrder);
         } else {
             String selection =
                     DatabaseInstanceColumns.STATUS + " =? and "
-                            + DatabaseInstanceColumns.DISPLAY_NAME + " LIKE ?";
+                            + INSTANCES_SEARCH_SELECTION;
             String[] selectionArgs = {
                     Instance.STATUS_SUBMITTED,
-                    "%" + charSequence + "%"};
+                    matchExpression};
 
             cursorLoader = getInstancesCursorLoader(selection, selectionArgs, sortOrder);
         }
@@ -58,16 +64,17 @@ public class CursorLoaderFactory {
 
     public CursorLoader createEditableInstancesCursorLoader(CharSequence charSequence, String sortOrder) {
         CursorLoader cursorLoader;
-        if (charSequence.length() == 0) {
+        String matchExpression = FullTextSearch.getMatchExpression(charSequence);
+        if (matchExpression == null) {
             cursorLoader = createEditableInstancesCursorLoader(sortOrder);
         } else {
             String selection = DatabaseInstanceColumns.STATUS + " !=? " +
                     "and " + DatabaseInstanceColumns.STATUS + " !=? " +
-                    "and " + DatabaseInstanceColumns.DISPLAY_NAME + " LIKE ?";
+                    "and " + INSTANCES_SEARCH_SELECTION;
             String[] selectionArgs = {
                     Instance.STATUS_SUBMITTED,
                     Instance.STATUS_SUBMISSION_FAILED,
-                    "%" + charSequence + "%"};
+                    matchExpression};
 
             cursorLoader = getInstancesCursorLoader(selection, selectionArgs, sortOrder);
         }
@@ -83,13 +90,14 @@ public class CursorLoaderFactory {
 
     public CursorLoader createSavedInstancesCursorLoader(CharSequence charSequence, String sortOrder) {
         CursorLoader cursorLoader;
-        if (charSequence.length() == 0) {
+        String matchExpression = FullTextSearch.getMatchExpression(charSequence);
+        if (matchExpression == null) {
             cursorLoader = createSavedInstancesCursorLoader(sortOrder);
         } else {
             String selection =
                     DatabaseInstanceColumns.DELETED_DATE + " IS NULL and "
-                            + DatabaseInstanceColumns.DISPLAY_NAME + " LIKE ?";
-            String[] selectionArgs = {"%" + charSequence + "%"};
+                            + INSTANCES_SEARCH_SELECTION;
+            String[] selectionArgs = {matchExpression};
             cursorLoader = getInstancesCursorLoader(selection, selectionArgs, sortOrder);
         }
 
@@ -105,17 +113,18 @@ public class CursorLoaderFactory {
 
     public CursorLoader createFinalizedInstancesCursorLoader(CharSequence charSequence, String sortOrder) {
         CursorLoader cursorLoader;
-        if (charSequence.length() == 0) {
+        String matchExpression = FullTextSearch.getMatchExpression(charSequence);
+        if (matchExpression == null) {
             cursorLoader = createFinalizedInstancesCursorLoader(sortOrder);
         } else {
             String selection =
                     "(" + DatabaseInstanceColumns.STATUS + "=? or "
                             + DatabaseInstanceColumns.STATUS + "=?) and "
-                            + DatabaseInstanceColumns.DISPLAY_NAME + " LIKE ?";
+                            + INSTANCES_SEARCH_SELECTION;
             String[] selectionArgs = {
                     Instance.STATUS_COMPLETE,
                     Instance.STATUS_SUBMISSION_FAILED,
-                    "%" + charSequence + "%"};
+                    matchExpression};
 
             cursorLoader = getInstancesCursorLoader(selection, selectionArgs, sortOrder);
         }
@@ -138,20 +147,21 @@ public class CursorLoaderFactory {
 
     public CursorLoader createCompletedUndeletedInstancesCursorLoader(CharSequence charSequence, String sortOrder) {
         CursorLoader cursorLoader;
-        if (charSequence.length() == 0) {
+        String matchExpression = FullTextSearch.getMatchExpression(charSequence);
+        if (matchExpression == null) {
             cursorLoader = createCompletedUndeletedInstancesCursorLoader(sortOrder);
         } else {
             String selection = DatabaseInstanceColumns.DELETED_DATE + " IS NULL and ("
                     + DatabaseInstanceColumns.STATUS + "=? or "
                     + DatabaseInstanceColumns.STATUS + "=? or "
                     + DatabaseInstanceColumns.STATUS + "=?) and "
-                    + DatabaseInstanceColumns.DISPLAY_NAME + " LIKE ?";
+                    + INSTANCES_SEARCH_SELECTION;
 
             String[] selectionArgs = {
                     Instance.STATUS_COMPLETE,
                     Instance.STATUS_SUBMISSION_FAILED,
                     Instance.STATUS_SUBMITTED,
-                    "%" + charSequence + "%"};
+                    matchExpression};
 
             cursorLoader = getInstancesCursorLoader(selection, selectionArgs, sortOrder);
         }
@@ -164,15 +174,16 @@ public class CursorLoaderFactory {
      */
     public CursorLoader getFormsCursorLoader(CharSequence charSequence, String sortOrder, boolean newestByFormId) {
         CursorLoader cursorLoader;
+        String matchExpression = FullTextSearch.getMatchExpression(charSequence);
 
-        if (charSequence.length() == 0) {
+        if (matchExpression == null) {
             Uri formUri = newestByFormId ?
                     FormsProviderAPI.getContentNewestFormsByFormIdUri(currentProjectProvider.getCurrentProject().getUuid()) :
                     FormsProviderAPI.getUri(currentProjectProvider.getCurrentProject().getUuid());
             cursorLoader = new CursorLoader(Collect.getInstance(), formUri, null, DatabaseFormColumns.DELETED_DATE + " IS NULL", new String[]{}, sortOrder);
         } else {
-            String selection = DatabaseFormColumns.DISPLAY_NAME + " LIKE ? AND " + DatabaseFormColumns.DELETED_DATE + " IS NULL";
-            String[] selectionArgs = {"%" + charSequence + "%"};
+            String selection = FORMS_SEARCH_SELECTION + " AND " + DatabaseFormColumns.DELETED_DATE + " IS NULL";
+            String[] selectionArgs = {matchExpression};
 
             Uri formUri = newestByFormId ?
                     FormsProviderAPI.getContentNewestFormsByFormIdUri(currentProjectProvider.getCurrentProject().getUuid()) :
@@ -9,7 +9,8 @@ import timber.log.Timber
 /**
  * Allows access to a database file. The actual underlying connection (an instance of
  * [SQLiteOpenHelper] to this database will be reused for different instances of
- * [DatabaseConnection] that refer to the same file.
+ * [DatabaseConnection] that refer to the same file. The connection is looked up on each access
+ * so long lived instances pick up a new one if the shared one is closed.
  *
  * @param migrator used to migrate or create the database automatically before access
  */
@@ -26,8 +27,8 @@ open class DatabaseConnection(
     val readableDatabase: SQLiteDatabase
         get() = dbHelper.readableDatabase
 
-    private val dbHelper: SQLiteOpenHelper by lazy {
-        getOpenHelper(path + name) {
+    private val dbHelper: SQLiteOpenHelper
+        get() = getOpenHelper(path + name) {
             DatabaseMigratorSQLiteOpenHelper(
                 AltDatabasePathContext(path, context),
                 name,
@@ -36,12 +37,12 @@ open class DatabaseConnection(
                 migrator
             )
         }
-    }
 
     companion object {
 
         private val openHelpers = mutableMapOf<String, SQLiteOpenHelper>()
 
+        @Synchronized
         private fun getOpenHelper(
             name: String,
             helperFactory: () -> SQLiteOpenHelper
@@ -49,7 +50,18 @@ open class DatabaseConnection(
             return openHelpers.getOrPut(name, helperFactory)
         }
 
+        /**
+         * Closes the shared connection to a database (if there is one) so that it can be
+         * deleted or replaced.
+         */
+        @JvmStatic
+        @Synchronized
+        fun close(path: String, name: String) {
+            openHelpers.remove(path + name)?.close()
+        }
+
         @JvmStatic
+        @Synchronized
         fun closeAll() {
             openHelpers.forEach { (_, openHelper) -> openHelper.close() }
             openHelpers.clear()
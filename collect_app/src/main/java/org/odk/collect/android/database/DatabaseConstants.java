@@ -4,11 +4,15 @@ public class DatabaseConstants {
 
     public static final String FORMS_DATABASE_NAME = "forms.db";
     public static final String FORMS_TABLE_NAME = "forms";
-    public static final int FORMS_DATABASE_VERSION = 10;
+    public static final String FORMS_FTS_TABLE_NAME = "forms_fts";
+    public static final int FORMS_DATABASE_VERSION = 12;
+    public static final String FORMS_HASH_INDEX_NAME = "forms.md5index";
 
     public static final String INSTANCES_DATABASE_NAME = "instances.db";
     public static final String INSTANCES_TABLE_NAME = "instances";
-    public static final int INSTANCES_DATABASE_VERSION = 6;
+    public static final String INSTANCES_FTS_TABLE_NAME = "instances_fts";
+    public static final String UPLOADED_FILES_TABLE_NAME = "uploadedFiles";
+    public static final int INSTANCES_DATABASE_VERSION = 9;
 
     private DatabaseConstants() {
 
@@ -0,0 +1,89 @@
+package org.odk.collect.android.database;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.Nullable;
+
+import org.odk.collect.forms.TextSearch;
+
+import java.util.List;
+
+import static android.provider.BaseColumns._ID;
+
+/**
+ * Maintains and queries the full-text tables that index the display names of the rows in another
+ * table so they can be searched without scanning it. Each row in a full-text table has the
+ * {@code _id} of the row it indexes as its {@code docid}. FTS4 (with its default "simple"
+ * tokenizer) is used rather than FTS5 as it's available in the SQLite of every Android version
+ * we support.
+ */
+public final class FullTextSearch {
+
+    private FullTextSearch() {
+
+    }
+
+    /**
+     * Creates (or recreates) a full-text table indexing {@code column} of {@code table} and fills
+     * it with the table's current rows.
+     */
+    public static void createTable(SQLiteDatabase db, String ftsTable, String table, String column) {
+        db.execSQL("DROP TABLE IF EXISTS " + ftsTable);
+        db.execSQL("CREATE VIRTUAL TABLE " + ftsTable + " USING fts4(" + column + ");");
+        db.execSQL("INSERT INTO " + ftsTable + " (docid, " + column + ") SELECT " + _ID + ", " + column + " FROM " + table + ";");
+    }
+
+    /**
+     * Sets the indexed text for the row with {@code id}.
+     */
+    public static void put(SQLiteDatabase db, String ftsTable, String column, long id, @Nullable String text) {
+        db.delete(ftsTable, "docid=?", new String[]{String.valueOf(id)});
+
+        ContentValues values = new ContentValues();
+        values.put("docid", id);
+        values.put(column, text);
+        db.insertOrThrow(ftsTable, null, values);
+    }
+
+    /**
+     * Removes the indexed text for the rows of {@code table} matching {@code selection}. Needs to
+     * be called before the rows themselves are deleted.
+     */
+    public static void delete(SQLiteDatabase db, String ftsTable, String table, @Nullable String selection, @Nullable String[] selectionArgs) {
+        String where = selection != null ? " WHERE " + selection : "";
+        db.delete(ftsTable, "docid IN (SELECT " + _ID + " FROM " + table + where + ")", selectionArgs);
+    }
+
+    /**
+     * @return a selection for the rows whose indexed text matches the query passed as its only
+     * argument (see {@link #getMatchExpression})
+     */
+    public static String getSelection(String ftsTable) {
+        return _ID + " IN (SELECT docid FROM " + ftsTable + " WHERE " + ftsTable + " MATCH ?)";
+    }
+
+    /**
+     * @return a MATCH expression for rows with words starting with each word in {@code query}
+     * (as described in {@link TextSearch}) or null if the query doesn't have any words
+     */
+    @Nullable
+    public static String getMatchExpression(CharSequence query) {
+        List<String> words = TextSearch.getWords(query);
+        if (words.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder matchExpression = new StringBuilder();
+        for (String word : words) {
+            if (matchExpression.length() > 0) {
+                matchExpression.append(' ');
+            }
+
+            // Words are lower case so can't be mistaken for operators (AND, OR, NOT, NEAR)
+            matchExpression.append(word).append('*');
+        }
+
+        return matchExpression.toString();
+    }
+}
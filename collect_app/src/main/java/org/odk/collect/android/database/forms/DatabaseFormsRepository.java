@@ -5,14 +5,16 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.CancellationSignal;
 
 import org.jetbrains.annotations.NotNull;
 import org.odk.collect.android.database.DatabaseConnection;
 import org.odk.collect.android.database.DatabaseConstants;
+import org.odk.collect.android.database.FullTextSearch;
 import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.forms.Form;
 import org.odk.collect.forms.FormsRepository;
-import org.odk.collect.shared.strings.Md5;
+import org.odk.collect.shared.FileHashIndex;
 
 import java.io.File;
 import java.io.IOException;
@@ -26,11 +28,13 @@ import javax.annotation.Nullable;
 
 import static android.provider.BaseColumns._ID;
 import static org.apache.commons.io.FileUtils.deleteDirectory;
+import static org.odk.collect.android.database.DatabaseConstants.FORMS_FTS_TABLE_NAME;
 import static org.odk.collect.android.database.DatabaseConstants.FORMS_TABLE_NAME;
 import static org.odk.collect.android.database.DatabaseObjectMapper.getFormFromCurrentCursorPosition;
 import static org.odk.collect.android.database.DatabaseObjectMapper.getValuesFromForm;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.DATE;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.DELETED_DATE;
+import static org.odk.collect.android.database.forms.DatabaseFormColumns.DISPLAY_NAME;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.FORM_FILE_PATH;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.FORM_MEDIA_PATH;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.JRCACHE_FILE_PATH;
@@ -45,11 +49,13 @@ public class DatabaseFormsRepository implements FormsRepository {
     private final String formsPath;
     private final String cachePath;
     private final Supplier<Long> clock;
+    private final FileHashIndex hashIndex;
 
     public DatabaseFormsRepository(Context context, String dbPath, String formsPath, String cachePath, Supplier<Long> clock) {
         this.formsPath = formsPath;
         this.cachePath = cachePath;
         this.clock = clock;
+        this.hashIndex = FormsHashIndex.get(dbPath);
         this.databaseConnection = new DatabaseConnection(
                 context,
                 dbPath,
@@ -130,11 +136,21 @@ public class DatabaseFormsRepository implements FormsRepository {
         }
     }
 
+    @Override
+    public List<Form> search(String query) {
+        String matchExpression = FullTextSearch.getMatchExpression(query);
+        if (matchExpression == null) {
+            return getAll();
+        }
+
+        return queryForForms(FullTextSearch.getSelection(FORMS_FTS_TABLE_NAME), new String[]{matchExpression});
+    }
+
     @Override
     public Form save(@NotNull Form form) {
         final ContentValues values = getValuesFromForm(form, formsPath);
 
-        String md5Hash = Md5.getMd5Hash(new File(form.getFormFilePath()));
+        String md5Hash = hashIndex.getMd5Hash(new File(form.getFormFilePath()));
         values.put(MD5_HASH, md5Hash);
         values.put(FORM_MEDIA_PATH, getRelativeFilePath(formsPath, FileUtils.constructMediaPath(form.getFormFilePath())));
         values.put(JRCACHE_FILE_PATH, md5Hash + ".formdef");
@@ -191,8 +207,12 @@ public class DatabaseFormsRepository implements FormsRepository {
         updateForm(id, values);
     }
 
-    public Cursor rawQuery(Map<String, String> projectionMap, String[] projection, String selection, String[] selectionArgs, String sortOrder, String groupBy) {
-        return queryAndReturnCursor(projectionMap, projection, selection, selectionArgs, sortOrder, groupBy);
+    /**
+     * @param cancellationSignal stops the query (with an {@link android.os.OperationCanceledException})
+     *                           if it's cancelled while the query is running
+     */
+    public Cursor rawQuery(Map<String, String> projectionMap, String[] projection, String selection, String[] selectionArgs, String sortOrder, String groupBy, @Nullable CancellationSignal cancellationSignal) {
+        return queryAndReturnCursor(projectionMap, projection, selection, selectionArgs, sortOrder, groupBy, cancellationSignal);
     }
 
     @Nullable
@@ -202,12 +222,12 @@ public class DatabaseFormsRepository implements FormsRepository {
     }
 
     private List<Form> queryForForms(String selection, String[] selectionArgs) {
-        try (Cursor cursor = queryAndReturnCursor(null, null, selection, selectionArgs, null, null)) {
+        try (Cursor cursor = queryAndReturnCursor(null, null, selection, selectionArgs, null, null, null)) {
             return getFormsFromCursor(cursor, formsPath, cachePath);
         }
     }
 
-    private Cursor queryAndReturnCursor(Map<String, String> projectionMap, String[] projection, String selection, String[] selectionArgs, String sortOrder, String groupBy) {
+    private Cursor queryAndReturnCursor(Map<String, String> projectionMap, String[] projection, String selection, String[] selectionArgs, String sortOrder, String groupBy, @Nullable CancellationSignal cancellationSignal) {
         SQLiteDatabase readableDatabase = databaseConnection.getReadableDatabase();
         SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
         qb.setTables(FORMS_TABLE_NAME);
@@ -216,17 +236,36 @@ public class DatabaseFormsRepository implements FormsRepository {
             qb.setProjectionMap(projectionMap);
         }
 
-        return qb.query(readableDatabase, projection, selection, selectionArgs, groupBy, null, sortOrder);
+        return qb.query(readableDatabase, projection, selection, selectionArgs, groupBy, null, sortOrder, null, cancellationSignal);
     }
 
     private Long insertForm(ContentValues values) {
         SQLiteDatabase writeableDatabase = databaseConnection.getWriteableDatabase();
-        return writeableDatabase.insertOrThrow(FORMS_TABLE_NAME, null, values);
+        writeableDatabase.beginTransaction();
+        try {
+            long id = writeableDatabase.insertOrThrow(FORMS_TABLE_NAME, null, values);
+            FullTextSearch.put(writeableDatabase, FORMS_FTS_TABLE_NAME, DISPLAY_NAME, id, values.getAsString(DISPLAY_NAME));
+
+            writeableDatabase.setTransactionSuccessful();
+            return id;
+        } finally {
+            writeableDatabase.endTransaction();
+        }
     }
 
     private void updateForm(Long id, ContentValues values) {
         SQLiteDatabase writeableDatabase = databaseConnection.getWriteableDatabase();
-        writeableDatabase.update(FORMS_TABLE_NAME, values, _ID + "=?", new String[]{String.valueOf(id)});
+        writeableDatabase.beginTransaction();
+        try {
+            writeableDatabase.update(FORMS_TABLE_NAME, values, _ID + "=?", new String[]{String.valueOf(id)});
+            if (values.containsKey(DISPLAY_NAME)) {
+                FullTextSearch.put(writeableDatabase, FORMS_FTS_TABLE_NAME, DISPLAY_NAME, id, values.getAsString(DISPLAY_NAME));
+            }
+
+            writeableDatabase.setTransactionSuccessful();
+        } finally {
+            writeableDatabase.endTransaction();
+        }
     }
 
     private void deleteForms(String selection, String[] selectionArgs) {
@@ -236,7 +275,15 @@ public class DatabaseFormsRepository implements FormsRepository {
         }
 
         SQLiteDatabase writeableDatabase = databaseConnection.getWriteableDatabase();
-        writeableDatabase.delete(FORMS_TABLE_NAME, selection, selectionArgs);
+        writeableDatabase.beginTransaction();
+        try {
+            FullTextSearch.delete(writeableDatabase, FORMS_FTS_TABLE_NAME, FORMS_TABLE_NAME, selection, selectionArgs);
+            writeableDatabase.delete(FORMS_TABLE_NAME, selection, selectionArgs);
+
+            writeableDatabase.setTransactionSuccessful();
+        } finally {
+            writeableDatabase.endTransaction();
+        }
     }
 
     @NotNull
@@ -257,7 +304,9 @@ public class DatabaseFormsRepository implements FormsRepository {
     private void deleteFilesForForm(Form form) {
         // Delete form file
         if (form.getFormFilePath() != null) {
-            new File(form.getFormFilePath()).delete();
+            File formFile = new File(form.getFormFilePath());
+            formFile.delete();
+            hashIndex.remove(formFile);
         }
 
         // Delete cache file
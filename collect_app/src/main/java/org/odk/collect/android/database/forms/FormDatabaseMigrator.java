@@ -2,11 +2,14 @@ package org.odk.collect.android.database.forms;
 
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
 
 import org.odk.collect.android.database.DatabaseMigrator;
+import org.odk.collect.android.database.FullTextSearch;
 import org.odk.collect.android.utilities.SQLiteUtils;
 
 import static android.provider.BaseColumns._ID;
+import static org.odk.collect.android.database.DatabaseConstants.FORMS_FTS_TABLE_NAME;
 import static org.odk.collect.android.database.DatabaseConstants.FORMS_TABLE_NAME;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.AUTO_DELETE;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.AUTO_SEND;
@@ -39,6 +42,8 @@ public class FormDatabaseMigrator implements DatabaseMigrator {
 
     public void onCreate(SQLiteDatabase db) {
         createFormsTableV10(db);
+        upgradeToVersion11(db);
+        upgradeToVersion12(db);
     }
 
     @SuppressWarnings({"checkstyle:FallThrough"})
@@ -61,12 +66,18 @@ public class FormDatabaseMigrator implements DatabaseMigrator {
                 upgradeToVersion9(db);
             case 9:
                 upgradeToVersion10(db);
+            case 10:
+                upgradeToVersion11(db);
+            case 11:
+                upgradeToVersion12(db);
         }
     }
 
     public void onDowngrade(SQLiteDatabase db) throws SQLException {
         SQLiteUtils.dropTable(db, FORMS_TABLE_NAME);
         createFormsTableV10(db);
+        upgradeToVersion11(db);
+        upgradeToVersion12(db);
     }
 
     private void upgradeToVersion2(SQLiteDatabase db) {
@@ -237,6 +248,29 @@ public class FormDatabaseMigrator implements DatabaseMigrator {
         SQLiteUtils.dropTable(db, temporaryTable);
     }
 
+    /**
+     * Upgrade to version 11. Adds indexes for the columns forms are looked up by (hash, path and
+     * form id/version) so those lookups don't scan the whole table.
+     */
+    private void upgradeToVersion11(SQLiteDatabase db) {
+        createIndex(db, MD5_HASH);
+        createIndex(db, FORM_FILE_PATH);
+        createIndex(db, JR_FORM_ID, JR_VERSION);
+    }
+
+    /**
+     * Upgrade to version 12. Adds a full-text table indexing display names so forms can be
+     * searched by name without scanning the forms table.
+     */
+    private void upgradeToVersion12(SQLiteDatabase db) {
+        FullTextSearch.createTable(db, FORMS_FTS_TABLE_NAME, FORMS_TABLE_NAME, DISPLAY_NAME);
+    }
+
+    private void createIndex(SQLiteDatabase db, String... columns) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + FORMS_TABLE_NAME + "_" + TextUtils.join("_", columns)
+                + " ON " + FORMS_TABLE_NAME + " (" + TextUtils.join(", ", columns) + ");");
+    }
+
     private void createFormsTableV4(SQLiteDatabase db, String tableName) {
         db.execSQL("CREATE TABLE IF NOT EXISTS " + tableName + " ("
                 + _ID + " integer primary key, "
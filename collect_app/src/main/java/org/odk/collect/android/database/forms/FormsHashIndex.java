@@ -0,0 +1,34 @@
+package org.odk.collect.android.database.forms;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import org.odk.collect.android.database.DatabaseConstants;
+import org.odk.collect.shared.FileHashIndex;
+
+import java.io.File;
+
+/**
+ * Provides the {@link FileHashIndex} that's stored next to a forms database. Everything that
+ * needs the hash of a form file for a project should go through this so that a file is only
+ * hashed again when it changes on disk.
+ */
+public final class FormsHashIndex {
+
+    private static final FileHashIndex.FileKeyReader INODE_READER = file -> {
+        try {
+            return Os.stat(file.getAbsolutePath()).st_ino;
+        } catch (ErrnoException | RuntimeException | LinkageError e) {
+            // Not available (on the JVM for example) so just rely on size and timestamp
+            return 0;
+        }
+    };
+
+    private FormsHashIndex() {
+
+    }
+
+    public static FileHashIndex get(String dbPath) {
+        return FileHashIndex.getInstance(new File(dbPath, DatabaseConstants.FORMS_HASH_INDEX_NAME), INODE_READER);
+    }
+}
@@ -5,10 +5,14 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.CancellationSignal;
+
+import androidx.annotation.Nullable;
 
 import org.apache.commons.io.FileUtils;
 import org.odk.collect.android.database.DatabaseConnection;
 import org.odk.collect.android.database.DatabaseConstants;
+import org.odk.collect.android.database.FullTextSearch;
 import org.odk.collect.forms.instances.Instance;
 import org.odk.collect.forms.instances.InstancesRepository;
 
@@ -19,7 +23,9 @@ import java.util.List;
 import java.util.function.Supplier;
 
 import static android.provider.BaseColumns._ID;
+import static org.odk.collect.android.database.DatabaseConstants.INSTANCES_FTS_TABLE_NAME;
 import static org.odk.collect.android.database.DatabaseConstants.INSTANCES_TABLE_NAME;
+import static org.odk.collect.android.database.DatabaseConstants.UPLOADED_FILES_TABLE_NAME;
 import static org.odk.collect.android.database.DatabaseObjectMapper.getInstanceFromCurrentCursorPosition;
 import static org.odk.collect.android.database.DatabaseObjectMapper.getValuesFromInstance;
 import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.CAN_EDIT_WHEN_COMPLETE;
@@ -131,15 +137,43 @@ public final class DatabaseInstancesRepository implements InstancesRepository {
         }
     }
 
+    @Override
+    public List<Instance> search(String query) {
+        String matchExpression = FullTextSearch.getMatchExpression(query);
+        if (matchExpression == null) {
+            return getAll();
+        }
+
+        try (Cursor cursor = query(null, FullTextSearch.getSelection(INSTANCES_FTS_TABLE_NAME), new String[]{matchExpression}, null)) {
+            return getInstancesFromCursor(cursor, instancesPath);
+        }
+    }
+
     @Override
     public void delete(Long id) {
         Instance instance = get(id);
 
-        databaseConnection.getWriteableDatabase().delete(
-                INSTANCES_TABLE_NAME,
-                _ID + "=?",
-                new String[]{String.valueOf(id)}
-        );
+        SQLiteDatabase writeableDatabase = databaseConnection.getWriteableDatabase();
+        writeableDatabase.beginTransaction();
+        try {
+            FullTextSearch.delete(writeableDatabase, INSTANCES_FTS_TABLE_NAME, INSTANCES_TABLE_NAME, _ID + "=?", new String[]{String.valueOf(id)});
+
+            writeableDatabase.delete(
+                    INSTANCES_TABLE_NAME,
+                    _ID + "=?",
+                    new String[]{String.valueOf(id)}
+            );
+
+            writeableDatabase.delete(
+                    UPLOADED_FILES_TABLE_NAME,
+                    DatabaseUploadedFileColumns.INSTANCE_ID + "=?",
+                    new String[]{String.valueOf(id)}
+            );
+
+            writeableDatabase.setTransactionSuccessful();
+        } finally {
+            writeableDatabase.endTransaction();
+        }
 
         deleteInstanceFiles(instance);
     }
@@ -148,11 +182,27 @@ public final class DatabaseInstancesRepository implements InstancesRepository {
     public void deleteAll() {
         List<Instance> instances = getAll();
 
-        databaseConnection.getWriteableDatabase().delete(
-                INSTANCES_TABLE_NAME,
-                null,
-                null
-        );
+        SQLiteDatabase writeableDatabase = databaseConnection.getWriteableDatabase();
+        writeableDatabase.beginTransaction();
+        try {
+            writeableDatabase.delete(INSTANCES_FTS_TABLE_NAME, null, null);
+
+            writeableDatabase.delete(
+                    INSTANCES_TABLE_NAME,
+                    null,
+                    null
+            );
+
+            writeableDatabase.delete(
+                    UPLOADED_FILES_TABLE_NAME,
+                    null,
+                    null
+            );
+
+            writeableDatabase.setTransactionSuccessful();
+        } finally {
+            writeableDatabase.endTransaction();
+        }
 
         for (Instance instance : instances) {
             deleteInstanceFiles(instance);
@@ -188,6 +238,25 @@ public final class DatabaseInstancesRepository implements InstancesRepository {
         }
     }
 
+    @Override
+    public List<Instance> saveAll(List<Instance> instances) {
+        List<Instance> savedInstances = new ArrayList<>();
+
+        SQLiteDatabase writeableDatabase = databaseConnection.getWriteableDatabase();
+        writeableDatabase.beginTransaction();
+        try {
+            for (Instance instance : instances) {
+                savedInstances.add(save(instance));
+            }
+
+            writeableDatabase.setTransactionSuccessful();
+        } finally {
+            writeableDatabase.endTransaction();
+        }
+
+        return savedInstances;
+    }
+
     @Override
     public void deleteWithLogging(Long id) {
         ContentValues values = new ContentValues();
@@ -200,8 +269,12 @@ public final class DatabaseInstancesRepository implements InstancesRepository {
         deleteInstanceFiles(instance);
     }
 
-    public Cursor rawQuery(String[] projection, String selection, String[] selectionArgs, String sortOrder, String groupBy) {
-        return query(projection, selection, selectionArgs, sortOrder);
+    /**
+     * @param cancellationSignal stops the query (with an {@link android.os.OperationCanceledException})
+     *                           if it's cancelled while the query is running
+     */
+    public Cursor rawQuery(String[] projection, String selection, String[] selectionArgs, String sortOrder, String groupBy, @Nullable CancellationSignal cancellationSignal) {
+        return query(projection, selection, selectionArgs, sortOrder, cancellationSignal);
     }
 
     private Cursor getCursorForAllByStatus(String[] status) {
@@ -214,6 +287,10 @@ public final class DatabaseInstancesRepository implements InstancesRepository {
     }
 
     private Cursor query(String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return query(projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    private Cursor query(String[] projection, String selection, String[] selectionArgs, String sortOrder, @Nullable CancellationSignal cancellationSignal) {
         SQLiteDatabase readableDatabase = databaseConnection.getReadableDatabase();
         SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
         qb.setTables(INSTANCES_TABLE_NAME);
@@ -239,24 +316,46 @@ public final class DatabaseInstancesRepository implements InstancesRepository {
             };
         }
 
-        return qb.query(readableDatabase, projection, selection, selectionArgs, null, null, sortOrder);
+        return qb.query(readableDatabase, projection, selection, selectionArgs, null, null, sortOrder, null, cancellationSignal);
     }
 
     private long insert(ContentValues values) {
-        return databaseConnection.getWriteableDatabase().insertOrThrow(
-                INSTANCES_TABLE_NAME,
-                null,
-                values
-        );
+        SQLiteDatabase writeableDatabase = databaseConnection.getWriteableDatabase();
+        writeableDatabase.beginTransaction();
+        try {
+            long id = writeableDatabase.insertOrThrow(
+                    INSTANCES_TABLE_NAME,
+                    null,
+                    values
+            );
+            FullTextSearch.put(writeableDatabase, INSTANCES_FTS_TABLE_NAME, DISPLAY_NAME, id, values.getAsString(DISPLAY_NAME));
+
+            writeableDatabase.setTransactionSuccessful();
+            return id;
+        } finally {
+            writeableDatabase.endTransaction();
+        }
     }
 
     private void update(Long instanceId, ContentValues values) {
-        databaseConnection.getWriteableDatabase().update(
-                INSTANCES_TABLE_NAME,
-                values,
-                _ID + "=?",
-                new String[]{instanceId.toString()}
-        );
+        SQLiteDatabase writeableDatabase = databaseConnection.getWriteableDatabase();
+        writeableDatabase.beginTransaction();
+        try {
+            writeableDatabase.update(
+                    INSTANCES_TABLE_NAME,
+                    values,
+                    _ID + "=?",
+                    new String[]{instanceId.toString()}
+            );
+
+            if (values.containsKey(DISPLAY_NAME)) {
+                FullTextSearch.put(writeableDatabase, INSTANCES_FTS_TABLE_NAME, DISPLAY_NAME, instanceId, values.getAsString(DISPLAY_NAME));
+            }
+
+            writeableDatabase.setTransactionSuccessful();
+        } finally {
+            writeableDatabase.endTransaction();
+        }
     }
 
     private void deleteInstanceFiles(Instance instance) {
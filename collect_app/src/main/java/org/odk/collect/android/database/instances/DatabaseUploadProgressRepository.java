@@ -0,0 +1,153 @@
+package org.odk.collect.android.database.instances;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+
+import org.odk.collect.android.database.DatabaseConnection;
+import org.odk.collect.android.database.DatabaseConstants;
+import org.odk.collect.android.openrosa.UploadMetrics;
+import org.odk.collect.android.openrosa.UploadProgress;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import timber.log.Timber;
+
+import static org.odk.collect.android.database.DatabaseConstants.UPLOADED_FILES_TABLE_NAME;
+import static org.odk.collect.android.database.instances.DatabaseUploadedFileColumns.FILE_NAME;
+import static org.odk.collect.android.database.instances.DatabaseUploadedFileColumns.FILE_SIZE;
+import static org.odk.collect.android.database.instances.DatabaseUploadedFileColumns.INSTANCE_ID;
+import static org.odk.collect.android.database.instances.DatabaseUploadedFileColumns.LAST_MODIFIED;
+
+/**
+ * Records which files of an instance a server has accepted in the instances database so that
+ * an interrupted upload can be resumed (see {@link UploadProgress}). A file only counts as
+ * accepted while its size and last modified time are the same as when it was sent.
+ */
+public final class DatabaseUploadProgressRepository {
+
+    private final DatabaseConnection databaseConnection;
+
+    public DatabaseUploadProgressRepository(Context context, String dbPath) {
+        this.databaseConnection = new DatabaseConnection(
+                context,
+                dbPath,
+                DatabaseConstants.INSTANCES_DATABASE_NAME,
+                new InstanceDatabaseMigrator(),
+                DatabaseConstants.INSTANCES_DATABASE_VERSION
+        );
+    }
+
+    /**
+     * Returns the progress of uploading an instance. If {@code submissionFile} changed since
+     * parts were last accepted everything will be sent again.
+     */
+    public UploadProgress get(long instanceId, File submissionFile) {
+        Map<String, UploadedFile> uploadedFiles = getUploadedFiles(instanceId);
+
+        UploadedFile uploadedSubmission = uploadedFiles.get(submissionFile.getName());
+        if (!uploadedFiles.isEmpty() && (uploadedSubmission == null || !uploadedSubmission.matches(submissionFile))) {
+            clear(instanceId);
+            uploadedFiles.clear();
+        }
+
+        return new DatabaseUploadProgress(instanceId, submissionFile, uploadedFiles);
+    }
+
+    public void clear(long instanceId) {
+        databaseConnection.getWriteableDatabase().delete(
+                UPLOADED_FILES_TABLE_NAME,
+                INSTANCE_ID + "=?",
+                new String[]{String.valueOf(instanceId)}
+        );
+    }
+
+    private Map<String, UploadedFile> getUploadedFiles(long instanceId) {
+        Map<String, UploadedFile> uploadedFiles = new HashMap<>();
+
+        try (Cursor cursor = databaseConnection.getReadableDatabase().query(
+                UPLOADED_FILES_TABLE_NAME,
+                new String[]{FILE_NAME, FILE_SIZE, LAST_MODIFIED},
+                INSTANCE_ID + "=?",
+                new String[]{String.valueOf(instanceId)},
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                uploadedFiles.put(cursor.getString(0), new UploadedFile(cursor.getLong(1), cursor.getLong(2)));
+            }
+        }
+
+        return uploadedFiles;
+    }
+
+    private void saveUploadedFiles(long instanceId, List<File> files) {
+        SQLiteDatabase db = databaseConnection.getWriteableDatabase();
+        db.beginTransaction();
+        try {
+            for (File file : files) {
+                db.delete(UPLOADED_FILES_TABLE_NAME, INSTANCE_ID + "=? AND " + FILE_NAME + "=?",
+                        new String[]{String.valueOf(instanceId), file.getName()});
+
+                ContentValues values = new ContentValues();
+                values.put(INSTANCE_ID, instanceId);
+                values.put(FILE_NAME, file.getName());
+                values.put(FILE_SIZE, file.length());
+                values.put(LAST_MODIFIED, file.lastModified());
+                db.insertOrThrow(UPLOADED_FILES_TABLE_NAME, null, values);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private class DatabaseUploadProgress implements UploadProgress {
+
+        private final long instanceId;
+        private final File submissionFile;
+        private final Map<String, UploadedFile> uploadedFiles;
+
+        DatabaseUploadProgress(long instanceId, File submissionFile, Map<String, UploadedFile> uploadedFiles) {
+            this.instanceId = instanceId;
+            this.submissionFile = submissionFile;
+            this.uploadedFiles = uploadedFiles;
+        }
+
+        @Override
+        public boolean isAccepted(@NonNull File file) {
+            UploadedFile uploadedFile = uploadedFiles.get(file.getName());
+            return uploadedFile != null && uploadedFile.matches(file);
+        }
+
+        @Override
+        public void onPartAccepted(@NonNull List<File> files, @NonNull UploadMetrics metrics) {
+            List<File> accepted = new ArrayList<>(files);
+            accepted.add(submissionFile);
+            saveUploadedFiles(instanceId, accepted);
+
+            Timber.i("Part of instance %d accepted: %s", instanceId, metrics);
+        }
+    }
+
+    private static class UploadedFile {
+
+        private final long size;
+        private final long lastModified;
+
+        UploadedFile(long size, long lastModified) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(File file) {
+            return file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.odk.collect.android.database.instances
+
+import android.provider.BaseColumns
+
+object DatabaseUploadedFileColumns : BaseColumns {
+
+    // uploaded file column names
+    const val INSTANCE_ID = "instanceId"
+    const val FILE_NAME = "fileName"
+    const val FILE_SIZE = "fileSize"
+    const val LAST_MODIFIED = "lastModified"
+}
@@ -1,8 +1,10 @@
 package org.odk.collect.android.database.instances;
 
 import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
 
 import org.odk.collect.android.database.DatabaseMigrator;
+import org.odk.collect.android.database.FullTextSearch;
 import org.odk.collect.forms.instances.Instance;
 import org.odk.collect.android.utilities.SQLiteUtils;
 
@@ -12,7 +14,9 @@ import java.util.List;
 import timber.log.Timber;
 
 import static android.provider.BaseColumns._ID;
+import static org.odk.collect.android.database.DatabaseConstants.INSTANCES_FTS_TABLE_NAME;
 import static org.odk.collect.android.database.DatabaseConstants.INSTANCES_TABLE_NAME;
+import static org.odk.collect.android.database.DatabaseConstants.UPLOADED_FILES_TABLE_NAME;
 import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.CAN_EDIT_WHEN_COMPLETE;
 import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.DELETED_DATE;
 import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.DISPLAY_NAME;
@@ -24,6 +28,10 @@ import static org.odk.collect.android.database.instances.DatabaseInstanceColumns
 import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.LAST_STATUS_CHANGE_DATE;
 import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.STATUS;
 import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.SUBMISSION_URI;
+import static org.odk.collect.android.database.instances.DatabaseUploadedFileColumns.FILE_NAME;
+import static org.odk.collect.android.database.instances.DatabaseUploadedFileColumns.FILE_SIZE;
+import static org.odk.collect.android.database.instances.DatabaseUploadedFileColumns.INSTANCE_ID;
+import static org.odk.collect.android.database.instances.DatabaseUploadedFileColumns.LAST_MODIFIED;
 
 public class InstanceDatabaseMigrator implements DatabaseMigrator {
     private static final String[] COLUMN_NAMES_V5 = {_ID, DISPLAY_NAME, SUBMISSION_URI, CAN_EDIT_WHEN_COMPLETE,
@@ -38,6 +46,9 @@ public class InstanceDatabaseMigrator implements DatabaseMigrator {
     public void onCreate(SQLiteDatabase db) {
         createInstancesTableV5(db, INSTANCES_TABLE_NAME);
         upgradeToVersion6(db, INSTANCES_TABLE_NAME);
+        upgradeToVersion7(db);
+        upgradeToVersion8(db);
+        upgradeToVersion9(db);
     }
 
     @SuppressWarnings({"checkstyle:FallThrough"})
@@ -53,6 +64,12 @@ public class InstanceDatabaseMigrator implements DatabaseMigrator {
                 upgradeToVersion5(db);
             case 5:
                 upgradeToVersion6(db, INSTANCES_TABLE_NAME);
+            case 6:
+                upgradeToVersion7(db);
+            case 7:
+                upgradeToVersion8(db);
+            case 8:
+                upgradeToVersion9(db);
                 break;
             default:
                 Timber.i("Unknown version %d", oldVersion);
@@ -65,6 +82,9 @@ public class InstanceDatabaseMigrator implements DatabaseMigrator {
         upgradeToVersion6(db, temporaryTableName);
 
         dropObsoleteColumns(db, CURRENT_VERSION_COLUMN_NAMES, temporaryTableName);
+        upgradeToVersion7(db);
+        upgradeToVersion8(db);
+        upgradeToVersion9(db);
     }
 
     private void upgradeToVersion2(SQLiteDatabase db) {
@@ -133,6 +153,44 @@ public class InstanceDatabaseMigrator implements DatabaseMigrator {
         SQLiteUtils.addColumn(db, name, GEOMETRY_TYPE, "text");
     }
 
+    /**
+     * Upgrade to version 7. Adds a table recording which files of an instance a server has already
+     * accepted so that uploads split into several requests can be resumed.
+     */
+    private void upgradeToVersion7(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + UPLOADED_FILES_TABLE_NAME + " ("
+                + _ID + " integer primary key, "
+                + INSTANCE_ID + " integer not null, "
+                + FILE_NAME + " text not null, "
+                + FILE_SIZE + " integer not null, "
+                + LAST_MODIFIED + " integer not null);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + UPLOADED_FILES_TABLE_NAME + "_" + INSTANCE_ID
+                + " ON " + UPLOADED_FILES_TABLE_NAME + " (" + INSTANCE_ID + ");");
+    }
+
+    /**
+     * Upgrade to version 8. Adds indexes for the columns instances are looked up by (path, status
+     * and form id/version) so those lookups don't scan the whole table.
+     */
+    private void upgradeToVersion8(SQLiteDatabase db) {
+        createIndex(db, INSTANCE_FILE_PATH);
+        createIndex(db, STATUS);
+        createIndex(db, JR_FORM_ID, JR_VERSION);
+    }
+
+    /**
+     * Upgrade to version 9. Adds a full-text table indexing display names so instances can be
+     * searched by name without scanning the instances table.
+     */
+    private void upgradeToVersion9(SQLiteDatabase db) {
+        FullTextSearch.createTable(db, INSTANCES_FTS_TABLE_NAME, INSTANCES_TABLE_NAME, DISPLAY_NAME);
+    }
+
+    private void createIndex(SQLiteDatabase db, String... columns) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INSTANCES_TABLE_NAME + "_" + TextUtils.join("_", columns)
+                + " ON " + INSTANCES_TABLE_NAME + " (" + TextUtils.join(", ", columns) + ");");
+    }
+
     private void createInstancesTableV5(SQLiteDatabase db, String name) {
         db.execSQL("CREATE TABLE IF NOT EXISTS " + name + " ("
                 + _ID + " integer primary key, "
@@ -25,7 +25,10 @@ import org.odk.collect.android.tasks.FormLoaderTask;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -37,9 +40,19 @@ import timber.log.Timber;
 public class ExternalDataReaderImpl implements ExternalDataReader {
 
     private final FormLoaderTask formLoaderTask;
+    private final Map<String, Set<String>> indexedColumns;
 
     public ExternalDataReaderImpl(FormLoaderTask formLoaderTask) {
+        this(formLoaderTask, new HashMap<>());
+    }
+
+    /**
+     * @param indexedColumns columns (keyed by lower case data set name) that should be indexed
+     *                       after import - usually the ones pulldata() looks up rows by
+     */
+    public ExternalDataReaderImpl(FormLoaderTask formLoaderTask, Map<String, Set<String>> indexedColumns) {
         this.formLoaderTask = formLoaderTask;
+        this.indexedColumns = indexedColumns;
     }
 
     @Override
@@ -69,6 +82,7 @@ public class ExternalDataReaderImpl implements ExternalDataReader {
                     return true;
                 }
             } else {
+                createIndexes(dataSetName, dbFile);
                 return true;
             }
         }
@@ -101,7 +115,16 @@ public class ExternalDataReaderImpl implements ExternalDataReader {
             return false;
 
         }
+
+        createIndexes(dataSetName, dbFile);
         return true;
     }
 
+    private void createIndexes(String dataSetName, File dbFile) {
+        Set<String> columns = indexedColumns.get(dataSetName.toLowerCase(Locale.US));
+        if (columns != null && dbFile.exists()) {
+            ExternalSQLiteOpenHelper.createIndexes(dbFile, columns);
+        }
+    }
+
 }
@@ -37,14 +37,20 @@ import org.odk.collect.android.javarosawrapper.FormController;
 import org.odk.collect.android.utilities.TranslationHandler;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -65,6 +71,10 @@ public final class ExternalDataUtil {
     public static final String COLUMN_MD5_HASH = "md5Hash";
 
     public static final Pattern SEARCH_FUNCTION_REGEX = Pattern.compile("search\\(.+\\)");
+    private static final Pattern PULLDATA_FUNCTION_REGEX = Pattern.compile(
+            "pulldata\\s*\\(\\s*['\"]([^'\"]+)['\"]\\s*,\\s*['\"][^'\"]+['\"]\\s*,\\s*['\"]([^'\"]+)['\"]");
+    private static final int PULLDATA_SCAN_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_PULLDATA_CALL_LENGTH = 1024;
     private static final String COLUMN_SEPARATOR = ",";
     private static final String FALLBACK_COLUMN_SEPARATOR = " ";
     public static final String JR_IMAGES_PREFIX = "jr://images/";
@@ -107,6 +117,55 @@ public final class ExternalDataUtil {
         return null;
     }
 
+    /**
+     * Finds the columns that pulldata() calls in a form look rows up by so that they can be
+     * indexed when the form's CSVs are imported. Only calls where the data set and reference
+     * column are literals are considered.
+     *
+     * @return the reference columns keyed by (normalized) data set name
+     */
+    public static Map<String, Set<String>> findPulldataReferenceColumns(File formXml) {
+        Map<String, Set<String>> referenceColumns = new HashMap<>();
+
+        // Forms can be large so they're scanned a chunk at a time. The end of each chunk is kept
+        // for the next in case a call is split between them.
+        try (Reader reader = new InputStreamReader(new FileInputStream(formXml), "UTF-8")) {
+            StringBuilder window = new StringBuilder();
+            char[] buffer = new char[PULLDATA_SCAN_BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                window.append(buffer, 0, read);
+
+                int scannedTo = 0;
+                Matcher matcher = PULLDATA_FUNCTION_REGEX.matcher(window);
+                while (matcher.find()) {
+                    addReferenceColumn(referenceColumns, matcher.group(1), matcher.group(2));
+                    scannedTo = matcher.end();
+                }
+
+                window.delete(0, Math.max(scannedTo, window.length() - MAX_PULLDATA_CALL_LENGTH));
+            }
+        } catch (IOException e) {
+            Timber.w(e);
+        }
+
+        return referenceColumns;
+    }
+
+    private static void addReferenceColumn(Map<String, Set<String>> referenceColumns, String dataSet, String referenceColumn) {
+        String dataSetName = dataSet.trim().toLowerCase(Locale.US);
+        if (dataSetName.endsWith(".csv")) {
+            dataSetName = dataSetName.substring(0, dataSetName.lastIndexOf(".csv"));
+        }
+
+        Set<String> columns = referenceColumns.get(dataSetName);
+        if (columns == null) {
+            columns = new HashSet<>();
+            referenceColumns.put(dataSetName, columns);
+        }
+        columns.add(referenceColumn.trim());
+    }
+
     public static XPathFuncExpr getSearchXPathExpression(String appearance) {
         if (appearance == null) {
             appearance = "";
@@ -22,12 +22,16 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.Nullable;
 
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
 import org.odk.collect.android.database.AltDatabasePathContext;
 import org.odk.collect.android.exception.ExternalDataException;
 import org.odk.collect.android.tasks.FormLoaderTask;
+import org.odk.collect.android.utilities.CsvImporter;
 import org.odk.collect.android.utilities.CustomSQLiteQueryBuilder;
 import org.odk.collect.android.utilities.CustomSQLiteQueryExecutor;
 import org.odk.collect.android.utilities.SQLiteUtils;
@@ -35,15 +39,12 @@ import org.odk.collect.android.utilities.TranslationHandler;
 import org.odk.collect.shared.strings.Md5;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import au.com.bytecode.opencsv.CSVReader;
 import timber.log.Timber;
 
 /**
@@ -62,6 +63,8 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
     private ExternalDataReader externalDataReader;
     private FormLoaderTask formLoaderTask;
 
+    private String importedMd5Hash;
+
     ExternalSQLiteOpenHelper(File dbFile) {
         super(new AltDatabasePathContext(dbFile.getParentFile().getAbsolutePath(), Collect.getInstance()), dbFile.getName(), null, VERSION);
     }
@@ -75,10 +78,25 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
         SQLiteDatabase writableDatabase = null;
         try {
             writableDatabase = getWritableDatabase();
+            importDataSet(writableDatabase);
         } finally {
             if (writableDatabase != null) {
                 writableDatabase.close();
             }
+
+            // the import may have replaced the data set
+            synchronized (this) {
+                importedMd5Hash = null;
+            }
+        }
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // the database is only written to while importing (and is deleted if that doesn't
+        // complete) so there's no need to wait for the disk
+        if (externalDataReader != null) {
+            CsvImporter.enableBulkWrites(db);
         }
     }
 
@@ -87,15 +105,24 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
         if (externalDataReader == null) {
             // this means that the function handler needed the database through calling
             // getReadableDatabase() --> getWritableDatabase(),
-            // but this is not allowed, so just return;
+            // but this is not allowed, so nothing gets imported
             Timber.e("The function handler triggered this external data population. This is not good.");
-            return;
         }
 
+        // The data set is imported by importFromCSV once the database has been created. onCreate
+        // runs in a transaction, which would stop the import from committing rows in batches.
+    }
+
+    private void importDataSet(SQLiteDatabase db) {
         try {
             if (shouldUpdateDBforDataSet(db, ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME, ExternalDataUtil.EXTERNAL_METADATA_TABLE_NAME, dataSetFile)) {
                 onCreateNamed(db, ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME);
-                createAndPopulateMetadataTable(db, ExternalDataUtil.EXTERNAL_METADATA_TABLE_NAME, dataSetFile);
+
+                // rows are committed as they're imported so only record the import once it's
+                // complete (without the metadata table the data set is imported again)
+                if (!isCancelled()) {
+                    createAndPopulateMetadataTable(db, ExternalDataUtil.EXTERNAL_METADATA_TABLE_NAME, dataSetFile);
+                }
             }
         } catch (Exception e) {
             throw new ExternalDataException(
@@ -110,11 +137,8 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
         onProgress(TranslationHandler.getString(Collect.getInstance(), R.string.ext_import_progress_message,
                 dataSetFile.getName(), ""));
 
-        CSVReader reader = null;
-        try {
-            reader = new CSVReader(new InputStreamReader(new FileInputStream(dataSetFile), "UTF-8"),
-                    DELIMITING_CHAR, QUOTE_CHAR, ESCAPE_CHAR);
-            String[] headerRow = reader.readNext();
+        try (CsvImporter importer = CsvImporter.open(dataSetFile, DELIMITING_CHAR, QUOTE_CHAR, ESCAPE_CHAR)) {
+            String[] headerRow = importer.readRow();
 
             headerRow[0] = removeByteOrderMark(headerRow[0]);
 
@@ -188,54 +212,19 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
             }
 
             // populate the database
-            String[] row = reader.readNext();
-            int rowCount = 0;
-            while (row != null && !isCancelled()) {
-                // SCTO-894 - first we should make sure that this is not an empty line
-                if (!ExternalDataUtil.containsAnyData(row)) {
-                    // yes, that is an empty row, ignore it
-                    row = reader.readNext();
-                    continue;
-                }
-
-                // SCTO-894 - then check if the row contains less values than the header
-                // we should not ignore the existing values in the row,
-                // we will just fill up the rest with empty strings
-                if (row.length < headerRow.length) {
-                    row = ExternalDataUtil.fillUpNullValues(row, headerRow);
-                }
-
-                ContentValues values = new ContentValues();
-                if (!sortColumnAlreadyPresent) {
-                    values.put(ExternalDataUtil.SORT_COLUMN_NAME, rowCount + 1);
-                }
+            importer.importRows(db, createInsertSQL(tableName, headerRow, columnNamesCache, sortColumnAlreadyPresent),
+                    new DataSetRowBinder(headerRow, columnNamesCache, sortColumnAlreadyPresent), new CsvImporter.Listener() {
+                        @Override
+                        public void onProgress(long bytesRead, long totalBytes, long rowCount) {
+                            ExternalSQLiteOpenHelper.this.onProgress(TranslationHandler.getString(Collect.getInstance(), R.string.ext_import_progress_message,
+                                    dataSetFile.getName(), " (" + bytesRead * 100 / Math.max(totalBytes, 1) + "%)"));
+                        }
 
-                for (int i = 0; i < row.length && i < headerRow.length; i++) {
-                    String columnName = headerRow[i].trim();
-                    String columnValue = row[i];
-                    if (columnName.length() == 0) {
-                        continue;
-                    }
-                    String safeColumnName = ExternalDataUtil.toSafeColumnName(columnName,
-                            columnNamesCache);
-                    if (safeColumnName.equals(ExternalDataUtil.SORT_COLUMN_NAME)) {
-                        try {
-                            values.put(safeColumnName, Double.parseDouble(columnValue));
-                        } catch (NumberFormatException e) {
-                            throw new ExternalDataException(TranslationHandler.getString(Collect.getInstance(), R.string.ext_sortBy_numeric_error, columnValue));
+                        @Override
+                        public boolean isCancelled() {
+                            return ExternalSQLiteOpenHelper.this.isCancelled();
                         }
-                    } else {
-                        values.put(safeColumnName, columnValue);
-                    }
-                }
-                db.insertOrThrow(tableName, null, values);
-                row = reader.readNext();
-                rowCount++;
-                if (rowCount % 100 == 0) {
-                    onProgress(TranslationHandler.getString(Collect.getInstance(), R.string.ext_import_progress_message,
-                            dataSetFile.getName(), " (" + rowCount + " records so far)"));
-                }
-            }
+                    });
 
             if (isCancelled()) {
                 Timber.w("User canceled reading data from %s", dataSetFile.toString());
@@ -253,15 +242,31 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
                 Timber.w("Read all data from %s", dataSetFile.toString());
                 onProgress(TranslationHandler.getString(Collect.getInstance(), R.string.ext_import_completed_message));
             }
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    Timber.e(e);
-                }
+        }
+    }
+
+    private static String createInsertSQL(String tableName, String[] headerRow, Map<String, String> columnNamesCache,
+                                          boolean sortColumnAlreadyPresent) {
+        List<String> columns = new ArrayList<>();
+        for (String header : headerRow) {
+            String columnName = header.trim();
+            if (columnName.length() > 0) {
+                columns.add(ExternalDataUtil.toSafeColumnName(columnName, columnNamesCache));
             }
         }
+        if (!sortColumnAlreadyPresent) {
+            columns.add(ExternalDataUtil.SORT_COLUMN_NAME);
+        }
+
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(columns.get(i));
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.append(");").toString();
     }
 
     protected boolean isCancelled() {
@@ -322,6 +327,63 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
         return newFileMd5 == null || !newFileMd5.equals(priorImportMd5);
     }
 
+    /**
+     * Indexes the given (unsafe) columns of the data table if they exist and aren't indexed
+     * already. Columns ending in "_key" are skipped as they get indexed during import.
+     */
+    static void createIndexes(File dbFile, Collection<String> columnNames) {
+        if (columnNames == null || columnNames.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        try {
+            createIndexes(db, ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME, columnNames);
+        } finally {
+            db.close();
+        }
+    }
+
+    static void createIndexes(SQLiteDatabase db, String tableName, Collection<String> columnNames) {
+        if (!SQLiteUtils.doesTableExist(db, tableName)) {
+            return;
+        }
+
+        List<String> tableColumns = SQLiteUtils.getColumnNames(db, tableName);
+        for (String columnName : columnNames) {
+            String safeColumnName = ExternalDataUtil.toSafeColumnName(columnName);
+            if (columnName.endsWith("_key") || !tableColumns.contains(safeColumnName)) {
+                continue;
+            }
+
+            String indexSQL = "CREATE INDEX IF NOT EXISTS " + safeColumnName + "_lookup_idx ON "
+                    + tableName + " (" + safeColumnName + ");";
+            Timber.i(indexSQL);
+            db.execSQL(indexSQL);
+        }
+    }
+
+    /**
+     * @return the MD5 hash of the CSV that the data was imported from or null if it isn't known.
+     * The hash is read once and then remembered until the next import.
+     */
+    @Nullable
+    public synchronized String getImportedMd5Hash() {
+        if (importedMd5Hash == null) {
+            SQLiteDatabase db = getReadableDatabase();
+            if (SQLiteUtils.doesTableExist(db, ExternalDataUtil.EXTERNAL_METADATA_TABLE_NAME)) {
+                String[] columns = {CustomSQLiteQueryBuilder.quoteIdentifier(ExternalDataUtil.COLUMN_MD5_HASH)};
+                try (Cursor cursor = db.query(ExternalDataUtil.EXTERNAL_METADATA_TABLE_NAME, columns, null, null, null, null, null)) {
+                    if (cursor.moveToFirst()) {
+                        importedMd5Hash = cursor.getString(0);
+                    }
+                }
+            }
+        }
+
+        return importedMd5Hash;
+    }
+
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
     }
@@ -341,4 +403,80 @@ public class ExternalSQLiteOpenHelper extends SQLiteOpenHelper {
     private String removeByteOrderMark(String bomCheckString) {
         return bomCheckString.startsWith("\uFEFF") ? bomCheckString.substring(1) : bomCheckString;
     }
+
+    /**
+     * Binds the values of a data set row in the same order as the columns in the statement built
+     * by {@link #createInsertSQL}.
+     */
+    private static class DataSetRowBinder implements CsvImporter.RowBinder {
+
+        private final String[] headerRow;
+        private final int[] bindIndexes;
+        private final int sortColumnIndex;
+        private final int generatedSortBindIndex;
+
+        DataSetRowBinder(String[] headerRow, Map<String, String> columnNamesCache, boolean sortColumnAlreadyPresent) {
+            this.headerRow = headerRow;
+            this.bindIndexes = new int[headerRow.length];
+
+            int sortColumn = -1;
+            int bindIndex = 0;
+            for (int i = 0; i < headerRow.length; i++) {
+                String columnName = headerRow[i].trim();
+                if (columnName.length() == 0) {
+                    bindIndexes[i] = 0;
+                    continue;
+                }
+
+                bindIndexes[i] = ++bindIndex;
+                if (ExternalDataUtil.toSafeColumnName(columnName, columnNamesCache).equals(ExternalDataUtil.SORT_COLUMN_NAME)) {
+                    sortColumn = i;
+                }
+            }
+
+            this.sortColumnIndex = sortColumn;
+            this.generatedSortBindIndex = sortColumnAlreadyPresent ? 0 : bindIndex + 1;
+        }
+
+        @Override
+        public boolean bind(String[] row, long rowNumber, SQLiteStatement statement) {
+            // SCTO-894 - first we should make sure that this is not an empty line
+            if (!ExternalDataUtil.containsAnyData(row)) {
+                // yes, that is an empty row, ignore it
+                return false;
+            }
+
+            // SCTO-894 - then check if the row contains less values than the header
+            // we should not ignore the existing values in the row,
+            // we will just fill up the rest with empty strings
+            if (row.length < headerRow.length) {
+                row = ExternalDataUtil.fillUpNullValues(row, headerRow);
+            }
+
+            if (generatedSortBindIndex > 0) {
+                statement.bindDouble(generatedSortBindIndex, rowNumber + 1);
+            }
+
+            for (int i = 0; i < row.length && i < headerRow.length; i++) {
+                if (bindIndexes[i] == 0) {
+                    continue;
+                }
+
+                String columnValue = row[i];
+                if (i == sortColumnIndex) {
+                    try {
+                        statement.bindDouble(bindIndexes[i], Double.parseDouble(columnValue));
+                    } catch (NumberFormatException e) {
+                        throw new ExternalDataException(TranslationHandler.getString(Collect.getInstance(), R.string.ext_sortBy_numeric_error, columnValue));
+                    }
+                } else if (columnValue == null) {
+                    statement.bindNull(bindIndexes[i]);
+                } else {
+                    statement.bindString(bindIndexes[i], columnValue);
+                }
+            }
+
+            return true;
+        }
+    }
 }
@@ -42,8 +42,15 @@ public class ExternalDataHandlerPull extends ExternalDataHandlerBase {
 
     public static final String HANDLER_NAME = "pulldata";
 
+    private final PulldataCache cache;
+
     public ExternalDataHandlerPull(ExternalDataManager externalDataManager) {
+        this(externalDataManager, PulldataCache.getShared());
+    }
+
+    public ExternalDataHandlerPull(ExternalDataManager externalDataManager, PulldataCache cache) {
         super(externalDataManager);
+        this.cache = cache;
     }
 
     @Override
@@ -90,21 +97,36 @@ public class ExternalDataHandlerPull extends ExternalDataHandlerBase {
                 return "";
             }
 
+            String csvMd5Hash = sqLiteOpenHelper.getImportedMd5Hash();
+            if (csvMd5Hash != null) {
+                String cachedResult = cache.get(csvMd5Hash, dataSetName, queriedColumn, referenceColumn, referenceValue);
+                if (cachedResult != null) {
+                    return cachedResult;
+                }
+            }
+
             SQLiteDatabase db = sqLiteOpenHelper.getReadableDatabase();
             String[] columns = {ExternalDataUtil.toSafeColumnName(queriedColumn)};
             String selection = ExternalDataUtil.toSafeColumnName(referenceColumn) + "=?";
             String[] selectionArgs = {referenceValue};
 
             c = db.query(ExternalDataUtil.EXTERNAL_DATA_TABLE_NAME, columns, selection,
-                    selectionArgs, null, null, null);
+                    selectionArgs, null, null, null, "1");
+            String result;
             if (c.getCount() > 0) {
                 c.moveToFirst();
-                return ExternalDataUtil.nullSafe(c.getString(0));
+                result = ExternalDataUtil.nullSafe(c.getString(0));
             } else {
                 Timber.i("Could not find a value in %s where the column %s has the value %s",
                         queriedColumn, referenceColumn, referenceValue);
-                return "";
+                result = "";
+            }
+
+            if (csvMd5Hash != null) {
+                cache.put(csvMd5Hash, dataSetName, queriedColumn, referenceColumn, referenceValue, result);
             }
+
+            return result;
         } catch (SQLiteException e) {
             Timber.i(e);
             return "";
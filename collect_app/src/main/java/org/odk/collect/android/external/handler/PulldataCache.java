@@ -0,0 +1,55 @@
+package org.odk.collect.android.external.handler;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Least recently used cache of pulldata() results. Results are keyed by the MD5 hash of the CSV
+ * they were looked up in as well as the lookup itself so that entries for a CSV that has since
+ * been changed are never returned (they'll just be evicted over time).
+ * <p>
+ * The cache returned by {@link #getShared()} lives as long as the app process so that results
+ * are reused when a form is opened again.
+ */
+public class PulldataCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final PulldataCache SHARED = new PulldataCache(DEFAULT_MAX_SIZE);
+
+    private final Map<List<String>, String> results;
+
+    public PulldataCache(int maxSize) {
+        results = new LinkedHashMap<List<String>, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Entry<List<String>, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public static PulldataCache getShared() {
+        return SHARED;
+    }
+
+    @Nullable
+    public synchronized String get(String csvMd5Hash, String dataSetName, String queriedColumn, String referenceColumn, String referenceValue) {
+        return results.get(Arrays.asList(csvMd5Hash, dataSetName, queriedColumn, referenceColumn, referenceValue));
+    }
+
+    public synchronized void put(String csvMd5Hash, String dataSetName, String queriedColumn, String referenceColumn, String referenceValue, String result) {
+        results.put(Arrays.asList(csvMd5Hash, dataSetName, queriedColumn, referenceColumn, referenceValue), result);
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    public synchronized void clear() {
+        results.clear();
+    }
+}
@@ -0,0 +1,109 @@
+package org.odk.collect.android.fastexternalitemset;
+
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+import org.javarosa.core.model.SelectChoice;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps parsed itemset queries and the results of looking up items and labels so that
+ * displaying a question again (or another question with the same arguments) doesn't need to hit
+ * the database. Results are keyed by the itemsets file's size and last modified time as well
+ * as the lookup so a changed file is never served from the cache.
+ * <p>
+ * The cache returned by {@link #getShared()} lives as long as the app process.
+ */
+public class ItemsetCache {
+
+    public static final int DEFAULT_MAX_ITEM_LISTS = 100;
+    public static final int DEFAULT_MAX_LABELS = 1000;
+
+    private static final ItemsetCache SHARED = new ItemsetCache(DEFAULT_MAX_ITEM_LISTS, DEFAULT_MAX_LABELS);
+
+    private final Map<String, ItemsetQuery> queries = new ConcurrentHashMap<>();
+    private final LruCache<List<Object>, List<SelectChoice>> items;
+    private final LruCache<List<Object>, String> labels;
+
+    public ItemsetCache(int maxItemLists, int maxLabels) {
+        items = new LruCache<>(maxItemLists);
+        labels = new LruCache<>(maxLabels);
+    }
+
+    public static ItemsetCache getShared() {
+        return SHARED;
+    }
+
+    public ItemsetQuery getQuery(String nodeset) {
+        ItemsetQuery query = queries.get(nodeset);
+        if (query == null) {
+            query = ItemsetQuery.parse(nodeset);
+            queries.put(nodeset, query);
+        }
+
+        return query;
+    }
+
+    /**
+     * @return a copy of the items cached for the query and arguments or null if there are none
+     */
+    @Nullable
+    public List<SelectChoice> getItems(File itemsetFile, String nodeset, String language, String[] selectionArgs) {
+        List<SelectChoice> cachedItems = items.get(itemsKey(itemsetFile, nodeset, language, selectionArgs));
+        if (cachedItems == null) {
+            return null;
+        }
+
+        return copy(cachedItems);
+    }
+
+    /**
+     * Caches a copy of {@code result} so that changes the caller makes to the items (such as
+     * attaching them to a question) aren't seen by later callers.
+     */
+    public void putItems(File itemsetFile, String nodeset, String language, String[] selectionArgs, List<SelectChoice> result) {
+        items.put(itemsKey(itemsetFile, nodeset, language, selectionArgs), copy(result));
+    }
+
+    @Nullable
+    public String getLabel(File itemsetFile, String itemName, String language) {
+        return labels.get(labelKey(itemsetFile, itemName, language));
+    }
+
+    public void putLabel(File itemsetFile, String itemName, String language, String label) {
+        labels.put(labelKey(itemsetFile, itemName, language), label);
+    }
+
+    public void clear() {
+        queries.clear();
+        items.evictAll();
+        labels.evictAll();
+    }
+
+    private static List<SelectChoice> copy(List<SelectChoice> items) {
+        List<SelectChoice> copies = new ArrayList<>(items.size());
+        for (SelectChoice item : items) {
+            SelectChoice copy = new SelectChoice(null, item.getLabelInnerText(), item.getValue(), false);
+            copy.setIndex(item.getIndex());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static List<Object> itemsKey(File itemsetFile, String nodeset, String language, String[] selectionArgs) {
+        return Arrays.asList(itemsetFile.getAbsolutePath(), itemsetFile.length(), itemsetFile.lastModified(),
+                nodeset, language, Arrays.asList(selectionArgs));
+    }
+
+    private static List<Object> labelKey(File itemsetFile, String itemName, String language) {
+        return Arrays.asList(itemsetFile.getAbsolutePath(), itemsetFile.length(), itemsetFile.lastModified(),
+                itemName, language);
+    }
+}
@@ -20,6 +20,8 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
 
 import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.IFormElement;
+import org.javarosa.core.model.QuestionDef;
 import org.javarosa.core.model.SelectChoice;
 import org.javarosa.core.model.condition.EvaluationContext;
 import org.javarosa.core.model.instance.TreeElement;
@@ -33,17 +35,25 @@ import org.odk.collect.android.javarosawrapper.FormController;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import timber.log.Timber;
 
 public class ItemsetDao {
-    private static final String QUOTATION_MARK = "\"";
 
     private final ItemsetDbAdapter adapter;
+    private final ItemsetCache cache;
 
     public ItemsetDao(ItemsetDbAdapter adapter) {
+        this(adapter, ItemsetCache.getShared());
+    }
+
+    public ItemsetDao(ItemsetDbAdapter adapter, ItemsetCache cache) {
         this.adapter = adapter;
+        this.cache = cache;
     }
 
     public String getItemLabel(String itemName, String mediaFolderPath, String language) {
@@ -51,6 +61,11 @@ public class ItemsetDao {
 
         File itemsetFile = getItemsetFile(mediaFolderPath);
         if (itemsetFile.exists()) {
+            itemLabel = cache.getLabel(itemsetFile, itemName, language);
+            if (itemLabel != null) {
+                return itemLabel;
+            }
+
             adapter.open();
 
             // name of the itemset table for this form
@@ -76,6 +91,10 @@ public class ItemsetDao {
                     }
                     c.close();
                 }
+
+                if (itemLabel != null) {
+                    cache.putLabel(itemsetFile, itemName, language, itemLabel);
+                }
             } catch (SQLiteException e) {
                 Timber.i(e);
             } finally {
@@ -88,103 +107,72 @@ public class ItemsetDao {
 
     public List<SelectChoice> getItems(FormEntryPrompt formEntryPrompt, XPathParseTool pathParseTool) throws FileNotFoundException, XPathSyntaxException {
         String nodesetString = getNodesetString(formEntryPrompt);
-
-        List<String> arguments = new ArrayList<>();
-        String selectionString = getSelectionStringAndPopulateArguments(getQueryString(nodesetString), arguments);
+        ItemsetQuery query = cache.getQuery(nodesetString);
 
         FormController formController = Collect.getInstance().getFormController();
-        String[] selectionArgs = getSelectionArgs(arguments, nodesetString, formController, pathParseTool, formEntryPrompt);
-
-        return selectionArgs == null ? null : getItemsFromDatabase(selectionString, selectionArgs, formController, adapter);
-    }
+        String[] selectionArgs = getSelectionArgs(query, formController, pathParseTool, formEntryPrompt);
 
-    private String getNodesetString(FormEntryPrompt formEntryPrompt) {
-        // the format of the query should be something like this:
-        // query="instance('cities')/root/item[state=/data/state and county=/data/county]"
-        // "query" is what we're using to notify that this is an itemset widget.
-        return formEntryPrompt.getQuestion().getAdditionalAttribute(null, "query");
+        return selectionArgs == null ? null : getItemsFromDatabase(nodesetString, query.getSelection(), selectionArgs, formController, adapter);
     }
 
-    private String getQueryString(String nodesetStr) {
-        // isolate the string between between the [ ] characters
-        return nodesetStr.substring(nodesetStr.indexOf('[') + 1, nodesetStr.lastIndexOf(']'));
+    /**
+     * Indexes the itemset table for the columns that the questions in {@code formDef} filter on
+     * (as well as the name column used to look up labels).
+     */
+    public void createIndexes(FormDef formDef, File itemsetFile) {
+        Set<String> nodesets = new HashSet<>();
+        collectNodesets(formDef, nodesets);
+
+        adapter.open();
+
+        // name of the itemset table for this form
+        String pathHash = ItemsetDbAdapter.getMd5FromString(itemsetFile.getAbsolutePath());
+        try {
+            adapter.createIndex(pathHash, Collections.singletonList("name"));
+
+            for (String nodeset : nodesets) {
+                try {
+                    adapter.createIndex(pathHash, cache.getQuery(nodeset).getIndexColumns());
+                } catch (StringIndexOutOfBoundsException e) {
+                    Timber.w("Could not parse itemset query %s", nodeset);
+                }
+            }
+        } catch (SQLiteException e) {
+            Timber.w(e);
+        } finally {
+            adapter.close();
+        }
     }
 
-    private String getSelectionStringAndPopulateArguments(String queryString, List<String> arguments) {
-        StringBuilder selectionString = new StringBuilder();
-        // add the list name as the first argument, which will always be there
-        selectionString.append("list_name=?");
-
-        // check to see if there are any arguments
-        if (queryString.indexOf('=') != -1) {
-            selectionString.append(" and ");
+    private static void collectNodesets(IFormElement element, Set<String> nodesets) {
+        if (element instanceof QuestionDef) {
+            String nodeset = ((QuestionDef) element).getAdditionalAttribute(null, "query");
+            if (nodeset != null) {
+                nodesets.add(nodeset);
+            }
         }
 
-        // can't just split on 'and' or 'or' because they have different
-        // behavior, so loop through and break them off until we don't have any more
-        // must include the spaces in indexOf so we don't match words like "land"
-        int andIndex;
-        int orIndex = -1;
-
-        while ((andIndex = queryString.indexOf(" and ")) != -1 || (orIndex = queryString.indexOf(" or ")) != -1) {
-            if (andIndex != -1) {
-                String[] pair = queryString
-                        .substring(0, andIndex)
-                        .split("=");
-
-                if (pair.length == 2) {
-                    selectionString
-                            .append(QUOTATION_MARK)
-                            .append(pair[0].trim())
-                            .append(QUOTATION_MARK)
-                            .append("=? and ");
-
-                    arguments
-                            .add(pair[1]
-                                    .trim());
-                }
-                // move string forward to after " and "
-                queryString = queryString.substring(andIndex + 5, queryString.length());
-            } else {
-                String subString = queryString.substring(0, orIndex);
-                String[] pair = subString.split("=");
-
-                if (pair.length == 2) {
-                    selectionString
-                            .append(QUOTATION_MARK)
-                            .append(pair[0].trim())
-                            .append(QUOTATION_MARK)
-                            .append("=? or ");
-                    arguments.add(pair[1].trim());
-                }
-                // move string forward to after " or "
-                queryString = queryString.substring(orIndex + 4, queryString.length());
-                orIndex = -1;
+        if (element.getChildren() != null) {
+            for (IFormElement child : element.getChildren()) {
+                collectNodesets(child, nodesets);
             }
         }
+    }
 
-        // parse the last segment (or only segment if there are no 'and' or 'or' clauses
-        String[] pair = queryString.split("=");
-        if (pair.length == 2) {
-            selectionString
-                    .append(QUOTATION_MARK)
-                    .append(pair[0].trim())
-                    .append(QUOTATION_MARK)
-                    .append("=?");
-            arguments.add(pair[1].trim());
-        }
-        return selectionString.toString();
+    private String getNodesetString(FormEntryPrompt formEntryPrompt) {
+        // the format of the query should be something like this:
+        // query="instance('cities')/root/item[state=/data/state and county=/data/county]"
+        // "query" is what we're using to notify that this is an itemset widget.
+        return formEntryPrompt.getQuestion().getAdditionalAttribute(null, "query");
     }
 
-    @SuppressWarnings("PMD.AvoidThrowingNewInstanceOfSameException")
-    private String[] getSelectionArgs(List<String> arguments, String nodesetStr, FormController formController, XPathParseTool pathParseTool, FormEntryPrompt formEntryPrompt) throws XPathSyntaxException {
-        // +1 is for the list_name
-        String[] selectionArgs = new String[arguments.size() + 1];
+    private String[] getSelectionArgs(ItemsetQuery query, FormController formController, XPathParseTool pathParseTool, FormEntryPrompt formEntryPrompt) throws XPathSyntaxException {
+        List<XPathExpression> argumentExpressions = query.getArgumentExpressions(pathParseTool);
 
-        // parse out the list name, between the ''
-        String listName = nodesetStr.substring(nodesetStr.indexOf('\'') + 1, nodesetStr.lastIndexOf('\''));
+        // +1 is for the list_name
+        String[] selectionArgs = new String[argumentExpressions.size() + 1];
 
-        selectionArgs[0] = listName; // first argument is always listname
+        selectionArgs[0] = query.getListName(); // first argument is always listname
 
         if (formController == null) {
             Timber.w("Can't instantiate ItemsetWidget with a null FormController.");
@@ -192,13 +180,8 @@ public class ItemsetDao {
         }
 
         // loop through the arguments, evaluate any expressions and build the query string for the DB
-        for (int i = 0; i < arguments.size(); i++) {
-            XPathExpression xpr;
-            try {
-                xpr = pathParseTool.parseXPath(arguments.get(i));
-            } catch (XPathSyntaxException e) {
-                throw new XPathSyntaxException(arguments.get(i));
-            }
+        for (int i = 0; i < argumentExpressions.size(); i++) {
+            XPathExpression xpr = argumentExpressions.get(i);
 
             if (xpr != null) {
                 FormDef form = formController.getFormDef();
@@ -221,12 +204,24 @@ public class ItemsetDao {
         return selectionArgs;
     }
 
-    private List<SelectChoice> getItemsFromDatabase(String selection, String[] selectionArgs, FormController formController, ItemsetDbAdapter adapter) throws FileNotFoundException {
+    private List<SelectChoice> getItemsFromDatabase(String nodeset, String selection, String[] selectionArgs, FormController formController, ItemsetDbAdapter adapter) throws FileNotFoundException {
         List<SelectChoice> items = new ArrayList<>();
 
         File itemsetFile = getItemsetFile(formController.getMediaFolder().getAbsolutePath());
 
         if (itemsetFile.exists()) {
+            // try to get the value associated with the label:lang
+            // string if that doen't exist, then just use label
+            String lang = "";
+            if (formController.getLanguages() != null && formController.getLanguages().length > 0) {
+                lang = formController.getLanguage();
+            }
+
+            List<SelectChoice> cachedItems = cache.getItems(itemsetFile, nodeset, lang, selectionArgs);
+            if (cachedItems != null) {
+                return cachedItems;
+            }
+
             adapter.open();
 
             // name of the itemset table for this form
@@ -234,36 +229,26 @@ public class ItemsetDao {
             try {
                 Cursor c = adapter.query(pathHash, selection, selectionArgs);
                 if (c != null) {
+                    // apparently you only need the double quotes in the
+                    // column name when creating the column with a : included
+                    String labelLang = "label" + "::" + lang;
+                    int langCol = c.getColumnIndex(labelLang);
+                    int labelCol = langCol == -1 ? c.getColumnIndex("label") : langCol;
+                    int nameCol = c.getColumnIndex("name");
+
                     c.move(-1);
                     int index = 0;
                     while (c.moveToNext()) {
-                        String label;
-                        String val;
-
-                        // try to get the value associated with the label:lang
-                        // string if that doen't exist, then just use label
-                        String lang = "";
-                        if (formController.getLanguages() != null && formController.getLanguages().length > 0) {
-                            lang = formController.getLanguage();
-                        }
-
-                        // apparently you only need the double quotes in the
-                        // column name when creating the column with a : included
-                        String labelLang = "label" + "::" + lang;
-                        int langCol = c.getColumnIndex(labelLang);
-                        if (langCol == -1) {
-                            label = c.getString(c.getColumnIndex("label"));
-                        } else {
-                            label = c.getString(c.getColumnIndex(labelLang));
-                        }
-
-                        val = c.getString(c.getColumnIndex("name"));
+                        String label = c.getString(labelCol);
+                        String val = c.getString(nameCol);
                         SelectChoice selectChoice = new SelectChoice(null, label, val, false);
                         selectChoice.setIndex(index);
                         items.add(selectChoice);
                         index++;
                     }
                     c.close();
+
+                    cache.putItems(itemsetFile, nodeset, lang, selectionArgs, items);
                 }
             } catch (SQLiteException e) {
                 Timber.i(e);
@@ -4,23 +4,27 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 
 import org.odk.collect.android.application.Collect;
-import org.odk.collect.android.database.AltDatabasePathContext;
+import org.odk.collect.android.database.DatabaseConnection;
+import org.odk.collect.android.database.DatabaseMigrator;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.utilities.CsvImporter;
+import org.odk.collect.android.utilities.SQLiteUtils;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 
 import timber.log.Timber;
 
 public class ItemsetDbAdapter implements Closeable {
 
-    private DatabaseHelper dbHelper;
     private SQLiteDatabase db;
 
     public static final String DATABASE_NAME = "itemsets.db";
@@ -38,23 +42,29 @@ public class ItemsetDbAdapter implements Closeable {
                     + ");";
 
     /**
-     * This class helps open, create, and upgrade the database file.
+     * Creates the table tracking itemsets and drops everything when the version changes.
      */
-    private static class DatabaseHelper extends SQLiteOpenHelper {
-        DatabaseHelper() {
-            super(new AltDatabasePathContext(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.METADATA), Collect.getInstance()), DATABASE_NAME, null, DATABASE_VERSION);
-        }
+    private static class ItemsetsDatabaseMigrator implements DatabaseMigrator {
 
         @Override
         public void onCreate(SQLiteDatabase db) {
             // create table to keep track of the itemsets
             db.execSQL(CREATE_ITEMSET_TABLE);
+        }
 
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion) {
+            Timber.w("Upgrading database from version %d to %d, which will destroy all old data", oldVersion, DATABASE_VERSION);
+            dropAll(db);
         }
 
         @Override
-        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-            Timber.w("Upgrading database from version %d to %d, which will destroy all old data", oldVersion, newVersion);
+        public void onDowngrade(SQLiteDatabase db) {
+            Timber.w("Downgrading database to version %d, which will destroy all old data", DATABASE_VERSION);
+            dropAll(db);
+        }
+
+        private void dropAll(SQLiteDatabase db) {
             // first drop all of our generated itemset tables
             Cursor c = db.query(ITEMSET_TABLE, null, null, null, null, null, null);
             if (c != null) {
@@ -75,21 +85,30 @@ public class ItemsetDbAdapter implements Closeable {
     /**
      * Open the database. If it cannot be opened, try to create a new instance
      * of the database. If it cannot be created, throw an exception to signal
-     * the failure
+     * the failure. The underlying connection is shared (see {@link DatabaseConnection}) so
+     * opening an adapter repeatedly is cheap.
      *
      * @return this (self reference, allowing this to be chained in an
      * initialization call)
      * @throws SQLException if the database could be neither opened or created
      */
     public ItemsetDbAdapter open() throws SQLException {
-        dbHelper = new DatabaseHelper();
-        db = dbHelper.getWritableDatabase();
+        db = new DatabaseConnection(
+                Collect.getInstance(),
+                new StoragePathProvider().getOdkDirPath(StorageSubdirectory.METADATA),
+                DATABASE_NAME,
+                new ItemsetsDatabaseMigrator(),
+                DATABASE_VERSION
+        ).getWriteableDatabase();
         return this;
     }
 
+    /**
+     * Leaves the shared connection open so that it can be reused by the next adapter.
+     */
     @Override
     public void close() {
-        dbHelper.close();
+        db = null;
     }
 
     public boolean createTable(String formHash, String pathHash, String[] columns, String path) {
@@ -127,31 +146,75 @@ public class ItemsetDbAdapter implements Closeable {
         return true;
     }
 
-    public boolean addRow(String tableName, String[] columns, String[] newRow) {
-        ContentValues cv = new ContentValues();
+    /**
+     * Inserts the remaining rows read by {@code importer} into the table created for
+     * {@code tableName} by {@link #createTable}.
+     */
+    public long importRows(String tableName, String[] columns, CsvImporter importer, CsvImporter.Listener listener) throws IOException {
+        StringBuilder insert = new StringBuilder("INSERT INTO ")
+                .append(DATABASE_TABLE)
+                .append(tableName)
+                .append(" (");
+        StringBuilder parameters = new StringBuilder();
 
         // rows don't necessarily use all the columns
-        // but a column is guaranteed to exist for a row (or else blow up)
-        for (int i = 0; i < newRow.length; i++) {
+        int[] bindIndexes = new int[columns.length];
+        int bindIndex = 0;
+        for (int i = 0; i < columns.length; i++) {
             if (!columns[i].isEmpty()) {
-                cv.put("\"" + columns[i] + "\"", newRow[i]);
+                insert.append(bindIndex == 0 ? "\"" : ", \"").append(columns[i]).append('"');
+                parameters.append(bindIndex == 0 ? "?" : ", ?");
+                bindIndexes[i] = ++bindIndex;
             }
         }
-        db.insert(DATABASE_TABLE + tableName, null, cv);
-        return true;
-    }
+        insert.append(") VALUES (").append(parameters).append(");");
 
-    public void beginTransaction() {
-        db.execSQL("BEGIN");
-    }
+        if (bindIndex == 0) {
+            return 0;
+        }
 
-    public void commit() {
-        db.execSQL("COMMIT");
+        // itemsets.db holds every form's itemsets so it keeps its default journal while importing
+        return importer.importRows(db, insert.toString(), (row, rowNumber, statement) -> {
+            for (int i = 0; i < row.length && i < columns.length; i++) {
+                if (bindIndexes[i] != 0 && row[i] != null) {
+                    statement.bindString(bindIndexes[i], row[i]);
+                }
+            }
+            return true;
+        }, listener);
     }
 
     public Cursor query(String hash, String selection, String[] selectionArgs) throws SQLException {
-        return db.query(true, DATABASE_TABLE + hash, null, selection, selectionArgs,
-                null, null, null, null);
+        // rows include their _id so there's no need for DISTINCT (and the temporary b-tree
+        // it would need)
+        return db.query(DATABASE_TABLE + hash, null, selection, selectionArgs,
+                null, null, null);
+    }
+
+    /**
+     * Creates an index on {@code columns} (in that order) for the itemset table if all of them
+     * exist and there isn't one already.
+     */
+    public void createIndex(String pathHash, List<String> columns) {
+        String table = DATABASE_TABLE + pathHash;
+        if (!SQLiteUtils.doesTableExist(db, table) || !SQLiteUtils.getColumnNames(db, table).containsAll(columns)) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder("CREATE INDEX IF NOT EXISTS \"")
+                .append(table)
+                .append('_')
+                .append(getMd5FromString(TextUtils.join(",", columns)))
+                .append("\" ON ")
+                .append(table)
+                .append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "\"" : ", \"").append(columns.get(i)).append('"');
+        }
+        sb.append(");");
+
+        Timber.i(sb.toString());
+        db.execSQL(sb.toString());
     }
 
     public void dropTable(String pathHash, String path) {
@@ -0,0 +1,172 @@
+package org.odk.collect.android.fastexternalitemset;
+
+import org.javarosa.xpath.expr.XPathExpression;
+import org.javarosa.xpath.parser.XPathSyntaxException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parsed form of a fast external itemset's "query" attribute. Parsing (including the XPath
+ * arguments) only happens once per query rather than every time the question is displayed.
+ */
+public class ItemsetQuery {
+
+    static final String LIST_NAME_COLUMN = "list_name";
+
+    private static final String QUOTATION_MARK = "\"";
+
+    private final String listName;
+    private final String selection;
+    private final List<String> columns;
+    private final List<String> arguments;
+
+    private List<XPathExpression> argumentExpressions;
+
+    private ItemsetQuery(String listName, String selection, List<String> columns, List<String> arguments) {
+        this.listName = listName;
+        this.selection = selection;
+        this.columns = columns;
+        this.arguments = arguments;
+    }
+
+    /**
+     * @param nodeset a query like
+     *                {@code instance('cities')/root/item[state=/data/state and county=/data/county]}
+     */
+    public static ItemsetQuery parse(String nodeset) {
+        // parse out the list name, between the ''
+        String listName = nodeset.substring(nodeset.indexOf('\'') + 1, nodeset.lastIndexOf('\''));
+
+        // isolate the string between between the [ ] characters
+        String queryString = nodeset.substring(nodeset.indexOf('[') + 1, nodeset.lastIndexOf(']'));
+
+        List<String> columns = new ArrayList<>();
+        List<String> arguments = new ArrayList<>();
+        String selection = getSelectionStringAndPopulateArguments(queryString, columns, arguments);
+
+        return new ItemsetQuery(listName, selection, Collections.unmodifiableList(columns), Collections.unmodifiableList(arguments));
+    }
+
+    public String getListName() {
+        return listName;
+    }
+
+    /**
+     * @return the selection to query the itemset table with. The first argument is always the
+     * list name followed by the values of {@link #getArgumentExpressions}.
+     */
+    public String getSelection() {
+        return selection;
+    }
+
+    /**
+     * @return the columns the selection filters on (other than list_name) in the order they
+     * appear in the query
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the columns that an index should be created on to serve this query
+     */
+    public List<String> getIndexColumns() {
+        List<String> indexColumns = new ArrayList<>();
+        indexColumns.add(LIST_NAME_COLUMN);
+        for (String column : columns) {
+            if (!indexColumns.contains(column)) {
+                indexColumns.add(column);
+            }
+        }
+        return indexColumns;
+    }
+
+    @SuppressWarnings("PMD.AvoidThrowingNewInstanceOfSameException")
+    public synchronized List<XPathExpression> getArgumentExpressions(XPathParseTool pathParseTool) throws XPathSyntaxException {
+        if (argumentExpressions == null) {
+            List<XPathExpression> expressions = new ArrayList<>();
+            for (String argument : arguments) {
+                try {
+                    expressions.add(pathParseTool.parseXPath(argument));
+                } catch (XPathSyntaxException e) {
+                    throw new XPathSyntaxException(argument);
+                }
+            }
+
+            argumentExpressions = Collections.unmodifiableList(expressions);
+        }
+
+        return argumentExpressions;
+    }
+
+    private static String getSelectionStringAndPopulateArguments(String queryString, List<String> columns, List<String> arguments) {
+        StringBuilder selectionString = new StringBuilder();
+        // add the list name as the first argument, which will always be there
+        selectionString.append(LIST_NAME_COLUMN).append("=?");
+
+        // check to see if there are any arguments
+        if (queryString.indexOf('=') != -1) {
+            selectionString.append(" and ");
+        }
+
+        // can't just split on 'and' or 'or' because they have different
+        // behavior, so loop through and break them off until we don't have any more
+        // must include the spaces in indexOf so we don't match words like "land"
+        int andIndex;
+        int orIndex = -1;
+
+        while ((andIndex = queryString.indexOf(" and ")) != -1 || (orIndex = queryString.indexOf(" or ")) != -1) {
+            if (andIndex != -1) {
+                String[] pair = queryString
+                        .substring(0, andIndex)
+                        .split("=");
+
+                if (pair.length == 2) {
+                    selectionString
+                            .append(QUOTATION_MARK)
+                            .append(pair[0].trim())
+                            .append(QUOTATION_MARK)
+                            .append("=? and ");
+
+                    columns.add(pair[0].trim());
+                    arguments
+                            .add(pair[1]
+                                    .trim());
+                }
+                // move string forward to after " and "
+                queryString = queryString.substring(andIndex + 5, queryString.length());
+            } else {
+                String subString = queryString.substring(0, orIndex);
+                String[] pair = subString.split("=");
+
+                if (pair.length == 2) {
+                    selectionString
+                            .append(QUOTATION_MARK)
+                            .append(pair[0].trim())
+                            .append(QUOTATION_MARK)
+                            .append("=? or ");
+                    columns.add(pair[0].trim());
+                    arguments.add(pair[1].trim());
+                }
+                // move string forward to after " or "
+                queryString = queryString.substring(orIndex + 4, queryString.length());
+                orIndex = -1;
+            }
+        }
+
+        // parse the last segment (or only segment if there are no 'and' or 'or' clauses
+        String[] pair = queryString.split("=");
+        if (pair.length == 2) {
+            selectionString
+                    .append(QUOTATION_MARK)
+                    .append(pair[0].trim())
+                    .append(QUOTATION_MARK)
+                    .append("=?");
+            columns.add(pair[0].trim());
+            arguments.add(pair[1].trim());
+        }
+        return selectionString.toString();
+    }
+}
@@ -85,6 +85,7 @@ public class RecordingHandler {
             for (TreeReference treeReference : treeReferences) {
                 formController.getFormDef().setValue(new StringData(result.getOrNull().getName()), treeReference, false);
             }
+            formController.requireSavepointSnapshot();
         }
 
         session.getFile().delete();
@@ -0,0 +1,97 @@
+package org.odk.collect.android.formhierarchy;
+
+import androidx.annotation.Nullable;
+
+import org.javarosa.core.model.instance.TreeReference;
+import org.odk.collect.android.logic.HierarchyElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The elements of the hierarchy levels listed so far for a form, so going back to a level (going
+ * up or opening the hierarchy again) doesn't need the form to be walked again. A level is
+ * identified by the group it lists (null for the start of the form) and, when picking a repeat
+ * instance, the repeat being picked from.
+ * <p>
+ * Changing the form's instance invalidates every level rather than just those containing the
+ * change: relevance and calculations can make an answer (or a repeat being added or deleted)
+ * change what any other level shows.
+ */
+public class HierarchyLevelCache {
+
+    private final Map<Level, List<HierarchyElement>> levels = new HashMap<>();
+    private int generation;
+
+    /**
+     * @return a value identifying the current state of the form's instance. Levels listed before
+     * it changes again can be {@link #put}.
+     */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    @Nullable
+    public synchronized List<HierarchyElement> get(@Nullable TreeReference groupRef, @Nullable TreeReference repeatPickerRef) {
+        return levels.get(new Level(groupRef, repeatPickerRef));
+    }
+
+    /**
+     * Stores a level's elements unless the form has been changed since {@code generation}
+     * (in which case they might already be out of date).
+     */
+    public synchronized void put(@Nullable TreeReference groupRef, @Nullable TreeReference repeatPickerRef,
+                                 List<HierarchyElement> elements, int generation) {
+        if (generation == this.generation) {
+            levels.put(new Level(groupRef, repeatPickerRef), Collections.unmodifiableList(new ArrayList<>(elements)));
+        }
+    }
+
+    /**
+     * Drops every level. Needs to be called whenever the form's instance is changed.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        levels.clear();
+    }
+
+    private static class Level {
+
+        @Nullable
+        private final TreeReference groupRef;
+
+        @Nullable
+        private final TreeReference repeatPickerRef;
+
+        Level(@Nullable TreeReference groupRef, @Nullable TreeReference repeatPickerRef) {
+            this.groupRef = groupRef != null ? groupRef.clone() : null;
+            this.repeatPickerRef = repeatPickerRef != null ? repeatPickerRef.clone() : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Level)) {
+                return false;
+            }
+
+            Level level = (Level) o;
+            return equals(groupRef, level.groupRef) && equals(repeatPickerRef, level.repeatPickerRef);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (groupRef != null ? groupRef.hashCode() : 0) + (repeatPickerRef != null ? repeatPickerRef.hashCode() : 0);
+        }
+
+        private static boolean equals(@Nullable TreeReference a, @Nullable TreeReference b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
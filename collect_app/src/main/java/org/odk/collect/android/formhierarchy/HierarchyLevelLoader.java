@@ -0,0 +1,329 @@
+package org.odk.collect.android.formhierarchy;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.GroupDef;
+import org.javarosa.core.model.instance.TreeReference;
+import org.javarosa.form.api.FormEntryCaption;
+import org.javarosa.form.api.FormEntryController;
+import org.javarosa.form.api.FormEntryModel;
+import org.javarosa.form.api.FormEntryPrompt;
+import org.odk.collect.android.R;
+import org.odk.collect.android.javarosawrapper.FormController;
+import org.odk.collect.android.logic.HierarchyElement;
+import org.odk.collect.android.utilities.FormEntryPromptUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Lists the questions, groups and repeats at one level of a form's hierarchy. The form is walked
+ * with its own {@link FormEntryController} so listing doesn't move the index of the form being
+ * filled. Levels are listed a chunk at a time on the UI thread (see {@link #loadChunk()}) so that
+ * the form is only ever used from one thread and a level with lots of questions or repeat
+ * instances doesn't block the UI while it's walked. Anything that's going to change the form
+ * between chunks has to {@link #cancel()} first.
+ */
+public class HierarchyLevelLoader {
+
+    /**
+     * How many elements are listed before they're passed to the {@link PageListener}.
+     */
+    static final int PAGE_SIZE = 50;
+
+    /**
+     * Roughly how long each chunk walks the form for (at least one event is always stepped over).
+     */
+    static final long CHUNK_DURATION_NANOS = 8_000_000;
+
+    private final FormController formController;
+    private final Context context;
+    private final FormIndex firstIndex;
+
+    /**
+     * The group being listed (null for the start of the form). Only its children are listed.
+     */
+    @Nullable
+    private final TreeReference contextGroupRef;
+
+    /**
+     * If non-null, only the instances of this repeat are listed.
+     */
+    @Nullable
+    private final FormIndex repeatGroupPickerIndex;
+
+    private boolean started;
+    private boolean finished;
+    private boolean cancelled;
+
+    @Nullable
+    private Exception error;
+
+    private int event;
+
+    /**
+     * The group within the level that's being stepped over (if any).
+     */
+    @Nullable
+    private TreeReference visibleGroupRef;
+
+    /**
+     * @param firstIndex the first index in the level (the index after the group being listed or
+     *                   the beginning of the form)
+     */
+    public HierarchyLevelLoader(FormController formController, Context context, FormIndex firstIndex,
+                                @Nullable TreeReference contextGroupRef, @Nullable FormIndex repeatGroupPickerIndex) {
+        this.formController = new FormController(formController.getMediaFolder(),
+                new FormEntryController(new FormEntryModel(formController.getFormDef())), null);
+        this.context = context;
+        this.firstIndex = firstIndex;
+        this.contextGroupRef = contextGroupRef;
+        this.repeatGroupPickerIndex = repeatGroupPickerIndex;
+    }
+
+    /**
+     * Lists the whole level, passing elements to {@code pageListener} as they are listed.
+     *
+     * @return all the level's elements or null if loading was cancelled or failed (see
+     * {@link #getError()})
+     */
+    @Nullable
+    public List<HierarchyElement> load(PageListener pageListener) {
+        List<HierarchyElement> elements = new ArrayList<>();
+        int pageStart = 0;
+
+        while (!finished) {
+            List<HierarchyElement> chunk = loadChunk();
+            if (chunk == null) {
+                return null;
+            }
+            elements.addAll(chunk);
+
+            while (elements.size() - pageStart >= PAGE_SIZE) {
+                pageListener.onPage(new ArrayList<>(elements.subList(pageStart, pageStart + PAGE_SIZE)));
+                pageStart += PAGE_SIZE;
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * Walks the next part of the level, stopping after about {@link #CHUNK_DURATION_NANOS} so that
+     * it can be called on the UI thread. Call it again until {@link #isFinished()}.
+     *
+     * @return the elements listed by this chunk or null if loading was cancelled or failed (see
+     * {@link #getError()})
+     */
+    @Nullable
+    public List<HierarchyElement> loadChunk() {
+        if (cancelled || error != null) {
+            return null;
+        }
+
+        List<HierarchyElement> elements = new ArrayList<>();
+        long start = System.nanoTime();
+
+        try {
+            if (!started) {
+                formController.jumpToIndex(firstIndex);
+                event = formController.getEvent();
+                started = true;
+            }
+
+            do {
+                if (!step(elements)) {
+                    finished = true;
+                    break;
+                }
+            } while (System.nanoTime() - start < CHUNK_DURATION_NANOS);
+        } catch (Exception e) {
+            Timber.e(e);
+            error = e;
+            return null;
+        }
+
+        return elements;
+    }
+
+    /**
+     * @return whether the whole level has been listed
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Stops loading: {@link #loadChunk()} won't walk the form again.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return why loading failed (if it did)
+     */
+    @Nullable
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Moves to the next event, adding an element for the current one if it's displayed at this
+     * level.
+     *
+     * @return false if there are no more events in the level
+     */
+    private boolean step(List<HierarchyElement> elements) {
+        if (event == FormEntryController.EVENT_END_OF_FORM) {
+            return false;
+        }
+
+        // get the ref to this element
+        TreeReference currentRef = formController.getFormIndex().getReference();
+
+        // retrieve the current group
+        TreeReference curGroup = (visibleGroupRef == null) ? contextGroupRef : visibleGroupRef;
+
+        if (curGroup != null && !curGroup.isParentOf(currentRef, false)) {
+            // We have left the current group
+            if (visibleGroupRef == null) {
+                // We are done.
+                return false;
+            } else {
+                // exit the inner group
+                visibleGroupRef = null;
+            }
+        }
+
+        if (visibleGroupRef != null) {
+            // We're in a group within the one we want to list
+            // skip this question/group/repeat and move to the next index.
+            event = formController.stepToNextEvent(FormController.STEP_INTO_GROUP);
+            return true;
+        }
+
+        switch (event) {
+            case FormEntryController.EVENT_QUESTION: {
+                // Nothing but repeat group instances should show up in the picker.
+                if (repeatGroupPickerIndex != null) {
+                    break;
+                }
+
+                FormEntryPrompt fp = formController.getQuestionPrompt();
+                String label = fp.getShortText();
+                String answerDisplay = FormEntryPromptUtils.getAnswerText(fp, context, formController);
+                elements.add(
+                        new HierarchyElement(FormEntryPromptUtils.markQuestionIfIsRequired(label, fp.isRequired()), answerDisplay, 0,
+                                HierarchyElement.Type.QUESTION, fp.getIndex()));
+                break;
+            }
+            case FormEntryController.EVENT_GROUP: {
+                if (!formController.isGroupRelevant()) {
+                    break;
+                }
+                // Nothing but repeat group instances should show up in the picker.
+                if (repeatGroupPickerIndex != null) {
+                    break;
+                }
+
+                FormIndex index = formController.getFormIndex();
+
+                // Only display groups with a specific appearance attribute.
+                if (!formController.isDisplayableGroup(index)) {
+                    break;
+                }
+
+                // Don't render other groups' children.
+                if (contextGroupRef != null && !contextGroupRef.isParentOf(currentRef, false)) {
+                    break;
+                }
+
+                visibleGroupRef = currentRef;
+
+                FormEntryCaption caption = formController.getCaptionPrompt();
+                HierarchyElement groupElement = new HierarchyElement(
+                        caption.getShortText(), context.getString(R.string.group_label),
+                        R.drawable.ic_folder_open,
+                        HierarchyElement.Type.VISIBLE_GROUP, caption.getIndex());
+                elements.add(groupElement);
+
+                // Skip to the next item outside the group.
+                event = formController.stepOverGroup();
+                return true;
+            }
+            case FormEntryController.EVENT_PROMPT_NEW_REPEAT: {
+                // this would display the 'add new repeat' dialog
+                // ignore it.
+                break;
+            }
+            case FormEntryController.EVENT_REPEAT: {
+                if (!formController.isGroupRelevant()) {
+                    break;
+                }
+
+                visibleGroupRef = currentRef;
+
+                FormEntryCaption fc = formController.getCaptionPrompt();
+
+                // Don't render other groups' children.
+                if (contextGroupRef != null && !contextGroupRef.isParentOf(currentRef, false)) {
+                    break;
+                }
+
+                if (repeatGroupPickerIndex != null) {
+                    // Don't render other groups' instances.
+                    String repeatGroupPickerRef = repeatGroupPickerIndex.getReference().toString(false);
+                    if (!currentRef.toString(false).equals(repeatGroupPickerRef)) {
+                        break;
+                    }
+
+                    int itemNumber = fc.getMultiplicity() + 1;
+
+                    // e.g. `friends > 1`
+                    String repeatLabel = fc.getShortText() + " > " + itemNumber;
+
+                    // If the child of the group has a more descriptive label, use that instead.
+                    if (fc.getFormElement().getChildren().size() == 1 && fc.getFormElement().getChild(0) instanceof GroupDef) {
+                        formController.stepToNextEvent(FormController.STEP_INTO_GROUP);
+                        String itemLabel = formController.getCaptionPrompt().getShortText();
+                        if (itemLabel != null) {
+                            // e.g. `1. Alice`
+                            repeatLabel = itemNumber + ".\u200E " + itemLabel;
+                        }
+                    }
+
+                    HierarchyElement instance = new HierarchyElement(
+                            repeatLabel, null,
+                            0, HierarchyElement.Type.REPEAT_INSTANCE, fc.getIndex());
+                    elements.add(instance);
+                } else if (fc.getMultiplicity() == 0) {
+                    // Display the repeat header for the group.
+                    HierarchyElement group = new HierarchyElement(
+                            fc.getShortText(), context.getString(R.string.repeatable_group_label),
+                            R.drawable.ic_repeat,
+                            HierarchyElement.Type.REPEATABLE_GROUP, fc.getIndex());
+                    elements.add(group);
+                }
+
+                break;
+            }
+        }
+
+        event = formController.stepToNextEvent(FormController.STEP_INTO_GROUP);
+        return true;
+    }
+
+    public interface PageListener {
+        void onPage(List<HierarchyElement> elements);
+    }
+}
@@ -0,0 +1,201 @@
+package org.odk.collect.android.formmanagement;
+
+import android.os.Process;
+
+import androidx.annotation.Nullable;
+
+import org.javarosa.core.model.FormDef;
+import org.apache.commons.io.FileUtils;
+import org.odk.collect.android.utilities.FormDefCache;
+import org.odk.collect.shared.strings.Md5;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import timber.log.Timber;
+
+import static org.odk.collect.android.utilities.FileUtils.LAST_SAVED_FILENAME;
+import static org.odk.collect.android.utilities.FileUtils.parseForm;
+
+/**
+ * Parses forms and writes them to the FormDef cache on a background queue so that they don't
+ * need to be parsed from XML the first time they're opened.
+ * <p>
+ * Forms with external secondary instances (including last-saved) are skipped: parsing those
+ * loads the instances through JavaRosa's global ReferenceManager, which would have to be
+ * pointed at the form's media (and away from any form that's currently open). They're still
+ * cached the first time they are opened.
+ */
+public class FormDefCompiler {
+
+    private static final Pattern EXTERNAL_INSTANCE_REGEX = Pattern.compile("<instance[^>]*\\ssrc\\s*=");
+
+    private static final Executor QUEUE = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "FormDefCompiler"));
+
+    private static final Status STATUS = new Status();
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final Set<String> SKIPPED_HASHES = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private static final Set<String> QUEUED_FORMS = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final File cacheDir;
+    private final Executor executor;
+
+    /**
+     * @param cacheDir the cache directory of the project forms will be compiled for
+     */
+    public FormDefCompiler(File cacheDir) {
+        this(cacheDir, QUEUE);
+    }
+
+    public FormDefCompiler(File cacheDir, Executor executor) {
+        this.cacheDir = cacheDir;
+        this.executor = executor;
+    }
+
+    public static Status getStatus() {
+        return STATUS;
+    }
+
+    public static void addListener(Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Queues {@code formFile} to be compiled if it isn't cached already.
+     *
+     * @param formMd5 the MD5 hash of the form if it's already known (otherwise it will be
+     *                calculated on the queue)
+     */
+    public void enqueue(File formFile, @Nullable String formMd5) {
+        if (formMd5 != null && (SKIPPED_HASHES.contains(formMd5) || FormDefCache.getCacheFile(cacheDir, formMd5).exists())) {
+            return;
+        }
+
+        String queueKey = cacheDir.getAbsolutePath() + ":" + formFile.getAbsolutePath();
+        if (!QUEUED_FORMS.add(queueKey)) {
+            return;
+        }
+
+        STATUS.pending.incrementAndGet();
+        executor.execute(() -> {
+            QUEUED_FORMS.remove(queueKey);
+
+            try {
+                if (compile(formFile, formMd5)) {
+                    STATUS.compiled.incrementAndGet();
+                    for (Listener listener : LISTENERS) {
+                        listener.onCompiled(formFile);
+                    }
+                } else {
+                    STATUS.skipped.incrementAndGet();
+                }
+            } catch (Exception e) {
+                Timber.w(e, "Could not compile %s", formFile.getName());
+                STATUS.failed.incrementAndGet();
+                for (Listener listener : LISTENERS) {
+                    listener.onFailed(formFile, e);
+                }
+            } finally {
+                STATUS.pending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Parses {@code formFile} and writes the result to the cache on the calling thread.
+     *
+     * @return false if the form was already cached, no longer exists or can't be compiled
+     * ahead of time
+     */
+    boolean compile(File formFile, @Nullable String formMd5) throws IOException {
+        if (!formFile.exists()) {
+            return false;
+        }
+
+        String md5 = formMd5 != null ? formMd5 : Md5.getMd5Hash(formFile);
+        if (md5 == null || SKIPPED_HASHES.contains(md5)) {
+            return false;
+        }
+
+        File cacheFile = FormDefCache.getCacheFile(cacheDir, md5);
+        if (cacheFile.exists()) {
+            return false;
+        }
+
+        if (hasExternalInstances(formFile)) {
+            Timber.i("Not compiling %s as it has external instances", formFile.getName());
+            SKIPPED_HASHES.add(md5);
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        cacheDir.mkdirs();
+
+        FormDef formDef;
+        try {
+            formDef = parseForm(formFile.getAbsolutePath(), "jr://file/" + LAST_SAVED_FILENAME);
+        } catch (RuntimeException e) {
+            // Don't try to parse the same broken form every time it's queued
+            SKIPPED_HASHES.add(md5);
+            throw e;
+        }
+
+        FormDefCache.writeCache(formDef, cacheFile);
+        Timber.i("Compiled %s in %.3f seconds", formFile.getName(), (System.currentTimeMillis() - start) / 1000F);
+        return true;
+    }
+
+    private static boolean hasExternalInstances(File formFile) throws IOException {
+        return EXTERNAL_INSTANCE_REGEX.matcher(FileUtils.readFileToString(formFile, "UTF-8")).find();
+    }
+
+    public interface Listener {
+
+        void onCompiled(File formFile);
+
+        void onFailed(File formFile, Exception exception);
+    }
+
+    /**
+     * Counts of forms handled by the queue since the app started.
+     */
+    public static class Status {
+
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger compiled = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        public int getPending() {
+            return pending.get();
+        }
+
+        public int getCompiled() {
+            return compiled.get();
+        }
+
+        public int getSkipped() {
+            return skipped.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+    }
+}
@@ -2,7 +2,9 @@ package org.odk.collect.android.formmanagement
 
 import org.odk.collect.shared.locks.ChangeLock
 
-class FormUpdateDownloader {
+class FormUpdateDownloader @JvmOverloads constructor(
+    private val transferEngine: TransferEngine = TransferEngine(1, 1)
+) {
 
     fun downloadUpdates(
         updatedForms: List<ServerFormDetails>,
@@ -15,16 +17,30 @@ class FormUpdateDownloader {
 
         changeLock.withLock { acquiredLock: Boolean ->
             if (acquiredLock) {
-                for (serverFormDetails in updatedForms) {
-                    try {
-                        formDownloader.downloadForm(serverFormDetails, null, null)
-                        results[serverFormDetails] = successMessage
-                    } catch (e: FormDownloadException) {
-                        results[serverFormDetails] = failureMessage
-                    } catch (e: InterruptedException) {
-                        break
+                val downloads = updatedForms.map { serverFormDetails ->
+                    object : TransferEngine.Task {
+                        override fun getUrl(): String? = null
+
+                        override fun run() {
+                            val result = try {
+                                formDownloader.downloadForm(serverFormDetails, null, null)
+                                successMessage
+                            } catch (e: FormDownloadException) {
+                                failureMessage
+                            }
+
+                            synchronized(results) {
+                                results[serverFormDetails] = result
+                            }
+                        }
                     }
                 }
+
+                try {
+                    transferEngine.runAll(downloads, null, false)
+                } catch (e: InterruptedException) {
+                    // Return the downloads that completed
+                }
             }
         }
 
@@ -4,6 +4,7 @@ import android.content.Context
 import org.odk.collect.analytics.Analytics
 import org.odk.collect.android.R
 import org.odk.collect.android.analytics.AnalyticsUtils
+import org.odk.collect.android.database.forms.FormsHashIndex
 import org.odk.collect.android.formmanagement.matchexactly.ServerFormsSynchronizer
 import org.odk.collect.android.formmanagement.matchexactly.SyncStatusAppState
 import org.odk.collect.android.notifications.Notifier
@@ -52,7 +53,7 @@ class FormsUpdater(
                     .collect(Collectors.toList())
             if (updatedForms.isNotEmpty()) {
                 if (sandbox.generalSettings.getBoolean(GeneralKeys.KEY_AUTOMATIC_UPDATE)) {
-                    val formUpdateDownloader = FormUpdateDownloader()
+                    val formUpdateDownloader = FormUpdateDownloader(TransferEngine(FORM_DOWNLOAD_WORKERS, FORM_DOWNLOAD_WORKERS))
                     val results = formUpdateDownloader.downloadUpdates(
                         updatedForms,
                         sandbox.formsLock,
@@ -88,7 +89,8 @@ class FormsUpdater(
             serverFormsDetailsFetcher,
             sandbox.formsRepository,
             sandbox.instancesRepository,
-            formDownloader
+            formDownloader,
+            TransferEngine(FORM_DOWNLOAD_WORKERS, FORM_DOWNLOAD_WORKERS)
         )
 
         return sandbox.formsLock.withLock { acquiredLock ->
@@ -123,6 +125,10 @@ class FormsUpdater(
         changeLockProvider,
         formSourceProvider
     )
+
+    companion object {
+        private const val FORM_DOWNLOAD_WORKERS = 2
+    }
 }
 
 /**
@@ -146,6 +152,7 @@ private class ProjectSandbox(
     val formsLock by lazy { changeLockProvider.getFormLock(projectId) }
     val formsDir by lazy { storagePathProvider.getOdkDirPath(StorageSubdirectory.FORMS, projectId) }
     val cacheDir by lazy { storagePathProvider.getOdkDirPath(StorageSubdirectory.CACHE, projectId) }
+    val formsHashIndex by lazy { FormsHashIndex.get(storagePathProvider.getOdkDirPath(StorageSubdirectory.METADATA, projectId)) }
 }
 
 private fun formDownloader(
@@ -158,7 +165,10 @@ private fun formDownloader(
         File(projectSandbox.cacheDir),
         projectSandbox.formsDir,
         FormMetadataParser(),
-        analytics
+        analytics,
+        projectSandbox.formsHashIndex,
+        TransferEngine(),
+        FormDefCompiler(File(projectSandbox.cacheDir))
     )
 }
 
@@ -169,13 +179,17 @@ private fun serverFormsDetailsFetcher(
     return ServerFormsDetailsFetcher(
         projectSandbox.formsRepository,
         projectSandbox.formSource,
-        diskFormsSynchronizer
+        diskFormsSynchronizer,
+        projectSandbox.formsHashIndex,
+        TransferEngine()
     )
 }
 
 private fun diskFormsSynchronizer(projectSandbox: ProjectSandbox): FormsDirDiskFormsSynchronizer {
     return FormsDirDiskFormsSynchronizer(
         projectSandbox.formsRepository,
-        projectSandbox.formsDir
+        projectSandbox.formsDir,
+        projectSandbox.formsHashIndex,
+        FormDefCompiler(File(projectSandbox.cacheDir))
     )
 }
@@ -9,9 +9,11 @@ import org.odk.collect.forms.FormSource;
 import org.odk.collect.forms.FormSourceException;
 import org.odk.collect.forms.FormsRepository;
 import org.odk.collect.forms.MediaFile;
+import org.odk.collect.forms.RangeResponse;
 import org.odk.collect.android.listeners.FormDownloaderListener;
 import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.android.utilities.FormNameUtils;
+import org.odk.collect.shared.FileHashIndex;
 import org.odk.collect.shared.strings.Validator;
 import org.odk.collect.shared.strings.Md5;
 
@@ -20,10 +22,15 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
@@ -35,6 +42,12 @@ import static org.odk.collect.android.analytics.AnalyticsEvents.DOWNLOAD_SAME_FO
 
 public class ServerFormDownloader implements FormDownloader {
 
+    private static final String PARTIAL_DOWNLOADS_DIR = "partial-downloads";
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_ATTEMPT_COUNT = 4;
+    private static final long DEFAULT_INITIAL_RETRY_DELAY = 1000;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
     private final FormsRepository formsRepository;
     private final FormSource formSource;
     private final File cacheDir;
@@ -42,8 +55,27 @@ public class ServerFormDownloader implements FormDownloader {
     private final FormMetadataParser formMetadataParser;
 
     private final Analytics analytics;
+    private final FileHashIndex hashIndex;
+    private final TransferEngine mediaTransferEngine;
+    private final FormDefCompiler formDefCompiler;
+    private final long initialRetryDelay;
+    private final Object partialDownloadsLock = new Object();
 
     public ServerFormDownloader(FormSource formSource, FormsRepository formsRepository, File cacheDir, String formsDirPath, FormMetadataParser formMetadataParser, Analytics analytics) {
+        this(formSource, formsRepository, cacheDir, formsDirPath, formMetadataParser, analytics, new FileHashIndex(), new TransferEngine(), null);
+    }
+
+    public ServerFormDownloader(FormSource formSource, FormsRepository formsRepository, File cacheDir, String formsDirPath, FormMetadataParser formMetadataParser, Analytics analytics, FileHashIndex hashIndex, TransferEngine mediaTransferEngine, @Nullable FormDefCompiler formDefCompiler) {
+        this(formSource, formsRepository, cacheDir, formsDirPath, formMetadataParser, analytics, hashIndex, mediaTransferEngine, formDefCompiler, DEFAULT_INITIAL_RETRY_DELAY);
+    }
+
+    /**
+     * @param formDefCompiler   used to compile forms into the FormDef cache once they're
+     *                          installed (or null if they shouldn't be)
+     * @param initialRetryDelay milliseconds to wait before retrying a failed file download. The
+     *                          wait doubles with each further attempt
+     */
+    public ServerFormDownloader(FormSource formSource, FormsRepository formsRepository, File cacheDir, String formsDirPath, FormMetadataParser formMetadataParser, Analytics analytics, FileHashIndex hashIndex, TransferEngine mediaTransferEngine, @Nullable FormDefCompiler formDefCompiler, long initialRetryDelay) {
         this.formSource = formSource;
         this.cacheDir = cacheDir;
         this.formsDirPath = formsDirPath;
@@ -51,6 +83,10 @@ public class ServerFormDownloader implements FormDownloader {
         this.formMetadataParser = formMetadataParser;
 
         this.analytics = analytics;
+        this.hashIndex = hashIndex;
+        this.mediaTransferEngine = mediaTransferEngine;
+        this.formDefCompiler = formDefCompiler;
+        this.initialRetryDelay = initialRetryDelay;
     }
 
     @Override
@@ -86,6 +122,8 @@ public class ServerFormDownloader implements FormDownloader {
                 throw new FormDownloadException();
             }
         } finally {
+            hashIndex.flush();
+
             try {
                 deleteDirectory(tempDir);
             } catch (IOException ignored) {
@@ -104,11 +142,11 @@ public class ServerFormDownloader implements FormDownloader {
         try {
             // get the xml file
             // if we've downloaded a duplicate, this gives us the file
-            fileResult = downloadXform(fd.getFormName(), fd.getDownloadUrl(), stateListener, tempDir, formsDirPath);
+            fileResult = downloadXform(fd.getFormName(), fd.getDownloadUrl(), fd.getHash(), stateListener, tempDir, formsDirPath);
 
             // download media files if there are any
             if (fd.getManifest() != null && !fd.getManifest().getMediaFiles().isEmpty()) {
-                downloadMediaFiles(tempMediaPath, stateListener, fd.getManifest().getMediaFiles(), tempDir, fileResult.file.getName());
+                downloadMediaFiles(tempMediaPath, stateListener, fd.getManifest().getMediaFiles(), fileResult.file.getName());
             }
         } catch (InterruptedException e) {
             Timber.i(e);
@@ -166,6 +204,14 @@ public class ServerFormDownloader implements FormDownloader {
     }
 
     boolean installEverything(String tempMediaPath, FileResult fileResult, Map<String, String> parsedFields, String formsDirPath) {
+        // Forms downloaded in parallel could have picked the same file name so installs need to
+        // happen one at a time
+        synchronized (ServerFormDownloader.class) {
+            return installEverythingLocked(tempMediaPath, fileResult, parsedFields, formsDirPath);
+        }
+    }
+
+    private boolean installEverythingLocked(String tempMediaPath, FileResult fileResult, Map<String, String> parsedFields, String formsDirPath) {
         FormResult formResult;
 
         File formFile;
@@ -173,7 +219,13 @@ public class ServerFormDownloader implements FormDownloader {
         if (fileResult.isNew()) {
             // Copy form to forms dir
             formFile = new File(formsDirPath, fileResult.file.getName());
-            FileUtils.copyFile(fileResult.file, formFile);
+            if (formFile.exists()) {
+                formFile = new File(formsDirPath, getFreeFileName(fileResult.file.getName(), formsDirPath));
+            }
+
+            if (!fileResult.file.renameTo(formFile)) {
+                FileUtils.copyFile(fileResult.file, formFile);
+            }
         } else {
             formFile = fileResult.file;
         }
@@ -199,6 +251,10 @@ public class ServerFormDownloader implements FormDownloader {
             }
         }
 
+        if (formDefCompiler != null) {
+            formDefCompiler.enqueue(formFile, formResult.form.getMD5Hash());
+        }
+
         return true;
     }
 
@@ -206,11 +262,12 @@ public class ServerFormDownloader implements FormDownloader {
         if (fileResult == null) {
             Timber.d("The user cancelled (or an exception happened) the download of a form at the very beginning.");
         } else {
-            String md5Hash = Md5.getMd5Hash(fileResult.file);
+            String md5Hash = hashIndex.getMd5Hash(fileResult.file);
             if (md5Hash != null) {
                 formsRepository.deleteByMd5Hash(md5Hash);
             }
             FileUtils.deleteAndReport(fileResult.getFile());
+            hashIndex.remove(fileResult.getFile());
         }
 
         if (tempMediaPath != null) {
@@ -253,12 +310,12 @@ public class ServerFormDownloader implements FormDownloader {
      * Takes the formName and the URL and attempts to download the specified file. Returns a file
      * object representing the downloaded file.
      */
-    FileResult downloadXform(String formName, String url, FormDownloaderListener stateListener, File tempDir, String formsDirPath) throws FormSourceException, IOException, InterruptedException {
-        InputStream xform = formSource.fetchForm(url);
-
+    FileResult downloadXform(String formName, String url, @Nullable String hash, FormDownloaderListener stateListener, File tempDir, String formsDirPath) throws FormSourceException, IOException, InterruptedException {
         String fileName = getFormFileName(formName, formsDirPath);
         File tempFormFile = new File(tempDir + File.separator + fileName);
-        writeFile(xform, tempFormFile, tempDir, stateListener);
+        writeFile((offset, etag) -> formSource.supportsRangeRequests()
+                ? formSource.fetchForm(url, offset, etag)
+                : new RangeResponse(formSource.fetchForm(url), 0, null), url, getMd5HashWithoutPrefix(hash), tempFormFile, stateListener);
 
         // we've downloaded the file, and we may have renamed it
         // make sure it's not the same as a file we already have
@@ -278,146 +335,274 @@ public class ServerFormDownloader implements FormDownloader {
      * Common routine to take a downloaded document save the contents in the file
      * 'file'. Shared by media file download and form file download.
      * <p>
-     * SurveyCTO: The file is saved into a temp folder and is moved to the final place if everything
-     * is okay, so that garbage is not left over on cancel.
+     * The file is first downloaded to a partial file in the cache dir that's kept if the download
+     * fails. The next attempt (in this run or a later one) then only asks the server for the rest
+     * of the file. Once complete, the partial file is renamed to the destination (which should be
+     * in a temp folder and is moved to the final place if everything is okay, so that garbage is
+     * not left over on cancel).
+     *
+     * @param url         used to identify the partial file for the download
+     * @param expectedMd5 the hash the completed file should have if it's known. If a resumed
+     *                    download doesn't match it, the file is downloaded again from scratch
      */
-    private void writeFile(InputStream inputStream, File destinationFile, File tempDir, FormDownloaderListener stateListener)
-            throws IOException, InterruptedException {
+    private void writeFile(RemoteFile remoteFile, String url, @Nullable String expectedMd5, File destinationFile, FormDownloaderListener stateListener)
+            throws FormSourceException, IOException, InterruptedException {
 
-        File tempFile = File.createTempFile(
-                destinationFile.getName(),
-                ".tempDownload",
-                tempDir
-        );
+        String partialName = Md5.getMd5Hash(url + " " + expectedMd5);
+        File partialFile = new File(getPartialDownloadsDir(), partialName + ".tempDownload");
+        File etagFile = new File(getPartialDownloadsDir(), partialName + ".etag");
 
-        // WiFi network connections can be renegotiated during a large form download sequence.
-        // This will cause intermittent download failures.  Silently retry once after each
-        // failure.  Only if there are two consecutive failures do we abort.
-        boolean success = false;
+        // Network connections on slow or flaky links can drop at any point in a large download.
+        // Retry with exponential backoff, picking up from where the last attempt left off.
+        boolean allowResume = true;
         int attemptCount = 0;
-        final int MAX_ATTEMPT_COUNT = 2;
-        while (!success && ++attemptCount <= MAX_ATTEMPT_COUNT) {
-            // write connection to file
-            InputStream is = null;
-            OutputStream os = null;
+        while (true) {
+            attemptCount++;
 
+            boolean resumed = false;
             try {
-                is = inputStream;
-                os = new FileOutputStream(tempFile);
-
-                byte[] buf = new byte[4096];
-                int len;
-                while ((len = is.read(buf)) > 0 && (stateListener == null || !stateListener.isTaskCancelled())) {
-                    os.write(buf, 0, len);
-                }
-                os.flush();
-                success = true;
-
-            } catch (Exception e) {
+                resumed = downloadToPartialFile(remoteFile, partialFile, etagFile, allowResume, stateListener);
+            } catch (IOException | FormSourceException.FetchError | FormSourceException.Unreachable e) {
                 Timber.e(e.toString());
-                // silently retry unless this is the last attempt,
-                // in which case we rethrow the exception.
-
-                FileUtils.deleteAndReport(tempFile);
 
-                if (attemptCount == MAX_ATTEMPT_COUNT) {
+                if (isCancelled(stateListener)) {
+                    deletePartialDownload(partialFile, etagFile);
+                    throw new InterruptedException();
+                } else if (attemptCount >= MAX_ATTEMPT_COUNT) {
+                    // Keep the partial file so the next download can pick up from here
                     throw e;
                 }
-            } finally {
-                if (os != null) {
-                    try {
-                        os.close();
-                    } catch (Exception e) {
-                        Timber.e(e);
-                    }
-                }
-                if (is != null) {
-                    try {
-                        // ensure stream is consumed...
-                        final long count = 1024L;
-                        while (is.skip(count) == count) {
-                            // skipping to the end of the http entity
-                        }
-                    } catch (Exception e) {
-                        // no-op
-                    }
-                    try {
-                        is.close();
-                    } catch (Exception e) {
-                        Timber.w(e);
-                    }
-                }
+
+                Thread.sleep(initialRetryDelay * (1L << (attemptCount - 1)));
+                continue;
             }
 
-            if (stateListener != null && stateListener.isTaskCancelled()) {
-                FileUtils.deleteAndReport(tempFile);
+            if (isCancelled(stateListener)) {
+                deletePartialDownload(partialFile, etagFile);
                 throw new InterruptedException();
             }
+
+            if (resumed && expectedMd5 != null && !expectedMd5.equals(Md5.getMd5Hash(partialFile))) {
+                Timber.w("Resumed download of %s doesn't match expected hash. Downloading again...", url);
+                deletePartialDownload(partialFile, etagFile);
+                allowResume = false;
+                continue;
+            }
+
+            break;
         }
 
-        Timber.d("Completed downloading of %s. It will be moved to the proper path...", tempFile.getAbsolutePath());
+        Timber.d("Completed downloading of %s. It will be moved to the proper path...", partialFile.getAbsolutePath());
 
         FileUtils.deleteAndReport(destinationFile);
 
-        String errorMessage = FileUtils.copyFile(tempFile, destinationFile);
+        if (partialFile.renameTo(destinationFile)) {
+            Timber.d("Renamed %s to %s", partialFile.getAbsolutePath(), destinationFile.getAbsolutePath());
+        } else {
+            String errorMessage = FileUtils.copyFile(partialFile, destinationFile);
+
+            if (destinationFile.exists()) {
+                Timber.d("Copied %s over %s", partialFile.getAbsolutePath(), destinationFile.getAbsolutePath());
+            } else {
+                String msg = Collect.getInstance().getString(R.string.fs_file_copy_error,
+                        partialFile.getAbsolutePath(), destinationFile.getAbsolutePath(), errorMessage);
+                throw new RuntimeException(msg);
+            }
+        }
+
+        deletePartialDownload(partialFile, etagFile);
+    }
+
+    /**
+     * Downloads the file (or the rest of it if there's already a partial file) and appends it to
+     * the partial file. A partial file is only continued if the server gave a validator (ETag) for
+     * it so that the server can tell us if the file has changed since.
+     *
+     * @return true if the download continued from an existing partial file
+     */
+    private boolean downloadToPartialFile(RemoteFile remoteFile, File partialFile, File etagFile, boolean allowResume, FormDownloaderListener stateListener)
+            throws FormSourceException, IOException {
 
-        if (destinationFile.exists()) {
-            Timber.d("Copied %s over %s", tempFile.getAbsolutePath(), destinationFile.getAbsolutePath());
-            FileUtils.deleteAndReport(tempFile);
+        String etag = readEtag(etagFile);
+        long offset = allowResume && etag != null && partialFile.exists() ? partialFile.length() : 0;
+
+        RangeResponse response;
+        try {
+            response = remoteFile.fetch(offset, offset > 0 ? etag : null);
+        } catch (FormSourceException.ServerError e) {
+            if (offset > 0 && e.getStatusCode() == HTTP_RANGE_NOT_SATISFIABLE) {
+                // The file must have shrunk on the server so start again
+                Timber.w(e);
+                deletePartialDownload(partialFile, etagFile);
+                return downloadToPartialFile(remoteFile, partialFile, etagFile, false, stateListener);
+            }
+
+            throw e;
+        }
+
+        InputStream inputStream = response.getInputStream();
+        offset = response.getOffset();
+        writeEtag(etagFile, response.getEtag());
+
+        try (ReadableByteChannel source = Channels.newChannel(inputStream)) {
+            FileChannel destination;
+            synchronized (partialDownloadsLock) {
+                partialFile.getParentFile().mkdirs();
+                destination = new FileOutputStream(partialFile, offset > 0).getChannel();
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(DOWNLOAD_BUFFER_SIZE);
+                while (source.read(buffer) != -1 && !isCancelled(stateListener)) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        destination.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            } finally {
+                destination.close();
+            }
+        }
+
+        return offset > 0;
+    }
+
+    private File getPartialDownloadsDir() {
+        return new File(cacheDir, PARTIAL_DOWNLOADS_DIR);
+    }
+
+    private void deletePartialDownload(File partialFile, File etagFile) {
+        synchronized (partialDownloadsLock) {
+            partialFile.delete();
+            etagFile.delete();
+
+            String[] remaining = getPartialDownloadsDir().list();
+            if (remaining != null && remaining.length == 0) {
+                getPartialDownloadsDir().delete();
+            }
+        }
+    }
+
+    @Nullable
+    private static String readEtag(File etagFile) {
+        if (etagFile.exists()) {
+            return new String(FileUtils.read(etagFile));
         } else {
-            String msg = Collect.getInstance().getString(R.string.fs_file_copy_error,
-                    tempFile.getAbsolutePath(), destinationFile.getAbsolutePath(), errorMessage);
-            throw new RuntimeException(msg);
+            return null;
         }
     }
 
-    private void downloadMediaFiles(String tempMediaPath, FormDownloaderListener stateListener, List<MediaFile> files, File tempDir, String formFileName) throws FormSourceException, IOException, InterruptedException {
+    private void writeEtag(File etagFile, @Nullable String etag) {
+        synchronized (partialDownloadsLock) {
+            if (etag == null) {
+                etagFile.delete();
+            } else {
+                FileUtils.write(etagFile, etag.getBytes());
+            }
+        }
+    }
+
+    private static boolean isCancelled(FormDownloaderListener stateListener) {
+        return stateListener != null && stateListener.isTaskCancelled();
+    }
+
+    private void downloadMediaFiles(String tempMediaPath, FormDownloaderListener stateListener, List<MediaFile> files, String formFileName) throws FormSourceException, IOException, InterruptedException {
         File tempMediaDir = new File(tempMediaPath);
         tempMediaDir.mkdir();
 
-        for (int i = 0; i < files.size(); i++) {
-            if (stateListener != null) {
-                stateListener.progressUpdate("", String.valueOf(i + 1), "");
-            }
+        AtomicInteger started = new AtomicInteger();
+        List<TransferEngine.Task> downloads = new ArrayList<>();
 
-            MediaFile toDownload = files.get(i);
+        for (MediaFile toDownload : files) {
+            downloads.add(new TransferEngine.Task() {
+                @Override
+                public String getUrl() {
+                    return toDownload.getDownloadUrl();
+                }
 
-            File tempMediaFile = new File(tempMediaDir, toDownload.getFilename());
-            String finalMediaPath = FileUtils.constructMediaPath(formsDirPath + File.separator + formFileName);
-            File finalMediaFile = new File(finalMediaPath, toDownload.getFilename());
+                @Override
+                public void run() throws FormSourceException, IOException, InterruptedException {
+                    if (stateListener != null) {
+                        synchronized (started) {
+                            stateListener.progressUpdate("", String.valueOf(started.incrementAndGet()), "");
+                        }
+                    }
 
-            if (!finalMediaFile.exists()) {
-                InputStream mediaFile = formSource.fetchMediaFile(toDownload.getDownloadUrl());
-                writeFile(mediaFile, tempMediaFile, tempDir, stateListener);
-            } else {
-                String currentFileHash = Md5.getMd5Hash(finalMediaFile);
-                String downloadFileHash = getMd5HashWithoutPrefix(toDownload.getHash());
-
-                if (currentFileHash != null && downloadFileHash != null && !currentFileHash.contentEquals(downloadFileHash)) {
-                    // if the hashes match, it's the same file
-                    // otherwise delete our current one and replace it with the new one
-                    FileUtils.deleteAndReport(finalMediaFile);
-                    InputStream mediaFile = formSource.fetchMediaFile(toDownload.getDownloadUrl());
-                    writeFile(mediaFile, tempMediaFile, tempDir, stateListener);
-                } else {
-                    // exists, and the hash is the same
-                    // no need to download it again
-                    Timber.i("Skipping media file fetch -- file hashes identical: %s", finalMediaFile.getAbsolutePath());
+                    downloadMediaFile(toDownload, tempMediaDir, formFileName, stateListener);
                 }
+            });
+        }
+
+        Map<TransferEngine.Task, Exception> failures = mediaTransferEngine.runAll(
+                downloads,
+                stateListener != null ? stateListener::isTaskCancelled : null,
+                true
+        );
+
+        if (!failures.isEmpty()) {
+            Exception failure = failures.values().iterator().next();
+
+            if (failure instanceof FormSourceException) {
+                throw (FormSourceException) failure;
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else {
+                throw new IOException(failure);
             }
         }
     }
 
+    private void downloadMediaFile(MediaFile toDownload, File tempMediaDir, String formFileName, FormDownloaderListener stateListener) throws FormSourceException, IOException, InterruptedException {
+        File tempMediaFile = new File(tempMediaDir, toDownload.getFilename());
+        String finalMediaPath = FileUtils.constructMediaPath(formsDirPath + File.separator + formFileName);
+        File finalMediaFile = new File(finalMediaPath, toDownload.getFilename());
+
+        if (!finalMediaFile.exists()) {
+            writeMediaFile(toDownload, tempMediaFile, stateListener);
+        } else {
+            String currentFileHash = Md5.getMd5Hash(finalMediaFile);
+            String downloadFileHash = getMd5HashWithoutPrefix(toDownload.getHash());
+
+            if (currentFileHash != null && downloadFileHash != null && !currentFileHash.contentEquals(downloadFileHash)) {
+                // if the hashes match, it's the same file
+                // otherwise delete our current one and replace it with the new one
+                FileUtils.deleteAndReport(finalMediaFile);
+                writeMediaFile(toDownload, tempMediaFile, stateListener);
+            } else {
+                // exists, and the hash is the same
+                // no need to download it again
+                Timber.i("Skipping media file fetch -- file hashes identical: %s", finalMediaFile.getAbsolutePath());
+            }
+        }
+    }
+
+    private void writeMediaFile(MediaFile toDownload, File tempMediaFile, FormDownloaderListener stateListener) throws FormSourceException, IOException, InterruptedException {
+        String url = toDownload.getDownloadUrl();
+
+        writeFile((offset, etag) -> formSource.supportsRangeRequests()
+                ? formSource.fetchMediaFile(url, offset, etag)
+                : new RangeResponse(formSource.fetchMediaFile(url), 0, null), url, getMd5HashWithoutPrefix(toDownload.getHash()), tempMediaFile, stateListener);
+    }
+
     @NotNull
     private static String getFormFileName(String formName, String formsDirPath) {
         String formattedFormName = FormNameUtils.formatFilenameFromFormName(formName);
-        String fileName = formattedFormName + ".xml";
+        return getFreeFileName(formattedFormName + ".xml", formsDirPath);
+    }
+
+    @NotNull
+    private static String getFreeFileName(String fileName, String formsDirPath) {
+        String baseName = fileName.substring(0, fileName.length() - ".xml".length());
+        String freeFileName = fileName;
         int i = 2;
-        while (new File(formsDirPath + File.separator + fileName).exists()) {
-            fileName = formattedFormName + "_" + i + ".xml";
+        while (new File(formsDirPath + File.separator + freeFileName).exists()) {
+            freeFileName = baseName + "_" + i + ".xml";
             i++;
         }
-        return fileName;
+        return freeFileName;
     }
 
     public static String getMd5HashWithoutPrefix(String hash) {
@@ -435,6 +620,11 @@ public class ServerFormDownloader implements FormDownloader {
         }
     }
 
+    private interface RemoteFile {
+
+        RangeResponse fetch(long offset, @Nullable String etag) throws FormSourceException;
+    }
+
     private static class FormResult {
 
         private final Form form;
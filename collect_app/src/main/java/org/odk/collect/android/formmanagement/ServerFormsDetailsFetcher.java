@@ -26,11 +26,13 @@ import org.odk.collect.forms.FormsRepository;
 import org.odk.collect.forms.ManifestFile;
 import org.odk.collect.forms.MediaFile;
 import org.odk.collect.android.utilities.WebCredentialsUtils;
-import org.odk.collect.shared.strings.Md5;
+import org.odk.collect.shared.FileHashIndex;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -39,13 +41,25 @@ public class ServerFormsDetailsFetcher {
     private final FormsRepository formsRepository;
     private final FormSource formSource;
     private final DiskFormsSynchronizer diskFormsSynchronizer;
+    private final FileHashIndex hashIndex;
+    private final TransferEngine manifestTransferEngine;
 
     public ServerFormsDetailsFetcher(FormsRepository formsRepository,
                                      FormSource formSource,
                                      DiskFormsSynchronizer diskFormsSynchronizer) {
+        this(formsRepository, formSource, diskFormsSynchronizer, new FileHashIndex(), new TransferEngine());
+    }
+
+    public ServerFormsDetailsFetcher(FormsRepository formsRepository,
+                                     FormSource formSource,
+                                     DiskFormsSynchronizer diskFormsSynchronizer,
+                                     FileHashIndex hashIndex,
+                                     TransferEngine manifestTransferEngine) {
         this.formsRepository = formsRepository;
         this.formSource = formSource;
         this.diskFormsSynchronizer = diskFormsSynchronizer;
+        this.hashIndex = hashIndex;
+        this.manifestTransferEngine = manifestTransferEngine;
     }
 
     public void updateUrl(String url) {
@@ -60,45 +74,87 @@ public class ServerFormsDetailsFetcher {
         diskFormsSynchronizer.synchronize();
 
         List<FormListItem> formListItems = formSource.fetchFormList();
+        ManifestFile[] manifestFiles = fetchManifests(formListItems);
         List<ServerFormDetails> serverFormDetailsList = new ArrayList<>();
 
-        for (FormListItem listItem : formListItems) {
-            ManifestFile manifestFile = null;
+        try {
+            for (int i = 0; i < formListItems.size(); i++) {
+                serverFormDetailsList.add(getServerFormDetails(formListItems.get(i), manifestFiles[i]));
+            }
+        } finally {
+            hashIndex.flush();
+        }
+
+        return serverFormDetailsList;
+    }
+
+    private ServerFormDetails getServerFormDetails(FormListItem listItem, ManifestFile manifestFile) {
+        List<Form> forms = formsRepository.getAllNotDeletedByFormId(listItem.getFormID());
+        boolean thisFormAlreadyDownloaded = !forms.isEmpty();
 
-            if (listItem.getManifestURL() != null) {
-                manifestFile = getManifestFile(formSource, listItem.getManifestURL());
+        boolean isNewerFormVersionAvailable = false;
+        if (thisFormAlreadyDownloaded) {
+            if (isNewerFormVersionAvailable(listItem)) {
+                isNewerFormVersionAvailable = true;
+            } else if (manifestFile != null) {
+                List<MediaFile> newMediaFiles = manifestFile.getMediaFiles();
+
+                if (newMediaFiles != null && !newMediaFiles.isEmpty()) {
+                    isNewerFormVersionAvailable = areNewerMediaFilesAvailable(forms.get(0), newMediaFiles);
+                }
             }
+        }
 
-            List<Form> forms = formsRepository.getAllNotDeletedByFormId(listItem.getFormID());
-            boolean thisFormAlreadyDownloaded = !forms.isEmpty();
+        return new ServerFormDetails(
+                listItem.getName(),
+                listItem.getDownloadURL(),
+                listItem.getFormID(),
+                listItem.getVersion(),
+                listItem.getHashWithPrefix(),
+                !thisFormAlreadyDownloaded,
+                isNewerFormVersionAvailable,
+                manifestFile);
+    }
 
-            boolean isNewerFormVersionAvailable = false;
-            if (thisFormAlreadyDownloaded) {
-                if (isNewerFormVersionAvailable(listItem)) {
-                    isNewerFormVersionAvailable = true;
-                } else if (manifestFile != null) {
-                    List<MediaFile> newMediaFiles = manifestFile.getMediaFiles();
+    /**
+     * Fetches the manifests for all the forms that have one. Manifests that can't be fetched are
+     * left as null (in the same position as the form in the list).
+     *
+     * @throws FormSourceException if the fetching is interrupted before all the manifests are
+     *                             fetched (as the missing ones would look like forms without updates)
+     */
+    private ManifestFile[] fetchManifests(List<FormListItem> formListItems) throws FormSourceException {
+        ManifestFile[] manifestFiles = new ManifestFile[formListItems.size()];
+        List<TransferEngine.Task> downloads = new ArrayList<>();
+
+        for (int i = 0; i < formListItems.size(); i++) {
+            int index = i;
+            String manifestUrl = formListItems.get(i).getManifestURL();
+
+            if (manifestUrl != null) {
+                downloads.add(new TransferEngine.Task() {
+                    @Override
+                    public String getUrl() {
+                        return manifestUrl;
+                    }
 
-                    if (newMediaFiles != null && !newMediaFiles.isEmpty()) {
-                        isNewerFormVersionAvailable = areNewerMediaFilesAvailable(forms.get(0), newMediaFiles);
+                    @Override
+                    public void run() {
+                        manifestFiles[index] = getManifestFile(formSource, manifestUrl);
                     }
-                }
+                });
             }
+        }
 
-            ServerFormDetails serverFormDetails = new ServerFormDetails(
-                    listItem.getName(),
-                    listItem.getDownloadURL(),
-                    listItem.getFormID(),
-                    listItem.getVersion(),
-                    listItem.getHashWithPrefix(),
-                    !thisFormAlreadyDownloaded,
-                    isNewerFormVersionAvailable,
-                    manifestFile);
-
-            serverFormDetailsList.add(serverFormDetails);
+        try {
+            manifestTransferEngine.runAll(downloads, null, false);
+        } catch (InterruptedException e) {
+            Timber.w(e);
+            Thread.currentThread().interrupt();
+            throw new FormSourceException.FetchError();
         }
 
-        return serverFormDetailsList;
+        return manifestFiles;
     }
 
     private ManifestFile getManifestFile(FormSource formSource, String manifestUrl) {
@@ -127,8 +183,9 @@ public class ServerFormsDetailsFetcher {
         List<File> localMediaFiles = FormUtils.getMediaFiles(existingForm);
 
         if (localMediaFiles != null) {
+            Set<String> localMediaFileHashes = getMd5Hashes(localMediaFiles);
             for (MediaFile newMediaFile : newMediaFiles) {
-                if (!isMediaFileAlreadyDownloaded(localMediaFiles, newMediaFile)) {
+                if (!isMediaFileAlreadyDownloaded(localMediaFileHashes, newMediaFile)) {
                     return true;
                 }
             }
@@ -139,7 +196,19 @@ public class ServerFormsDetailsFetcher {
         return false;
     }
 
-    private static boolean isMediaFileAlreadyDownloaded(List<File> localMediaFiles, MediaFile newMediaFile) {
+    private Set<String> getMd5Hashes(List<File> files) {
+        Set<String> hashes = new HashSet<>();
+        for (File file : files) {
+            String hash = hashIndex.getMd5Hash(file);
+            if (hash != null) {
+                hashes.add(hash);
+            }
+        }
+
+        return hashes;
+    }
+
+    private static boolean isMediaFileAlreadyDownloaded(Set<String> localMediaFileHashes, MediaFile newMediaFile) {
         // TODO Zip files are ignored we should find a way to take them into account too
         if (newMediaFile.getFilename().endsWith(".zip")) {
             return true;
@@ -147,12 +216,7 @@ public class ServerFormsDetailsFetcher {
 
         String mediaFileHash = newMediaFile.getHash();
         mediaFileHash = mediaFileHash.substring(4, mediaFileHash.length());
-        for (File localMediaFile : localMediaFiles) {
-            if (mediaFileHash.equals(Md5.getMd5Hash(localMediaFile))) {
-                return true;
-            }
-        }
-        return false;
+        return localMediaFileHashes.contains(mediaFileHash);
     }
 
     private String getMd5HashWithoutPrefix(String hash) {
@@ -0,0 +1,191 @@
+package org.odk.collect.android.formmanagement;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+/**
+ * Runs network transfers (downloads or uploads) on a bounded pool of workers. On top of the worker
+ * limit, the number of tasks running against any one host at a time is limited so that a single
+ * server isn't flooded with connections (OkHttp's connection pool only limits idle connections).
+ * <p>
+ * Tasks are started in the order they're passed in. With one worker they run on the calling
+ * thread.
+ */
+public class TransferEngine {
+
+    public static final int DEFAULT_WORKERS = 4;
+    public static final int DEFAULT_CONNECTIONS_PER_HOST = 4;
+
+    private final int workers;
+    private final int connectionsPerHost;
+    private final Map<String, Semaphore> hostPermits = new HashMap<>();
+
+    public TransferEngine() {
+        this(DEFAULT_WORKERS, DEFAULT_CONNECTIONS_PER_HOST);
+    }
+
+    public TransferEngine(int workers, int connectionsPerHost) {
+        if (workers < 1 || connectionsPerHost < 1) {
+            throw new IllegalArgumentException("Workers and connections per host must be at least 1");
+        }
+
+        this.workers = workers;
+        this.connectionsPerHost = connectionsPerHost;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Runs all the tasks and waits for them to finish.
+     *
+     * @param isCancelled checked before each task is started. Once it returns true no more tasks
+     *                    are started and an {@link InterruptedException} is thrown after the
+     *                    running ones finish
+     * @param failFast    if true, no more tasks are started once one has failed
+     * @return the exception thrown by each failed task (tasks that weren't started because of a
+     * failure are not included)
+     * @throws InterruptedException if cancelled or if any task was interrupted
+     */
+    public Map<Task, Exception> runAll(List<? extends Task> tasks, @Nullable Supplier<Boolean> isCancelled, boolean failFast) throws InterruptedException {
+        Map<Task, Exception> failures = new LinkedHashMap<>();
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+
+        int poolSize = Math.min(workers, tasks.size());
+        if (poolSize <= 1) {
+            for (Task task : tasks) {
+                if (!runTask(task, isCancelled, failFast, failures, stop, interrupted)) {
+                    break;
+                }
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+            List<Runnable> runnables = new ArrayList<>();
+            for (Task task : tasks) {
+                runnables.add(() -> runTask(task, isCancelled, failFast, failures, stop, interrupted));
+            }
+
+            try {
+                for (Runnable runnable : runnables) {
+                    executor.execute(runnable);
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // Keep waiting for running tasks
+                }
+            } catch (InterruptedException e) {
+                stop.set(true);
+                executor.shutdownNow();
+                throw e;
+            }
+        }
+
+        if (interrupted.get()) {
+            throw new InterruptedException();
+        }
+
+        return failures;
+    }
+
+    private boolean runTask(Task task, @Nullable Supplier<Boolean> isCancelled, boolean failFast,
+                            Map<Task, Exception> failures, AtomicBoolean stop, AtomicBoolean interrupted) {
+        if (stop.get()) {
+            return false;
+        }
+
+        if (isCancelled != null && isCancelled.get()) {
+            interrupted.set(true);
+            stop.set(true);
+            return false;
+        }
+
+        Semaphore permits = getPermits(task.getUrl());
+
+        try {
+            if (permits != null) {
+                permits.acquire();
+            }
+
+            try {
+                task.run();
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            interrupted.set(true);
+            stop.set(true);
+            return false;
+        } catch (Exception e) {
+            synchronized (failures) {
+                failures.put(task, e);
+            }
+
+            if (failFast) {
+                stop.set(true);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Nullable
+    private Semaphore getPermits(@Nullable String url) {
+        if (url == null) {
+            return null;
+        }
+
+        String host;
+        try {
+            host = URI.create(url).getHost();
+        } catch (IllegalArgumentException e) {
+            host = null;
+        }
+
+        if (host == null) {
+            host = url;
+        }
+
+        synchronized (hostPermits) {
+            Semaphore permits = hostPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(connectionsPerHost, true);
+                hostPermits.put(host, permits);
+            }
+
+            return permits;
+        }
+    }
+
+    public interface Task {
+
+        /**
+         * The URL the task connects to or null if the task shouldn't count against the host's
+         * connection limit (if it's made up of several transfers for example).
+         */
+        @Nullable
+        String getUrl();
+
+        void run() throws Exception;
+    }
+}
@@ -1,5 +1,6 @@
 package org.odk.collect.android.formmanagement.matchexactly;
 
+import org.odk.collect.android.formmanagement.TransferEngine;
 import org.odk.collect.android.formmanagement.FormDeleter;
 import org.odk.collect.android.formmanagement.FormDownloadException;
 import org.odk.collect.android.formmanagement.FormDownloader;
@@ -10,7 +11,9 @@ import org.odk.collect.forms.FormSourceException;
 import org.odk.collect.forms.FormsRepository;
 import org.odk.collect.forms.instances.InstancesRepository;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class ServerFormsSynchronizer {
 
@@ -18,12 +21,18 @@ public class ServerFormsSynchronizer {
     private final InstancesRepository instancesRepository;
     private final FormDownloader formDownloader;
     private final ServerFormsDetailsFetcher serverFormsDetailsFetcher;
+    private final TransferEngine transferEngine;
 
     public ServerFormsSynchronizer(ServerFormsDetailsFetcher serverFormsDetailsFetcher, FormsRepository formsRepository, InstancesRepository instancesRepository, FormDownloader formDownloader) {
+        this(serverFormsDetailsFetcher, formsRepository, instancesRepository, formDownloader, new TransferEngine(1, 1));
+    }
+
+    public ServerFormsSynchronizer(ServerFormsDetailsFetcher serverFormsDetailsFetcher, FormsRepository formsRepository, InstancesRepository instancesRepository, FormDownloader formDownloader, TransferEngine transferEngine) {
         this.serverFormsDetailsFetcher = serverFormsDetailsFetcher;
         this.formsRepository = formsRepository;
         this.instancesRepository = instancesRepository;
         this.formDownloader = formDownloader;
+        this.transferEngine = transferEngine;
     }
 
     public void synchronize() throws FormSourceException {
@@ -37,21 +46,31 @@ public class ServerFormsSynchronizer {
             }
         });
 
-        boolean downloadException = false;
-
+        List<TransferEngine.Task> downloads = new ArrayList<>();
         for (ServerFormDetails form : formList) {
             if (form.isNotOnDevice() || form.isUpdated()) {
-                try {
-                    formDownloader.downloadForm(form, null, null);
-                } catch (FormDownloadException e) {
-                    downloadException = true;
-                } catch (InterruptedException e) {
-                    return;
-                }
+                downloads.add(new TransferEngine.Task() {
+                    @Override
+                    public String getUrl() {
+                        return null;
+                    }
+
+                    @Override
+                    public void run() throws FormDownloadException, InterruptedException {
+                        formDownloader.downloadForm(form, null, null);
+                    }
+                });
             }
         }
 
-        if (downloadException) {
+        Map<TransferEngine.Task, Exception> failures;
+        try {
+            failures = transferEngine.runAll(downloads, null, false);
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        if (!failures.isEmpty()) {
             throw new FormSourceException.FetchError();
         }
     }
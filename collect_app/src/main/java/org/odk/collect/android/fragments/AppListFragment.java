@@ -16,6 +16,8 @@ package org.odk.collect.android.fragments;
 
 import android.database.Cursor;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -57,6 +59,12 @@ import timber.log.Timber;
 
 public abstract class AppListFragment extends ListFragment {
 
+    /**
+     * How long to wait after the search text changes before filtering the list so that it's not
+     * reloaded for every character typed.
+     */
+    private static final long FILTER_DELAY_MILLIS = 300;
+
     @Inject
     SettingsProvider settingsProvider;
 
@@ -67,6 +75,8 @@ public abstract class AppListFragment extends ListFragment {
     private Integer selectedSortingOrder;
     private BottomSheetDialog bottomSheetDialog;
     private String filterText;
+    private final Handler filterHandler = new Handler(Looper.getMainLooper());
+    private final Runnable filterRunnable = this::updateAdapter;
 
     // toggles to all checked or all unchecked
     // returns:
@@ -139,6 +149,7 @@ public abstract class AppListFragment extends ListFragment {
             @Override
             public boolean onQueryTextSubmit(String query) {
                 filterText = query;
+                filterHandler.removeCallbacks(filterRunnable);
                 updateAdapter();
                 searchView.clearFocus();
                 return false;
@@ -147,7 +158,8 @@ public abstract class AppListFragment extends ListFragment {
             @Override
             public boolean onQueryTextChange(String newText) {
                 filterText = newText;
-                updateAdapter();
+                filterHandler.removeCallbacks(filterRunnable);
+                filterHandler.postDelayed(filterRunnable, FILTER_DELAY_MILLIS);
                 return false;
             }
         });
@@ -186,6 +198,12 @@ public abstract class AppListFragment extends ListFragment {
         updateAdapter();
     }
 
+    @Override
+    public void onDestroyView() {
+        filterHandler.removeCallbacks(filterRunnable);
+        super.onDestroyView();
+    }
+
     @Override
     public void onResume() {
         super.onResume();
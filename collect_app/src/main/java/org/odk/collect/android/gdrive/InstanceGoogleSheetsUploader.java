@@ -29,7 +29,6 @@ import org.javarosa.core.model.instance.TreeReference;
 import org.javarosa.core.util.PropertyUtils;
 import org.javarosa.form.api.FormEntryController;
 import org.javarosa.form.api.FormEntryModel;
-import org.javarosa.xform.util.XFormUtils;
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
 import org.odk.collect.android.exception.BadUrlException;
@@ -294,7 +293,7 @@ public class InstanceGoogleSheetsUploader extends InstanceUploader {
         String lastSavedSrc = FileUtils.getOrCreateLastSavedSrc(formXml);
 
         try {
-            formDef = XFormUtils.getFormFromFormXml(formFilePath, lastSavedSrc);
+            formDef = FileUtils.parseForm(formFilePath, lastSavedSrc);
             FormLoaderTask.importData(instanceFile, new FormEntryController(new FormEntryModel(formDef)));
         } catch (IOException | RuntimeException e) {
             throw new UploadException(e);
@@ -1,36 +1,74 @@
 package org.odk.collect.android.geo;
 
-import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.BindException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.net.URLDecoder;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import timber.log.Timber;
 
-/** A minimal HTTP server that serves tiles from a set of TileSources. */
+/**
+ * A minimal HTTP/1.1 server that serves tiles from a set of TileSources.
+ * One thread accepts connections and reads requests without blocking and a
+ * fixed pool of workers looks up the tiles. Connections are kept alive and
+ * pipelined requests are answered in order, so a map fetching dozens of tiles
+ * a frame reuses a few connections instead of opening (and starting a thread
+ * for) one per tile.
+ */
 class TileHttpServer {
     private static final int PORT_MIN = 8000;
     private static final int PORT_MAX = 8999;
+    private static final int WORKER_THREADS = 4;
+
+    /** Requests with a longer request line and headers than this are refused. */
+    private static final int MAX_REQUEST_SIZE = 8192;
+
+    /** Enough room for the digits of any Content-Length. */
+    private static final int MAX_LENGTH_DIGITS = 10;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final byte[] HEADERS_END = ascii("\r\n\r\n");
+    private static final byte[] HEADERS_END_AND_CLOSE = ascii("\r\nConnection: close\r\n\r\n");
+    private static final byte[] NOT_FOUND = ascii("HTTP/1.1 404 Not Found\r\nContent-Length: 0");
+    private static final byte[] BAD_REQUEST = ascii("HTTP/1.1 400 Bad Request\r\nContent-Length: 0");
+    private static final byte[] SERVER_ERROR = ascii("HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0");
+
+    private final Map<String, Source> sources = new ConcurrentHashMap<>();
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKER_THREADS);
+
+    /** Connections with responses that the server thread needs to start writing. */
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
 
-    private final Map<String, TileSource> sources = new HashMap<>();
     private final ServerThread server;
-    private final ServerSocket socket;
 
     TileHttpServer() throws IOException {
-        socket = createBoundSocket(PORT_MIN, PORT_MAX);
-        if (socket == null) {
+        serverChannel = createBoundChannel(PORT_MIN, PORT_MAX);
+        if (serverChannel == null) {
             throw new IOException("Could not find an available port");
         }
-        server = new ServerThread(socket);
+        selector = Selector.open();
+        server = new ServerThread();
     }
 
     public void start() {
@@ -43,7 +81,11 @@ class TileHttpServer {
      */
     public String getUrlTemplate(String key) {
         return String.format(
-            Locale.US, "http://localhost:%d/%s/{z}/{x}/{y}", socket.getLocalPort(), key);
+            Locale.US, "http://localhost:%d/%s/{z}/{x}/{y}", getPort(), key);
+    }
+
+    int getPort() {
+        return serverChannel.socket().getLocalPort();
     }
 
     /**
@@ -52,147 +94,395 @@ class TileHttpServer {
      * Closeable, it will be closed when this server is finalized with destroy().
      */
     public void addSource(String key, TileSource source) {
-        sources.put(key, source);
+        sources.put(key, new Source(source));
     }
 
     /** Permanently closes all sockets and closeable TileSources. */
     public void destroy() {
+        server.interrupt();
+        selector.wakeup();
         try {
-            socket.close();
+            serverChannel.close();
         } catch (IOException e) { /* ignore */ }
-        server.interrupt();
-        for (TileSource source : sources.values()) {
-            if (source instanceof Closeable) {
+        workers.shutdown();
+        for (Source source : sources.values()) {
+            if (source.tileSource instanceof Closeable) {
                 try {
-                    ((Closeable) source).close();
+                    ((Closeable) source.tileSource).close();
                 } catch (IOException e) { /* ignore */ }
             }
         }
     }
 
-    /** Finds an available port and binds a ServerSocket to it. */
-    protected static ServerSocket createBoundSocket(int portMin, int portMax) throws IOException {
+    /** Finds an available port and binds a ServerSocketChannel to it. */
+    protected static ServerSocketChannel createBoundChannel(int portMin, int portMax) throws IOException {
         for (int port = portMin; port <= portMax; port++) {
+            ServerSocketChannel channel = ServerSocketChannel.open();
             try {
-                return new ServerSocket(port);
+                channel.socket().setReuseAddress(true);
+                channel.socket().bind(new InetSocketAddress(port));
+                return channel;
             } catch (BindException e) {
-                continue;  // this port is in use; try another one
+                channel.close();  // this port is in use; try another one
             }
         }
         Timber.e("No ports available from %d to %d", portMin, portMax);
         return null;
     }
 
-    class ServerThread extends Thread {
-        final ServerSocket socket;
+    /**
+     * Builds the response to a request: the headers and (for a tile) its data,
+     * ready for a single gathering write. The tile's array is wrapped rather
+     * than copied into the response, but as it's a heap buffer the channel
+     * still copies it into a temporary direct buffer when it's written.
+     */
+    ByteBuffer[] getResponse(Request request) {
+        byte[] status = BAD_REQUEST;
+        if (request.path != null) {
+            status = NOT_FOUND;
+            String[] parts = request.path.split("/");
+            if (parts.length == 4) {
+                try {
+                    Source source = sources.get(URLDecoder.decode(parts[0], "utf-8"));
+                    if (source != null) {
+                        byte[] data = source.tileSource.getTileBlob(
+                            Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+                        if (data != null) {
+                            return new ByteBuffer[] {source.getHeaders(data.length, request.keepAlive), ByteBuffer.wrap(data)};
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    Timber.w(e, "Bad request for %s", request.path);
+                } catch (UnsupportedEncodingException e) { /* cannot happen because UTF-8 is built in */ }
+            }
+        }
+
+        return new ByteBuffer[] {getEmptyResponse(status, request.keepAlive)};
+    }
+
+    private static ByteBuffer getEmptyResponse(byte[] status, boolean keepAlive) {
+        ByteBuffer headers = ByteBuffer.allocate(status.length + HEADERS_END_AND_CLOSE.length);
+        headers.put(status).put(keepAlive ? HEADERS_END : HEADERS_END_AND_CLOSE).flip();
+        return headers;
+    }
+
+    /**
+     * Parses the request at the start of {@code input} (between its position and
+     * limit), consuming it.
+     *
+     * @return the request or null if {@code input} doesn't hold a whole one yet
+     */
+    static Request readRequest(ByteBuffer input) {
+        int start = input.position();
+        int end = -1;
+        for (int i = start; i < input.limit() - 1 && end == -1; i++) {
+            if (input.get(i) == '\n') {
+                if (input.get(i + 1) == '\n') {
+                    end = i + 2;
+                } else if (input.get(i + 1) == '\r' && i + 2 < input.limit() && input.get(i + 2) == '\n') {
+                    end = i + 3;
+                }
+            }
+        }
+        if (end == -1) {
+            return null;
+        }
+
+        byte[] head = new byte[end - start];
+        input.get(head);
+        String[] lines = new String(head, ASCII).split("\r?\n");
+
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[0].equals("GET") || !requestLine[1].startsWith("/")) {
+            Timber.w("Ignoring request: %s", lines[0]);
+            return new Request(null, false);
+        }
+
+        boolean keepAlive = requestLine[2].equals("HTTP/1.1");
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].toLowerCase(Locale.US);
+            if (line.startsWith("connection:")) {
+                keepAlive = line.contains("keep-alive") || keepAlive && !line.contains("close");
+            }
+        }
+        return new Request(requestLine[1].substring(1), keepAlive);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(ASCII);
+    }
+
+    static class Request {
+        /** The path of the tile (without a leading slash) or null for a bad request. */
+        final String path;
+        final boolean keepAlive;
+
+        Request(String path, boolean keepAlive) {
+            this.path = path;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    /** A TileSource with the start of its responses' headers encoded ready to send. */
+    static class Source {
+        final TileSource tileSource;
+        final byte[] headersStart;
+
+        Source(TileSource tileSource) {
+            this.tileSource = tileSource;
+            headersStart = ascii("HTTP/1.1 200 OK\r\n" +
+                "Content-Type: " + tileSource.getContentType() + "\r\n" +
+                "Content-Encoding: " + tileSource.getContentEncoding() + "\r\n" +
+                "Content-Length: ");
+        }
+
+        ByteBuffer getHeaders(int contentLength, boolean keepAlive) {
+            ByteBuffer headers = ByteBuffer.allocate(headersStart.length + MAX_LENGTH_DIGITS + HEADERS_END_AND_CLOSE.length);
+            headers.put(headersStart);
+
+            int digitsStart = headers.position();
+            do {
+                headers.put((byte) ('0' + contentLength % 10));
+                contentLength /= 10;
+            } while (contentLength > 0);
+            for (int i = digitsStart, j = headers.position() - 1; i < j; i++, j--) {
+                byte digit = headers.get(i);
+                headers.put(i, headers.get(j));
+                headers.put(j, digit);
+            }
+
+            headers.put(keepAlive ? HEADERS_END : HEADERS_END_AND_CLOSE).flip();
+            return headers;
+        }
+    }
 
-        ServerThread(ServerSocket socket) {
-            this.socket = socket;
+    class ServerThread extends Thread {
+        ServerThread() {
+            super("TileHttpServer");
         }
 
         public void run() {
             try {
-                socket.setReuseAddress(true);
-                Timber.i("Ready for requests on port %d", socket.getLocalPort());
+                serverChannel.configureBlocking(false);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+                Timber.i("Ready for requests on port %d", getPort());
                 while (!isInterrupted()) {
-                    Socket connection = socket.accept();
-                    Timber.i("Accepted a client connection");
-                    new ResponseThread(connection).start();
+                    selector.select();
+
+                    Connection pending;
+                    while ((pending = pendingWrites.poll()) != null) {
+                        pending.write();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        }
+                    }
                 }
                 Timber.i("Server thread interrupted");
-            } catch (IOException e) {
+            } catch (IOException | ClosedSelectorException e) {
                 Timber.i("Server thread stopped: %s", e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Connection(channel, key));
             }
         }
+
+        private void close() {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException e) { /* ignore */ }
+        }
     }
 
-    class ResponseThread extends Thread {
-        final Socket connection;
+    /**
+     * A client connection. Its channel is only read, written and registered
+     * with the selector on the server thread; requests are answered on a
+     * worker, one at a time so responses go out in the order they were asked for.
+     */
+    class Connection implements Runnable {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer input = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+
+        // All guarded by this
+        final Queue<Request> requests = new ArrayDeque<>();
+        final Queue<ByteBuffer> output = new ArrayDeque<>();
+        boolean answering;
+        boolean inputFinished;
+        boolean closeAfterOutput;
 
-        ResponseThread(Socket connection) {
-            this.connection = connection;
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
         }
 
-        public void run() {
-            try (Socket connection = this.connection) {
-                InputStreamReader reader = new InputStreamReader(connection.getInputStream());
-                String request = new BufferedReader(reader).readLine();
-                Timber.i("Received request: %s", request);
-                if (request == null) {
-                    return;
+        /** Reads whatever the client has sent and queues any whole requests. */
+        void read() {
+            int count;
+            try {
+                count = channel.read(input);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+
+            synchronized (this) {
+                input.flip();
+                Request request;
+                while (!inputFinished && (request = readRequest(input)) != null) {
+                    requests.add(request);
+                    // Anything sent after a request that closes the connection is ignored
+                    inputFinished = !request.keepAlive;
+                }
+                input.compact();
+
+                if (!inputFinished && !input.hasRemaining()) {
+                    requests.add(new Request(null, false));
+                    inputFinished = true;
                 }
-                long start = System.currentTimeMillis();
-                Response response = getResponse(request);
-                if (response == null) {
-                    Timber.i("%s: No tile at these coordinates", request);
-                    return;
+                inputFinished |= count == -1;
+
+                if (inputFinished) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+
+                if (!answering && !requests.isEmpty()) {
+                    answering = true;
+                    try {
+                        workers.execute(this);
+                    } catch (RejectedExecutionException e) {
+                        close();  // the server has been destroyed
+                    }
+                } else {
+                    closeIfFinished();
                 }
-                sendResponse(connection, response);
-                long finish = System.currentTimeMillis();
-                Timber.i("%s: Served %d bytes in %d ms", request, response.data.length, finish - start);
-            } catch (IOException e) {
-                Timber.e(e, "Unable to read request from socket");
             }
         }
 
-        protected Response getResponse(String request) {
-            if (request.startsWith("GET /")) {
-                String path = request.substring(5).split(" ", 2)[0];
-                String[] parts = path.split("/");
-                if (parts.length == 4) {
+        /**
+         * Answers queued requests on a worker thread. If a request can't be
+         * answered, a 500 response is sent and the connection is closed
+         * after it (dropping any requests that follow).
+         */
+        public void run() {
+            boolean finished = false;
+            try {
+                while (true) {
+                    Request request;
+                    synchronized (this) {
+                        request = requests.poll();
+                        if (request == null) {
+                            answering = false;
+                            finished = true;
+                            break;
+                        }
+                    }
+
+                    ByteBuffer[] response;
+                    boolean keepAlive = request.keepAlive;
                     try {
-                        String key = URLDecoder.decode(parts[0], "utf-8");
-                        int zoom = Integer.parseInt(parts[1]);
-                        int x = Integer.parseInt(parts[2]);
-                        int y = Integer.parseInt(parts[3]);
-                        TileSource source = sources.get(key);
-                        if (source != null) {
-                            byte[] data = source.getTileBlob(zoom, x, y);
-                            if (data != null) {
-                                return new Response(data, source.getContentType(), source.getContentEncoding());
-                            }
+                        response = getResponse(request);
+                    } catch (RuntimeException e) {
+                        Timber.e(e, "Failed to answer request for %s", request.path);
+                        keepAlive = false;
+                        response = new ByteBuffer[] {getEmptyResponse(SERVER_ERROR, false)};
+                    }
+
+                    synchronized (this) {
+                        for (ByteBuffer buffer : response) {
+                            output.add(buffer);
+                        }
+                        if (!keepAlive) {
+                            closeAfterOutput = true;
+                            requests.clear();
                         }
-                    } catch (NumberFormatException e) {
-                        Timber.w(e, "Bad request %s", request);
-                    } catch (UnsupportedEncodingException e) { /* cannot happen because UTF-8 is built in */ }
+                    }
+                    pendingWrites.add(this);
+                    selector.wakeup();
                 }
+            } finally {
+                if (!finished) {
+                    // Something other than a request failed so stop using the connection
+                    synchronized (this) {
+                        answering = false;
+                        closeAfterOutput = true;
+                        requests.clear();
+                    }
+                }
+                pendingWrites.add(this);
+                selector.wakeup();
             }
-            Timber.w("Ignoring request: %s", request);
-            return null;
         }
 
-        protected void sendResponse(Socket connection, Response response) {
-            String headers = String.format(
-                Locale.US,
-                "HTTP/1.0 200\r\n" +
-                    "Content-Type: %s\r\n" +
-                    "Content-Encoding: %s\r\n" +
-                    "Content-Length: %d\r\n" +
-                    "\r\n",
-                response.contentType,
-                response.contentEncoding,
-                response.data.length
-            );
-
-            try (OutputStream output = connection.getOutputStream()) {
-                output.write(headers.getBytes());
-                output.write(response.data);
-                output.flush();
+        /**
+         * Writes as much of the queued output as the channel will take in one
+         * gathering write, waiting to be writable again if there's more.
+         */
+        synchronized void write() {
+            if (!channel.isOpen()) {
+                return;
+            }
+
+            try {
+                if (!output.isEmpty()) {
+                    channel.write(output.toArray(new ByteBuffer[0]));
+                    while (!output.isEmpty() && !output.peek().hasRemaining()) {
+                        output.remove();
+                    }
+                }
             } catch (IOException e) {
-                Timber.e(e, "Unable to write response to socket");
+                close();
+                return;
+            }
+
+            if (output.isEmpty()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                closeIfFinished();
+            } else {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
             }
         }
-    }
 
-    public static class Response {
-        byte[] data;
-        String contentType;
-        String contentEncoding;
+        private void closeIfFinished() {
+            if (output.isEmpty() && (closeAfterOutput || inputFinished && requests.isEmpty() && !answering)) {
+                close();
+            }
+        }
 
-        Response(byte[] data, String contentType, String contentEncoding) {
-            this.data = data;
-            this.contentType = contentType;
-            this.contentEncoding = contentEncoding;
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) { /* ignore */ }
         }
     }
 }
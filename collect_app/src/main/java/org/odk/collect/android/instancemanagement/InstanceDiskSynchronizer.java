@@ -14,9 +14,10 @@
 
 package org.odk.collect.android.instancemanagement;
 
-import android.net.Uri;
+import androidx.annotation.Nullable;
 
 import org.apache.commons.io.FileUtils;
+import org.kxml2.io.KXmlParser;
 import org.odk.collect.analytics.Analytics;
 import org.odk.collect.android.R;
 import org.odk.collect.android.analytics.AnalyticsEvents;
@@ -27,8 +28,6 @@ import org.odk.collect.android.injection.config.AppDependencyComponent;
 import org.odk.collect.android.javarosawrapper.FormController;
 import org.odk.collect.android.preferences.keys.GeneralKeys;
 import org.odk.collect.android.preferences.source.SettingsProvider;
-import org.odk.collect.android.projects.CurrentProjectProvider;
-import org.odk.collect.android.provider.InstanceProviderAPI;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
 import org.odk.collect.android.tasks.SaveFormToDisk;
@@ -37,20 +36,22 @@ import org.odk.collect.android.utilities.FormsRepositoryProvider;
 import org.odk.collect.android.utilities.InstancesRepositoryProvider;
 import org.odk.collect.android.utilities.TranslationHandler;
 import org.odk.collect.forms.Form;
+import org.odk.collect.forms.FormsRepository;
 import org.odk.collect.forms.instances.Instance;
 import org.odk.collect.forms.instances.InstancesRepository;
 import org.odk.collect.shared.strings.Md5;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.LinkedList;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.Map;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -59,10 +60,10 @@ public class InstanceDiskSynchronizer {
     private static int counter;
 
     private String currentStatus = "";
-    private final CurrentProjectProvider currentProjectProvider;
     private final SettingsProvider settingsProvider;
     private final StoragePathProvider storagePathProvider = new StoragePathProvider();
     private final InstancesRepository instancesRepository;
+    private final FormsRepository formsRepository;
     private final Analytics analytics;
 
     public String getStatusMessage() {
@@ -72,16 +73,16 @@ public class InstanceDiskSynchronizer {
     public InstanceDiskSynchronizer(SettingsProvider settingsProvider) {
         this.settingsProvider = settingsProvider;
         instancesRepository = new InstancesRepositoryProvider(Collect.getInstance()).get();
+        formsRepository = new FormsRepositoryProvider(Collect.getInstance()).get();
         AppDependencyComponent component = DaggerUtils.getComponent(Collect.getInstance());
         analytics = component.analytics();
-        currentProjectProvider = component.currentProjectProvider();
     }
 
     public String doInBackground() {
         int currentInstance = ++counter;
         Timber.i("[%d] doInBackground begins!", currentInstance);
         try {
-            List<String> instancePaths = new LinkedList<>();
+            List<String> instancePaths = new ArrayList<>();
             File instancesPath = new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.INSTANCES));
             if (instancesPath.exists() && instancesPath.isDirectory()) {
                 File[] instanceFolders = instancesPath.listFiles();
@@ -110,46 +111,55 @@ public class InstanceDiskSynchronizer {
 
                 final boolean instanceSyncFlag = settingsProvider.getGeneralSettings().getBoolean(GeneralKeys.KEY_INSTANCE_SYNC);
 
-                int counter = 0;
+                // Skip instances that are already stored in repo
+                Set<String> knownPaths = new HashSet<>();
+                for (Instance instance : instancesRepository.getAll()) {
+                    knownPaths.add(instance.getInstanceFilePath());
+                }
+
+                Map<String, Form> formsById = new HashMap<>();
+                List<Instance> newInstances = new ArrayList<>();
+                List<Form> newInstanceForms = new ArrayList<>();
+                List<String> newInstanceIds = new ArrayList<>();
+
                 for (String instancePath : instancePaths) {
-                    if (instancesRepository.getOneByPath(instancePath) != null) {
-                        continue; // Skip instances that are already stored in repo
+                    if (knownPaths.contains(instancePath)) {
+                        continue;
                     }
 
-                    String instanceFormId = getFormIdFromInstance(instancePath);
+                    RootAttributes rootAttributes = readRootAttributes(instancePath);
                     // only process if we can find the id from the instance file
-                    if (instanceFormId != null) {
-                        try {
-                            // TODO: optimize this by caching the previously found form definition
-                            // TODO: optimize this by caching unavailable form definition to skip
-                            List<Form> forms = new FormsRepositoryProvider(Collect.getInstance()).get().getAllByFormId(instanceFormId);
-
-                            if (!forms.isEmpty()) {
-                                Form form = forms.get(0);
-                                String jrFormId = form.getFormId();
-                                String jrVersion = form.getVersion();
-                                String formName = form.getDisplayName();
-                                String submissionUri = form.getSubmissionUri();
-
-                                Instance instance = instancesRepository.save(new Instance.Builder()
-                                        .instanceFilePath(instancePath)
-                                        .submissionUri(submissionUri)
-                                        .displayName(formName)
-                                        .formId(jrFormId)
-                                        .formVersion(jrVersion)
-                                        .status(instanceSyncFlag ? Instance.STATUS_COMPLETE : Instance.STATUS_INCOMPLETE)
-                                        .canEditWhenComplete(true)
-                                        .build()
-                                );
-                                counter++;
-
-                                encryptInstanceIfNeeded(form, instance);
-                            }
-                        } catch (IOException | EncryptionException e) {
-                            Timber.w(e);
-                        }
+                    if (rootAttributes == null || rootAttributes.formId == null) {
+                        continue;
+                    }
+
+                    Form form = getForm(formsById, rootAttributes.formId);
+                    if (form != null) {
+                        newInstances.add(new Instance.Builder()
+                                .instanceFilePath(instancePath)
+                                .submissionUri(form.getSubmissionUri())
+                                .displayName(form.getDisplayName())
+                                .formId(form.getFormId())
+                                .formVersion(form.getVersion())
+                                .status(instanceSyncFlag ? Instance.STATUS_COMPLETE : Instance.STATUS_INCOMPLETE)
+                                .canEditWhenComplete(true)
+                                .build());
+                        newInstanceForms.add(form);
+                        newInstanceIds.add(rootAttributes.instanceId);
+                    }
+                }
+
+                List<Instance> savedInstances = instancesRepository.saveAll(newInstances);
+                int counter = savedInstances.size();
+
+                for (int i = 0; i < savedInstances.size(); i++) {
+                    try {
+                        encryptInstanceIfNeeded(newInstanceForms.get(i), savedInstances.get(i), newInstanceIds.get(i));
+                    } catch (IOException | EncryptionException e) {
+                        Timber.w(e);
                     }
                 }
+
                 if (counter > 0) {
                     currentStatus += TranslationHandler.getString(Collect.getInstance(), R.string.instance_scan_count, counter);
                 }
@@ -160,39 +170,47 @@ public class InstanceDiskSynchronizer {
         return currentStatus;
     }
 
-    private String getFormIdFromInstance(final String instancePath) {
-        String instanceFormId = null;
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new File(instancePath));
-            Element element = document.getDocumentElement();
-            instanceFormId = element.getAttribute("id");
-        } catch (Exception | Error e) {
-            Timber.w("Unable to read form id from %s", instancePath);
+    /**
+     * Looks up the form for an instance's form id. Forms (including missing ones) are cached in
+     * {@code formsById} as lots of instances are usually for the same few forms.
+     */
+    @Nullable
+    private Form getForm(Map<String, Form> formsById, String formId) {
+        if (!formsById.containsKey(formId)) {
+            List<Form> forms = formsRepository.getAllByFormId(formId);
+            formsById.put(formId, forms.isEmpty() ? null : forms.get(0));
         }
-        return instanceFormId;
+
+        return formsById.get(formId);
     }
 
-    private String getInstanceIdFromInstance(final String instancePath) {
-        String instanceId = null;
-        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(new File(instancePath));
-            Element element = document.getDocumentElement();
-            instanceId = element.getAttribute("instanceID");
+    /**
+     * Reads the attributes of an instance's root element. Parsing stops at the root so the rest of
+     * the instance is never read.
+     *
+     * @return the attributes or null if the instance couldn't be parsed
+     */
+    @Nullable
+    private static RootAttributes readRootAttributes(final String instancePath) {
+        try (InputStream inputStream = new FileInputStream(instancePath)) {
+            KXmlParser parser = new KXmlParser();
+            parser.setInput(inputStream, null);
+            parser.nextTag();
+
+            // A missing instanceID is read as empty as it always has been
+            String instanceId = parser.getAttributeValue(null, "instanceID");
+            return new RootAttributes(parser.getAttributeValue(null, "id"), instanceId != null ? instanceId : "");
         } catch (Exception | Error e) {
-            Timber.w("Unable to read form instanceID from %s", instancePath);
+            Timber.w("Unable to read form id from %s", instancePath);
+            return null;
         }
-        return instanceId;
     }
 
-    private void encryptInstanceIfNeeded(Form form, Instance instance) throws EncryptionException, IOException {
+    private void encryptInstanceIfNeeded(Form form, Instance instance, String instanceId) throws EncryptionException, IOException {
         if (instance != null) {
             if (shouldInstanceBeEncrypted(form)) {
                 logImportAndEncrypt(form);
-                encryptInstance(instance);
+                encryptInstance(form, instance, instanceId);
             } else {
                 logImport(form);
             }
@@ -213,13 +231,12 @@ public class InstanceDiskSynchronizer {
         analytics.logFormEvent(AnalyticsEvents.IMPORT_AND_ENCRYPT_INSTANCE, formIdHash);
     }
 
-    private void encryptInstance(Instance instance) throws EncryptionException, IOException {
+    private void encryptInstance(Form form, Instance instance, String instanceId) throws EncryptionException, IOException {
         String instancePath = instance.getInstanceFilePath();
         File instanceXml = new File(instancePath);
         if (!new File(instanceXml.getParentFile(), "submission.xml.enc").exists()) {
-            Uri uri = InstanceProviderAPI.getUri(currentProjectProvider.getCurrentProject().getUuid(), instance.getDbId());
-            FormController.InstanceMetadata instanceMetadata = new FormController.InstanceMetadata(getInstanceIdFromInstance(instancePath), null, null);
-            EncryptionUtils.EncryptedFormInformation formInfo = EncryptionUtils.getEncryptedFormInformation(uri, instanceMetadata);
+            FormController.InstanceMetadata instanceMetadata = new FormController.InstanceMetadata(instanceId, null, null);
+            EncryptionUtils.EncryptedFormInformation formInfo = EncryptionUtils.getEncryptedFormInformation(form.getFormId(), form.getVersion(), instanceMetadata);
 
             if (formInfo != null) {
                 File submissionXml = new File(instanceXml.getParentFile(), "submission.xml");
@@ -245,4 +262,14 @@ public class InstanceDiskSynchronizer {
     private boolean shouldInstanceBeEncrypted(Form form) {
         return form.getBASE64RSAPublicKey() != null;
     }
+
+    private static class RootAttributes {
+        final String formId;
+        final String instanceId;
+
+        RootAttributes(String formId, String instanceId) {
+            this.formId = formId;
+            this.instanceId = instanceId;
+        }
+    }
 }
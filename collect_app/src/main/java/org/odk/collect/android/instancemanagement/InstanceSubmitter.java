@@ -5,6 +5,7 @@ import android.util.Pair;
 import org.odk.collect.analytics.Analytics;
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
+import org.odk.collect.android.formmanagement.TransferEngine;
 import org.odk.collect.android.gdrive.GoogleAccountsManager;
 import org.odk.collect.android.gdrive.GoogleApiProvider;
 import org.odk.collect.android.gdrive.InstanceGoogleSheetsUploader;
@@ -15,6 +16,7 @@ import org.odk.collect.android.permissions.PermissionsProvider;
 import org.odk.collect.android.preferences.keys.GeneralKeys;
 import org.odk.collect.android.upload.InstanceServerUploader;
 import org.odk.collect.android.upload.InstanceUploader;
+import org.odk.collect.android.upload.SubmissionEndpointCache;
 import org.odk.collect.android.upload.UploadException;
 import org.odk.collect.android.utilities.FormsRepositoryProvider;
 import org.odk.collect.android.utilities.InstanceUploaderUtils;
@@ -28,9 +30,12 @@ import org.odk.collect.shared.Settings;
 import org.odk.collect.shared.strings.Md5;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import timber.log.Timber;
 
@@ -68,9 +73,10 @@ public class InstanceSubmitter {
         String protocol = generalSettings.getString(GeneralKeys.KEY_PROTOCOL);
 
         InstanceUploader uploader;
-        Map<String, String> resultMessagesByInstanceId = new HashMap<>();
+        Map<String, String> resultMessagesByInstanceId = Collections.synchronizedMap(new HashMap<>());
         String deviceId = null;
-        boolean anyFailure = false;
+        AtomicBoolean anyFailure = new AtomicBoolean(false);
+        int maxConcurrentSubmissions = 1;
 
         if (protocol.equals(GeneralKeys.PROTOCOL_GOOGLE_SHEETS)) {
             if (permissionsProvider.isGetAccountsPermissionGranted()) {
@@ -85,56 +91,101 @@ public class InstanceSubmitter {
             }
         } else {
             OpenRosaHttpInterface httpInterface = Collect.getInstance().getComponent().openRosaHttpInterface();
-            uploader = new InstanceServerUploader(httpInterface, new WebCredentialsUtils(generalSettings), new HashMap<>(), generalSettings);
+            uploader = new InstanceServerUploader(httpInterface, new WebCredentialsUtils(generalSettings), SubmissionEndpointCache.getShared(), generalSettings);
             deviceId = new PropertyManager().getSingularProperty(PropertyManager.PROPMGR_DEVICE_ID);
+            maxConcurrentSubmissions = getMaxConcurrentSubmissions();
         }
 
+        List<TransferEngine.Task> submissions = new ArrayList<>();
         for (Instance instance : toUpload) {
-            try {
-                String destinationUrl;
-                if (protocol.equals(GeneralKeys.PROTOCOL_GOOGLE_SHEETS)) {
-                    destinationUrl = uploader.getUrlToSubmitTo(instance, null, null, generalSettings.getString(KEY_GOOGLE_SHEETS_URL));
-
-                    if (!InstanceUploaderUtils.doesUrlRefersToGoogleSheetsFile(destinationUrl)) {
-                        anyFailure = true;
-                        resultMessagesByInstanceId.put(instance.getDbId().toString(), SPREADSHEET_UPLOADED_TO_GOOGLE_DRIVE);
-                        continue;
-                    }
-                } else {
-                    destinationUrl = uploader.getUrlToSubmitTo(instance, deviceId, null, null);
+            String destinationUrl;
+            if (protocol.equals(GeneralKeys.PROTOCOL_GOOGLE_SHEETS)) {
+                destinationUrl = uploader.getUrlToSubmitTo(instance, null, null, generalSettings.getString(KEY_GOOGLE_SHEETS_URL));
+
+                if (!InstanceUploaderUtils.doesUrlRefersToGoogleSheetsFile(destinationUrl)) {
+                    anyFailure.set(true);
+                    resultMessagesByInstanceId.put(instance.getDbId().toString(), SPREADSHEET_UPLOADED_TO_GOOGLE_DRIVE);
+                    continue;
                 }
+            } else {
+                destinationUrl = uploader.getUrlToSubmitTo(instance, deviceId, null, null);
+            }
 
-                String customMessage = uploader.uploadOneSubmission(instance, destinationUrl);
-                resultMessagesByInstanceId.put(instance.getDbId().toString(), customMessage != null ? customMessage : TranslationHandler.getString(Collect.getInstance(), R.string.success));
-
-                // If the submission was successful, delete the instance if either the app-level
-                // delete preference is set or the form definition requests auto-deletion.
-                // TODO: this could take some time so might be better to do in a separate process,
-                // perhaps another worker. It also feels like this could fail and if so should be
-                // communicated to the user. Maybe successful delete should also be communicated?
-                if (InstanceUploaderUtils.shouldFormBeDeleted(formsRepository, instance.getFormId(), instance.getFormVersion(),
-                        generalSettings.getBoolean(GeneralKeys.KEY_DELETE_AFTER_SEND))) {
-                    new InstanceDeleter(new InstancesRepositoryProvider(Collect.getInstance()).get(), new FormsRepositoryProvider(Collect.getInstance()).get()).delete(instance.getDbId());
+            submissions.add(new TransferEngine.Task() {
+                @Override
+                public String getUrl() {
+                    return destinationUrl;
                 }
 
-                String action = protocol.equals(GeneralKeys.PROTOCOL_GOOGLE_SHEETS) ?
-                        "HTTP-Sheets auto" : "HTTP auto";
-                String label = Collect.getFormIdentifierHash(instance.getFormId(), instance.getFormVersion());
-                analytics.logEvent(SUBMISSION, action, label);
-
-                String submissionEndpoint = generalSettings.getString(GeneralKeys.KEY_SUBMISSION_URL);
-                if (!submissionEndpoint.equals(TranslationHandler.getString(Collect.getInstance(), R.string.default_odk_submission))) {
-                    String submissionEndpointHash = Md5.getMd5Hash(new ByteArrayInputStream(submissionEndpoint.getBytes()));
-                    analytics.logEvent(CUSTOM_ENDPOINT_SUB, submissionEndpointHash);
+                @Override
+                public void run() {
+                    submitInstance(uploader, instance, destinationUrl, protocol, resultMessagesByInstanceId, anyFailure);
                 }
-            } catch (UploadException e) {
-                Timber.d(e);
-                anyFailure = true;
-                resultMessagesByInstanceId.put(instance.getDbId().toString(),
-                        e.getDisplayMessage());
+            });
+        }
+
+        // Instances are submitted one at a time unless the project allows more than one
+        // submission to go to its server at once
+        Map<TransferEngine.Task, Exception> failures;
+        try {
+            failures = new TransferEngine(maxConcurrentSubmissions, maxConcurrentSubmissions).runAll(submissions, null, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failures = Collections.emptyMap();
+        }
+
+        for (Exception failure : failures.values()) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
             }
         }
 
-        return new Pair<>(anyFailure, InstanceUploaderUtils.getUploadResultMessage(instancesRepository, Collect.getInstance(), resultMessagesByInstanceId));
+        return new Pair<>(anyFailure.get(), InstanceUploaderUtils.getUploadResultMessage(instancesRepository, Collect.getInstance(), resultMessagesByInstanceId));
+    }
+
+    private void submitInstance(InstanceUploader uploader, Instance instance, String destinationUrl, String protocol,
+                                Map<String, String> resultMessagesByInstanceId, AtomicBoolean anyFailure) {
+        try {
+            String customMessage = uploader.uploadOneSubmission(instance, destinationUrl);
+            resultMessagesByInstanceId.put(instance.getDbId().toString(), customMessage != null ? customMessage : TranslationHandler.getString(Collect.getInstance(), R.string.success));
+
+            // If the submission was successful, delete the instance if either the app-level
+            // delete preference is set or the form definition requests auto-deletion.
+            // TODO: this could take some time so might be better to do in a separate process,
+            // perhaps another worker. It also feels like this could fail and if so should be
+            // communicated to the user. Maybe successful delete should also be communicated?
+            if (InstanceUploaderUtils.shouldFormBeDeleted(formsRepository, instance.getFormId(), instance.getFormVersion(),
+                    generalSettings.getBoolean(GeneralKeys.KEY_DELETE_AFTER_SEND))) {
+                new InstanceDeleter(new InstancesRepositoryProvider(Collect.getInstance()).get(), new FormsRepositoryProvider(Collect.getInstance()).get()).delete(instance.getDbId());
+            }
+
+            String action = protocol.equals(GeneralKeys.PROTOCOL_GOOGLE_SHEETS) ?
+                    "HTTP-Sheets auto" : "HTTP auto";
+            String label = Collect.getFormIdentifierHash(instance.getFormId(), instance.getFormVersion());
+            analytics.logEvent(SUBMISSION, action, label);
+
+            String submissionEndpoint = generalSettings.getString(GeneralKeys.KEY_SUBMISSION_URL);
+            if (!submissionEndpoint.equals(TranslationHandler.getString(Collect.getInstance(), R.string.default_odk_submission))) {
+                String submissionEndpointHash = Md5.getMd5Hash(new ByteArrayInputStream(submissionEndpoint.getBytes()));
+                analytics.logEvent(CUSTOM_ENDPOINT_SUB, submissionEndpointHash);
+            }
+        } catch (UploadException e) {
+            Timber.d(e);
+            anyFailure.set(true);
+            resultMessagesByInstanceId.put(instance.getDbId().toString(),
+                    e.getDisplayMessage());
+        }
+    }
+
+    /**
+     * The number of instances that can be submitted to a server at once. This is configured per
+     * project so it applies to the project's server.
+     */
+    private int getMaxConcurrentSubmissions() {
+        try {
+            return Math.max(1, Integer.parseInt(generalSettings.getString(GeneralKeys.KEY_MAX_CONCURRENT_SUBMISSIONS)));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
     }
 }
@@ -47,6 +47,7 @@ import org.odk.collect.android.external.ExternalDataUtil;
 import org.odk.collect.android.formentry.audit.AsyncTaskAuditEventWriter;
 import org.odk.collect.android.formentry.audit.AuditConfig;
 import org.odk.collect.android.formentry.audit.AuditEventLogger;
+import org.odk.collect.android.formhierarchy.HierarchyLevelCache;
 import org.odk.collect.android.utilities.Appearances;
 import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.android.utilities.FormNameUtils;
@@ -57,8 +58,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -122,6 +127,27 @@ public class FormController {
     private final FormEntryController formEntryController;
     private FormIndex indexWaitingForData;
 
+    /**
+     * The index of every event in the form keyed by its {@link #getXPath(FormIndex)}. Built the
+     * first time an index is looked up by XPath and updated as repeats are added or deleted.
+     */
+    @Nullable
+    private Map<String, FormIndex> xpathIndexes;
+
+    /**
+     * Questions answered since the last savepoint or null if the next savepoint has to serialize
+     * the whole instance (because nothing has been saved yet or repeats have been added or
+     * deleted).
+     */
+    @Nullable
+    private Set<FormIndex> answersChangedSinceSavepoint;
+    private final Object savepointLock = new Object();
+
+    /**
+     * The hierarchy levels listed for this form. Invalidated whenever the instance changes.
+     */
+    private final HierarchyLevelCache hierarchyLevelCache = new HierarchyLevelCache();
+
     public FormController(File mediaFolder, FormEntryController fec, File instanceFile) {
         this.mediaFolder = mediaFolder;
         formEntryController = fec;
@@ -145,6 +171,10 @@ public class FormController {
         this.instanceFile = instanceFile;
     }
 
+    public HierarchyLevelCache getHierarchyLevelCache() {
+        return hierarchyLevelCache;
+    }
+
     @Nullable
     public String getAbsoluteInstancePath() {
         return instanceFile != null ? instanceFile.getAbsolutePath() : null;
@@ -224,26 +254,121 @@ public class FormController {
                 Timber.e("Unexpected string from XPath");
                 return null;
             default:
-                FormIndex returned = null;
-                FormIndex saved = getFormIndex();
-                // the only way I know how to do this is to step through the entire form
-                // until the XPath of a form entry matches that of the supplied XPath
-                try {
-                    jumpToIndex(FormIndex.createBeginningOfFormIndex());
-                    int event = stepToNextEvent(true);
-                    while (event != FormEntryController.EVENT_END_OF_FORM) {
-                        String candidateXPath = getXPath(getFormIndex());
-                        if (candidateXPath.equals(xpath)) {
-                            returned = getFormIndex();
-                            break;
-                        }
-                        event = stepToNextEvent(true);
-                    }
-                } finally {
-                    jumpToIndex(saved);
+                FormIndex cached = getCachedIndex(xpath);
+                if (cached != null) {
+                    return cached;
+                }
+
+                return indexAllEvents().get(xpath);
+        }
+    }
+
+    @Nullable
+    private FormIndex getCachedIndex(String xpath) {
+        if (xpathIndexes == null) {
+            return null;
+        }
+
+        FormIndex index = xpathIndexes.get(xpath);
+        if (index == null) {
+            return null;
+        }
+
+        // Anything that changes the form's structure without going through newRepeat or
+        // deleteRepeat (a repeat count or relevance changing) could have made the index stale
+        try {
+            if (xpath.equals(getXPath(index)) && formEntryController.getModel().isIndexRelevant(index)) {
+                return index;
+            }
+        } catch (RuntimeException e) {
+            Timber.d(e, "Cached index for %s no longer exists", xpath);
+        }
+
+        xpathIndexes.remove(xpath);
+        return null;
+    }
+
+    /**
+     * Steps through the entire form recording the XPath of each event (the only way to find the
+     * index for an XPath).
+     */
+    private Map<String, FormIndex> indexAllEvents() {
+        xpathIndexes = new HashMap<>();
+
+        FormIndex saved = getFormIndex();
+        try {
+            jumpToIndex(FormIndex.createBeginningOfFormIndex());
+            int event = stepToNextEvent(true);
+            while (event != FormEntryController.EVENT_END_OF_FORM) {
+                FormIndex index = getFormIndex();
+                String xpath = getXPath(index);
+                if (!xpathIndexes.containsKey(xpath)) {
+                    xpathIndexes.put(xpath, index);
+                }
+                event = stepToNextEvent(true);
+            }
+        } finally {
+            jumpToIndex(saved);
+        }
+
+        return xpathIndexes;
+    }
+
+    /**
+     * Records the events of a repeat instance that has just been added and the event after it
+     * (usually the prompt for another instance).
+     */
+    private void indexNewRepeatInstance(FormIndex repeatInstance) {
+        TreeReference instanceReference = repeatInstance.getReference();
+
+        FormIndex saved = getFormIndex();
+        try {
+            jumpToIndex(repeatInstance);
+            xpathIndexes.put(getXPath(repeatInstance), repeatInstance);
+
+            int event = stepToNextEvent(true);
+            while (event != FormEntryController.EVENT_END_OF_FORM) {
+                FormIndex index = getFormIndex();
+                xpathIndexes.put(getXPath(index), index);
+                if (!instanceReference.isParentOf(index.getReference(), false)) {
+                    break;
                 }
-                return returned;
+                event = stepToNextEvent(true);
+            }
+        } finally {
+            jumpToIndex(saved);
+        }
+    }
+
+    /**
+     * Forgets the events in a deleted repeat instance and in the instances after it (which have
+     * all moved down one) including the prompt for another instance.
+     */
+    private void removeIndexesFromRepeatInstance(TreeReference deletedInstance) {
+        int level = deletedInstance.size() - 1;
+        Iterator<FormIndex> indexes = xpathIndexes.values().iterator();
+        while (indexes.hasNext()) {
+            TreeReference reference = indexes.next().getReference();
+            if (reference != null && isAtOrAfterRepeatInstance(reference, deletedInstance, level)) {
+                indexes.remove();
+            }
+        }
+    }
+
+    private static boolean isAtOrAfterRepeatInstance(TreeReference reference, TreeReference repeatInstance, int level) {
+        if (reference.size() <= level) {
+            return false;
         }
+
+        for (int i = 0; i < level; i++) {
+            if (!reference.getName(i).equals(repeatInstance.getName(i))
+                    || reference.getMultiplicity(i) != repeatInstance.getMultiplicity(i)) {
+                return false;
+            }
+        }
+
+        return reference.getName(level).equals(repeatInstance.getName(level))
+                && reference.getMultiplicity(level) >= repeatInstance.getMultiplicity(level);
     }
 
     /**
@@ -477,7 +602,9 @@ public class FormController {
      */
     public int answerQuestion(FormIndex index, IAnswerData data) throws JavaRosaException {
         try {
-            return formEntryController.answerQuestion(index, data, true);
+            int result = formEntryController.answerQuestion(index, data, true);
+            recordAnswerChange(index);
+            return result;
         } catch (Exception e) {
             throw new JavaRosaException(e);
         }
@@ -513,7 +640,9 @@ public class FormController {
      */
     public boolean saveAnswer(FormIndex index, IAnswerData data) throws JavaRosaException {
         try {
-            return formEntryController.saveAnswer(index, data, true);
+            boolean saved = formEntryController.saveAnswer(index, data, true);
+            recordAnswerChange(index);
+            return saved;
         } catch (Exception e) {
             String dataType = data != null ? data.getClass().toString() : null;
             String ref = index != null ? index.getReference().toString() : null;
@@ -874,7 +1003,15 @@ public class FormController {
      * Creates a new repeated instance of the group referenced by the current FormIndex.
      */
     public void newRepeat() {
+        requireSavepointSnapshot();
+        String promptXPath = xpathIndexes != null ? getXPath(getFormIndex()) : null;
+
         formEntryController.newRepeat();
+
+        if (xpathIndexes != null) {
+            xpathIndexes.remove(promptXPath);
+            indexNewRepeatInstance(getFormIndex());
+        }
     }
 
     /**
@@ -884,8 +1021,52 @@ public class FormController {
      * (2) > group2 (3) and you call deleteRepeat, it will delete the 3rd instance of group2.
      */
     public void deleteRepeat() {
+        requireSavepointSnapshot();
+        FormIndex repeatGroupIndex = xpathIndexes != null ? getRepeatGroupIndex(getFormIndex(), getFormDef()) : null;
+
         FormIndex fi = formEntryController.deleteRepeat();
         formEntryController.jumpToIndex(fi);
+
+        if (repeatGroupIndex != null) {
+            removeIndexesFromRepeatInstance(repeatGroupIndex.getReference());
+        } else {
+            xpathIndexes = null;
+        }
+    }
+
+    /**
+     * @return the questions answered since this was last called or null if the whole instance
+     * needs to be saved (see {@link #requireSavepointSnapshot()})
+     */
+    @Nullable
+    public Set<FormIndex> takeAnswersChangedSinceSavepoint() {
+        synchronized (savepointLock) {
+            Set<FormIndex> changes = answersChangedSinceSavepoint;
+            answersChangedSinceSavepoint = new LinkedHashSet<>();
+            return changes;
+        }
+    }
+
+    /**
+     * Makes the next savepoint serialize the whole instance and drops any hierarchy levels listed
+     * so far. Needs to be called when the instance is changed other than by answering questions.
+     */
+    public void requireSavepointSnapshot() {
+        hierarchyLevelCache.invalidate();
+
+        synchronized (savepointLock) {
+            answersChangedSinceSavepoint = null;
+        }
+    }
+
+    private void recordAnswerChange(FormIndex index) {
+        hierarchyLevelCache.invalidate();
+
+        synchronized (savepointLock) {
+            if (answersChangedSinceSavepoint != null) {
+                answersChangedSinceSavepoint.add(index);
+            }
+        }
     }
 
     /**
@@ -893,6 +1074,7 @@ public class FormController {
      */
     public void setLanguage(String language) {
         formEntryController.setLanguage(language);
+        hierarchyLevelCache.invalidate();
     }
 
     /**
@@ -14,8 +14,7 @@
 
 package org.odk.collect.android.logic;
 
-import android.graphics.drawable.Drawable;
-
+import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
@@ -51,13 +50,15 @@ public class HierarchyElement {
     private final String secondaryText;
 
     /**
-     * An optional icon.
+     * An optional icon (0 for none). Elements are kept for as long as the form is open (see
+     * {@link org.odk.collect.android.formhierarchy.HierarchyLevelCache}) so this is a resource
+     * rather than a drawable that would hold on to the screen that created it.
      */
-    @Nullable
-    private Drawable icon;
+    @DrawableRes
+    private int icon;
 
     public HierarchyElement(@NonNull String primaryText, @Nullable String secondaryText,
-                            @Nullable Drawable icon, @NonNull Type type, @NonNull FormIndex formIndex) {
+                            @DrawableRes int icon, @NonNull Type type, @NonNull FormIndex formIndex) {
         this.primaryText = primaryText;
         this.secondaryText = secondaryText;
         this.icon = icon;
@@ -75,12 +76,12 @@ public class HierarchyElement {
         return secondaryText;
     }
 
-    @Nullable
-    public Drawable getIcon() {
+    @DrawableRes
+    public int getIcon() {
         return icon;
     }
 
-    public void setIcon(@Nullable Drawable icon) {
+    public void setIcon(@DrawableRes int icon) {
         this.icon = icon;
     }
 
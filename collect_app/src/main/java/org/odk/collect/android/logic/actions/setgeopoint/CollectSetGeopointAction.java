@@ -24,6 +24,7 @@ import org.javarosa.core.model.actions.setgeopoint.SetGeopointAction;
 import org.javarosa.core.model.instance.TreeReference;
 import org.odk.collect.android.application.Collect;
 import org.odk.collect.android.injection.DaggerUtils;
+import org.odk.collect.android.javarosawrapper.FormController;
 import org.odk.collect.android.location.client.GoogleFusedLocationClient;
 import org.odk.collect.android.location.client.MaxAccuracyWithinTimeoutLocationClient;
 import org.odk.collect.android.utilities.GeoUtils;
@@ -96,6 +97,12 @@ public class CollectSetGeopointAction extends SetGeopointAction implements Locat
         } else {
             saveLocationValue("");
         }
+
+        // The target isn't a question so savepoints need to include the whole instance
+        FormController formController = Collect.getInstance().getFormController();
+        if (formController != null) {
+            formController.requireSavepointSnapshot();
+        }
     }
 
     private boolean isBackgroundLocationEnabled() {
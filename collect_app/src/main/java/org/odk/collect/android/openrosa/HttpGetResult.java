@@ -17,6 +17,7 @@
 package org.odk.collect.android.openrosa;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.InputStream;
 import java.util.Map;
@@ -82,4 +83,15 @@ public class HttpGetResult {
     public int getStatusCode() {
         return statusCode;
     }
+
+    @Nullable
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+
+        return null;
+    }
 }
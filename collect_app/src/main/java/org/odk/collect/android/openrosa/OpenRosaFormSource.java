@@ -1,6 +1,7 @@
 package org.odk.collect.android.openrosa;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.odk.collect.android.utilities.DocumentFetchResult;
 import org.odk.collect.android.utilities.WebCredentialsUtils;
 import org.odk.collect.forms.FormListItem;
@@ -8,6 +9,7 @@ import org.odk.collect.forms.FormSource;
 import org.odk.collect.forms.FormSourceException;
 import org.odk.collect.forms.ManifestFile;
 import org.odk.collect.forms.MediaFile;
+import org.odk.collect.forms.RangeResponse;
 
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -18,6 +20,7 @@ import java.util.concurrent.Callable;
 import javax.net.ssl.SSLException;
 
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
+import static java.net.HttpURLConnection.HTTP_PARTIAL;
 import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
 
 public class OpenRosaFormSource implements FormSource {
@@ -116,6 +119,23 @@ public class OpenRosaFormSource implements FormSource {
         }
     }
 
+    @Override
+    public boolean supportsRangeRequests() {
+        return true;
+    }
+
+    @Override
+    @NotNull
+    public RangeResponse fetchForm(String formURL, long offset, @Nullable String etag) throws FormSourceException {
+        return fetchRange(formURL, offset, etag);
+    }
+
+    @Override
+    @NotNull
+    public RangeResponse fetchMediaFile(String mediaFileURL, long offset, @Nullable String etag) throws FormSourceException {
+        return fetchRange(mediaFileURL, offset, etag);
+    }
+
     public void updateUrl(String url) {
         this.serverURL = url;
     }
@@ -124,6 +144,18 @@ public class OpenRosaFormSource implements FormSource {
         this.openRosaXMLFetcher.updateWebCredentialsUtils(webCredentialsUtils);
     }
 
+    @NotNull
+    private RangeResponse fetchRange(String url, long offset, @Nullable String etag) throws FormSourceException {
+        HttpGetResult result = mapException(() -> openRosaXMLFetcher.fetch(url, null, offset, etag));
+
+        if (result.getInputStream() == null) {
+            throw new FormSourceException.ServerError(result.getStatusCode(), serverURL);
+        } else {
+            long startsAt = result.getStatusCode() == HTTP_PARTIAL ? offset : 0;
+            return new RangeResponse(result.getInputStream(), startsAt, result.getHeader("ETag"));
+        }
+    }
+
     @NotNull
     private <T> T mapException(Callable<T> callable) throws FormSourceException {
         try {
@@ -38,6 +38,20 @@ public interface OpenRosaHttpInterface {
     @NonNull
     HttpGetResult executeGetRequest(@NonNull URI uri, @Nullable String contentType, @Nullable HttpCredentialsInterface credentials) throws Exception;
 
+    /**
+     * Creates a http connection and sets up an input stream for the content starting at
+     * {@code rangeStart}. If {@code ifRange} is passed (an ETag) the range is only requested if
+     * the resource still matches it. The result will have a status code of 206 (Partial Content)
+     * if the server honoured the range and 200 if it returned the whole resource instead.
+     *
+     * @param rangeStart the offset (in bytes) to start at
+     * @param ifRange    an ETag the resource must match for only part of it to be returned
+     */
+    @NonNull
+    default HttpGetResult executeGetRequest(@NonNull URI uri, @Nullable String contentType, @Nullable HttpCredentialsInterface credentials, long rangeStart, @Nullable String ifRange) throws Exception {
+        return executeGetRequest(uri, contentType, credentials);
+    }
+
     /**
      * Performs a Http Head request.
      *
@@ -66,6 +80,23 @@ public interface OpenRosaHttpInterface {
                                             @Nullable HttpCredentialsInterface credentials,
                                             @NonNull long contentLength) throws Exception;
 
+    /**
+     * Uploads submission files and then list of other files to server, skipping any files that
+     * {@code uploadProgress} says were accepted already and reporting each part that's accepted
+     * to it.
+     *
+     * @param uploadProgress progress of earlier attempts to upload this submission
+     */
+    @NonNull
+    default HttpPostResult uploadSubmissionAndFiles(@NonNull File submissionFile,
+                                                    @NonNull List<File> fileList,
+                                                    @NonNull URI uri,
+                                                    @Nullable HttpCredentialsInterface credentials,
+                                                    @NonNull long contentLength,
+                                                    @Nullable UploadProgress uploadProgress) throws Exception {
+        return uploadSubmissionAndFiles(submissionFile, fileList, uri, credentials, contentLength);
+    }
+
     interface FileToContentTypeMapper {
 
         @NonNull
@@ -87,6 +87,17 @@ class OpenRosaXmlFetcher {
 
     @NonNull
     public HttpGetResult fetch(@NonNull String downloadUrl, @Nullable final String contentType) throws Exception {
+        return fetch(downloadUrl, contentType, 0, null);
+    }
+
+    /**
+     * Creates a Http connection and input stream for the content of the url from {@code rangeStart}
+     * onwards
+     *
+     * @see OpenRosaHttpInterface#executeGetRequest(URI, String, HttpCredentialsInterface, long, String)
+     */
+    @NonNull
+    public HttpGetResult fetch(@NonNull String downloadUrl, @Nullable final String contentType, long rangeStart, @Nullable String ifRange) throws Exception {
         URI uri;
         try {
             // assume the downloadUrl is escaped properly
@@ -102,7 +113,11 @@ class OpenRosaXmlFetcher {
             throw new Exception("Invalid server URL (no hostname): " + downloadUrl);
         }
 
-        return httpInterface.executeGetRequest(uri, contentType, webCredentialsUtils.getCredentials(uri));
+        if (rangeStart > 0) {
+            return httpInterface.executeGetRequest(uri, contentType, webCredentialsUtils.getCredentials(uri), rangeStart, ifRange);
+        } else {
+            return httpInterface.executeGetRequest(uri, contentType, webCredentialsUtils.getCredentials(uri));
+        }
     }
 
     public WebCredentialsUtils getWebCredentialsUtils() {
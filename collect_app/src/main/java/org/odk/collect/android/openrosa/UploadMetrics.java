@@ -0,0 +1,74 @@
+package org.odk.collect.android.openrosa;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of a single submission upload (across all of its parts and retries).
+ */
+public class UploadMetrics {
+
+    private final long startTime = System.nanoTime();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicInteger partsSent = new AtomicInteger();
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicInteger retries = new AtomicInteger();
+
+    public void onBytesSent(long count) {
+        bytesSent.addAndGet(count);
+    }
+
+    public void onPartSent() {
+        partsSent.incrementAndGet();
+    }
+
+    public void onFileSkipped() {
+        filesSkipped.incrementAndGet();
+    }
+
+    public void onRetry() {
+        retries.incrementAndGet();
+    }
+
+    /**
+     * Bytes written to the network for file contents (including parts that later failed).
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public int getPartsSent() {
+        return partsSent.get();
+    }
+
+    /**
+     * Attachments that weren't sent because the server had already accepted them.
+     */
+    public int getFilesSkipped() {
+        return filesSkipped.get();
+    }
+
+    public int getRetries() {
+        return retries.get();
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    public long getBytesPerSecond() {
+        long elapsedMillis = getElapsedMillis();
+        return elapsedMillis > 0 ? getBytesSent() * 1000 / elapsedMillis : getBytesSent();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d bytes in %d ms (%d B/s), %d parts, %d retries, %d files skipped",
+                getBytesSent(), getElapsedMillis(), getBytesPerSecond(), getPartsSent(), getRetries(), getFilesSkipped());
+    }
+}
@@ -0,0 +1,25 @@
+package org.odk.collect.android.openrosa;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Keeps track of which of a submission's attachments a server has already accepted. Submissions
+ * that are too big for one request are sent in several parts, and with this an interrupted upload
+ * carries on from the first part that wasn't accepted rather than starting again.
+ */
+public interface UploadProgress {
+
+    /**
+     * @return true if the server accepted {@code file} (as it is now) in an earlier part
+     */
+    boolean isAccepted(@NonNull File file);
+
+    /**
+     * Called after the server accepted a part containing {@code files} (along with the
+     * submission itself).
+     */
+    void onPartAccepted(@NonNull List<File> files, @NonNull UploadMetrics metrics);
+}
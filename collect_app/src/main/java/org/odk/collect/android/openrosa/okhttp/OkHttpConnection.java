@@ -12,13 +12,17 @@ import org.odk.collect.android.openrosa.HttpHeadResult;
 import org.odk.collect.android.openrosa.HttpPostResult;
 import org.odk.collect.android.openrosa.OpenRosaHttpInterface;
 import org.odk.collect.android.openrosa.OpenRosaServerClient;
+import org.odk.collect.android.openrosa.UploadMetrics;
+import org.odk.collect.android.openrosa.UploadProgress;
 import org.odk.collect.shared.strings.Md5;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -32,11 +36,18 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
 import timber.log.Timber;
 
 public class OkHttpConnection implements OpenRosaHttpInterface {
 
     private static final String HTTP_CONTENT_TYPE_TEXT_XML = "text/xml";
+    private static final int MAX_PART_ATTEMPTS = 3;
+    private static final long PART_RETRY_DELAY = 500;
+    private static final long UPLOAD_BUFFER_SIZE = 64 * 1024;
 
     private final OkHttpOpenRosaServerClientProvider clientFactory;
 
@@ -55,16 +66,30 @@ public class OkHttpConnection implements OpenRosaHttpInterface {
     @NonNull
     @Override
     public HttpGetResult executeGetRequest(@NonNull URI uri, @Nullable String contentType, @Nullable HttpCredentialsInterface credentials) throws Exception {
+        return executeGetRequest(uri, contentType, credentials, 0, null);
+    }
+
+    @NonNull
+    @Override
+    public HttpGetResult executeGetRequest(@NonNull URI uri, @Nullable String contentType, @Nullable HttpCredentialsInterface credentials, long rangeStart, @Nullable String ifRange) throws Exception {
         OpenRosaServerClient httpClient = clientFactory.get(uri.getScheme(), userAgent, credentials);
-        Request request = new Request.Builder()
+        Request.Builder requestBuilder = new Request.Builder()
                 .url(uri.toURL())
-                .get()
-                .build();
+                .get();
 
-        Response response = httpClient.makeRequest(request, new Date());
+        if (rangeStart > 0) {
+            requestBuilder.header("Range", "bytes=" + rangeStart + "-");
+
+            if (ifRange != null) {
+                requestBuilder.header("If-Range", ifRange);
+            }
+        }
+
+        Response response = httpClient.makeRequest(requestBuilder.build(), new Date());
         int statusCode = response.code();
 
-        if (statusCode != HttpURLConnection.HTTP_OK) {
+        boolean isPartialContent = rangeStart > 0 && statusCode == HttpURLConnection.HTTP_PARTIAL;
+        if (statusCode != HttpURLConnection.HTTP_OK && !isPartialContent) {
             discardEntityBytes(response);
             Timber.i("Error: %s (%s at %s", response.message(), String.valueOf(statusCode), uri.toString());
 
@@ -139,63 +164,121 @@ public class OkHttpConnection implements OpenRosaHttpInterface {
     @NonNull
     @Override
     public HttpPostResult uploadSubmissionAndFiles(@NonNull File submissionFile, @NonNull List<File> fileList, @NonNull URI uri, @Nullable HttpCredentialsInterface credentials, @NonNull long contentLength) throws Exception {
+        return uploadSubmissionAndFiles(submissionFile, fileList, uri, credentials, contentLength, null);
+    }
+
+    @NonNull
+    @Override
+    public HttpPostResult uploadSubmissionAndFiles(@NonNull File submissionFile, @NonNull List<File> fileList, @NonNull URI uri, @Nullable HttpCredentialsInterface credentials, @NonNull long contentLength, @Nullable UploadProgress uploadProgress) throws Exception {
+        UploadMetrics metrics = new UploadMetrics();
+
+        // Sizes and content types are only looked up once even if parts need to be sent again
+        UploadFile submission = new UploadFile(submissionFile, HTTP_CONTENT_TYPE_TEXT_XML);
+        List<UploadFile> files = new ArrayList<>();
+        for (File file : fileList) {
+            if (uploadProgress != null && uploadProgress.isAccepted(file)) {
+                Timber.i("skipping already accepted file: %s", file.getName());
+                metrics.onFileSkipped();
+                continue;
+            }
+
+            files.add(new UploadFile(file, fileToContentTypeMapper.map(file.getName())));
+        }
+
+        List<List<UploadFile>> parts = splitIntoParts(submission, files, contentLength);
+        if (parts.size() > 1) {
+            Timber.i("Extremely long post is being split into %d posts", parts.size());
+        }
+
         HttpPostResult postResult = null;
+        for (int i = 0; i < parts.size(); i++) {
+            List<UploadFile> part = parts.get(i);
+            postResult = postPart(uri, credentials, submission, part, i < parts.size() - 1, metrics);
 
-        boolean first = true;
-        int fileIndex = 0;
-        int lastFileIndex;
-        while (fileIndex < fileList.size() || first) {
-            lastFileIndex = fileIndex;
-            first = false;
-            long byteCount = 0L;
+            if (postResult.getResponseCode() != HttpURLConnection.HTTP_CREATED &&
+                    postResult.getResponseCode() != HttpURLConnection.HTTP_ACCEPTED) {
+                return postResult;
+            }
 
-            RequestBody requestBody = RequestBody.create(MediaType.parse(HTTP_CONTENT_TYPE_TEXT_XML), submissionFile);
+            if (uploadProgress != null) {
+                List<File> acceptedFiles = new ArrayList<>();
+                for (UploadFile uploadFile : part) {
+                    acceptedFiles.add(uploadFile.file);
+                }
 
-            MultipartBody.Builder multipartBuilder = new MultipartBody.Builder()
-                    .setType(MultipartBody.FORM)
-                    .addPart(MultipartBody.Part.createFormData("xml_submission_file", submissionFile.getName(), requestBody));
+                uploadProgress.onPartAccepted(acceptedFiles, metrics);
+            }
+        }
 
-            Timber.i("added xml_submission_file: %s", submissionFile.getName());
-            byteCount += submissionFile.length();
+        Timber.i("Uploaded %s: %s", submissionFile.getName(), metrics);
+        return postResult;
+    }
 
-            for (; fileIndex < fileList.size(); fileIndex++) {
-                File file = fileList.get(fileIndex);
+    /**
+     * Splits attachments into the parts that will be sent in separate requests. A new part is
+     * started when the next file would take the request over {@code contentLength} or when a part
+     * has more than 100 files. Every part has at least one file (if there are any).
+     */
+    private static List<List<UploadFile>> splitIntoParts(UploadFile submission, List<UploadFile> files, long contentLength) {
+        List<List<UploadFile>> parts = new ArrayList<>();
+        List<UploadFile> part = new ArrayList<>();
+        long byteCount = submission.length;
+
+        for (int i = 0; i < files.size(); i++) {
+            part.add(files.get(i));
+            byteCount += files.get(i).length;
+
+            if (i + 1 < files.size() && (part.size() > 100 || byteCount + files.get(i + 1).length > contentLength)) {
+                parts.add(part);
+                part = new ArrayList<>();
+                byteCount = submission.length;
+            }
+        }
 
-                String contentType = fileToContentTypeMapper.map(file.getName());
+        parts.add(part);
+        return parts;
+    }
 
-                RequestBody fileRequestBody = RequestBody.create(MediaType.parse(contentType), file);
-                multipartBuilder.addPart(MultipartBody.Part.createFormData(file.getName(), file.getName(), fileRequestBody));
+    /**
+     * Posts one part, trying again (with a growing delay) if the request fails because of a
+     * network problem. Responses are returned as they are whatever their status.
+     */
+    private HttpPostResult postPart(@NonNull URI uri, @Nullable HttpCredentialsInterface credentials, UploadFile submission,
+                                    List<UploadFile> files, boolean isIncomplete, UploadMetrics metrics) throws Exception {
+        long retryDelay = PART_RETRY_DELAY;
 
-                byteCount += file.length();
-                Timber.i("added file of type '%s' %s", contentType, file.getName());
+        for (int attempt = 1; ; attempt++) {
+            MultipartBody.Builder multipartBuilder = new MultipartBody.Builder()
+                    .setType(MultipartBody.FORM)
+                    .addPart(MultipartBody.Part.createFormData("xml_submission_file", submission.file.getName(), submission.createRequestBody(metrics)));
+            Timber.i("added xml_submission_file: %s", submission.file.getName());
 
-                // we've added at least one attachment to the request...
-                if (fileIndex + 1 < fileList.size()) {
-                    if ((fileIndex - lastFileIndex + 1 > 100) || (byteCount + fileList.get(fileIndex + 1).length()
-                            > contentLength)) {
-                        // the next file would exceed the 10MB threshold...
-                        Timber.i("Extremely long post is being split into multiple posts");
-                        multipartBuilder.addPart(MultipartBody.Part.createFormData("*isIncomplete*", "yes"));
-                        ++fileIndex; // advance over the last attachment added...
-                        break;
-                    }
-                }
+            for (UploadFile file : files) {
+                multipartBuilder.addPart(MultipartBody.Part.createFormData(file.file.getName(), file.file.getName(), file.createRequestBody(metrics)));
+                Timber.i("added file of type '%s' %s", file.contentType, file.file.getName());
             }
 
-            MultipartBody multipartBody = multipartBuilder.build();
-            postResult = executePostRequest(uri, credentials, multipartBody);
+            if (isIncomplete) {
+                multipartBuilder.addPart(MultipartBody.Part.createFormData("*isIncomplete*", "yes"));
+            }
 
-            if (postResult.getResponseCode() != HttpURLConnection.HTTP_CREATED &&
-                    postResult.getResponseCode() != HttpURLConnection.HTTP_ACCEPTED) {
+            try {
+                HttpPostResult postResult = executePostRequest(uri, credentials, multipartBuilder.build());
+                metrics.onPartSent();
                 return postResult;
-            }
+            } catch (IOException e) {
+                if (attempt >= MAX_PART_ATTEMPTS) {
+                    throw e;
+                }
 
+                Timber.w(e, "Failed to send part (attempt %d), retrying", attempt);
+                metrics.onRetry();
+                Thread.sleep(retryDelay);
+                retryDelay *= 2;
+            }
         }
-
-        return postResult;
     }
 
-    @NonNull
     private HttpPostResult executePostRequest(@NonNull URI uri, @Nullable HttpCredentialsInterface credentials, MultipartBody multipartBody) throws Exception {
         OpenRosaServerClient httpClient = clientFactory.get(uri.getScheme(), userAgent, credentials);
         HttpPostResult postResult;
@@ -238,4 +321,49 @@ public class OkHttpConnection implements OpenRosaHttpInterface {
             }
         }
     }
+
+    /**
+     * A file to upload with its size and content type looked up up front. Its contents are
+     * streamed from disk each time a request body is written.
+     */
+    private static class UploadFile {
+
+        private final File file;
+        private final String contentType;
+        private final long length;
+
+        UploadFile(File file, String contentType) {
+            this.file = file;
+            this.contentType = contentType;
+            this.length = file.length();
+        }
+
+        RequestBody createRequestBody(UploadMetrics metrics) {
+            MediaType mediaType = MediaType.parse(contentType);
+
+            return new RequestBody() {
+                @Override
+                public MediaType contentType() {
+                    return mediaType;
+                }
+
+                @Override
+                public long contentLength() {
+                    return length;
+                }
+
+                @Override
+                public void writeTo(@NonNull BufferedSink sink) throws IOException {
+                    try (Source source = Okio.source(file)) {
+                        Buffer buffer = new Buffer();
+                        long read;
+                        while ((read = source.read(buffer, UPLOAD_BUFFER_SIZE)) != -1) {
+                            sink.write(buffer, read);
+                            metrics.onBytesSent(read);
+                        }
+                    }
+                }
+            };
+        }
+    }
 }
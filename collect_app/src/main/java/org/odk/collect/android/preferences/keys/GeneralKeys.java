@@ -58,6 +58,7 @@ public final class GeneralKeys {
     public static final String KEY_GUIDANCE_HINT = "guidance_hint";
     public static final String KEY_INSTANCE_SYNC = "instance_sync";
     public static final String KEY_FORM_UPDATE_MODE = "form_update_mode";
+    public static final String KEY_MAX_CONCURRENT_SUBMISSIONS = "max_concurrent_submissions";
 
     // identity_preferences.xml
     public static final String KEY_ANALYTICS = "analytics";
@@ -119,6 +120,7 @@ public final class GeneralKeys {
         hashMap.put(KEY_BACKGROUND_LOCATION, true);
         hashMap.put(KEY_BACKGROUND_RECORDING, true);
         hashMap.put(KEY_FORM_UPDATE_MODE, "manual");
+        hashMap.put(KEY_MAX_CONCURRENT_SUBMISSIONS, "1");
         // form_metadata_preferences.xml
         hashMap.put(KEY_METADATA_USERNAME, "");
         hashMap.put(KEY_METADATA_PHONENUMBER, "");
@@ -19,13 +19,16 @@ import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.jetbrains.annotations.NotNull;
 import org.odk.collect.android.database.forms.DatabaseFormsRepository;
 import org.odk.collect.android.formmanagement.FormDeleter;
 import org.odk.collect.android.injection.DaggerUtils;
+import org.odk.collect.android.injection.config.AppDependencyComponent;
 import org.odk.collect.android.itemsets.FastExternalItemsetsRepository;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
@@ -37,10 +40,10 @@ import org.odk.collect.forms.FormsRepository;
 import org.odk.collect.projects.ProjectsRepository;
 import org.odk.collect.utilities.Clock;
 
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
@@ -74,6 +77,14 @@ public class FormsProvider extends ContentProvider {
 
     private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
 
+    private static final String MAX_DATE = "MAX(date)";
+    private static final String[] NEWEST_FORMS_BY_FORM_ID_PROJECTION = {
+            _ID, DISPLAY_NAME, DESCRIPTION, JR_FORM_ID, JR_VERSION, SUBMISSION_URI, BASE64_RSA_PUBLIC_KEY,
+            MD5_HASH, FORM_MEDIA_PATH, FORM_FILE_PATH, JRCACHE_FILE_PATH, LANGUAGE, AUTO_DELETE, AUTO_SEND,
+            GEOMETRY_XPATH, DELETED_DATE, MAX_DATE
+    };
+    private static final Map<String, String> NEWEST_FORMS_BY_FORM_ID_PROJECTION_MAP;
+
     @Inject
     Clock clock;
 
@@ -92,9 +103,27 @@ public class FormsProvider extends ContentProvider {
     @Inject
     ProjectsRepository projectsRepository;
 
+    /**
+     * The component this was last injected from. Injection is only repeated if the app's
+     * component is replaced (as it is in tests) so it doesn't slow down every query.
+     */
+    @Nullable
+    private volatile AppDependencyComponent injectedComponent;
+
+    private final Map<String, FormsRepository> formsRepositories = new ConcurrentHashMap<>();
+
     // Do not call it in onCreate() https://stackoverflow.com/questions/23521083/inject-database-in-a-contentprovider-with-dagger
     private void deferDaggerInit() {
-        DaggerUtils.getComponent(getContext()).inject(this);
+        AppDependencyComponent component = DaggerUtils.getComponent(getContext());
+        if (component != injectedComponent) {
+            synchronized (this) {
+                if (component != injectedComponent) {
+                    component.inject(this);
+                    formsRepositories.clear();
+                    injectedComponent = component;
+                }
+            }
+        }
     }
 
     @Override
@@ -104,6 +133,11 @@ public class FormsProvider extends ContentProvider {
 
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder, @Nullable CancellationSignal cancellationSignal) {
         deferDaggerInit();
 
         String projectId = getProjectId(uri);
@@ -111,46 +145,18 @@ public class FormsProvider extends ContentProvider {
         Cursor cursor;
         switch (URI_MATCHER.match(uri)) {
             case FORMS:
-                cursor = databaseQuery(projectId, projection, selection, selectionArgs, sortOrder, null, null);
+                cursor = databaseQuery(projectId, projection, selection, selectionArgs, sortOrder, null, null, cancellationSignal);
                 cursor.setNotificationUri(getContext().getContentResolver(), FormsProviderAPI.getUri(projectId));
                 break;
 
             case NEWEST_FORMS_BY_FORM_ID:
-                Set<String> maxDateColumns = new HashSet<>();
-                maxDateColumns.add(_ID);
-                maxDateColumns.add(DISPLAY_NAME);
-                maxDateColumns.add(DESCRIPTION);
-                maxDateColumns.add(JR_FORM_ID);
-                maxDateColumns.add(JR_VERSION);
-                maxDateColumns.add(SUBMISSION_URI);
-                maxDateColumns.add(BASE64_RSA_PUBLIC_KEY);
-                maxDateColumns.add(MD5_HASH);
-                maxDateColumns.add(FORM_MEDIA_PATH);
-                maxDateColumns.add(FORM_FILE_PATH);
-                maxDateColumns.add(JRCACHE_FILE_PATH);
-                maxDateColumns.add(LANGUAGE);
-                maxDateColumns.add(AUTO_DELETE);
-                maxDateColumns.add(AUTO_SEND);
-                maxDateColumns.add(GEOMETRY_XPATH);
-                maxDateColumns.add(DELETED_DATE);
-                maxDateColumns.add("MAX(date)");
-
-                Map<String, String> maxDateProjectionMap = new HashMap<>();
-                for (String column : maxDateColumns) {
-                    if (column.equals("MAX(date)")) {
-                        maxDateProjectionMap.put("MAX(date)", "MAX(date) AS " + DATE);
-                    } else {
-                        maxDateProjectionMap.put(column, column);
-                    }
-                }
-
-                cursor = databaseQuery(projectId, maxDateColumns.toArray(new String[0]), selection, selectionArgs, sortOrder, JR_FORM_ID, maxDateProjectionMap);
+                cursor = databaseQuery(projectId, NEWEST_FORMS_BY_FORM_ID_PROJECTION, selection, selectionArgs, sortOrder, JR_FORM_ID, NEWEST_FORMS_BY_FORM_ID_PROJECTION_MAP, cancellationSignal);
                 cursor.setNotificationUri(getContext().getContentResolver(), FormsProviderAPI.getUri(projectId));
                 break;
 
             case FORM_ID:
                 String formId = String.valueOf(ContentUriHelper.getIdFromUri(uri));
-                cursor = databaseQuery(projectId, null, _ID + "=?", new String[]{formId}, null, null, null);
+                cursor = databaseQuery(projectId, null, _ID + "=?", new String[]{formId}, null, null, null, cancellationSignal);
                 cursor.setNotificationUri(getContext().getContentResolver(), uri);
                 break;
 
@@ -210,7 +216,7 @@ public class FormsProvider extends ContentProvider {
 
         switch (URI_MATCHER.match(uri)) {
             case FORMS:
-                try (Cursor cursor = databaseQuery(projectId, null, where, whereArgs, null, null, null)) {
+                try (Cursor cursor = databaseQuery(projectId, null, where, whereArgs, null, null, null, null)) {
                     while (cursor.moveToNext()) {
                         formDeleter.delete(cursor.getLong(cursor.getColumnIndex(_ID)));
                     }
@@ -245,7 +251,7 @@ public class FormsProvider extends ContentProvider {
 
         switch (URI_MATCHER.match(uri)) {
             case FORMS:
-                try (Cursor cursor = databaseQuery(projectId, null, where, whereArgs, null, null, null)) {
+                try (Cursor cursor = databaseQuery(projectId, null, where, whereArgs, null, null, null, null)) {
                     while (cursor.moveToNext()) {
                         Form form = getFormFromCurrentCursorPosition(cursor, formsPath, cachePath);
                         ContentValues existingValues = getValuesFromForm(form, formsPath);
@@ -283,7 +289,7 @@ public class FormsProvider extends ContentProvider {
 
     @NotNull
     private FormsRepository getFormsRepository(String projectId) {
-        return formsRepositoryProvider.get(projectId);
+        return formsRepositories.computeIfAbsent(projectId, formsRepositoryProvider::get);
     }
 
     private String getProjectId(@NonNull Uri uri) {
@@ -296,11 +302,22 @@ public class FormsProvider extends ContentProvider {
         }
     }
 
-    private Cursor databaseQuery(String projectId, String[] projection, String selection, String[] selectionArgs, String sortOrder, String groupBy, Map<String, String> projectionMap) {
-        return ((DatabaseFormsRepository) getFormsRepository(projectId)).rawQuery(projectionMap, projection, selection, selectionArgs, sortOrder, groupBy);
+    private Cursor databaseQuery(String projectId, String[] projection, String selection, String[] selectionArgs, String sortOrder, String groupBy, Map<String, String> projectionMap, @Nullable CancellationSignal cancellationSignal) {
+        return ((DatabaseFormsRepository) getFormsRepository(projectId)).rawQuery(projectionMap, projection, selection, selectionArgs, sortOrder, groupBy, cancellationSignal);
     }
 
     static {
+        Map<String, String> projectionMap = new HashMap<>();
+        for (String column : NEWEST_FORMS_BY_FORM_ID_PROJECTION) {
+            if (column.equals(MAX_DATE)) {
+                projectionMap.put(MAX_DATE, MAX_DATE + " AS " + DATE);
+            } else {
+                projectionMap.put(column, column);
+            }
+        }
+
+        NEWEST_FORMS_BY_FORM_ID_PROJECTION_MAP = Collections.unmodifiableMap(projectionMap);
+
         URI_MATCHER.addURI(FormsProviderAPI.AUTHORITY, "forms", FORMS);
         URI_MATCHER.addURI(FormsProviderAPI.AUTHORITY, "forms/#", FORM_ID);
         // Only available for query and type
@@ -20,12 +20,15 @@ import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.odk.collect.android.R;
 import org.odk.collect.android.database.instances.DatabaseInstancesRepository;
 import org.odk.collect.android.injection.DaggerUtils;
+import org.odk.collect.android.injection.config.AppDependencyComponent;
 import org.odk.collect.android.instancemanagement.InstanceDeleter;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
@@ -39,6 +42,8 @@ import org.odk.collect.projects.ProjectsRepository;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
@@ -70,6 +75,29 @@ public class InstanceProvider extends ContentProvider {
     @Inject
     ProjectsRepository projectsRepository;
 
+    /**
+     * The component this was last injected from. Injection is only repeated if the app's
+     * component is replaced (as it is in tests) so it doesn't slow down every query.
+     */
+    @Nullable
+    private volatile AppDependencyComponent injectedComponent;
+
+    private final Map<String, InstancesRepository> instancesRepositories = new ConcurrentHashMap<>();
+
+    // Do not call it in onCreate() https://stackoverflow.com/questions/23521083/inject-database-in-a-contentprovider-with-dagger
+    private void deferDaggerInit() {
+        AppDependencyComponent component = DaggerUtils.getComponent(getContext());
+        if (component != injectedComponent) {
+            synchronized (this) {
+                if (component != injectedComponent) {
+                    component.inject(this);
+                    instancesRepositories.clear();
+                    injectedComponent = component;
+                }
+            }
+        }
+    }
+
     @Override
     public boolean onCreate() {
         return true;
@@ -78,19 +106,25 @@ public class InstanceProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
-        DaggerUtils.getComponent(getContext()).inject(this);
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    @Override
+    public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, @Nullable CancellationSignal cancellationSignal) {
+        deferDaggerInit();
 
         String projectId = getProjectId(uri);
 
         Cursor c;
         switch (URI_MATCHER.match(uri)) {
             case INSTANCES:
-                c = dbQuery(projectId, projection, selection, selectionArgs, sortOrder);
+                c = dbQuery(projectId, projection, selection, selectionArgs, sortOrder, cancellationSignal);
                 break;
 
             case INSTANCE_ID:
                 String id = String.valueOf(ContentUriHelper.getIdFromUri(uri));
-                c = dbQuery(projectId, projection, _ID + "=?", new String[]{id}, null);
+                c = dbQuery(projectId, projection, _ID + "=?", new String[]{id}, null, cancellationSignal);
                 break;
 
             default:
@@ -102,8 +136,8 @@ public class InstanceProvider extends ContentProvider {
         return c;
     }
 
-    private Cursor dbQuery(String projectId, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
-        return ((DatabaseInstancesRepository) instancesRepositoryProvider.get(projectId)).rawQuery(projection, selection, selectionArgs, sortOrder, null);
+    private Cursor dbQuery(String projectId, String[] projection, String selection, String[] selectionArgs, String sortOrder, @Nullable CancellationSignal cancellationSignal) {
+        return ((DatabaseInstancesRepository) getInstancesRepository(projectId)).rawQuery(projection, selection, selectionArgs, sortOrder, null, cancellationSignal);
     }
 
     @Override
@@ -122,7 +156,7 @@ public class InstanceProvider extends ContentProvider {
 
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues initialValues) {
-        DaggerUtils.getComponent(getContext()).inject(this);
+        deferDaggerInit();
 
         String projectId = getProjectId(uri);
 
@@ -131,7 +165,7 @@ public class InstanceProvider extends ContentProvider {
             throw new IllegalArgumentException("Unknown URI " + uri);
         }
 
-        Instance newInstance = instancesRepositoryProvider.get(projectId).save(getInstanceFromValues(initialValues));
+        Instance newInstance = getInstancesRepository(projectId).save(getInstanceFromValues(initialValues));
         return getUri(projectId, newInstance.getDbId());
     }
 
@@ -170,7 +204,7 @@ public class InstanceProvider extends ContentProvider {
      */
     @Override
     public int delete(@NonNull Uri uri, String where, String[] whereArgs) {
-        DaggerUtils.getComponent(getContext()).inject(this);
+        deferDaggerInit();
 
         String projectId = getProjectId(uri);
 
@@ -178,10 +212,10 @@ public class InstanceProvider extends ContentProvider {
 
         switch (URI_MATCHER.match(uri)) {
             case INSTANCES:
-                try (Cursor cursor = dbQuery(projectId, new String[]{_ID}, where, whereArgs, null)) {
+                try (Cursor cursor = dbQuery(projectId, new String[]{_ID}, where, whereArgs, null, null)) {
                     while (cursor.moveToNext()) {
                         long id = cursor.getLong(cursor.getColumnIndex(_ID));
-                        new InstanceDeleter(instancesRepositoryProvider.get(projectId), formsRepositoryProvider.get(projectId)).delete(id);
+                        new InstanceDeleter(getInstancesRepository(projectId), formsRepositoryProvider.get(projectId)).delete(id);
                     }
 
                     count = cursor.getCount();
@@ -193,9 +227,9 @@ public class InstanceProvider extends ContentProvider {
                 long id = ContentUriHelper.getIdFromUri(uri);
 
                 if (where == null) {
-                    new InstanceDeleter(instancesRepositoryProvider.get(projectId), formsRepositoryProvider.get(projectId)).delete(id);
+                    new InstanceDeleter(getInstancesRepository(projectId), formsRepositoryProvider.get(projectId)).delete(id);
                 } else {
-                    try (Cursor cursor = dbQuery(projectId, new String[]{_ID}, where, whereArgs, null)) {
+                    try (Cursor cursor = dbQuery(projectId, new String[]{_ID}, where, whereArgs, null, null)) {
                         while (cursor.moveToNext()) {
                             if (cursor.getLong(cursor.getColumnIndex(_ID)) == id) {
                                 new InstanceDeleter(instancesRepositoryProvider.get(), formsRepositoryProvider.get()).delete(id);
@@ -219,16 +253,16 @@ public class InstanceProvider extends ContentProvider {
 
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String where, String[] whereArgs) {
-        DaggerUtils.getComponent(getContext()).inject(this);
+        deferDaggerInit();
         String projectId = getProjectId(uri);
-        InstancesRepository instancesRepository = instancesRepositoryProvider.get(projectId);
+        InstancesRepository instancesRepository = getInstancesRepository(projectId);
         String instancesPath = storagePathProvider.getOdkDirPath(StorageSubdirectory.INSTANCES, projectId);
 
         int count;
 
         switch (URI_MATCHER.match(uri)) {
             case INSTANCES:
-                try (Cursor cursor = dbQuery(projectId, null, where, whereArgs, null)) {
+                try (Cursor cursor = dbQuery(projectId, null, where, whereArgs, null, null)) {
                     while (cursor.moveToNext()) {
                         Instance instance = getInstanceFromCurrentCursorPosition(cursor, instancesPath);
                         ContentValues existingValues = getValuesFromInstance(instance, instancesPath);
@@ -252,7 +286,7 @@ public class InstanceProvider extends ContentProvider {
                     instancesRepository.save(getInstanceFromValues(existingValues));
                     count = 1;
                 } else {
-                    try (Cursor cursor = dbQuery(projectId, new String[]{_ID}, where, whereArgs, null)) {
+                    try (Cursor cursor = dbQuery(projectId, new String[]{_ID}, where, whereArgs, null, null)) {
                         while (cursor.moveToNext()) {
                             if (cursor.getLong(cursor.getColumnIndex(_ID)) == instanceId) {
                                 Instance instance = getInstanceFromCurrentCursorPosition(cursor, instancesPath);
@@ -279,6 +313,10 @@ public class InstanceProvider extends ContentProvider {
         return count;
     }
 
+    private InstancesRepository getInstancesRepository(String projectId) {
+        return instancesRepositories.computeIfAbsent(projectId, instancesRepositoryProvider::get);
+    }
+
     private String getProjectId(@NonNull Uri uri) {
         String queryParam = uri.getQueryParameter("projectId");
 
@@ -6,6 +6,7 @@ import org.odk.collect.android.projects.CurrentProjectProvider
 import org.odk.collect.shared.PathUtils.getAbsoluteFilePath
 import org.odk.collect.shared.PathUtils.getRelativeFilePath
 import java.io.File
+import java.util.concurrent.ConcurrentHashMap
 
 class StoragePathProvider @JvmOverloads constructor(
     private val currentProjectProvider: CurrentProjectProvider = DaggerUtils.getComponent(Collect.getInstance())
@@ -13,6 +14,9 @@ class StoragePathProvider @JvmOverloads constructor(
     val odkRootDirPath: String = Collect.getInstance().getExternalFilesDir(null)!!.absolutePath
 ) {
 
+    private val projectsDirPath = odkRootDirPath + File.separator + StorageSubdirectory.PROJECTS.directoryName
+    private val projectDirPaths = PROJECT_DIR_PATHS.getOrPut(odkRootDirPath) { ConcurrentHashMap() }
+
     fun getOdkRootDirPaths(): Array<String> {
         return arrayOf(getOdkDirPath(StorageSubdirectory.PROJECTS))
     }
@@ -33,12 +37,7 @@ class StoragePathProvider @JvmOverloads constructor(
     }
 
     fun getProjectRootDirPath(projectId: String?): String {
-        return if (projectId == null) {
-            val currentProjectId = currentProjectProvider.getCurrentProject().uuid
-            getOdkDirPath(StorageSubdirectory.PROJECTS) + File.separator + currentProjectId
-        } else {
-            getOdkDirPath(StorageSubdirectory.PROJECTS) + File.separator + projectId
-        }
+        return getPathsForProject(projectId).rootDirPath
     }
 
     @JvmOverloads
@@ -49,8 +48,8 @@ class StoragePathProvider @JvmOverloads constructor(
             StorageSubdirectory.CACHE,
             StorageSubdirectory.METADATA,
             StorageSubdirectory.LAYERS,
-            StorageSubdirectory.SETTINGS -> getProjectRootDirPath(projectId) + File.separator + subdirectory.directoryName
-            StorageSubdirectory.PROJECTS -> odkRootDirPath + File.separator + subdirectory.directoryName
+            StorageSubdirectory.SETTINGS -> getPathsForProject(projectId).subdirectoryPaths[subdirectory.ordinal]
+            StorageSubdirectory.PROJECTS -> projectsDirPath
         }
     }
 
@@ -97,4 +96,25 @@ class StoragePathProvider @JvmOverloads constructor(
     fun getAbsoluteOfflineMapLayerPath(filePath: String): String {
         return getAbsoluteFilePath(getOdkDirPath(StorageSubdirectory.LAYERS), filePath)
     }
+
+    private fun getPathsForProject(projectId: String?): ProjectDirPaths {
+        val id = projectId ?: currentProjectProvider.getCurrentProject().uuid
+        return projectDirPaths.getOrPut(id) {
+            ProjectDirPaths(projectsDirPath + File.separator + id)
+        }
+    }
+
+    private class ProjectDirPaths(val rootDirPath: String) {
+        val subdirectoryPaths = StorageSubdirectory.values().map {
+            rootDirPath + File.separator + it.directoryName
+        }.toTypedArray()
+    }
+
+    companion object {
+        /**
+         * A project's paths only depend on the storage root and the project's id so they're
+         * built once and shared by every instance (lots are created on hot paths).
+         */
+        private val PROJECT_DIR_PATHS = ConcurrentHashMap<String, ConcurrentHashMap<String, ProjectDirPaths>>()
+    }
 }
@@ -19,30 +19,30 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.os.AsyncTask;
 
+import androidx.annotation.Nullable;
+
 import org.javarosa.core.model.FormDef;
 import org.javarosa.core.model.FormIndex;
 import org.javarosa.core.model.instance.InstanceInitializationFactory;
 import org.javarosa.core.model.instance.TreeElement;
-import org.javarosa.core.model.instance.TreeReference;
-import org.javarosa.core.model.instance.utils.DefaultAnswerResolver;
 import org.javarosa.core.reference.ReferenceManager;
 import org.javarosa.form.api.FormEntryController;
 import org.javarosa.form.api.FormEntryModel;
-import org.javarosa.xform.parse.XFormParser;
-import org.javarosa.xform.util.XFormUtils;
 import org.javarosa.xpath.XPathTypeMismatchException;
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
-import org.odk.collect.android.external.ExternalAnswerResolver;
 import org.odk.collect.android.external.ExternalDataHandler;
 import org.odk.collect.android.external.ExternalDataManager;
 import org.odk.collect.android.external.ExternalDataManagerImpl;
 import org.odk.collect.android.external.ExternalDataReader;
 import org.odk.collect.android.external.ExternalDataReaderImpl;
+import org.odk.collect.android.external.ExternalDataUtil;
 import org.odk.collect.android.external.handler.ExternalDataHandlerPull;
+import org.odk.collect.android.fastexternalitemset.ItemsetDao;
 import org.odk.collect.android.fastexternalitemset.ItemsetDbAdapter;
 import org.odk.collect.android.javarosawrapper.FormController;
 import org.odk.collect.android.listeners.FormLoaderListener;
+import org.odk.collect.android.utilities.CsvImporter;
 import org.odk.collect.android.utilities.FileUtils;
 import org.odk.collect.android.utilities.FormDefCache;
 import org.odk.collect.android.utilities.TranslationHandler;
@@ -51,13 +51,16 @@ import org.odk.collect.shared.strings.Md5;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
-import au.com.bytecode.opencsv.CSVReader;
 import timber.log.Timber;
 
 import static org.odk.collect.android.utilities.FormUtils.setupReferenceManagerForForm;
@@ -73,10 +76,11 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
 
     private FormLoaderListener stateListener;
     private String errorMsg;
-    private String warningMsg;
+    private volatile String warningMsg;
     private String instancePath;
     private final String xpath;
     private final String waitingXPath;
+    private final Executor stageExecutor;
     private boolean pendingActivityResult;
     private int requestCode;
     private int resultCode;
@@ -109,9 +113,14 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
     FECWrapper data;
 
     public FormLoaderTask(String instancePath, String xpath, String waitingXPath) {
+        this(instancePath, xpath, waitingXPath, FormLoadingStages.POOL);
+    }
+
+    FormLoaderTask(String instancePath, String xpath, String waitingXPath, Executor stageExecutor) {
         this.instancePath = instancePath;
         this.xpath = xpath;
         this.waitingXPath = waitingXPath;
+        this.stageExecutor = stageExecutor;
     }
 
     /**
@@ -134,9 +143,30 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
 
         setupReferenceManagerForForm(ReferenceManager.instance(), formMediaDir);
 
+        // The form could reference the last-saved instance which could still be being written
+        SaveFormToDisk.awaitLastSavedWrites();
+
+        final FormLoadingStages stages = new FormLoadingStages(stageExecutor);
+        try {
+            return loadForm(formPath, formXml, formMediaDir, stages);
+        } finally {
+            // Imports mustn't carry on in the background if loading stopped early
+            stages.cancelAndAwait();
+        }
+    }
+
+    private FECWrapper loadForm(String formPath, File formXml, File formMediaDir, FormLoadingStages stages) {
+        // Media zips are extracted (and CSVs imported from them) while the form definition is read
+        final Future<MediaImports> mediaImports = stages.start("Extracting media zips", () -> {
+            extractMediaZips(formMediaDir);
+            return new MediaImports(
+                    startExternalDataImports(stages, formXml, formMediaDir),
+                    startItemsetsImport(stages, formMediaDir));
+        });
+
         FormDef formDef = null;
         try {
-            formDef = createFormDefFromCacheOrXml(formPath, formXml);
+            formDef = stages.run("Reading form definition", () -> createFormDefFromCacheOrXml(formPath, formXml, mediaImports));
         } catch (StackOverflowError e) {
             Timber.e(e);
             errorMsg = TranslationHandler.getString(Collect.getInstance(), R.string.too_complex_form);
@@ -158,8 +188,13 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
                 externalDataManager);
         formDef.getEvaluationContext().addFunctionHandler(externalDataHandlerPull);
 
+        // Initializing the form can call pulldata() so external data has to be imported first
+        MediaImports imports;
         try {
-            loadExternalData(formMediaDir);
+            imports = FormLoadingStages.await(mediaImports);
+            for (Future<Void> externalDataImport : imports.externalData) {
+                FormLoadingStages.await(externalDataImport);
+            }
         } catch (Exception e) {
             Timber.e(e, "Exception thrown while loading external data");
             errorMsg = e.getMessage();
@@ -172,6 +207,7 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         }
 
         // create FormEntryController from formdef
+        final FormDef loadedFormDef = formDef;
         final FormEntryModel fem = new FormEntryModel(formDef);
         final FormEntryController fec = new FormEntryController(fem);
 
@@ -179,10 +215,8 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
 
         try {
             Timber.i("Initializing form.");
-            final long start = System.currentTimeMillis();
-            usedSavepoint = initializeForm(formDef, fec);
-            Timber.i("Form initialized in %.3f seconds.", (System.currentTimeMillis() - start) / 1000F);
-        } catch (IOException | RuntimeException e) {
+            usedSavepoint = stages.run("Initializing form", () -> initializeForm(loadedFormDef, fec));
+        } catch (Exception e) {
             Timber.e(e);
             if (e.getCause() instanceof XPathTypeMismatchException) {
                 // this is a case of
@@ -198,7 +232,21 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
             }
         }
 
-        processItemSets(formMediaDir);
+        // Itemsets are only needed once questions are displayed so they're imported alongside everything else
+        if (imports.itemsets != null) {
+            try {
+                File itemsetsCsv = FormLoadingStages.await(imports.itemsets);
+                stages.run("Indexing itemsets", () -> {
+                    new ItemsetDao(new ItemsetDbAdapter()).createIndexes(loadedFormDef, itemsetsCsv);
+                    return null;
+                });
+            } catch (Exception e) {
+                Timber.e(e);
+                warningMsg = e.getMessage();
+            }
+        }
+
+        stages.logTimings();
 
         final FormController fc = new FormController(formMediaDir, fec, instancePath == null ? null
                 : new File(instancePath));
@@ -220,7 +268,11 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         return data;
     }
 
-    private FormDef createFormDefFromCacheOrXml(String formPath, File formXml) {
+    /**
+     * @param mediaExtracted finishes once media zips have been extracted (which is only needed
+     *                       if the form has to be parsed as external instances could be in them)
+     */
+    private FormDef createFormDefFromCacheOrXml(String formPath, File formXml, Future<?> mediaExtracted) throws Exception {
         publishProgress(
                 TranslationHandler.getString(Collect.getInstance(), R.string.survey_loading_reading_form_message));
 
@@ -230,10 +282,11 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         }
 
         // no binary, read from xml
+        FormLoadingStages.await(mediaExtracted);
         Timber.i("Attempting to load from: %s", formXml.getAbsolutePath());
         final long start = System.currentTimeMillis();
         String lastSavedSrc = FileUtils.getOrCreateLastSavedSrc(formXml);
-        FormDef formDefFromXml = XFormUtils.getFormFromFormXml(formPath, lastSavedSrc);
+        FormDef formDefFromXml = FileUtils.parseForm(formPath, lastSavedSrc);
         if (formDefFromXml == null) {
             Timber.w("Error reading XForm file");
             errorMsg = "Error reading XForm file";
@@ -254,13 +307,21 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         return null;
     }
 
-    private void processItemSets(File formMediaDir) {
+    /**
+     * @return the import of itemsets.csv (which results in the file imported) or null if the form
+     * doesn't have one
+     */
+    @Nullable
+    private Future<File> startItemsetsImport(FormLoadingStages stages, File formMediaDir) {
         // for itemsets.csv, we only check to see if the itemset file has been
         // updated
         final File csv = new File(formMediaDir.getAbsolutePath() + "/" + ITEMSETS_CSV);
-        String csvmd5 = null;
-        if (csv.exists()) {
-            csvmd5 = Md5.getMd5Hash(csv);
+        if (!csv.exists()) {
+            return null;
+        }
+
+        return stages.start("Importing " + ITEMSETS_CSV, () -> {
+            String csvmd5 = Md5.getMd5Hash(csv);
             boolean readFile = false;
             final ItemsetDbAdapter ida = new ItemsetDbAdapter();
             ida.open();
@@ -290,7 +351,9 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
             if (readFile) {
                 readCSV(csv, csvmd5, ItemsetDbAdapter.getMd5FromString(csv.getAbsolutePath()));
             }
-        }
+
+            return csv;
+        });
     }
 
     private boolean initializeForm(FormDef formDef, FormEntryController fec) throws IOException {
@@ -317,6 +380,13 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
                     publishProgress(TranslationHandler.getString(Collect.getInstance(), R.string.survey_loading_reading_data_message));
                     importData(instanceXml, fec);
                     formDef.initialize(false, instanceInit);
+
+                    if (usedSavepoint) {
+                        // Answers changed after the savepoint file was written
+                        SavepointJournal journal = new SavepointJournal(savepointFile,
+                                SaveFormToDisk.getSavepointJournalFile(new File(instancePath).getName()));
+                        Timber.i("Replayed %d answers from savepoint journal", journal.replay(fec));
+                    }
                 } catch (IOException | RuntimeException e) {
                     // Skip a savepoint file that is corrupted or 0-sized
                     if (usedSavepoint && !(e.getCause() instanceof XPathTypeMismatchException)) {
@@ -340,8 +410,7 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         return usedSavepoint;
     }
 
-    @SuppressWarnings("unchecked")
-    private void loadExternalData(File mediaFolder) {
+    private static void extractMediaZips(File mediaFolder) {
         // SCTO-594
         File[] zipFiles = mediaFolder.listFiles(new FileFilter() {
             @Override
@@ -359,7 +428,12 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
                 }
             }
         }
+    }
 
+    /**
+     * Starts importing each external data CSV into its own database.
+     */
+    private List<Future<Void>> startExternalDataImports(FormLoadingStages stages, File formXml, File mediaFolder) {
         File[] csvFiles = mediaFolder.listFiles(new FileFilter() {
             @Override
             public boolean accept(File file) {
@@ -369,25 +443,27 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
             }
         });
 
-        Map<String, File> externalDataMap = new HashMap<>();
-
-        if (csvFiles != null) {
-
-            for (File csvFile : csvFiles) {
-                String dataSetName = csvFile.getName().substring(0,
-                        csvFile.getName().lastIndexOf("."));
-                externalDataMap.put(dataSetName, csvFile);
-            }
+        List<Future<Void>> imports = new ArrayList<>();
+        if (csvFiles == null || csvFiles.length == 0) {
+            return imports;
+        }
 
-            if (!externalDataMap.isEmpty()) {
+        publishProgress(Collect.getInstance()
+                .getString(R.string.survey_loading_reading_csv_message));
 
-                publishProgress(Collect.getInstance()
-                        .getString(R.string.survey_loading_reading_csv_message));
+        ExternalDataReader externalDataReader = new ExternalDataReaderImpl(this,
+                ExternalDataUtil.findPulldataReferenceColumns(formXml));
 
-                ExternalDataReader externalDataReader = new ExternalDataReaderImpl(this);
-                externalDataReader.doImport(externalDataMap);
-            }
+        for (File csvFile : csvFiles) {
+            String dataSetName = csvFile.getName().substring(0,
+                    csvFile.getName().lastIndexOf("."));
+            imports.add(stages.start("Importing " + csvFile.getName(), () -> {
+                externalDataReader.doImport(Collections.singletonMap(dataSetName, csvFile));
+                return null;
+            }));
         }
+
+        return imports;
     }
 
     public void publishExternalDataLoadingProgress(String message) {
@@ -405,31 +481,21 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
         }
     }
 
-    // Copied from XFormParser.loadXmlInstance in order to set ExternalAnswerResolver for search()
+    // Based on XFormParser.loadXmlInstance but streams the instance (see InstanceImporter) and
+    // uses ExternalAnswerResolver for search()
     public static void importData(File instanceFile, FormEntryController fec) throws IOException, RuntimeException {
-        // convert files into a byte array
-        byte[] fileBytes = org.apache.commons.io.FileUtils.readFileToByteArray(instanceFile);
-
-        // get the root of the saved and template instances
-        TreeElement savedRoot = XFormParser.restoreDataModel(fileBytes, null).getRoot();
-        TreeElement templateRoot = fec.getModel().getForm().getInstance().getRoot().deepCopy(true);
+        // populate a copy of the template instance from the saved instance
+        TreeElement templateRoot;
+        try (InputStream inputStream = new FileInputStream(instanceFile)) {
+            templateRoot = new InstanceImporter(fec.getModel().getForm()).importInstance(inputStream);
+        }
 
         // weak check for matching forms
-        if (!savedRoot.getName().equals(templateRoot.getName()) || savedRoot.getMult() != 0) {
+        if (templateRoot == null) {
             Timber.e("Saved form instance does not match template form definition");
             return;
         }
 
-        // populate the data model
-        TreeReference tr = TreeReference.rootRef();
-        tr.add(templateRoot.getName(), TreeReference.INDEX_UNBOUND);
-
-        // Here we set the Collect's implementation of the IAnswerResolver.
-        // We set it back to the default after select choices have been populated.
-        XFormParser.setAnswerResolver(new ExternalAnswerResolver());
-        templateRoot.populate(savedRoot, fec.getModel().getForm());
-        XFormParser.setAnswerResolver(new DefaultAnswerResolver());
-
         // FormInstanceParser.parseInstance is responsible for initial creation of instances. It explicitly sets the
         // main instance name to null so we force this again on deserialization because some code paths rely on the main
         // instance not having a name. Must be before the call on setRoot because setRoot also sets the root's name.
@@ -524,44 +590,36 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
     }
 
     private void readCSV(File csv, String formHash, String pathHash) {
-
-        CSVReader reader;
         ItemsetDbAdapter ida = new ItemsetDbAdapter();
         ida.open();
-        boolean withinTransaction = false;
 
-        try {
-            reader = new CSVReader(new FileReader(csv));
-
-            String[] nextLine;
-            String[] columnHeaders = null;
-            int lineNumber = 0;
-            while ((nextLine = reader.readNext()) != null) {
-                lineNumber++;
-                if (lineNumber == 1) {
-                    // first line of csv is column headers
-                    columnHeaders = nextLine;
-                    ida.createTable(formHash, pathHash, columnHeaders,
-                            csv.getAbsolutePath());
-                    continue;
-                }
-                // add the rest of the lines to the specified database
-                // nextLine[] is an array of values from the line
-                // System.out.println(nextLine[4] + "etc...");
-                if (lineNumber == 2) {
-                    // start a transaction for the inserts
-                    withinTransaction = true;
-                    ida.beginTransaction();
-                }
-                ida.addRow(pathHash, columnHeaders, nextLine);
+        try (CsvImporter importer = CsvImporter.open(csv)) {
+            // first line of csv is column headers
+            String[] columnHeaders = importer.readRow();
+            if (columnHeaders != null) {
+                ida.createTable(formHash, pathHash, columnHeaders, csv.getAbsolutePath());
+                ida.importRows(pathHash, columnHeaders, importer, new CsvImporter.Listener() {
+                    @Override
+                    public void onProgress(long bytesRead, long totalBytes, long rowCount) {
+                        publishProgress(TranslationHandler.getString(Collect.getInstance(), R.string.ext_import_progress_message,
+                                csv.getName(), " (" + bytesRead * 100 / Math.max(totalBytes, 1) + "%)"));
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return FormLoaderTask.this.isCancelled();
+                    }
+                });
 
+                // the itemsets are recorded as imported when the table is created so a partial
+                // import has to be dropped for it to be imported again next time
+                if (isCancelled()) {
+                    ida.dropTable(pathHash, csv.getAbsolutePath());
+                }
             }
         } catch (IOException | SQLException e) {
             warningMsg = e.getMessage();
         } finally {
-            if (withinTransaction) {
-                ida.commit();
-            }
             ida.close();
         }
     }
@@ -569,4 +627,15 @@ public class FormLoaderTask extends AsyncTask<String, String, FormLoaderTask.FEC
     public FormDef getFormDef() {
         return formDef;
     }
+
+    private static class MediaImports {
+        final List<Future<Void>> externalData;
+        @Nullable
+        final Future<File> itemsets;
+
+        MediaImports(List<Future<Void>> externalData, @Nullable Future<File> itemsets) {
+            this.externalData = externalData;
+            this.itemsets = itemsets;
+        }
+    }
 }
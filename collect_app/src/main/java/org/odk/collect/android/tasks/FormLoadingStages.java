@@ -0,0 +1,182 @@
+package org.odk.collect.android.tasks;
+
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * Runs the stages of loading a form. Stages that don't depend on each other are started on a
+ * pool shared by all loads and only the stages that need their results wait for them. How long
+ * each stage took is recorded so that slow loads can be diagnosed from the logs.
+ * <p>
+ * A load that stops early has to call {@link #cancelAndAwait()} so that the stages it started
+ * aren't left running on the shared pool.
+ */
+class FormLoadingStages {
+
+    static final int MAX_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    static final Executor POOL = Executors.newFixedThreadPool(MAX_THREADS, runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "FormLoadingStage-" + THREAD_COUNT.incrementAndGet()));
+
+    private final Executor executor;
+    private final List<String> timings = Collections.synchronizedList(new ArrayList<>());
+    private final List<Stage<?>> started = new ArrayList<>();
+    private boolean cancelled;
+    private final long start = System.currentTimeMillis();
+
+    FormLoadingStages() {
+        this(POOL);
+    }
+
+    FormLoadingStages(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts {@code stage} in the background.
+     */
+    <T> Future<T> start(String name, Callable<T> stage) {
+        Stage<T> task = new Stage<>(() -> run(name, stage));
+        synchronized (started) {
+            started.add(task);
+            if (cancelled) {
+                task.cancelAndAwait();
+                return task;
+            }
+        }
+
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Runs {@code stage} on the calling thread.
+     */
+    <T> T run(String name, Callable<T> stage) throws Exception {
+        long stageStart = System.currentTimeMillis();
+        try {
+            return stage.call();
+        } finally {
+            long duration = System.currentTimeMillis() - stageStart;
+            timings.add(String.format(Locale.US, "%s: %.3fs", name, duration / 1000F));
+            Timber.i("%s took %.3f seconds.", name, duration / 1000F);
+        }
+    }
+
+    /**
+     * Waits for a stage started with {@link #start} to finish.
+     *
+     * @throws Exception the exception thrown by the stage (or {@link InterruptedException})
+     */
+    static <T> T await(Future<T> stage) throws Exception {
+        try {
+            return stage.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Stops stages that haven't started yet (including any started after this) from running and
+     * waits for the ones that have to finish.
+     */
+    void cancelAndAwait() {
+        synchronized (started) {
+            cancelled = true;
+        }
+
+        // Stages can start others so more may be added while waiting
+        for (int i = 0; ; i++) {
+            Stage<?> stage;
+            synchronized (started) {
+                if (i >= started.size()) {
+                    return;
+                }
+                stage = started.get(i);
+            }
+
+            stage.cancelAndAwait();
+        }
+    }
+
+    /**
+     * @return the time taken by each stage that has finished, in the order they finished
+     */
+    List<String> getTimings() {
+        synchronized (timings) {
+            return new ArrayList<>(timings);
+        }
+    }
+
+    void logTimings() {
+        Timber.i("Form loaded in %.3f seconds (%s)", (System.currentTimeMillis() - start) / 1000F, getTimings());
+    }
+
+    private static class Stage<T> extends FutureTask<T> {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        Stage(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        public void run() {
+            if (claimed.compareAndSet(false, true)) {
+                try {
+                    super.run();
+                } finally {
+                    finished.countDown();
+                }
+            }
+        }
+
+        /**
+         * Cancels the stage if it hasn't started running or otherwise waits for it to finish.
+         */
+        void cancelAndAwait() {
+            if (claimed.compareAndSet(false, true)) {
+                cancel(false);
+            } else {
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        finished.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.odk.collect.android.tasks;
+
+import androidx.annotation.Nullable;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.model.instance.TreeReference;
+import org.kxml2.io.KXmlParser;
+import org.odk.collect.android.external.ExternalAnswerResolver;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a saved instance into a copy of a form's blank instance. This has the same result as
+ * restoring the saved instance with {@code XFormParser.restoreDataModel} and then populating the
+ * blank instance from it with {@code TreeElement.populate}, but the saved instance is pull-parsed
+ * straight into the blank instance so it's never held in memory as bytes or as a tree of its own.
+ * <p>
+ * Answers are resolved with {@link ExternalAnswerResolver} so that selects using search() get
+ * their dynamic choices.
+ */
+class InstanceImporter {
+
+    private final FormDef formDef;
+    private final ExternalAnswerResolver answerResolver = new ExternalAnswerResolver();
+
+    InstanceImporter(FormDef formDef) {
+        this.formDef = formDef;
+    }
+
+    /**
+     * @return a copy of the form's blank instance populated from {@code instance} or null if the
+     * saved instance is for a different form
+     */
+    @Nullable
+    TreeElement importInstance(InputStream instance) throws IOException {
+        try {
+            KXmlParser parser = new KXmlParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(instance, null);
+            parser.nextTag();
+
+            // Copying the blank instance means the form's instance is left as it was if the
+            // saved instance turns out to be corrupt part of the way through
+            TreeElement root = formDef.getInstance().getRoot().deepCopy(true);
+            if (!parser.getName().equals(root.getName())) {
+                return null;
+            }
+
+            populate(root, parser);
+            return root;
+        } catch (XmlPullParserException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Populates {@code element} from the saved element that the parser is at the start of. When
+     * this returns the parser is at the saved element's end.
+     */
+    private void populate(TreeElement element, XmlPullParser parser) throws IOException, XmlPullParserException {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            element.setAttribute(parser.getAttributeNamespace(i), parser.getAttributeName(i), parser.getAttributeValue(i));
+        }
+
+        if (element.isLeaf()) {
+            populateValue(element, parser);
+            return;
+        }
+
+        Map<String, TreeElement> children = removeRepeatInstances(element);
+        Map<String, Integer> repeatCounts = new HashMap<>();
+        Set<String> populated = new HashSet<>();
+
+        int event;
+        while ((event = parser.next()) != XmlPullParser.END_TAG) {
+            if (event == XmlPullParser.END_DOCUMENT) {
+                throw new EOFException("Saved instance ended before " + element.getName() + " was closed");
+            } else if (event != XmlPullParser.START_TAG) {
+                continue;
+            }
+
+            String name = parser.getName();
+            TreeElement child = children.get(name);
+            if (child == null) {
+                skip(parser);
+            } else if (child.isRepeatable()) {
+                Integer count = repeatCounts.get(name);
+                int mult = count != null ? count : 0;
+                repeatCounts.put(name, mult + 1);
+
+                TreeElement repeatInstance = child.deepCopy(true);
+                repeatInstance.setMult(mult);
+                element.addChild(repeatInstance);
+                populate(repeatInstance, parser);
+            } else if (populated.add(name)) {
+                populate(child, parser);
+            } else {
+                // Only the first element with a non-repeat's name is used
+                skip(parser);
+            }
+        }
+
+        for (TreeElement child : children.values()) {
+            if (!child.isRepeatable() && !populated.contains(child.getName())) {
+                child.setRelevant(false);
+            }
+        }
+    }
+
+    private void populateValue(TreeElement element, XmlPullParser parser) throws IOException, XmlPullParserException {
+        StringBuilder text = new StringBuilder();
+        boolean hasChildElements = false;
+
+        int event;
+        while ((event = parser.next()) != XmlPullParser.END_TAG) {
+            if (event == XmlPullParser.END_DOCUMENT) {
+                throw new EOFException("Saved instance ended before " + element.getName() + " was closed");
+            } else if (event == XmlPullParser.TEXT) {
+                text.append(parser.getText());
+            } else if (event == XmlPullParser.START_TAG) {
+                hasChildElements = true;
+                skip(parser);
+            }
+        }
+
+        String value = hasChildElements ? "" : text.toString().trim();
+        element.setValue(value.isEmpty() ? null : answerResolver.resolveAnswer(value, element, formDef));
+    }
+
+    /**
+     * Removes the repeat instances that the blank instance was created with (keeping the repeat
+     * templates) so that only the saved instances are added.
+     *
+     * @return the remaining children by name
+     */
+    private static Map<String, TreeElement> removeRepeatInstances(TreeElement element) {
+        Map<String, TreeElement> children = new HashMap<>();
+
+        for (int i = element.getNumChildren() - 1; i >= 0; i--) {
+            TreeElement child = element.getChildAt(i);
+            if (child.isRepeatable() && child.getMult() != TreeReference.INDEX_TEMPLATE) {
+                element.removeChildAt(i);
+            } else {
+                children.put(child.getName(), child);
+            }
+        }
+
+        return children;
+    }
+
+    private static void skip(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case XmlPullParser.START_TAG:
+                    depth++;
+                    break;
+                case XmlPullParser.END_TAG:
+                    depth--;
+                    break;
+                case XmlPullParser.END_DOCUMENT:
+                    throw new EOFException("Saved instance ended inside " + parser.getName());
+            }
+        }
+    }
+}
@@ -14,7 +14,6 @@
 
 package org.odk.collect.android.tasks;
 
-import android.content.ContentValues;
 import android.net.Uri;
 import android.util.Pair;
 
@@ -39,7 +38,6 @@ import org.json.JSONObject;
 import org.odk.collect.analytics.Analytics;
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
-import org.odk.collect.android.database.instances.DatabaseInstanceColumns;
 import org.odk.collect.android.exception.EncryptionException;
 import org.odk.collect.android.formentry.saving.FormSaver;
 import org.odk.collect.android.javarosawrapper.FormController;
@@ -55,14 +53,19 @@ import org.odk.collect.android.utilities.InstancesRepositoryProvider;
 import org.odk.collect.android.utilities.MediaUtils;
 import org.odk.collect.android.utilities.TranslationHandler;
 import org.odk.collect.forms.Form;
+import org.odk.collect.forms.FormsRepository;
 import org.odk.collect.forms.instances.Instance;
 import org.odk.collect.forms.instances.InstancesRepository;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.RandomAccessFile;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import timber.log.Timber;
 
@@ -91,6 +94,9 @@ public class SaveFormToDisk {
     public static final int SAVED_AND_EXIT = 504;
     public static final int ENCRYPTION_ERROR = 505;
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ExecutorService LAST_SAVED_WRITER = Executors.newSingleThreadExecutor();
+
     public SaveFormToDisk(FormController formController, MediaUtils mediaUtils, boolean saveAndExit, boolean shouldFinalize, String updatedName,
                           Uri uri, Analytics analytics, ArrayList<String> tempFiles, String currentProjectId) {
         this.formController = formController;
@@ -167,16 +173,23 @@ public class SaveFormToDisk {
      * - a new instance was created at the start of this editing session but the user has already
      * saved it so its database row already exists
      * <p>
+     * The row is written with a single save so it's updated atomically however many properties
+     * change.
+     * <p>
      * Post-condition: the uri field is set to the URI of the instance database row that matches
      * the instance currently managed by the {@link FormController}.
+     *
+     * @param instance the existing row for the instance (or null if there isn't one yet)
+     * @param form     the blank form the instance is being created for if there's no row yet
+     * @return the saved row
      */
-    private void updateInstanceDatabase(boolean incomplete, boolean canEditAfterCompleted) {
+    private Instance updateInstanceDatabase(InstancesRepository instancesRepository, FormsRepository formsRepository,
+                                            @Nullable Instance instance, @Nullable Form form,
+                                            boolean incomplete, boolean canEditAfterCompleted, boolean isEncrypted) {
         FormController formController = Collect.getInstance().getFormController();
         FormInstance formInstance = formController.getFormDef().getInstance();
 
         String instancePath = formController.getInstanceFile().getAbsolutePath();
-        InstancesRepository instances = new InstancesRepositoryProvider(Collect.getInstance()).get();
-        Instance instance = instances.getOneByPath(instancePath);
 
         Instance.Builder instanceBuilder;
         if (instance != null) {
@@ -197,19 +210,11 @@ public class SaveFormToDisk {
 
         instanceBuilder.canEditWhenComplete(canEditAfterCompleted);
 
+        String geometryXpath;
         if (instance != null) {
-            String geometryXpath = getGeometryXpathForInstance(instance);
-            Pair<String, String> geometryContentValues = extractGeometryContentValues(formInstance, geometryXpath);
-            if (geometryContentValues != null) {
-                instanceBuilder.geometryType(geometryContentValues.first);
-                instanceBuilder.geometry(geometryContentValues.second);
-            }
-
-            Instance newInstance = new InstancesRepositoryProvider(Collect.getInstance()).get().save(instanceBuilder.build());
-            uri = InstanceProviderAPI.getUri(currentProjectId, newInstance.getDbId());
+            geometryXpath = getGeometryXpathForInstance(formsRepository, instance);
         } else {
             Timber.i("No instance found, creating");
-            Form form = new FormsRepositoryProvider(Collect.getInstance()).get().get(ContentUriHelper.getIdFromUri(uri));
 
             // add missing fields into values
             instanceBuilder.instanceFilePath(instancePath);
@@ -223,15 +228,24 @@ public class SaveFormToDisk {
             instanceBuilder.formId(form.getFormId());
             instanceBuilder.formVersion(form.getVersion());
 
-            Pair<String, String> geometryContentValues = extractGeometryContentValues(formInstance, form.getGeometryXpath());
+            geometryXpath = form.getGeometryXpath();
+        }
+
+        if (isEncrypted) {
+            // The geometry would be plaintext so isn't stored for encrypted submissions
+            instanceBuilder.geometryType(null);
+            instanceBuilder.geometry(null);
+        } else {
+            Pair<String, String> geometryContentValues = extractGeometryContentValues(formInstance, geometryXpath);
             if (geometryContentValues != null) {
                 instanceBuilder.geometryType(geometryContentValues.first);
                 instanceBuilder.geometry(geometryContentValues.second);
             }
         }
 
-        Instance newInstance = new InstancesRepositoryProvider(Collect.getInstance()).get().save(instanceBuilder.build());
+        Instance newInstance = instancesRepository.save(instanceBuilder.build());
         uri = InstanceProviderAPI.getUri(currentProjectId, newInstance.getDbId());
+        return newInstance;
     }
 
     /**
@@ -308,6 +322,15 @@ public class SaveFormToDisk {
         return new File(tempDir, instanceName + ".save");
     }
 
+    /**
+     * Return the journal of answers changed since the savepoint file for a given instance was
+     * written.
+     */
+    static File getSavepointJournalFile(String instanceName) {
+        File tempDir = new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.CACHE));
+        return new File(tempDir, instanceName + ".journal");
+    }
+
     /**
      * Return the formIndex file for a given instance.
      */
@@ -318,8 +341,10 @@ public class SaveFormToDisk {
 
     public static void removeSavepointFiles(String instanceName) {
         File savepointFile = getSavepointFile(instanceName);
+        File savepointJournalFile = getSavepointJournalFile(instanceName);
         File formIndexFile = getFormIndexFile(instanceName);
         FileUtils.deleteAndReport(savepointFile);
+        FileUtils.deleteAndReport(savepointJournalFile);
         FileUtils.deleteAndReport(formIndexFile);
     }
 
@@ -327,6 +352,10 @@ public class SaveFormToDisk {
      * Write's the data to the sdcard, and updates the instances content provider.
      * In theory we don't have to write to disk, and this is where you'd add
      * other methods.
+     * <p>
+     * The instance is serialized once and that payload is used for the instance file, the
+     * last-saved instance (written in the background) and, if the whole form is submitted, the
+     * submission.
      */
     private void exportData(boolean markCompleted, FormSaver.ProgressListener progressListener) throws IOException, EncryptionException {
         FormController formController = Collect.getInstance().getFormController();
@@ -347,28 +376,40 @@ public class SaveFormToDisk {
 
         // Write last-saved instance
         String lastSavedPath = formController.getLastSavedPath();
-        writeFile(payload, lastSavedPath);
+        writeLastSavedInBackground(payload, lastSavedPath);
+
+        InstancesRepository instancesRepository = new InstancesRepositoryProvider(Collect.getInstance()).get();
+        FormsRepository formsRepository = new FormsRepositoryProvider(Collect.getInstance()).get();
+        Instance instance = instancesRepository.getOneByPath(instancePath);
+        Form form = instance == null ? formsRepository.get(ContentUriHelper.getIdFromUri(uri)) : null;
+
+        // Update the database as incomplete first so that the filled-out form can be reopened
+        // and re-saved if anything goes wrong while finalizing
+        instance = updateInstanceDatabase(instancesRepository, formsRepository, instance, form, true, true, false);
 
-        // update the uri. We have exported the reloadable instance, so update status...
-        // Since we saved a reloadable instance, it is flagged as re-openable so that if any error
-        // occurs during the packaging of the data for the server fails (e.g., encryption),
-        // we can still reopen the filled-out form and re-save it at a later time.
-        updateInstanceDatabase(true, true);
+        if (!markCompleted) {
+            return;
+        }
+
+        // now see if the packaging of the data for the server would make it
+        // non-reopenable (e.g., encryption or other fraction of the form).
+        boolean canEditAfterCompleted = formController.isSubmissionEntireForm();
+        boolean isEncrypted = false;
 
-        if (markCompleted) {
-            // now see if the packaging of the data for the server would make it
-            // non-reopenable (e.g., encryption or other fraction of the form).
-            boolean canEditAfterCompleted = formController.isSubmissionEntireForm();
-            boolean isEncrypted = false;
+        File instanceXml = formController.getInstanceFile();
+        File submissionXml = new File(instanceXml.getParentFile(), "submission.xml");
 
+        // see if the form is encrypted and we can encrypt it...
+        EncryptedFormInformation formInfo = EncryptionUtils.getEncryptedFormInformation(instance.getFormId(), instance.getFormVersion(), formController.getSubmissionMetadata());
+
+        if (formInfo != null || !canEditAfterCompleted) {
             // build a submission.xml to hold the data being submitted
             // and (if appropriate) encrypt the files on the side
 
             // pay attention to the ref attribute of the submission profile...
-            File instanceXml = formController.getInstanceFile();
-            File submissionXml = new File(instanceXml.getParentFile(), "submission.xml");
-
-            payload = formController.getSubmissionXml();
+            if (!canEditAfterCompleted) {
+                payload = formController.getSubmissionXml();
+            }
 
             // write out submission.xml -- the data to actually submit to aggregate
 
@@ -376,70 +417,46 @@ public class SaveFormToDisk {
                     TranslationHandler.getString(Collect.getInstance(), R.string.survey_saving_finalizing_message));
 
             writeFile(payload, submissionXml.getAbsolutePath());
+        }
 
-            // see if the form is encrypted and we can encrypt it...
-            EncryptedFormInformation formInfo = EncryptionUtils.getEncryptedFormInformation(uri, formController.getSubmissionMetadata());
-            if (formInfo != null) {
-                // if we are encrypting, the form cannot be reopened afterward
-                canEditAfterCompleted = false;
-                // and encrypt the submission (this is a one-way operation)...
+        if (formInfo != null) {
+            // if we are encrypting, the form cannot be reopened afterward
+            canEditAfterCompleted = false;
+            // and encrypt the submission (this is a one-way operation)...
 
-                progressListener.onProgressUpdate(
-                        TranslationHandler.getString(Collect.getInstance(), R.string.survey_saving_encrypting_message));
+            progressListener.onProgressUpdate(
+                    TranslationHandler.getString(Collect.getInstance(), R.string.survey_saving_encrypting_message));
 
-                EncryptionUtils.generateEncryptedSubmission(instanceXml, submissionXml, formInfo);
-                isEncrypted = true;
+            EncryptionUtils.generateEncryptedSubmission(instanceXml, submissionXml, formInfo, true);
+            isEncrypted = true;
 
-                analytics.logEvent(ENCRYPT_SUBMISSION, Collect.getCurrentFormIdentifierHash(), "");
-            }
+            analytics.logEvent(ENCRYPT_SUBMISSION, Collect.getCurrentFormIdentifierHash(), "");
+        }
 
-            // At this point, we have:
-            // 1. the saved original instanceXml,
-            // 2. all the plaintext attachments
-            // 2. the submission.xml that is the completed xml (whether encrypting or not)
-            // 3. all the encrypted attachments if encrypting (isEncrypted = true).
-            //
-            // NEXT:
-            // 1. Update the instance database (with status complete).
-            // 2. Overwrite the instanceXml with the submission.xml
-            //    and remove the plaintext attachments if encrypting
+        // At this point, we have:
+        // 1. the saved original instanceXml,
+        // 2. all the plaintext attachments
+        // 2. the submission.xml that is the completed xml (unless it would be the same as
+        //    instanceXml and we're not encrypting)
+        // 3. all the encrypted attachments if encrypting (isEncrypted = true).
+        //
+        // NEXT:
+        // 1. Update the instance database (with status complete).
+        // 2. Overwrite the instanceXml with the submission.xml
+        //    and remove the plaintext attachments if encrypting
 
-            updateInstanceDatabase(false, canEditAfterCompleted);
+        updateInstanceDatabase(instancesRepository, formsRepository, instance, form, false, canEditAfterCompleted, isEncrypted);
 
-            if (!canEditAfterCompleted) {
-                manageFilesAfterSavingEncryptedForm(instanceXml, submissionXml);
-            } else {
-                // try to delete the submissionXml file, since it is
-                // identical to the existing instanceXml file
-                // (we don't need to delete and rename anything).
-                if (!submissionXml.delete()) {
-                    String msg = "Error deleting " + submissionXml.getAbsolutePath()
-                            + " (instance is re-openable)";
-                    Timber.w(msg);
-                }
-            }
+        if (!canEditAfterCompleted) {
+            manageFilesAfterSavingEncryptedForm(instanceXml, submissionXml);
+        }
 
-            // if encrypted, delete all plaintext files
-            // (anything not named instanceXml or anything not ending in .enc)
-            if (isEncrypted) {
-                InstancesRepository instancesRepository = new InstancesRepositoryProvider(Collect.getInstance()).get();
-                Instance instance = instancesRepository.get(ContentUriHelper.getIdFromUri(uri));
-
-                // Clear the geometry. Done outside of updateInstanceDatabase to avoid multiple
-                // branches and because it has no knowledge of encryption status.
-                instancesRepository.save(new Instance.Builder(instance)
-                        .geometry(null)
-                        .geometryType(null)
-                        .build()
-                );
-
-                ContentValues values = new ContentValues();
-                values.put(DatabaseInstanceColumns.GEOMETRY, (String) null);
-                values.put(DatabaseInstanceColumns.GEOMETRY_TYPE, (String) null);
-
-                if (!EncryptionUtils.deletePlaintextFiles(instanceXml, new File(lastSavedPath))) {
-                    Timber.e("Error deleting plaintext files for %s", instanceXml.getAbsolutePath());
-                }
+        // if encrypted, delete all plaintext files
+        // (anything not named instanceXml or anything not ending in .enc)
+        if (isEncrypted) {
+            awaitLastSavedWrites();
+            if (!EncryptionUtils.deletePlaintextFiles(instanceXml, new File(lastSavedPath))) {
+                Timber.e("Error deleting plaintext files for %s", instanceXml.getAbsolutePath());
             }
         }
     }
@@ -448,8 +465,8 @@ public class SaveFormToDisk {
      * Returns the XPath path of the geo feature used for mapping that corresponds to the blank form
      * that the instance with the given uri is an instance of.
      */
-    private static String getGeometryXpathForInstance(Instance instance) {
-        Form form = new FormsRepositoryProvider(Collect.getInstance()).get().getLatestByFormIdAndVersion(instance.getFormId(), instance.getFormVersion());
+    private static String getGeometryXpathForInstance(FormsRepository formsRepository, Instance instance) {
+        Form form = formsRepository.getLatestByFormIdAndVersion(instance.getFormId(), instance.getFormVersion());
         if (form != null) {
             return form.getGeometryXpath();
         } else {
@@ -485,7 +502,8 @@ public class SaveFormToDisk {
     }
 
     /**
-     * Writes payload contents to the disk.
+     * Writes payload contents to the disk. The payload is streamed to the file and synced once
+     * it has all been written.
      */
     static void writeFile(ByteArrayPayload payload, String path) throws IOException {
         File file = new File(path);
@@ -493,29 +511,66 @@ public class SaveFormToDisk {
             throw new IOException("Cannot overwrite " + path + ". Perhaps the file is locked?");
         }
 
-        // create data stream
-        InputStream is = payload.getPayloadStream();
-        int len = (int) payload.getLength();
-
-        // read from data stream
-        byte[] data = new byte[len];
-        int read = is.read(data, 0, len);
-        if (read > 0) {
+        if (payload.getLength() > 0) {
             // Make sure the directory path to this file exists.
             file.getParentFile().mkdirs();
             // write xml file
-            RandomAccessFile randomAccessFile = null;
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                copyPayload(payload, outputStream);
+                outputStream.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Writes the last-saved instance on a background thread. The file is written next to
+     * {@code path} and then renamed so that a form being loaded never sees a partly written
+     * instance. It's not synced as it can always be replaced by the next save.
+     */
+    private static void writeLastSavedInBackground(ByteArrayPayload payload, @Nullable String path) {
+        if (path == null) {
+            return;
+        }
+
+        LAST_SAVED_WRITER.execute(() -> {
+            File file = new File(path);
+            File tempFile = new File(path + ".tmp");
+
             try {
-                randomAccessFile = new RandomAccessFile(file, "rws");
-                randomAccessFile.write(data);
-            } finally {
-                if (randomAccessFile != null) {
-                    try {
-                        randomAccessFile.close();
-                    } catch (IOException e) {
-                        Timber.e(e, "Error closing RandomAccessFile: %s", path);
-                    }
+                file.getParentFile().mkdirs();
+                try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+                    copyPayload(payload, outputStream);
+                }
+
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Error renaming " + tempFile.getAbsolutePath() + " to " + path);
                 }
+            } catch (IOException e) {
+                Timber.e(e);
+                FileUtils.deleteAndReport(tempFile);
+            }
+        });
+    }
+
+    /**
+     * Blocks until last-saved instances from previous saves have been written.
+     */
+    public static void awaitLastSavedWrites() {
+        try {
+            LAST_SAVED_WRITER.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Timber.e(e);
+        }
+    }
+
+    private static void copyPayload(ByteArrayPayload payload, OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = payload.getPayloadStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
             }
         }
     }
@@ -20,12 +20,14 @@ package org.odk.collect.android.tasks;
 
 import android.os.AsyncTask;
 
+import org.javarosa.core.model.FormIndex;
 import org.javarosa.core.services.transport.payload.ByteArrayPayload;
 import org.odk.collect.android.application.Collect;
 import org.odk.collect.android.javarosawrapper.FormController;
 import org.odk.collect.android.listeners.SavePointListener;
 
 import java.io.File;
+import java.util.Set;
 
 import timber.log.Timber;
 
@@ -57,24 +59,42 @@ public class SavePointTask extends AsyncTask<Void, Void, String> {
 
             long start = System.currentTimeMillis();
 
+            FormController formController = Collect.getInstance().getFormController();
             try {
-                FormController formController = Collect.getInstance().getFormController();
-                File temp = SaveFormToDisk.getSavepointFile(formController.getInstanceFile().getName());
+                String instanceName = formController.getInstanceFile().getName();
+                File temp = SaveFormToDisk.getSavepointFile(instanceName);
+                SavepointJournal journal = new SavepointJournal(temp, SaveFormToDisk.getSavepointJournalFile(instanceName));
+
+                // Only record the answers that have changed if possible
+                Set<FormIndex> changedAnswers = formController.takeAnswersChangedSinceSavepoint();
+                if (changedAnswers != null && journal.canAppend()) {
+                    journal.append(formController.getFormDef(), changedAnswers);
+
+                    long end = System.currentTimeMillis();
+                    Timber.i("Savepoint ms: %s to %s (%d answers)", Long.toString(end - start), temp.toString(), changedAnswers.size());
+                    return null;
+                }
+
                 ByteArrayPayload payload = formController.getFilledInFormXml();
 
                 if (priority < lastPriorityUsed) {
                     Timber.w("Savepoint thread (p=%d) was cancelled (b) because another one is waiting (p=%d)", priority, lastPriorityUsed);
+                    formController.requireSavepointSnapshot();
                     return null;
                 }
 
-                // write out xml
+                // write out xml and start a new journal for it
+                journal.delete();
                 SaveFormToDisk.writeFile(payload, temp.getAbsolutePath());
+                journal.reset();
 
                 long end = System.currentTimeMillis();
                 Timber.i("Savepoint ms: %s to %s", Long.toString(end - start), temp.toString());
 
                 return null;
             } catch (Exception e) {
+                formController.requireSavepointSnapshot();
+
                 String msg = e.getMessage();
                 Timber.e(e);
                 return msg;
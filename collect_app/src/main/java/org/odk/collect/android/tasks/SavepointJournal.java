@@ -0,0 +1,199 @@
+package org.odk.collect.android.tasks;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.data.IAnswerData;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.form.api.FormEntryController;
+import org.odk.collect.android.external.ExternalAnswerResolver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import timber.log.Timber;
+
+/**
+ * Answers changed since the last savepoint snapshot (the ".save" file). Savepoints append the
+ * answers that changed to the journal instead of serializing the whole instance again. When the
+ * journal gets too large (or the instance's structure changes) the next savepoint writes a new
+ * snapshot and starts a new journal.
+ * <p>
+ * The journal's header records the size and modification time of the snapshot it was started
+ * for so a journal is never replayed on top of a different snapshot.
+ */
+class SavepointJournal {
+
+    static final long MAX_JOURNAL_BYTES = 256 * 1024;
+
+    private static final int MAGIC = 0x4F444B4A; // "ODKJ"
+    private static final int FORMAT_VERSION = 1;
+
+    private final File snapshotFile;
+    private final File journalFile;
+
+    SavepointJournal(File snapshotFile, File journalFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * @return true if the journal belongs to the current snapshot and has room for more answers
+     */
+    boolean canAppend() {
+        return journalFile.exists() && journalFile.length() < MAX_JOURNAL_BYTES && isForSnapshot();
+    }
+
+    /**
+     * Appends the current value of each of {@code indexes}.
+     */
+    void append(FormDef formDef, Collection<FormIndex> indexes) throws IOException {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(journalFile, true)) {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+            for (FormIndex index : indexes) {
+                TreeElement element = formDef.getMainInstance().resolveReference(index.getReference());
+                if (element != null) {
+                    writeEntry(dos, index, element.getValue());
+                }
+            }
+
+            dos.flush();
+            fileOutputStream.getFD().sync();
+        }
+    }
+
+    /**
+     * Starts an empty journal for the snapshot that has just been written.
+     */
+    void reset() throws IOException {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(journalFile)) {
+            DataOutputStream dos = new DataOutputStream(fileOutputStream);
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeLong(snapshotFile.length());
+            dos.writeLong(snapshotFile.lastModified());
+            dos.flush();
+            fileOutputStream.getFD().sync();
+        }
+    }
+
+    void delete() {
+        if (journalFile.exists() && !journalFile.delete()) {
+            Timber.w("Could not delete %s", journalFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Saves the answers in the journal into a form that's had the snapshot imported and been
+     * initialized. Replaying stops (keeping the answers replayed so far) at the first entry that
+     * can't be read, which will usually be one that was only partly written.
+     *
+     * @return the number of answers replayed
+     */
+    int replay(FormEntryController formEntryController) {
+        if (!journalFile.exists()) {
+            return 0;
+        }
+
+        int replayed = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            if (!readHeader(dis)) {
+                Timber.w("Ignoring savepoint journal %s as it's for a different snapshot", journalFile.getName());
+                return 0;
+            }
+
+            FormDef formDef = formEntryController.getModel().getForm();
+            ExternalAnswerResolver answerResolver = new ExternalAnswerResolver();
+
+            while (true) {
+                FormIndex index;
+                String value;
+                try {
+                    index = readIndex(dis);
+                    value = dis.readBoolean() ? readString(dis) : null;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                TreeElement element = formDef.getMainInstance().resolveReference(index.getReference());
+                if (element == null) {
+                    continue;
+                }
+
+                IAnswerData answer = value != null ? answerResolver.resolveAnswer(value, element, formDef) : null;
+                formEntryController.saveAnswer(index, answer, true);
+                replayed++;
+            }
+        } catch (Exception e) {
+            Timber.e(e, "Could not replay all of savepoint journal %s", journalFile.getName());
+        }
+
+        return replayed;
+    }
+
+    private boolean isForSnapshot() {
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(journalFile))) {
+            return readHeader(dis);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private boolean readHeader(DataInputStream dis) throws IOException {
+        return snapshotFile.exists()
+                && dis.readInt() == MAGIC
+                && dis.readInt() == FORMAT_VERSION
+                && dis.readLong() == snapshotFile.length()
+                && dis.readLong() == snapshotFile.lastModified();
+    }
+
+    private static void writeEntry(DataOutputStream dos, FormIndex index, IAnswerData value) throws IOException {
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(indexBytes)) {
+            oos.writeObject(index);
+        }
+
+        dos.writeInt(indexBytes.size());
+        indexBytes.writeTo(dos);
+
+        dos.writeBoolean(value != null);
+        if (value != null) {
+            byte[] valueBytes = value.uncast().getString().getBytes(StandardCharsets.UTF_8);
+            dos.writeInt(valueBytes.length);
+            dos.write(valueBytes);
+        }
+    }
+
+    private FormIndex readIndex(DataInputStream dis) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes(dis)))) {
+            return (FormIndex) ois.readObject();
+        }
+    }
+
+    private String readString(DataInputStream dis) throws IOException {
+        return new String(readBytes(dis), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(DataInputStream dis) throws IOException {
+        int length = dis.readInt();
+        if (length < 0 || length > journalFile.length()) {
+            throw new EOFException("Invalid length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        dis.readFully(bytes);
+        return bytes;
+    }
+}
@@ -20,11 +20,13 @@ import androidx.annotation.NonNull;
 
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
+import org.odk.collect.android.database.instances.DatabaseUploadProgressRepository;
 import org.odk.collect.android.openrosa.CaseInsensitiveHeaders;
 import org.odk.collect.android.openrosa.HttpHeadResult;
 import org.odk.collect.android.openrosa.HttpPostResult;
 import org.odk.collect.android.openrosa.OpenRosaConstants;
 import org.odk.collect.android.openrosa.OpenRosaHttpInterface;
+import org.odk.collect.android.openrosa.UploadProgress;
 import org.odk.collect.android.preferences.keys.GeneralKeys;
 import org.odk.collect.android.utilities.ResponseMessageParser;
 import org.odk.collect.android.utilities.TranslationHandler;
@@ -39,7 +41,6 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -50,15 +51,15 @@ public class InstanceServerUploader extends InstanceUploader {
 
     private final OpenRosaHttpInterface httpInterface;
     private final WebCredentialsUtils webCredentialsUtils;
-    private final Map<Uri, Uri> uriRemap;
+    private final SubmissionEndpointCache endpointCache;
     private final Settings generalSettings;
 
     public InstanceServerUploader(OpenRosaHttpInterface httpInterface,
                                   WebCredentialsUtils webCredentialsUtils,
-                                  Map<Uri, Uri> uriRemap, Settings generalSettings) {
+                                  SubmissionEndpointCache endpointCache, Settings generalSettings) {
         this.httpInterface = httpInterface;
         this.webCredentialsUtils = webCredentialsUtils;
-        this.uriRemap = uriRemap;
+        this.endpointCache = endpointCache;
         this.generalSettings = generalSettings;
     }
 
@@ -71,15 +72,18 @@ public class InstanceServerUploader extends InstanceUploader {
     @Override
     public String uploadOneSubmission(Instance instance, String urlString) throws UploadException {
         Uri submissionUri = Uri.parse(urlString);
+        Uri requestedSubmissionUri = submissionUri;
 
         long contentLength = 10000000L;
 
         // We already issued a head request and got a response, so we know it was an
-        // OpenRosa-compliant server. We also know the proper URL to send the submission to and
-        // the proper scheme.
-        if (uriRemap.containsKey(submissionUri)) {
-            submissionUri = uriRemap.get(submissionUri);
-            Timber.i("Using Uri remap for submission %s. Now: %s", instance.getDbId(),
+        // OpenRosa-compliant server. We also know the proper URL to send the submission to, the
+        // proper scheme and the content length it accepts.
+        SubmissionEndpointCache.Endpoint endpoint = endpointCache.get(submissionUri);
+        if (endpoint != null) {
+            submissionUri = endpoint.getUri();
+            contentLength = endpoint.getContentLength();
+            Timber.i("Using cached endpoint for submission %s. Now: %s", instance.getDbId(),
                     submissionUri.toString());
         } else {
             if (submissionUri.getHost() == null) {
@@ -134,7 +138,6 @@ public class InstanceServerUploader extends InstanceUploader {
                                         .encodedQuery(submissionUri.getEncodedQuery())
                                         .build();
                             }
-                            uriRemap.put(submissionUri, newURI);
                             submissionUri = newURI;
                         } else {
                             // Don't follow a redirection attempt to a different host.
@@ -158,6 +161,8 @@ public class InstanceServerUploader extends InstanceUploader {
                             "your network.\n\nHEAD request result status code: " + headResult.getStatusCode());
                 }
             }
+
+            endpointCache.put(requestedSubmissionUri, submissionUri, contentLength);
         }
 
         // When encrypting submissions, there is a failure window that may mark the submission as
@@ -187,12 +192,15 @@ public class InstanceServerUploader extends InstanceUploader {
 
         HttpPostResult postResult;
         ResponseMessageParser messageParser = new ResponseMessageParser();
+        DatabaseUploadProgressRepository uploadProgressRepository = instancesRepositoryProvider.getUploadProgressRepository();
 
         try {
             URI uri = URI.create(submissionUri.toString());
 
+            // Parts of the submission accepted by earlier attempts won't be sent again
+            UploadProgress uploadProgress = uploadProgressRepository.get(instance.getDbId(), submissionFile);
             postResult = httpInterface.uploadSubmissionAndFiles(submissionFile, files, uri,
-                    webCredentialsUtils.getCredentials(uri), contentLength);
+                    webCredentialsUtils.getCredentials(uri), contentLength, uploadProgress);
 
             int responseCode = postResult.getResponseCode();
             messageParser.setMessageResponse(postResult.getHttpResponse());
@@ -220,11 +228,14 @@ public class InstanceServerUploader extends InstanceUploader {
             }
 
         } catch (Exception e) {
+            // Check the endpoint again next time in case it's what's changed
+            endpointCache.remove(requestedSubmissionUri);
             submissionComplete(instance, false);
             throw new UploadException(FAIL + "Generic Exception: "
                     + (e.getMessage() != null ? e.getMessage() : e.toString()));
         }
 
+        uploadProgressRepository.clear(instance.getDbId());
         submissionComplete(instance, true);
 
         if (messageParser.isValid()) {
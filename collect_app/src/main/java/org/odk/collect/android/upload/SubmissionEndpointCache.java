@@ -0,0 +1,89 @@
+package org.odk.collect.android.upload;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the result of the HEAD request made to a submission endpoint (where it redirects to
+ * and the maximum content length it accepts) so that uploads to the same endpoint don't each
+ * need their own round trip. Entries expire so that changes on the server are picked up again.
+ * <p>
+ * The cache returned by {@link #getShared()} lives as long as the app process so that results
+ * are reused between background submission runs.
+ */
+public class SubmissionEndpointCache {
+
+    public static final long DEFAULT_MAX_AGE = 15 * 60 * 1000;
+
+    private static final SubmissionEndpointCache SHARED = new SubmissionEndpointCache();
+
+    private final long maxAge;
+    private final Supplier<Long> clock;
+    private final Map<Uri, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public SubmissionEndpointCache() {
+        this(DEFAULT_MAX_AGE, System::currentTimeMillis);
+    }
+
+    public SubmissionEndpointCache(long maxAge, Supplier<Long> clock) {
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    public static SubmissionEndpointCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * @return the endpoint {@code submissionUri} was resolved to or null if it hasn't been (or
+     * the result is too old to use)
+     */
+    @Nullable
+    public Endpoint get(Uri submissionUri) {
+        Endpoint endpoint = endpoints.get(submissionUri);
+        if (endpoint != null && clock.get() - endpoint.resolvedAt > maxAge) {
+            endpoints.remove(submissionUri, endpoint);
+            return null;
+        }
+
+        return endpoint;
+    }
+
+    public void put(Uri submissionUri, Uri resolvedUri, long contentLength) {
+        endpoints.put(submissionUri, new Endpoint(resolvedUri, contentLength, clock.get()));
+    }
+
+    public void remove(Uri submissionUri) {
+        endpoints.remove(submissionUri);
+    }
+
+    public void clear() {
+        endpoints.clear();
+    }
+
+    public static class Endpoint {
+
+        private final Uri uri;
+        private final long contentLength;
+        private final long resolvedAt;
+
+        Endpoint(Uri uri, long contentLength, long resolvedAt) {
+            this.uri = uri;
+            this.contentLength = contentLength;
+            this.resolvedAt = resolvedAt;
+        }
+
+        public Uri getUri() {
+            return uri;
+        }
+
+        public long getContentLength() {
+            return contentLength;
+        }
+    }
+}
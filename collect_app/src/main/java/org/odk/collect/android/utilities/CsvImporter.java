@@ -0,0 +1,161 @@
+package org.odk.collect.android.utilities;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.Nullable;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import au.com.bytecode.opencsv.CSVParser;
+import au.com.bytecode.opencsv.CSVReader;
+import timber.log.Timber;
+
+/**
+ * Streams the rows of a CSV file into a table. Every row is inserted with the same compiled
+ * statement and rows are committed in large batches, so importing doesn't allocate per row or
+ * pay for a transaction per row.
+ * <p>
+ * Indexes should be created after the import ({@link #importRows} inserts into whatever the table
+ * has at that point) and {@link #enableBulkWrites} can be used to turn off durability while
+ * building a database that can be recreated from the CSV.
+ */
+public class CsvImporter implements Closeable {
+
+    public static final int DEFAULT_ROWS_PER_TRANSACTION = 10000;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CountingInputStream inputStream;
+    private final CSVReader reader;
+    private final long totalBytes;
+    private final int rowsPerTransaction;
+
+    private CsvImporter(File csvFile, char separator, char quote, char escape, int rowsPerTransaction) throws IOException {
+        this.inputStream = new CountingInputStream(new BufferedInputStream(new FileInputStream(csvFile), BUFFER_SIZE));
+        this.reader = new CSVReader(new InputStreamReader(inputStream, "UTF-8"), separator, quote, escape);
+        this.totalBytes = csvFile.length();
+        this.rowsPerTransaction = rowsPerTransaction;
+    }
+
+    public static CsvImporter open(File csvFile) throws IOException {
+        return open(csvFile, CSVParser.DEFAULT_SEPARATOR, CSVParser.DEFAULT_QUOTE_CHARACTER, CSVParser.DEFAULT_ESCAPE_CHARACTER);
+    }
+
+    public static CsvImporter open(File csvFile, char separator, char quote, char escape) throws IOException {
+        return new CsvImporter(csvFile, separator, quote, escape, DEFAULT_ROWS_PER_TRANSACTION);
+    }
+
+    public static CsvImporter open(File csvFile, char separator, char quote, char escape, int rowsPerTransaction) throws IOException {
+        return new CsvImporter(csvFile, separator, quote, escape, rowsPerTransaction);
+    }
+
+    /**
+     * @return the next row of the file (usually called once before {@link #importRows} to read the
+     * headers) or null if there are no more rows
+     */
+    @Nullable
+    public String[] readRow() throws IOException {
+        return reader.readNext();
+    }
+
+    /**
+     * Inserts every remaining row of the file using {@code insertSql} (which should have a
+     * parameter for each value the {@link RowBinder} binds).
+     *
+     * @return the number of rows inserted
+     */
+    public long importRows(SQLiteDatabase db, String insertSql, RowBinder rowBinder, Listener listener) throws IOException {
+        SQLiteStatement statement = db.compileStatement(insertSql);
+
+        long rowCount = 0;
+        long rowsInTransaction = 0;
+        long lastReportedPercentage = -1;
+
+        db.beginTransaction();
+        try {
+            String[] row;
+            while (!listener.isCancelled() && (row = reader.readNext()) != null) {
+                statement.clearBindings();
+                if (!rowBinder.bind(row, rowCount, statement)) {
+                    continue;
+                }
+
+                statement.executeInsert();
+                rowCount++;
+
+                if (++rowsInTransaction == rowsPerTransaction) {
+                    db.setTransactionSuccessful();
+                    db.endTransaction();
+                    db.beginTransaction();
+                    rowsInTransaction = 0;
+                }
+
+                long percentage = totalBytes > 0 ? inputStream.getByteCount() * 100 / totalBytes : 100;
+                if (percentage != lastReportedPercentage) {
+                    lastReportedPercentage = percentage;
+                    listener.onProgress(inputStream.getByteCount(), totalBytes, rowCount);
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Stops the connection from waiting for writes to reach disk and keeps its rollback journal in
+     * memory. Has to be called outside of a transaction. A crash while importing can corrupt
+     * {@code db} with these settings, so they should only be used for databases that are
+     * thrown away and imported again if the import doesn't complete (never for a database
+     * shared with other data).
+     */
+    public static void enableBulkWrites(SQLiteDatabase db) {
+        try {
+            DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode=MEMORY", null);
+            db.execSQL("PRAGMA synchronous=OFF");
+        } catch (SQLiteException e) {
+            Timber.w(e);
+        }
+    }
+
+    public interface RowBinder {
+
+        /**
+         * Binds the values of {@code row} to {@code statement} (which has had its bindings
+         * cleared).
+         *
+         * @param rowNumber the number of rows inserted so far
+         * @return false if the row should be skipped
+         */
+        boolean bind(String[] row, long rowNumber, SQLiteStatement statement);
+    }
+
+    public interface Listener {
+
+        /**
+         * Called whenever another percent of the file has been read.
+         */
+        void onProgress(long bytesRead, long totalBytes, long rowCount);
+
+        boolean isCancelled();
+    }
+}
@@ -34,15 +34,15 @@ import org.odk.collect.forms.Form;
 import org.odk.collect.forms.instances.Instance;
 import org.odk.collect.shared.strings.Md5;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
@@ -55,10 +55,13 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
@@ -100,6 +103,7 @@ public class EncryptionUtils {
             "base64EncryptedElementSignature";
     private static final String NEW_LINE = "\n";
     private static final String ENCRYPTION_PROVIDER = "BC";
+    private static final int ENCRYPTION_BUFFER_SIZE = 64 * 1024;
 
     private EncryptionUtils() {
     }
@@ -176,11 +180,6 @@ public class EncryptionUtils {
             elementSignatureSource.append(value).append('\n');
         }
 
-        public void appendFileSignatureSource(File file) {
-            String md5Hash = Md5.getMd5Hash(file);
-            appendElementSignatureSource(file.getName() + "::" + md5Hash);
-        }
-
         public String getBase64EncryptedElementSignature() {
             // Step 0: construct the text of the elements in elementSignatureSource (done)
             //     Where...
@@ -259,13 +258,6 @@ public class EncryptionUtils {
      *                             be encrypted
      */
     public static EncryptedFormInformation getEncryptedFormInformation(Uri uri, InstanceMetadata instanceMetadata) throws EncryptionException {
-        // fetch the form information
-        String formId;
-        String formVersion;
-        PublicKey pk;
-
-        Form form = null;
-
         if (InstanceProviderAPI.CONTENT_ITEM_TYPE.equals(Collect.getInstance().getContentResolver().getType(uri))) {
             Instance instance = new InstancesRepositoryProvider(Collect.getInstance()).get().get(ContentUriHelper.getIdFromUri(uri));
             if (instance == null) {
@@ -274,24 +266,32 @@ public class EncryptionUtils {
                 throw new EncryptionException(msg, null);
             }
 
-            formId = instance.getFormId();
-            formVersion = instance.getFormVersion();
+            return getEncryptedFormInformation(instance.getFormId(), instance.getFormVersion(), instanceMetadata);
+        } else if (FormsProviderAPI.CONTENT_ITEM_TYPE.equals(Collect.getInstance().getContentResolver().getType(uri))) {
+            throw new IllegalArgumentException("Can't get encryption info for Form URI!");
+        } else {
+            throw new IllegalArgumentException("Can't get encryption info for " + uri);
+        }
+    }
 
-            List<Form> forms = new FormsRepositoryProvider(Collect.getInstance()).get().getAllByFormIdAndVersion(formId, formVersion);
+    /**
+     * Same as {@link #getEncryptedFormInformation(Uri, InstanceMetadata)} for an instance of the
+     * form with {@code formId} and {@code formVersion} that doesn't have to be in the database yet.
+     */
+    public static EncryptedFormInformation getEncryptedFormInformation(String formId, String formVersion, InstanceMetadata instanceMetadata) throws EncryptionException {
+        PublicKey pk;
 
-            // OK to finalize with form definition that was soft-deleted. OK if there are multiple
-            // forms with the same formid/version as long as only one is active (not deleted).
-            if (forms.isEmpty() || new FormsRepositoryProvider(Collect.getInstance()).get().getAllNotDeletedByFormIdAndVersion(formId, formVersion).size() > 1) {
-                String msg = TranslationHandler.getString(Collect.getInstance(), R.string.not_exactly_one_blank_form_for_this_form_id);
-                Timber.d(msg);
-                throw new EncryptionException(msg, null);
-            }
+        List<Form> forms = new FormsRepositoryProvider(Collect.getInstance()).get().getAllByFormIdAndVersion(formId, formVersion);
 
-            form = forms.get(0);
-        } else if (FormsProviderAPI.CONTENT_ITEM_TYPE.equals(Collect.getInstance().getContentResolver().getType(uri))) {
-            throw new IllegalArgumentException("Can't get encryption info for Form URI!");
+        // OK to finalize with form definition that was soft-deleted. OK if there are multiple
+        // forms with the same formid/version as long as only one is active (not deleted).
+        if (forms.isEmpty() || new FormsRepositoryProvider(Collect.getInstance()).get().getAllNotDeletedByFormIdAndVersion(formId, formVersion).size() > 1) {
+            String msg = TranslationHandler.getString(Collect.getInstance(), R.string.not_exactly_one_blank_form_for_this_form_id);
+            Timber.d(msg);
+            throw new EncryptionException(msg, null);
         }
 
+        Form form = forms.get(0);
         formId = form.getFormId();
         if (formId == null || formId.length() == 0) {
             String msg = TranslationHandler.getString(Collect.getInstance(), R.string.no_form_id_specified);
@@ -348,7 +348,14 @@ public class EncryptionUtils {
         return new EncryptedFormInformation(formId, formVersion, instanceMetadata, pk);
     }
 
-    private static void encryptFile(File file, EncryptedFormInformation formInfo)
+    /**
+     * Encrypts {@code file} to a ".enc" file next to it in a single pass: the plaintext is read
+     * once and both digested and encrypted as it streams through, so memory use doesn't depend on
+     * the size of the file. The encrypted file is only synced to disk once everything is written.
+     *
+     * @return the MD5 hash of the plaintext file (as used in the element signature)
+     */
+    private static String encryptFile(File file, Cipher cipher)
             throws IOException, EncryptionException {
         File encryptedFile = new File(file.getParentFile(), file.getName()
                 + ".enc");
@@ -358,42 +365,38 @@ public class EncryptionUtils {
                     + ". Perhaps the file is locked?");
         }
 
-        // add elementSignatureSource for this file...
-        formInfo.appendFileSignatureSource(file);
-
-        RandomAccessFile randomAccessFile = null;
-        CipherOutputStream cipherOutputStream = null;
-        try {
-            Cipher c = formInfo.getCipher();
+        try (InputStream fin = new FileInputStream(file);
+             FileOutputStream fout = new FileOutputStream(encryptedFile)) {
+            FileChannel channel = fout.getChannel();
+            MessageDigest md = MessageDigest.getInstance("MD5");
 
-            randomAccessFile = new RandomAccessFile(encryptedFile, "rws");
-            ByteArrayOutputStream encryptedData = new ByteArrayOutputStream();
-            cipherOutputStream = new CipherOutputStream(encryptedData, c);
-            InputStream fin = new FileInputStream(file);
-            byte[] buffer = new byte[2048];
+            byte[] buffer = new byte[ENCRYPTION_BUFFER_SIZE];
+            byte[] encrypted = new byte[cipher.getOutputSize(ENCRYPTION_BUFFER_SIZE) + IV_BYTE_LENGTH];
             int len = fin.read(buffer);
             while (len != -1) {
-                cipherOutputStream.write(buffer, 0, len);
+                md.update(buffer, 0, len);
+                writeFully(channel, encrypted, cipher.update(buffer, 0, len, encrypted));
                 len = fin.read(buffer);
             }
-            fin.close();
-            cipherOutputStream.flush();
-            cipherOutputStream.close();
 
-            randomAccessFile.write(encryptedData.toByteArray());
+            byte[] last = cipher.doFinal();
+            writeFully(channel, last, last.length);
+            channel.force(true);
 
             Timber.i("Encrpyted:%s -> %s", file.getName(), encryptedFile.getName());
+            return Md5.toHexString(md.digest());
         } catch (Exception e) {
             String msg = "Error encrypting: " + file.getName() + " -> "
                     + encryptedFile.getName();
             Timber.e(e, "%s due to %s ", msg, e.getMessage());
             throw new EncryptionException(msg, e);
-        } finally {
-            IOUtils.closeQuietly(cipherOutputStream);
+        }
+    }
 
-            if (randomAccessFile != null) {
-                randomAccessFile.close();
-            }
+    private static void writeFully(FileChannel channel, byte[] bytes, int length) throws IOException {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, 0, length);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
         }
     }
 
@@ -430,7 +433,8 @@ public class EncryptionUtils {
     }
 
     private static List<File> encryptSubmissionFiles(File instanceXml,
-                                                     File submissionXml, EncryptedFormInformation formInfo)
+                                                     File submissionXml, EncryptedFormInformation formInfo,
+                                                     boolean encryptInParallel)
             throws IOException, EncryptionException {
         // NOTE: assume the directory containing the instanceXml contains ONLY
         // files related to this one instance.
@@ -459,17 +463,80 @@ public class EncryptionUtils {
                 filesToProcess.add(f);
             }
         }
-        // encrypt here...
-        for (File f : filesToProcess) {
-            encryptFile(f, formInfo);
+        // encrypt the submission.xml as the last file...
+        List<File> filesToEncrypt = new ArrayList<>(filesToProcess);
+        filesToEncrypt.add(submissionXml);
+
+        // ciphers have to be created in file order as each one gets the next iv
+        List<Cipher> ciphers = new ArrayList<>();
+        for (File f : filesToEncrypt) {
+            try {
+                ciphers.add(formInfo.getCipher());
+            } catch (InvalidKeyException | InvalidAlgorithmParameterException | NoSuchAlgorithmException | NoSuchPaddingException e) {
+                String msg = "Error encrypting: " + f.getName();
+                Timber.e(e, "%s due to %s ", msg, e.getMessage());
+                throw new EncryptionException(msg, e);
+            }
         }
 
-        // encrypt the submission.xml as the last file...
-        encryptFile(submissionXml, formInfo);
+        List<String> md5Hashes = encryptInParallel && filesToEncrypt.size() > 1
+                ? encryptFilesInParallel(filesToEncrypt, ciphers)
+                : encryptFiles(filesToEncrypt, ciphers);
+
+        // add elementSignatureSource for the files in the same order...
+        for (int i = 0; i < filesToEncrypt.size(); i++) {
+            formInfo.appendElementSignatureSource(filesToEncrypt.get(i).getName() + "::" + md5Hashes.get(i));
+        }
 
         return filesToProcess;
     }
 
+    private static List<String> encryptFiles(List<File> files, List<Cipher> ciphers)
+            throws IOException, EncryptionException {
+        List<String> md5Hashes = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            md5Hashes.add(encryptFile(files.get(i), ciphers.get(i)));
+        }
+
+        return md5Hashes;
+    }
+
+    private static List<String> encryptFilesInParallel(List<File> files, List<Cipher> ciphers)
+            throws IOException, EncryptionException {
+        int threads = Math.min(files.size(), Math.max(1, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                File file = files.get(i);
+                Cipher cipher = ciphers.get(i);
+                futures.add(executor.submit(() -> encryptFile(file, cipher)));
+            }
+
+            List<String> md5Hashes = new ArrayList<>();
+            for (Future<String> future : futures) {
+                md5Hashes.add(future.get());
+            }
+
+            return md5Hashes;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof EncryptionException) {
+                throw (EncryptionException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else {
+                throw new EncryptionException("Error encrypting submission files", cause);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EncryptionException("Interrupted while encrypting submission files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Constructs the encrypted attachments, encrypted form xml, and the
      * plaintext submission manifest (with signature) for the form submission.
@@ -479,6 +546,17 @@ public class EncryptionUtils {
     public static void generateEncryptedSubmission(File instanceXml,
                                                    File submissionXml, EncryptedFormInformation formInfo)
             throws IOException, EncryptionException {
+        generateEncryptedSubmission(instanceXml, submissionXml, formInfo, false);
+    }
+
+    /**
+     * Same as {@link #generateEncryptedSubmission(File, File, EncryptedFormInformation)} but
+     * optionally encrypts the attachments in parallel (one thread per core at most).
+     */
+    public static void generateEncryptedSubmission(File instanceXml,
+                                                   File submissionXml, EncryptedFormInformation formInfo,
+                                                   boolean encryptInParallel)
+            throws IOException, EncryptionException {
         // submissionXml is the submission data to be published to Aggregate
         if (!submissionXml.exists() || !submissionXml.isFile()) {
             throw new IOException("No submission.xml found");
@@ -488,7 +566,7 @@ public class EncryptionUtils {
 
         // Step 1: encrypt the submission and all the media files...
         List<File> mediaFiles = encryptSubmissionFiles(instanceXml,
-                submissionXml, formInfo);
+                submissionXml, formInfo, encryptInParallel);
 
         // Step 2: build the encrypted-submission manifest (overwrites
         // submission.xml)...
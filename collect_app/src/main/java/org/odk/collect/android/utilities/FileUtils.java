@@ -34,6 +34,7 @@ import org.javarosa.core.model.instance.TreeReference;
 import org.javarosa.xform.util.XFormUtils;
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -87,6 +88,12 @@ public class FileUtils {
     /** Valid XML stub that can be parsed without error. */
     public static final String STUB_XML = "<?xml version='1.0' ?><stub />";
 
+    /**
+     * Held while forms are parsed (see {@link #parseForm(String, String)}) as JavaRosa's parser
+     * isn't thread safe.
+     */
+    private static final Object FORM_PARSE_LOCK = new Object();
+
     static int bufSize = 16 * 1024; // May be set by unit test
 
     private FileUtils() {
@@ -230,10 +237,46 @@ public class FileUtils {
      * by the specification and will always be included. Title and version are optionally included.
      * If the form definition contains a submission block, any or all of submission URI, base 64 RSA
      * public key, auto-delete and auto-send may be included.
+     * <p>
+     * The form's head is scanned with {@link FormMetadataScanner} and the form is only fully parsed
+     * if it has a geopoint (to find the geometry XPath) or the scan fails (so that the parser
+     * reports what's wrong with it). Full parses go through {@link #parseForm(String, String)} so
+     * this can be called from several threads at once.
      */
     public static HashMap<String, String> getMetadataFromFormDefinition(File formDefinitionXml) {
-        FormDef formDef = XFormUtils.getFormFromFormXml(formDefinitionXml.getAbsolutePath(), "jr://file/" + LAST_SAVED_FILENAME);
+        FormMetadataScanner scanner = new FormMetadataScanner();
+
+        HashMap<String, String> fields;
+        try {
+            fields = scanner.scan(formDefinitionXml);
+        } catch (IOException | XmlPullParserException e) {
+            Timber.w(e, "Falling back to parsing %s", formDefinitionXml.getName());
+            fields = null;
+        }
+
+        if (fields == null) {
+            return getMetadataFromFormDef(parseFormDefinition(formDefinitionXml));
+        }
+
+        fields.put(GEOMETRY_XPATH, scanner.hasGeopoint() ? getOverallFirstGeoPoint(parseFormDefinition(formDefinitionXml)) : null);
+        return fields;
+    }
+
+    private static FormDef parseFormDefinition(File formDefinitionXml) {
+        return parseForm(formDefinitionXml.getAbsolutePath(), "jr://file/" + LAST_SAVED_FILENAME);
+    }
+
+    /**
+     * Parses the form at {@code formPath} with JavaRosa. Every form parse in the app should go
+     * through here: JavaRosa's parser isn't thread safe so only one form is parsed at a time.
+     */
+    public static FormDef parseForm(String formPath, String lastSavedSrc) {
+        synchronized (FORM_PARSE_LOCK) {
+            return XFormUtils.getFormFromFormXml(formPath, lastSavedSrc);
+        }
+    }
 
+    private static HashMap<String, String> getMetadataFromFormDef(FormDef formDef) {
         final HashMap<String, String> fields = new HashMap<>();
 
         fields.put(TITLE, formDef.getTitle());
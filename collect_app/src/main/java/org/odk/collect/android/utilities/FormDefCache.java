@@ -1,23 +1,58 @@
 package org.odk.collect.android.utilities;
 
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
 import org.javarosa.core.model.FormDef;
 import org.javarosa.core.util.externalizable.ExtUtil;
+import org.odk.collect.android.BuildConfig;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
 import org.odk.collect.shared.strings.Md5;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.zip.CRC32;
 
 import timber.log.Timber;
 
-/** Methods for reading from and writing to the FormDef cache */
+/**
+ * Methods for reading from and writing to the FormDef cache.
+ * <p>
+ * Cache files start with a header recording the format, the JavaRosa and Collect versions that
+ * wrote them, the MD5 hash of the form XML and the length and CRC32 of the serialized FormDef
+ * that follows. Files written by a different version (or that are damaged) are discarded
+ * instead of being deserialized.
+ * <p>
+ * Recently used forms are also kept in memory so that opening the same form again doesn't need
+ * to read from disk. The serialized form is kept rather than the FormDef itself as a FormDef
+ * is modified as it's filled in.
+ */
 public class FormDefCache {
 
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x4F444B46; // "ODKF"
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String COLLECT_VERSION = BuildConfig.VERSION_NAME + "-" + BuildConfig.VERSION_CODE;
+
+    private static final LruCache<String, byte[]> MEMORY_CACHE = new LruCache<String, byte[]>((int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE)) {
+        @Override
+        protected int sizeOf(String key, byte[] value) {
+            return value.length;
+        }
+    };
+
     private FormDefCache() {
         // Private constructor
     }
@@ -31,18 +66,24 @@ public class FormDefCache {
      * @param formPath - The form XML file
      */
     public static void writeCache(FormDef formDef, String formPath) throws IOException {
+        writeCache(formDef, FormDefCache.getCacheFile(new File(formPath)));
+    }
+
+    /**
+     * Serializes a FormDef to {@code cachedFormDefFile} (via a temporary file in the same
+     * directory).
+     */
+    public static void writeCache(FormDef formDef, File cachedFormDefFile) throws IOException {
         final long formSaveStart = System.currentTimeMillis();
-        File cachedFormDefFile = FormDefCache.getCacheFile(new File(formPath));
-        final File tempCacheFile = File.createTempFile("cache", null,
-                new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.CACHE)));
+        final File tempCacheFile = File.createTempFile("cache", null, cachedFormDefFile.getParentFile());
         Timber.i("Started saving %s to the cache via temp file %s",
                 formDef.getTitle(), tempCacheFile.getName());
 
         Exception caughtException = null;
+        byte[] payload = null;
         try {
-            DataOutputStream dos = new DataOutputStream(new FileOutputStream(tempCacheFile));
-            formDef.writeExternal(dos);
-            dos.close();
+            payload = serializeFormDef(formDef);
+            writePayload(tempCacheFile, getFormMd5(cachedFormDefFile), payload);
         } catch (IOException exception) {
             caughtException = exception;
         }
@@ -58,6 +99,7 @@ public class FormDefCache {
             }
         } else {
             if (tempCacheFile.renameTo(cachedFormDefFile)) {
+                MEMORY_CACHE.put(cachedFormDefFile.getAbsolutePath(), payload);
                 Timber.i("Renamed %s to %s",
                         tempCacheFile.getName(), cachedFormDefFile.getName());
                 Timber.i("Caching %s took %.3f seconds.", formDef.getTitle(),
@@ -79,44 +121,155 @@ public class FormDefCache {
      * @return a FormDef, or null if the form is not present in the cache
      */
     public static FormDef readCache(File formXml) {
-        final File cachedForm = getCacheFile(formXml);
-        if (cachedForm.exists()) {
-            Timber.i("Attempting to load %s from cached file: %s.", formXml.getName(), cachedForm.getName());
-            final long start = System.currentTimeMillis();
+        return readCachedForm(getCacheFile(formXml));
+    }
+
+    /**
+     * @param cachedForm the cache file for the form (see {@link #getCacheFile(File, String)})
+     * @return a FormDef, or null if the form is not present in the cache
+     */
+    @Nullable
+    public static FormDef readCachedForm(File cachedForm) {
+        final String key = cachedForm.getAbsolutePath();
+        final long start = System.currentTimeMillis();
+
+        byte[] payload = MEMORY_CACHE.get(key);
+        if (payload == null && cachedForm.exists()) {
+            Timber.i("Attempting to load from cached file: %s.", cachedForm.getName());
 
             try {
-                final FormDef deserializedFormDef = deserializeFormDef(cachedForm);
-                if (deserializedFormDef != null) {
-                    Timber.i("Loaded in %.3f seconds.", (System.currentTimeMillis() - start) / 1000F);
-                    return deserializedFormDef;
-                }
+                payload = readPayload(cachedForm);
+                MEMORY_CACHE.put(key, payload);
+            } catch (IOException e) {
+                // New .formdef will be created from XML
+                Timber.w("Cache file %s can't be used (%s). Deleting it.", cachedForm.getAbsolutePath(), e.getMessage());
+                cachedForm.delete();
+                return null;
+            }
+        }
+
+        if (payload != null) {
+            try {
+                final FormDef deserializedFormDef = deserializeFormDef(payload);
+                Timber.i("Loaded in %.3f seconds.", (System.currentTimeMillis() - start) / 1000F);
+                return deserializedFormDef;
             } catch (Exception e) {
                 // New .formdef will be created from XML
                 Timber.w("Deserialization FAILED! Deleting cache file: %s", cachedForm.getAbsolutePath());
                 Timber.w(e);
+                MEMORY_CACHE.remove(key);
                 cachedForm.delete();
             }
         }
+
         return null;
     }
 
     /**
-     * Builds and returns a File object for the cached version of a form.
+     * Drops the forms kept in memory (cache files are left alone).
+     */
+    public static void clearMemoryCache() {
+        MEMORY_CACHE.evictAll();
+    }
+
+    /**
+     * Builds and returns a File object for the cached version of a form. The form's contents are
+     * hashed (rather than looked up in the forms hash index) so that a form that's been replaced
+     * without its size or timestamp changing can't be matched to the old form's cache file.
      * @param formXml the File containing the XML form
      * @return a File object
      */
     private static File getCacheFile(File formXml) {
-        return new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.CACHE) + File.separator +
-                Md5.getMd5Hash(formXml) + ".formdef");
+        StoragePathProvider storagePathProvider = new StoragePathProvider();
+        String formMd5 = Md5.getMd5Hash(formXml);
+        return getCacheFile(new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.CACHE)), formMd5);
+    }
+
+    /**
+     * @param cacheDir the cache directory of the project the form belongs to
+     * @param formMd5  the MD5 hash of the form XML
+     */
+    public static File getCacheFile(File cacheDir, String formMd5) {
+        return new File(cacheDir, formMd5 + ".formdef");
+    }
+
+    private static String getFormMd5(File cachedFormDefFile) {
+        String name = cachedFormDefFile.getName();
+        return name.substring(0, name.lastIndexOf('.'));
     }
 
-    private static FormDef deserializeFormDef(File serializedFormDef) throws Exception {
+    private static byte[] serializeFormDef(FormDef formDef) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        try (DataOutputStream dos = new DataOutputStream(bytes)) {
+            formDef.writeExternal(dos);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static FormDef deserializeFormDef(byte[] payload) throws Exception {
         FormDef fd;
-        try (DataInputStream dis = new DataInputStream(new FileInputStream(serializedFormDef))) {
+        try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload))) {
             fd = new FormDef();
             fd.readExternal(dis, ExtUtil.defaultPrototypes());
         }
 
         return fd;
     }
+
+    private static void writePayload(File file, String formMd5, byte[] payload) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+            dos.writeUTF(BuildConfig.JAVAROSA_VERSION);
+            dos.writeUTF(COLLECT_VERSION);
+            dos.writeUTF(formMd5);
+            dos.writeInt(payload.length);
+            dos.writeLong(checksum(payload));
+            dos.write(payload);
+        }
+    }
+
+    /**
+     * @return the serialized FormDef from {@code file}
+     * @throws IOException if the file can't be read or wasn't written by this version of the
+     *                     cache
+     */
+    private static byte[] readPayload(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (dis.readInt() != MAGIC || dis.readInt() != FORMAT_VERSION) {
+                throw new IOException("unknown format");
+            }
+
+            String javarosaVersion = dis.readUTF();
+            String collectVersion = dis.readUTF();
+            if (!javarosaVersion.equals(BuildConfig.JAVAROSA_VERSION) || !collectVersion.equals(COLLECT_VERSION)) {
+                throw new IOException("written by JavaRosa " + javarosaVersion + " and Collect " + collectVersion);
+            }
+
+            if (!dis.readUTF().equals(getFormMd5(file))) {
+                throw new IOException("form hash doesn't match");
+            }
+
+            int length = dis.readInt();
+            long checksum = dis.readLong();
+            if (length < 0 || length > file.length()) {
+                throw new IOException("invalid length");
+            }
+
+            byte[] payload = new byte[length];
+            dis.readFully(payload);
+            if (checksum(payload) != checksum) {
+                throw new IOException("checksum doesn't match");
+            }
+
+            return payload;
+        }
+    }
+
+    private static long checksum(byte[] payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, payload.length);
+        return crc32.getValue();
+    }
 }
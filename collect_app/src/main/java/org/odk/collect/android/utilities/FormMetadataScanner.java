@@ -0,0 +1,152 @@
+package org.odk.collect.android.utilities;
+
+import androidx.annotation.Nullable;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.odk.collect.android.utilities.FileUtils.AUTO_DELETE;
+import static org.odk.collect.android.utilities.FileUtils.AUTO_SEND;
+import static org.odk.collect.android.utilities.FileUtils.BASE64_RSA_PUBLIC_KEY;
+import static org.odk.collect.android.utilities.FileUtils.FORMID;
+import static org.odk.collect.android.utilities.FileUtils.SUBMISSIONURI;
+import static org.odk.collect.android.utilities.FileUtils.TITLE;
+import static org.odk.collect.android.utilities.FileUtils.VERSION;
+
+/**
+ * Reads a blank form's metadata (title, id, version and submission attributes) by pull-parsing
+ * its head instead of building a whole FormDef. Parsing stops at the body. The geometry XPath
+ * isn't read as finding it needs the form's structure but {@link #hasGeopoint()} tells callers
+ * whether it's worth parsing the form to find one.
+ */
+class FormMetadataScanner {
+
+    private boolean hasGeopoint;
+
+    /**
+     * @return the metadata fields (keyed like {@link FileUtils#getMetadataFromFormDefinition}) or
+     * null if the form is missing its title or id, in which case only a full parse can explain
+     * what's wrong with it
+     */
+    @Nullable
+    HashMap<String, String> scan(File formXml) throws IOException, XmlPullParserException {
+        hasGeopoint = false;
+
+        String title = null;
+        String formId = null;
+        String version = null;
+        HashMap<String, String> submission = null;
+
+        try (InputStream inputStream = new FileInputStream(formXml)) {
+            KXmlParser parser = new KXmlParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(inputStream, null);
+
+            List<String> path = new ArrayList<>();
+            boolean mainInstanceRead = false;
+
+            int event;
+            while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.END_TAG) {
+                    path.remove(path.size() - 1);
+                    continue;
+                } else if (event != XmlPullParser.START_TAG) {
+                    continue;
+                }
+
+                String name = parser.getName();
+                String parent = path.isEmpty() ? null : path.get(path.size() - 1);
+
+                if (name.equals("body")) {
+                    break;
+                } else if (name.equals("title") && "head".equals(parent)) {
+                    title = parser.nextText().trim();
+                    continue;
+                } else if (name.equals("instance") && "model".equals(parent) && !mainInstanceRead) {
+                    // The main instance is the model's first instance and its root has the metadata
+                    mainInstanceRead = true;
+                    if (parser.nextTag() == XmlPullParser.START_TAG) {
+                        formId = parser.getAttributeValue(null, "id");
+                        version = parser.getAttributeValue(null, "version");
+                        skip(parser); // the root
+                        skip(parser); // anything after it in the instance
+                    }
+                    continue;
+                } else if (name.equals("instance")) {
+                    skip(parser);
+                    continue;
+                } else if (name.equals("submission") && "model".equals(parent) && parser.getAttributeValue(null, "id") == null) {
+                    submission = new HashMap<>();
+                    submission.put(SUBMISSIONURI, parser.getAttributeValue(null, "action"));
+                    submission.put(BASE64_RSA_PUBLIC_KEY, parser.getAttributeValue(null, "base64RsaPublicKey"));
+                    submission.put(AUTO_DELETE, parser.getAttributeValue(null, "auto-delete"));
+                    submission.put(AUTO_SEND, parser.getAttributeValue(null, "auto-send"));
+                } else if (name.equals("bind") && isGeopoint(parser.getAttributeValue(null, "type"))) {
+                    hasGeopoint = true;
+                }
+
+                path.add(name);
+            }
+        }
+
+        if (title == null || formId == null) {
+            return null;
+        }
+
+        HashMap<String, String> fields = new HashMap<>();
+        fields.put(TITLE, title);
+        fields.put(FORMID, formId);
+        fields.put(VERSION, version != null && !version.trim().isEmpty() ? version : null);
+
+        if (submission != null) {
+            fields.put(SUBMISSIONURI, submission.get(SUBMISSIONURI));
+
+            String key = submission.get(BASE64_RSA_PUBLIC_KEY);
+            if (key != null && key.trim().length() > 0) {
+                fields.put(BASE64_RSA_PUBLIC_KEY, key.trim());
+            }
+
+            fields.put(AUTO_DELETE, submission.get(AUTO_DELETE));
+            fields.put(AUTO_SEND, submission.get(AUTO_SEND));
+        }
+
+        return fields;
+    }
+
+    /**
+     * @return whether the last form scanned binds any node as a geopoint
+     */
+    boolean hasGeopoint() {
+        return hasGeopoint;
+    }
+
+    private static boolean isGeopoint(@Nullable String type) {
+        return type != null && (type.equals("geopoint") || type.endsWith(":geopoint"));
+    }
+
+    /**
+     * Skips past the end of the element the parser is in (or at the start of).
+     */
+    private static void skip(XmlPullParser parser) throws IOException, XmlPullParserException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = parser.next();
+            if (event == XmlPullParser.START_TAG) {
+                depth++;
+            } else if (event == XmlPullParser.END_TAG) {
+                depth--;
+            } else if (event == XmlPullParser.END_DOCUMENT) {
+                throw new XmlPullParserException("Unexpected end of document", parser, null);
+            }
+        }
+    }
+}
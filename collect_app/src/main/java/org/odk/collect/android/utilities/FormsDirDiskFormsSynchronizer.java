@@ -4,12 +4,14 @@ import android.database.SQLException;
 
 import org.odk.collect.android.R;
 import org.odk.collect.android.application.Collect;
+import org.odk.collect.android.database.forms.FormsHashIndex;
 import org.odk.collect.android.formmanagement.DiskFormsSynchronizer;
+import org.odk.collect.android.formmanagement.FormDefCompiler;
 import org.odk.collect.android.injection.DaggerUtils;
 import org.odk.collect.android.storage.StorageSubdirectory;
 import org.odk.collect.forms.Form;
 import org.odk.collect.forms.FormsRepository;
-import org.odk.collect.shared.strings.Md5;
+import org.odk.collect.shared.FileHashIndex;
 import org.odk.collect.shared.strings.Validator;
 
 import java.io.File;
@@ -18,23 +20,49 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import androidx.annotation.Nullable;
 import timber.log.Timber;
 
 public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
 
+    private static final int MAX_PARSING_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
     private static int counter;
 
     private final FormsRepository formsRepository;
     private final String formsDir;
+    private final FileHashIndex hashIndex;
+    private final FormDefCompiler formDefCompiler;
 
     public FormsDirDiskFormsSynchronizer() {
-        this(DaggerUtils.getComponent(Collect.getInstance()).formsRepositoryProvider().get(), DaggerUtils.getComponent(Collect.getInstance()).storagePathProvider().getOdkDirPath(StorageSubdirectory.FORMS));
+        this(DaggerUtils.getComponent(Collect.getInstance()).formsRepositoryProvider().get(),
+                DaggerUtils.getComponent(Collect.getInstance()).storagePathProvider().getOdkDirPath(StorageSubdirectory.FORMS),
+                FormsHashIndex.get(DaggerUtils.getComponent(Collect.getInstance()).storagePathProvider().getOdkDirPath(StorageSubdirectory.METADATA)),
+                new FormDefCompiler(new File(DaggerUtils.getComponent(Collect.getInstance()).storagePathProvider().getOdkDirPath(StorageSubdirectory.CACHE))));
     }
 
     public FormsDirDiskFormsSynchronizer(FormsRepository formsRepository, String formsDir) {
+        this(formsRepository, formsDir, new FileHashIndex());
+    }
+
+    public FormsDirDiskFormsSynchronizer(FormsRepository formsRepository, String formsDir, FileHashIndex hashIndex) {
+        this(formsRepository, formsDir, hashIndex, null);
+    }
+
+    /**
+     * @param formDefCompiler used to compile forms into the FormDef cache once they've been
+     *                        synced (or null if they shouldn't be)
+     */
+    public FormsDirDiskFormsSynchronizer(FormsRepository formsRepository, String formsDir, FileHashIndex hashIndex, @Nullable FormDefCompiler formDefCompiler) {
         this.formsRepository = formsRepository;
         this.formsDir = formsDir;
+        this.hashIndex = hashIndex;
+        this.formDefCompiler = formDefCompiler;
     }
 
     @Override
@@ -63,8 +91,8 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
                 List<File> formsToAdd = filterFormsToAdd(formDefs, instance);
 
                 // Step 2: quickly run through and figure out what files we need to
-                // parse and update; this is quick, as we only calculate the md5
-                // and see if it has changed.
+                // parse and update; this is quick, as the md5 is only recalculated
+                // for files that changed on disk since they were last hashed.
                 List<IdFile> uriToUpdate = new ArrayList<>();
                 List<Form> forms = formsRepository.getAll();
                 for (Form form : forms) {
@@ -77,12 +105,14 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
                         // remove it from the list of forms (we only want forms
                         // we haven't added at the end)
                         formsToAdd.remove(sqlFile);
-                        String md5Computed = Md5.getMd5Hash(sqlFile);
+                        String md5Computed = hashIndex.getMd5Hash(sqlFile);
                         if (md5Computed == null || md5 == null || !md5Computed.equals(md5)) {
                             // Probably someone overwrite the file on the sdcard
                             // So re-parse it and update it's information
                             Long id = form.getDbId();
                             uriToUpdate.add(new IdFile(id, sqlFile));
+                        } else {
+                            compileInBackground(sqlFile, md5);
                         }
                     } else {
                         //File not found in sdcard but file path found in database
@@ -101,18 +131,23 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
 
                 // Step3: go through uriToUpdate to parse and update each in turn.
                 // Note: buildContentValues calls getMetadataFromFormDefinition which parses the
-                // form XML. This takes time for large forms and/or slow devices.
+                // form XML. This takes time for large forms and/or slow devices so the forms are
+                // parsed in parallel.
                 Collections.shuffle(uriToUpdate); // Big win if multiple DiskSyncTasks running
+                List<File> filesToUpdate = new ArrayList<>();
                 for (IdFile entry : uriToUpdate) {
+                    filesToUpdate.add(entry.file);
+                }
+
+                List<ParsedForm> updatedForms = parseForms(filesToUpdate);
+                for (int i = 0; i < uriToUpdate.size(); i++) {
+                    IdFile entry = uriToUpdate.get(i);
                     File formDefFile = entry.file;
                     // Probably someone overwrite the file on the sdcard
                     // So re-parse it and update it's information
-                    Form form;
-
-                    try {
-                        form = parseForm(formDefFile);
-                    } catch (IllegalArgumentException e) {
-                        errors.append(e.getMessage()).append("\r\n");
+                    ParsedForm parsedForm = updatedForms.get(i);
+                    if (parsedForm.error != null) {
+                        errors.append(parsedForm.error.getMessage()).append("\r\n");
                         File badFile = new File(formDefFile.getParentFile(),
                                 formDefFile.getName() + ".bad");
                         badFile.delete();
@@ -120,34 +155,40 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
                         continue;
                     }
 
-                    formsRepository.save(new Form.Builder(form)
+                    formsRepository.save(new Form.Builder(parsedForm.form)
                             .dbId(entry.id)
                             .build());
+                    compileInBackground(formDefFile, null);
                 }
                 uriToUpdate.clear();
 
                 // Step 4: go through the newly-discovered files in xFormsToAdd and add them.
-                // This is slow because buildContentValues(...) is slow.
+                // This is slow because buildContentValues(...) is slow so the forms are parsed in
+                // parallel.
                 //
                 Collections.shuffle(formsToAdd); // Big win if multiple DiskSyncTasks running
-                while (!formsToAdd.isEmpty()) {
-                    File formDefFile = formsToAdd.remove(0);
 
-                    // Since parsing is so slow, if there are multiple tasks,
-                    // they may have already updated the database.
-                    // Skip this file if that is the case.
+                // Since parsing is so slow, if there are multiple tasks,
+                // they may have already updated the database.
+                // Skip files where that is the case.
+                List<File> filesToAdd = new ArrayList<>();
+                for (File formDefFile : formsToAdd) {
                     if (formsRepository.getOneByPath(formDefFile.getAbsolutePath()) != null) {
                         Timber.i("[%d] skipping -- definition already recorded: %s", instance, formDefFile.getAbsolutePath());
-                        continue;
+                    } else {
+                        filesToAdd.add(formDefFile);
                     }
+                }
+                formsToAdd.clear();
 
-                    // Parse it for the first time...
-                    Form form;
+                List<ParsedForm> addedForms = parseForms(filesToAdd);
+                for (int i = 0; i < filesToAdd.size(); i++) {
+                    File formDefFile = filesToAdd.get(i);
 
-                    try {
-                        form = parseForm(formDefFile);
-                    } catch (IllegalArgumentException e) {
-                        errors.append(e.getMessage()).append("\r\n");
+                    // Parse it for the first time...
+                    ParsedForm parsedForm = addedForms.get(i);
+                    if (parsedForm.error != null) {
+                        errors.append(parsedForm.error.getMessage()).append("\r\n");
                         File badFile = new File(formDefFile.getParentFile(),
                                 formDefFile.getName() + ".bad");
                         badFile.delete();
@@ -159,7 +200,8 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
                     try {
                         // insert failures are OK and expected if multiple
                         // DiskSync scanners are active.
-                        formsRepository.save(form);
+                        formsRepository.save(parsedForm.form);
+                        compileInBackground(formDefFile, null);
                     } catch (SQLException e) {
                         Timber.i("[%d] %s", instance, e.toString());
                     }
@@ -172,6 +214,8 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
             }
             return statusMessage;
         } finally {
+            hashIndex.prune();
+            hashIndex.flush();
             Timber.i("[%d] doInBackground ends!", instance);
         }
     }
@@ -199,6 +243,60 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
         return !ignoredFile && (xmlFile || xhtmlFile);
     }
 
+    /**
+     * Parses {@code formDefFiles} on up to {@link #MAX_PARSING_THREADS} threads. Only the metadata
+     * scans run in parallel: forms that need a full parse take turns (see
+     * {@link FileUtils#parseForm(String, String)}).
+     *
+     * @return the result of parsing each file in the same order as the files
+     */
+    private List<ParsedForm> parseForms(List<File> formDefFiles) {
+        List<ParsedForm> parsedForms = new ArrayList<>();
+        if (formDefFiles.isEmpty()) {
+            return parsedForms;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_PARSING_THREADS, formDefFiles.size()));
+        try {
+            List<Future<ParsedForm>> futures = new ArrayList<>();
+            for (File formDefFile : formDefFiles) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return new ParsedForm(parseForm(formDefFile), null);
+                    } catch (IllegalArgumentException e) {
+                        return new ParsedForm(null, e);
+                    }
+                }));
+            }
+
+            for (Future<ParsedForm> future : futures) {
+                try {
+                    parsedForms.add(future.get());
+                } catch (ExecutionException e) {
+                    // parseForm doesn't throw checked exceptions
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    } else {
+                        throw (RuntimeException) e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return parsedForms;
+    }
+
+    private void compileInBackground(File formDefFile, @Nullable String md5) {
+        if (formDefCompiler != null) {
+            formDefCompiler.enqueue(formDefFile, md5);
+        }
+    }
+
     private Form parseForm(File formDefFile) throws IllegalArgumentException {
         // Probably someone overwrite the file on the sdcard
         // So re-parse it and update it's information
@@ -261,6 +359,16 @@ public class FormsDirDiskFormsSynchronizer implements DiskFormsSynchronizer {
         return builder.build();
     }
 
+    private static class ParsedForm {
+        public final Form form;
+        public final IllegalArgumentException error;
+
+        ParsedForm(Form form, IllegalArgumentException error) {
+            this.form = form;
+            this.error = error;
+        }
+    }
+
     private static class IdFile {
         public final Long id;
         public final File file;
@@ -2,6 +2,7 @@ package org.odk.collect.android.utilities
 
 import android.content.Context
 import org.odk.collect.android.database.instances.DatabaseInstancesRepository
+import org.odk.collect.android.database.instances.DatabaseUploadProgressRepository
 import org.odk.collect.android.storage.StoragePathProvider
 import org.odk.collect.android.storage.StorageSubdirectory
 import org.odk.collect.forms.instances.InstancesRepository
@@ -20,4 +21,12 @@ class InstancesRepositoryProvider @JvmOverloads constructor(
             System::currentTimeMillis
         )
     }
+
+    @JvmOverloads
+    fun getUploadProgressRepository(projectId: String? = null): DatabaseUploadProgressRepository {
+        return DatabaseUploadProgressRepository(
+            context,
+            storagePathProvider.getOdkDirPath(StorageSubdirectory.METADATA, projectId)
+        )
+    }
 }
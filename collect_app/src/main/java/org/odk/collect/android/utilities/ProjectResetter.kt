@@ -15,6 +15,7 @@
  */
 package org.odk.collect.android.utilities
 
+import org.odk.collect.android.database.DatabaseConnection
 import org.odk.collect.android.fastexternalitemset.ItemsetDbAdapter
 import org.odk.collect.android.logic.PropertyManager
 import org.odk.collect.android.preferences.source.SettingsProvider
@@ -71,7 +72,9 @@ class ProjectResetter(
     private fun resetForms() {
         formsRepositoryProvider.get().deleteAll()
 
-        File(storagePathProvider.getOdkDirPath(StorageSubdirectory.METADATA) + File.separator + ItemsetDbAdapter.DATABASE_NAME).delete()
+        val metadataPath = storagePathProvider.getOdkDirPath(StorageSubdirectory.METADATA)
+        DatabaseConnection.close(metadataPath, ItemsetDbAdapter.DATABASE_NAME)
+        File(metadataPath + File.separator + ItemsetDbAdapter.DATABASE_NAME).delete()
 
         if (!deleteFolderContent(storagePathProvider.getOdkDirPath(StorageSubdirectory.FORMS))) {
             failedResetActions.add(ResetAction.RESET_FORMS)
@@ -85,6 +88,7 @@ class ProjectResetter(
     }
 
     private fun resetCache() {
+        FormDefCache.clearMemoryCache()
         if (!deleteFolderContent(storagePathProvider.getOdkDirPath(StorageSubdirectory.CACHE))) {
             failedResetActions.add(ResetAction.RESET_CACHE)
         }
@@ -3,15 +3,24 @@ package org.odk.collect.android.database;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.odk.collect.android.database.forms.DatabaseFormsRepository;
+import org.odk.collect.forms.Form;
 import org.odk.collect.forms.FormsRepository;
+import org.odk.collect.formstest.FormUtils;
 import org.odk.collect.formstest.FormsRepositoryTest;
 import org.odk.collect.shared.TempFiles;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.function.Supplier;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
 @RunWith(AndroidJUnit4.class)
 public class DatabaseFormsRepositoryTest extends FormsRepositoryTest {
 
@@ -33,4 +42,16 @@ public class DatabaseFormsRepositoryTest extends FormsRepositoryTest {
     public String getFormFilesPath() {
         return formsDir.getAbsolutePath();
     }
+
+    @Test
+    public void save_andDelete_persistFormFileHashes() throws Exception {
+        FormsRepository repository = buildSubject();
+        File hashIndexFile = new File(dbDir, DatabaseConstants.FORMS_HASH_INDEX_NAME);
+
+        Form form = repository.save(FormUtils.buildForm("id", "1", getFormFilesPath()).build());
+        assertThat(FileUtils.readFileToString(hashIndexFile, StandardCharsets.UTF_8), containsString(form.getFormFilePath()));
+
+        repository.delete(form.getDbId());
+        assertThat(FileUtils.readFileToString(hashIndexFile, StandardCharsets.UTF_8), not(containsString(form.getFormFilePath())));
+    }
 }
@@ -0,0 +1,174 @@
+package org.odk.collect.android.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.database.forms.DatabaseFormColumns;
+import org.odk.collect.android.database.forms.DatabaseFormsRepository;
+import org.odk.collect.android.database.forms.FormDatabaseMigrator;
+import org.odk.collect.android.database.instances.DatabaseInstancesRepository;
+import org.odk.collect.android.database.instances.InstanceDatabaseMigrator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static android.provider.BaseColumns._ID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.odk.collect.android.database.DatabaseConstants.FORMS_TABLE_NAME;
+import static org.odk.collect.android.database.DatabaseConstants.INSTANCES_TABLE_NAME;
+import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.DELETED_DATE;
+import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.INSTANCE_FILE_PATH;
+import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.JR_FORM_ID;
+import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.JR_VERSION;
+import static org.odk.collect.android.database.instances.DatabaseInstanceColumns.STATUS;
+
+/**
+ * Checks that the lookups made by {@link DatabaseFormsRepository} and
+ * {@link DatabaseInstancesRepository} are answered from an index (rather than by scanning the
+ * table) however the database got to its current version. The selections here need to be kept in
+ * step with the ones the repositories use. Methods that list the whole table ({@code getAll},
+ * {@code getAllNotDeleted}) aren't included as they have to scan it anyway.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseQueryPlanTest {
+
+    private SQLiteDatabase database;
+
+    @Before
+    public void setup() {
+        database = SQLiteDatabase.create(null);
+    }
+
+    @After
+    public void teardown() {
+        database.close();
+    }
+
+    @Test
+    public void formsLookups_useIndexes_afterOnCreate() {
+        new FormDatabaseMigrator().onCreate(database);
+        assertFormsLookupsUseIndexes();
+    }
+
+    @Test
+    public void formsLookups_useIndexes_afterOnUpgradeFromVersion10() {
+        FormDatabaseMigrator formDatabaseMigrator = new FormDatabaseMigrator();
+        formDatabaseMigrator.onCreate(database);
+        dropIndexes(FORMS_TABLE_NAME);
+
+        formDatabaseMigrator.onUpgrade(database, 10);
+        assertFormsLookupsUseIndexes();
+    }
+
+    @Test
+    public void formsLookups_useIndexes_afterOnDowngrade() {
+        FormDatabaseMigrator formDatabaseMigrator = new FormDatabaseMigrator();
+        formDatabaseMigrator.onCreate(database);
+
+        formDatabaseMigrator.onDowngrade(database);
+        assertFormsLookupsUseIndexes();
+    }
+
+    @Test
+    public void instancesLookups_useIndexes_afterOnCreate() {
+        new InstanceDatabaseMigrator().onCreate(database);
+        assertInstancesLookupsUseIndexes();
+    }
+
+    @Test
+    public void instancesLookups_useIndexes_afterOnUpgradeFromVersion7() {
+        InstanceDatabaseMigrator instanceDatabaseMigrator = new InstanceDatabaseMigrator();
+        instanceDatabaseMigrator.onCreate(database);
+        dropIndexes(INSTANCES_TABLE_NAME);
+
+        instanceDatabaseMigrator.onUpgrade(database, 7);
+        assertInstancesLookupsUseIndexes();
+    }
+
+    @Test
+    public void instancesLookups_useIndexes_afterOnDowngrade() {
+        InstanceDatabaseMigrator instanceDatabaseMigrator = new InstanceDatabaseMigrator();
+        instanceDatabaseMigrator.onCreate(database);
+
+        instanceDatabaseMigrator.onDowngrade(database);
+        assertInstancesLookupsUseIndexes();
+    }
+
+    private void assertFormsLookupsUseIndexes() {
+        // get
+        assertUsesIndex(FORMS_TABLE_NAME, _ID + "=?", "1");
+        // getOneByPath
+        assertUsesIndex(FORMS_TABLE_NAME, DatabaseFormColumns.FORM_FILE_PATH + "=?", "form.xml");
+        // getOneByMd5Hash, deleteByMd5Hash
+        assertUsesIndex(FORMS_TABLE_NAME, DatabaseFormColumns.MD5_HASH + "=?", "hash");
+        // getAllByFormIdAndVersion, getLatestByFormIdAndVersion
+        assertUsesIndex(FORMS_TABLE_NAME, DatabaseFormColumns.JR_FORM_ID + "=? AND " + DatabaseFormColumns.JR_VERSION + "=?", "formId", "1");
+        assertUsesIndex(FORMS_TABLE_NAME, DatabaseFormColumns.JR_FORM_ID + "=? AND " + DatabaseFormColumns.JR_VERSION + " IS NULL", "formId");
+        // getAllByFormId
+        assertUsesIndex(FORMS_TABLE_NAME, DatabaseFormColumns.JR_FORM_ID + "=?", "formId");
+        // getAllNotDeletedByFormId
+        assertUsesIndex(FORMS_TABLE_NAME, DatabaseFormColumns.JR_FORM_ID + "=? AND " + DatabaseFormColumns.DELETED_DATE + " IS NULL", "formId");
+        // getAllNotDeletedByFormIdAndVersion
+        assertUsesIndex(FORMS_TABLE_NAME, DatabaseFormColumns.DELETED_DATE + " IS NULL AND " + DatabaseFormColumns.JR_FORM_ID + "=? AND " + DatabaseFormColumns.JR_VERSION + "=?", "formId", "1");
+        assertUsesIndex(FORMS_TABLE_NAME, DatabaseFormColumns.DELETED_DATE + " IS NULL AND " + DatabaseFormColumns.JR_FORM_ID + "=? AND " + DatabaseFormColumns.JR_VERSION + " IS NULL", "formId");
+    }
+
+    private void assertInstancesLookupsUseIndexes() {
+        // get
+        assertUsesIndex(INSTANCES_TABLE_NAME, _ID + "=?", "1");
+        // getOneByPath
+        assertUsesIndex(INSTANCES_TABLE_NAME, INSTANCE_FILE_PATH + "=?", "instance/instance.xml");
+        // getAllByStatus, getCountByStatus
+        assertUsesIndex(INSTANCES_TABLE_NAME, STATUS + "=?", "complete");
+        assertUsesIndex(INSTANCES_TABLE_NAME, STATUS + "=? or " + STATUS + "=?", "complete", "submissionFailed");
+        // getAllByFormId
+        assertUsesIndex(INSTANCES_TABLE_NAME, JR_FORM_ID + " = ?", "formId");
+        // getAllNotDeletedByFormIdAndVersion
+        assertUsesIndex(INSTANCES_TABLE_NAME, JR_FORM_ID + " = ? AND " + JR_VERSION + " = ? AND " + DELETED_DATE + " IS NULL", "formId", "1");
+        assertUsesIndex(INSTANCES_TABLE_NAME, JR_FORM_ID + " = ? AND " + JR_VERSION + " IS NULL AND " + DELETED_DATE + " IS NULL", "formId");
+    }
+
+    private void assertUsesIndex(String table, String selection, String... selectionArgs) {
+        List<String> plan = getQueryPlan("SELECT * FROM " + table + " WHERE " + selection, selectionArgs);
+
+        assertThat(selection, plan, everyItem(not(startsWith("SCAN"))));
+        assertThat(selection, plan, hasItem(startsWith("SEARCH")));
+    }
+
+    private List<String> getQueryPlan(String query, String[] selectionArgs) {
+        List<String> plan = new ArrayList<>();
+        try (Cursor cursor = database.rawQuery("EXPLAIN QUERY PLAN " + query, selectionArgs)) {
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(cursor.getColumnIndex("detail")));
+            }
+        }
+
+        return plan;
+    }
+
+    /**
+     * Drops the indexes on a table so it matches the version before they were added.
+     */
+    private void dropIndexes(String table) {
+        List<String> indexes = new ArrayList<>();
+        try (Cursor cursor = database.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL", new String[]{table})) {
+            while (cursor.moveToNext()) {
+                indexes.add(cursor.getString(0));
+            }
+        }
+
+        for (String index : indexes) {
+            database.execSQL("DROP INDEX " + index);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.odk.collect.android.database;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.database.instances.DatabaseUploadProgressRepository;
+import org.odk.collect.android.openrosa.UploadMetrics;
+import org.odk.collect.android.openrosa.UploadProgress;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.File;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(AndroidJUnit4.class)
+public class DatabaseUploadProgressRepositoryTest {
+
+    private final File dbDir = TempFiles.createTempDir();
+    private final File instanceDir = TempFiles.createTempDir();
+    private final DatabaseUploadProgressRepository repository = new DatabaseUploadProgressRepository(ApplicationProvider.getApplicationContext(), dbDir.getAbsolutePath());
+
+    @Test
+    public void acceptedFiles_areAcceptedForLaterUploadsOfSameInstance() throws Exception {
+        File submission = createFile("submission.xml", "<data/>");
+        File photo1 = createFile("photo1.jpg", "photo1");
+        File photo2 = createFile("photo2.jpg", "photo2");
+
+        repository.get(1, submission).onPartAccepted(asList(photo1), new UploadMetrics());
+
+        UploadProgress uploadProgress = repository.get(1, submission);
+        assertThat(uploadProgress.isAccepted(photo1), is(true));
+        assertThat(uploadProgress.isAccepted(photo2), is(false));
+        assertThat(repository.get(2, submission).isAccepted(photo1), is(false));
+    }
+
+    @Test
+    public void whenFileChangesAfterBeingAccepted_isNotAccepted() throws Exception {
+        File submission = createFile("submission.xml", "<data/>");
+        File photo = createFile("photo.jpg", "photo");
+
+        repository.get(1, submission).onPartAccepted(asList(photo), new UploadMetrics());
+        FileUtils.writeStringToFile(photo, "a different photo", "UTF-8");
+
+        assertThat(repository.get(1, submission).isAccepted(photo), is(false));
+    }
+
+    @Test
+    public void whenSubmissionChangesAfterPartIsAccepted_nothingIsAccepted() throws Exception {
+        File submission = createFile("submission.xml", "<data/>");
+        File photo = createFile("photo.jpg", "photo");
+
+        repository.get(1, submission).onPartAccepted(asList(photo), new UploadMetrics());
+        FileUtils.writeStringToFile(submission, "<data>edited</data>", "UTF-8");
+
+        assertThat(repository.get(1, submission).isAccepted(photo), is(false));
+    }
+
+    @Test
+    public void clear_removesAcceptedFilesForInstance() throws Exception {
+        File submission = createFile("submission.xml", "<data/>");
+        File photo = createFile("photo.jpg", "photo");
+
+        repository.get(1, submission).onPartAccepted(asList(photo), new UploadMetrics());
+        repository.get(2, submission).onPartAccepted(asList(photo), new UploadMetrics());
+        repository.clear(1);
+
+        assertThat(repository.get(1, submission).isAccepted(photo), is(false));
+        assertThat(repository.get(2, submission).isAccepted(photo), is(true));
+    }
+
+    private File createFile(String name, String contents) throws Exception {
+        File file = new File(instanceDir, name);
+        FileUtils.writeStringToFile(file, contents, "UTF-8");
+        return file;
+    }
+}
@@ -18,6 +18,7 @@ import java.util.List;
 import static java.util.Arrays.asList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.odk.collect.android.database.DatabaseConstants.FORMS_FTS_TABLE_NAME;
 import static org.odk.collect.android.database.DatabaseConstants.FORMS_TABLE_NAME;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.AUTO_DELETE;
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.AUTO_SEND;
@@ -49,7 +50,7 @@ public class FormDatabaseMigratorTest {
 
     @Before
     public void setup() {
-        assertThat("Test expects different Forms DB version", DatabaseConstants.FORMS_DATABASE_VERSION, is(10));
+        assertThat("Test expects different Forms DB version", DatabaseConstants.FORMS_DATABASE_VERSION, is(12));
         database = SQLiteDatabase.create(null);
     }
 
@@ -58,6 +59,25 @@ public class FormDatabaseMigratorTest {
         database.close();
     }
 
+    @Test
+    public void onUpgrade_fromVersion11_indexesExistingDisplayNames() {
+        FormDatabaseMigrator formDatabaseMigrator = new FormDatabaseMigrator();
+        formDatabaseMigrator.onCreate(database);
+        SQLiteUtils.dropTable(database, FORMS_FTS_TABLE_NAME);
+        ContentValues contentValues = createVersion8Form();
+        contentValues.remove("lastDetectedFormVersionHash");
+        long id = database.insert(FORMS_TABLE_NAME, null, contentValues);
+
+        formDatabaseMigrator.onUpgrade(database, 11);
+
+        try (Cursor cursor = database.rawQuery("SELECT docid FROM " + FORMS_FTS_TABLE_NAME + " WHERE " + FORMS_FTS_TABLE_NAME + " MATCH ?", new String[]{"display*"})) {
+            assertThat(cursor.getCount(), is(1));
+
+            cursor.moveToFirst();
+            assertThat(cursor.getLong(0), is(id));
+        }
+    }
+
     @Test
     public void onUpgrade_fromVersion9() {
         createVersion9Database(database);
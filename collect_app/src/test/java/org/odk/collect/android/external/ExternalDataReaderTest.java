@@ -25,9 +25,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import static java.util.Collections.singleton;
+import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
@@ -189,6 +194,40 @@ public class ExternalDataReaderTest {
         assertThat(metadataTableHash, is(newHash));
     }
 
+    @Test
+    public void getImportedMd5Hash_afterReimport_returnsHashOfNewCsv() throws IOException {
+        ExternalSQLiteOpenHelper helper = new ExternalSQLiteOpenHelper(dbFile);
+        helper.importFromCSV(csvFile, new ExternalDataReaderImpl(null), null);
+        assertThat(helper.getImportedMd5Hash(), is(Md5.getMd5Hash(csvFile)));
+        helper.close();
+
+        try (Writer out = new BufferedWriter(new FileWriter(csvFile, true))) {
+            out.write("\ncherimoya,Cherimoya");
+        }
+        dbFile.delete();
+
+        helper.importFromCSV(csvFile, new ExternalDataReaderImpl(null), null);
+        assertThat(helper.getImportedMd5Hash(), is(Md5.getMd5Hash(csvFile)));
+        helper.close();
+    }
+
+    @Test
+    public void importFromCSV_whenCancelled_doesNotRecordImport() {
+        ExternalSQLiteOpenHelper helper = new ExternalSQLiteOpenHelper(dbFile) {
+            @Override
+            protected boolean isCancelled() {
+                return true;
+            }
+        };
+        helper.importFromCSV(csvFile, new ExternalDataReaderImpl(null), null);
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        assertThat(SQLiteUtils.doesTableExist(db, EXTERNAL_METADATA_TABLE_NAME), is(false));
+        db.close();
+
+        assertThat(ExternalSQLiteOpenHelper.shouldUpdateDBforDataSet(dbFile, csvFile), is(true));
+    }
+
     @Test
     public void doImport_skipsImportIfFileNotUpdated() {
         // Create the DB file with an initial import
@@ -214,6 +253,47 @@ public class ExternalDataReaderTest {
         assertThat("expected zero rows of data after reimporting unchanged file", cursor.getCount(), is(0));
     }
 
+    @Test
+    public void doImport_indexesColumnsUsedToLookUpRows() {
+        Map<String, Set<String>> indexedColumns = new HashMap<>();
+        indexedColumns.put(SIMPLE_SEARCH_EXTERNAL_CSV_NAME, singleton("name"));
+
+        new ExternalDataReaderImpl(null, indexedColumns).doImport(formDefToCsvMedia);
+        assertThat(getIndexedColumns(), hasItem("c_name"));
+    }
+
+    @Test
+    public void doImport_whenFileNotUpdated_stillIndexesColumnsUsedToLookUpRows() {
+        new ExternalDataReaderImpl(null).doImport(formDefToCsvMedia);
+        assertThat(getIndexedColumns(), not(hasItem("c_name")));
+
+        Map<String, Set<String>> indexedColumns = new HashMap<>();
+        indexedColumns.put(SIMPLE_SEARCH_EXTERNAL_CSV_NAME, singleton("name"));
+
+        new ExternalDataReaderImpl(null, indexedColumns).doImport(formDefToCsvMedia);
+        assertThat(getIndexedColumns(), hasItem("c_name"));
+    }
+
+    private static List<String> getIndexedColumns() {
+        List<String> indexedColumns = new ArrayList<>();
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(dbFile.getAbsolutePath(), null, SQLiteDatabase.OPEN_READONLY);
+        try (Cursor indexes = db.rawQuery("PRAGMA index_list(" + EXTERNAL_DATA_TABLE_NAME + ")", null)) {
+            while (indexes.moveToNext()) {
+                String indexName = indexes.getString(indexes.getColumnIndex("name"));
+                try (Cursor indexInfo = db.rawQuery("PRAGMA index_info(" + indexName + ")", null)) {
+                    while (indexInfo.moveToNext()) {
+                        indexedColumns.add(indexInfo.getString(indexInfo.getColumnIndex("name")));
+                    }
+                }
+            }
+        } finally {
+            db.close();
+        }
+
+        return indexedColumns;
+    }
+
     private static Map<String, File> makeExternalDataMap() {
         Map<String, File> externalDataMap = new HashMap<>();
         externalDataMap.put(SIMPLE_SEARCH_EXTERNAL_CSV_NAME, csvFile);
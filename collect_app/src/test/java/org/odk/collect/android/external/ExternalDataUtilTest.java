@@ -1,7 +1,17 @@
 package org.odk.collect.android.external;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Test;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
 
 public class ExternalDataUtilTest {
     @Test
@@ -26,4 +36,38 @@ public class ExternalDataUtilTest {
         Assert.assertEquals("c_new_line", ExternalDataUtil.toSafeColumnName("new\nline"));
         Assert.assertEquals("c_double_quote", ExternalDataUtil.toSafeColumnName("double\"quote"));
     }
+
+    @Test
+    public void findPulldataReferenceColumns_returnsReferenceColumnsForEachDataSet() throws Exception {
+        File formXml = TempFiles.createTempFile("form", ".xml");
+        FileUtils.writeStringToFile(formXml, "<h:html>"
+                + "<bind calculate=\"pulldata('fruits', 'name', 'name_key', /data/fruit)\" nodeset=\"/data/a\"/>"
+                + "<bind calculate=\"pulldata( 'Fruits.csv' , 'color' , 'code' , 'x')\" nodeset=\"/data/b\"/>"
+                + "<bind calculate=\"pulldata('staff', 'role', 'staff_code', /data/staff)\" nodeset=\"/data/c\"/>"
+                + "<bind calculate=\"pulldata(/data/dataset, 'role', 'staff_code', /data/staff)\" nodeset=\"/data/d\"/>"
+                + "</h:html>", "UTF-8");
+
+        Map<String, Set<String>> referenceColumns = ExternalDataUtil.findPulldataReferenceColumns(formXml);
+        assertThat(referenceColumns.size(), is(2));
+        assertThat(referenceColumns.get("fruits"), containsInAnyOrder("name_key", "code"));
+        assertThat(referenceColumns.get("staff"), containsInAnyOrder("staff_code"));
+    }
+
+    @Test
+    public void findPulldataReferenceColumns_findsCallsSplitBetweenReads() throws Exception {
+        StringBuilder form = new StringBuilder("<h:html>");
+        for (int i = 0; i < 2000; i++) {
+            form.append("<bind calculate=\"pulldata('data").append(i).append("', 'name', 'key").append(i).append("', /data/a)\"/>");
+        }
+        form.append("</h:html>");
+
+        File formXml = TempFiles.createTempFile("form", ".xml");
+        FileUtils.writeStringToFile(formXml, form.toString(), "UTF-8");
+
+        Map<String, Set<String>> referenceColumns = ExternalDataUtil.findPulldataReferenceColumns(formXml);
+        assertThat(referenceColumns.size(), is(2000));
+        for (int i = 0; i < 2000; i++) {
+            assertThat(referenceColumns.get("data" + i), containsInAnyOrder("key" + i));
+        }
+    }
 }
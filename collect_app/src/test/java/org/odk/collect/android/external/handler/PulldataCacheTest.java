@@ -0,0 +1,41 @@
+package org.odk.collect.android.external.handler;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class PulldataCacheTest {
+
+    @Test
+    public void get_returnsResultForSameLookup() {
+        PulldataCache cache = new PulldataCache(10);
+        cache.put("md5", "fruits", "name", "name_key", "mango", "Mango");
+
+        assertThat(cache.get("md5", "fruits", "name", "name_key", "mango"), is("Mango"));
+        assertThat(cache.get("md5", "fruits", "name", "name_key", "oranges"), nullValue());
+        assertThat(cache.get("md5", "fruits", "color", "name_key", "mango"), nullValue());
+    }
+
+    @Test
+    public void get_whenCsvHasChanged_returnsNull() {
+        PulldataCache cache = new PulldataCache(10);
+        cache.put("md5", "fruits", "name", "name_key", "mango", "Mango");
+
+        assertThat(cache.get("otherMd5", "fruits", "name", "name_key", "mango"), nullValue());
+    }
+
+    @Test
+    public void whenMaxSizeIsReached_leastRecentlyUsedResultIsEvicted() {
+        PulldataCache cache = new PulldataCache(2);
+        cache.put("md5", "fruits", "name", "name_key", "mango", "Mango");
+        cache.put("md5", "fruits", "name", "name_key", "oranges", "Oranges");
+        cache.get("md5", "fruits", "name", "name_key", "mango");
+        cache.put("md5", "fruits", "name", "name_key", "kiwi", "Kiwi");
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get("md5", "fruits", "name", "name_key", "mango"), is("Mango"));
+        assertThat(cache.get("md5", "fruits", "name", "name_key", "oranges"), nullValue());
+    }
+}
@@ -0,0 +1,80 @@
+package org.odk.collect.android.fastexternalitemset;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.io.FileUtils;
+import org.javarosa.core.model.SelectChoice;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.File;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+@RunWith(AndroidJUnit4.class)
+public class ItemsetCacheTest {
+
+    private static final String NODESET = "instance('cities')/root/item[state=/data/state]";
+
+    private final ItemsetCache cache = new ItemsetCache(10, 10);
+
+    @Test
+    public void getQuery_returnsSameParsedQueryForSameNodeset() {
+        assertThat(cache.getQuery(NODESET), sameInstance(cache.getQuery(NODESET)));
+    }
+
+    @Test
+    public void getItems_returnsCopiesOfItemsForSameArguments() throws Exception {
+        File itemsetFile = createItemsetFile("name,label\n");
+        SelectChoice item = new SelectChoice(null, "Seattle", "seattle", false);
+        cache.putItems(itemsetFile, NODESET, "", new String[]{"cities", "washington"}, singletonList(item));
+
+        List<SelectChoice> items = cache.getItems(itemsetFile, NODESET, "", new String[]{"cities", "washington"});
+        assertThat(items.size(), is(1));
+        assertThat(items.get(0), not(sameInstance(item)));
+        assertThat(items.get(0).getValue(), is("seattle"));
+        assertThat(items.get(0).getLabelInnerText(), is("Seattle"));
+
+        assertThat(cache.getItems(itemsetFile, NODESET, "", new String[]{"cities", "oregon"}), nullValue());
+        assertThat(cache.getItems(itemsetFile, NODESET, "French", new String[]{"cities", "washington"}), nullValue());
+    }
+
+    @Test
+    public void putItems_doesNotKeepCallersItems() throws Exception {
+        File itemsetFile = createItemsetFile("name,label\n");
+        SelectChoice item = new SelectChoice(null, "Seattle", "seattle", false);
+        item.setIndex(0);
+        cache.putItems(itemsetFile, NODESET, "", new String[]{"cities"}, singletonList(item));
+
+        item.setIndex(5);
+
+        List<SelectChoice> items = cache.getItems(itemsetFile, NODESET, "", new String[]{"cities"});
+        assertThat(items.get(0), not(sameInstance(item)));
+        assertThat(items.get(0).getIndex(), is(0));
+    }
+
+    @Test
+    public void whenItemsetFileChanges_cachedResultsAreNotReturned() throws Exception {
+        File itemsetFile = createItemsetFile("name,label\n");
+        cache.putItems(itemsetFile, NODESET, "", new String[]{"cities"}, singletonList(new SelectChoice(null, "Seattle", "seattle", false)));
+        cache.putLabel(itemsetFile, "seattle", "", "Seattle");
+
+        FileUtils.writeStringToFile(itemsetFile, "name,label,state\n", "UTF-8");
+
+        assertThat(cache.getItems(itemsetFile, NODESET, "", new String[]{"cities"}), nullValue());
+        assertThat(cache.getLabel(itemsetFile, "seattle", ""), nullValue());
+    }
+
+    private File createItemsetFile(String contents) throws Exception {
+        File itemsetFile = new File(TempFiles.createTempDir(), "itemsets.csv");
+        FileUtils.writeStringToFile(itemsetFile, contents, "UTF-8");
+        return itemsetFile;
+    }
+}
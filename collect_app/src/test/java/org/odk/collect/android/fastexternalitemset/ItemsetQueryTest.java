@@ -0,0 +1,50 @@
+package org.odk.collect.android.fastexternalitemset;
+
+import org.javarosa.xpath.expr.XPathExpression;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ItemsetQueryTest {
+
+    @Test
+    public void parse_buildsSelectionAndIndexColumnsFromQuery() {
+        ItemsetQuery query = ItemsetQuery.parse("instance('cities')/root/item[state=/data/state and county= /data/county]");
+
+        assertThat(query.getListName(), is("cities"));
+        assertThat(query.getSelection(), is("list_name=? and \"state\"=? and \"county\"=?"));
+        assertThat(query.getColumns(), is(asList("state", "county")));
+        assertThat(query.getIndexColumns(), is(asList("list_name", "state", "county")));
+    }
+
+    @Test
+    public void parse_whenQueryHasNoFilters_onlySelectsListName() {
+        ItemsetQuery query = ItemsetQuery.parse("instance('states')/root/item[]");
+
+        assertThat(query.getSelection(), is("list_name=?"));
+        assertThat(query.getIndexColumns(), is(asList("list_name")));
+    }
+
+    @Test
+    public void getArgumentExpressions_onlyParsesArgumentsOnce() throws Exception {
+        XPathParseTool parseTool = mock(XPathParseTool.class);
+        when(parseTool.parseXPath(anyString())).thenReturn(mock(XPathExpression.class));
+
+        ItemsetQuery query = ItemsetQuery.parse("instance('cities')/root/item[state=/data/state or county=/data/county]");
+        List<XPathExpression> expressions = query.getArgumentExpressions(parseTool);
+
+        assertThat(query.getArgumentExpressions(parseTool), sameInstance(expressions));
+        verify(parseTool, times(1)).parseXPath("/data/state");
+        verify(parseTool, times(1)).parseXPath("/data/county");
+    }
+}
@@ -0,0 +1,211 @@
+package org.odk.collect.android.formhierarchy;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.data.StringData;
+import org.javarosa.core.model.instance.InstanceInitializationFactory;
+import org.javarosa.form.api.FormEntryController;
+import org.javarosa.form.api.FormEntryModel;
+import org.javarosa.xform.util.XFormUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.javarosawrapper.FormController;
+import org.odk.collect.android.logic.HierarchyElement;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public class HierarchyLevelLoaderTest {
+
+    @Test
+    public void load_atStartOfForm_listsQuestionsAndRepeatHeaders() throws Exception {
+        FormController formController = createFormController(3);
+        formController.answerQuestion(getQuestionIndex(formController), new StringData("Ada"));
+
+        List<HierarchyElement> elements = load(formController, FormIndex.createBeginningOfFormIndex(), null);
+
+        assertThat(getTypes(elements), contains(HierarchyElement.Type.QUESTION, HierarchyElement.Type.REPEATABLE_GROUP));
+        assertThat(elements.get(0).getPrimaryText(), is("Name"));
+        assertThat(elements.get(0).getSecondaryText(), is("Ada"));
+        assertThat(elements.get(1).getPrimaryText(), is("Person"));
+    }
+
+    @Test
+    public void load_withRepeatGroupPicker_listsRepeatInstancesInPages() throws Exception {
+        int repeatCount = HierarchyLevelLoader.PAGE_SIZE * 2 + 1;
+        FormController formController = createFormController(repeatCount);
+
+        List<Integer> pageSizes = new ArrayList<>();
+        HierarchyLevelLoader loader = new HierarchyLevelLoader(formController, ApplicationProvider.getApplicationContext(),
+                FormIndex.createBeginningOfFormIndex(), null, getRepeatIndex(formController));
+        List<HierarchyElement> elements = loader.load(page -> pageSizes.add(page.size()));
+
+        assertThat(elements.size(), is(repeatCount));
+        assertThat(elements.get(0).getType(), is(HierarchyElement.Type.REPEAT_INSTANCE));
+        assertThat(elements.get(repeatCount - 1).getPrimaryText(), is("Person > " + repeatCount));
+        assertThat(pageSizes, contains(HierarchyLevelLoader.PAGE_SIZE, HierarchyLevelLoader.PAGE_SIZE));
+    }
+
+    @Test
+    public void load_doesNotMoveFormIndex() throws Exception {
+        FormController formController = createFormController(3);
+        FormIndex questionIndex = getQuestionIndex(formController);
+        formController.jumpToIndex(questionIndex);
+
+        load(formController, FormIndex.createBeginningOfFormIndex(), null);
+        assertThat(formController.getFormIndex(), is(questionIndex));
+    }
+
+    @Test
+    public void loadChunk_listsLevelUntilFinished() throws Exception {
+        FormController formController = createFormController(HierarchyLevelLoader.PAGE_SIZE * 2);
+        HierarchyLevelLoader loader = new HierarchyLevelLoader(formController, ApplicationProvider.getApplicationContext(),
+                FormIndex.createBeginningOfFormIndex(), null, getRepeatIndex(formController));
+
+        List<HierarchyElement> elements = new ArrayList<>();
+        while (!loader.isFinished()) {
+            elements.addAll(loader.loadChunk());
+        }
+
+        assertThat(elements.size(), is(HierarchyLevelLoader.PAGE_SIZE * 2));
+    }
+
+    @Test
+    public void loadChunk_whenCancelled_returnsNull() throws Exception {
+        FormController formController = createFormController(3);
+        HierarchyLevelLoader loader = new HierarchyLevelLoader(formController, ApplicationProvider.getApplicationContext(),
+                FormIndex.createBeginningOfFormIndex(), null, null);
+
+        loader.cancel();
+        assertThat(loader.loadChunk(), is(nullValue()));
+    }
+
+    @Test
+    public void load_whenCancelled_returnsNull() throws Exception {
+        FormController formController = createFormController(3);
+        HierarchyLevelLoader loader = new HierarchyLevelLoader(formController, ApplicationProvider.getApplicationContext(),
+                FormIndex.createBeginningOfFormIndex(), null, null);
+
+        loader.cancel();
+        assertThat(loader.load(page -> { }), is(nullValue()));
+        assertThat(loader.getError(), is(nullValue()));
+    }
+
+    @Test
+    public void hierarchyLevelCache_isInvalidatedWhenQuestionIsAnswered() throws Exception {
+        FormController formController = createFormController(3);
+        HierarchyLevelCache cache = formController.getHierarchyLevelCache();
+
+        int generation = cache.getGeneration();
+        List<HierarchyElement> elements = load(formController, FormIndex.createBeginningOfFormIndex(), null);
+        cache.put(null, null, elements, generation);
+        assertThat(cache.get(null, null), is(elements));
+
+        formController.answerQuestion(getQuestionIndex(formController), new StringData("Ada"));
+        assertThat(cache.get(null, null), is(nullValue()));
+
+        // Levels listed before the answer changed are out of date
+        cache.put(null, null, elements, generation);
+        assertThat(cache.get(null, null), is(nullValue()));
+    }
+
+    @Test
+    public void hierarchyLevelCache_isInvalidatedWhenRepeatIsDeleted() throws Exception {
+        FormController formController = createFormController(3);
+        HierarchyLevelCache cache = formController.getHierarchyLevelCache();
+        cache.put(null, null, load(formController, FormIndex.createBeginningOfFormIndex(), null), cache.getGeneration());
+
+        formController.jumpToIndex(getRepeatIndex(formController));
+        formController.stepToNextEvent(FormController.STEP_INTO_GROUP);
+        formController.deleteRepeat();
+
+        assertThat(cache.get(null, null), is(nullValue()));
+    }
+
+    private static List<HierarchyElement> load(FormController formController, FormIndex firstIndex, FormIndex repeatGroupPickerIndex) {
+        return new HierarchyLevelLoader(formController, ApplicationProvider.getApplicationContext(),
+                firstIndex, null, repeatGroupPickerIndex).load(page -> { });
+    }
+
+    private static List<HierarchyElement.Type> getTypes(List<HierarchyElement> elements) {
+        List<HierarchyElement.Type> types = new ArrayList<>();
+        for (HierarchyElement element : elements) {
+            types.add(element.getType());
+        }
+
+        return types;
+    }
+
+    private static FormIndex getQuestionIndex(FormController formController) {
+        return getFirstIndexWithEvent(formController, FormEntryController.EVENT_QUESTION);
+    }
+
+    private static FormIndex getRepeatIndex(FormController formController) {
+        return getFirstIndexWithEvent(formController, FormEntryController.EVENT_REPEAT);
+    }
+
+    private static FormIndex getFirstIndexWithEvent(FormController formController, int event) {
+        FormIndex originalIndex = formController.getFormIndex();
+        formController.jumpToIndex(FormIndex.createBeginningOfFormIndex());
+        while (formController.stepToNextEvent(FormController.STEP_INTO_GROUP) != event) {
+            // Keep stepping
+        }
+
+        FormIndex index = formController.getFormIndex();
+        formController.jumpToIndex(originalIndex);
+        return index;
+    }
+
+    private static FormController createFormController(int repeatCount) throws Exception {
+        StringBuilder people = new StringBuilder();
+        for (int i = 0; i < repeatCount; i++) {
+            people.append("<person><age/></person>");
+        }
+
+        String form = "<?xml version=\"1.0\"?>\n" +
+                "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\" xmlns:jr=\"http://openrosa.org/javarosa\">\n" +
+                "    <h:head>\n" +
+                "        <h:title>Hierarchy</h:title>\n" +
+                "        <model>\n" +
+                "            <instance>\n" +
+                "                <data id=\"hierarchy\">\n" +
+                "                    <name/>\n" +
+                "                    <person jr:template=\"\"><age/></person>\n" +
+                "                    " + people + "\n" +
+                "                </data>\n" +
+                "            </instance>\n" +
+                "            <bind nodeset=\"/data/name\" type=\"string\"/>\n" +
+                "            <bind nodeset=\"/data/person/age\" type=\"int\"/>\n" +
+                "        </model>\n" +
+                "    </h:head>\n" +
+                "    <h:body>\n" +
+                "        <input ref=\"/data/name\">\n" +
+                "            <label>Name</label>\n" +
+                "        </input>\n" +
+                "        <group ref=\"/data/person\">\n" +
+                "            <label>Person</label>\n" +
+                "            <repeat nodeset=\"/data/person\">\n" +
+                "                <input ref=\"/data/person/age\">\n" +
+                "                    <label>Age</label>\n" +
+                "                </input>\n" +
+                "            </repeat>\n" +
+                "        </group>\n" +
+                "    </h:body>\n" +
+                "</h:html>";
+
+        FormDef formDef = XFormUtils.getFormFromInputStream(new ByteArrayInputStream(form.getBytes()));
+        formDef.initialize(true, new InstanceInitializationFactory());
+        return new FormController(TempFiles.createTempDir(), new FormEntryController(new FormEntryModel(formDef)), null);
+    }
+}
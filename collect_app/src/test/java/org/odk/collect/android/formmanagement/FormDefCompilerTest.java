@@ -0,0 +1,112 @@
+package org.odk.collect.android.formmanagement;
+
+import com.google.common.io.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.odk.collect.android.utilities.FileUtils;
+import org.odk.collect.android.utilities.FormDefCache;
+import org.odk.collect.shared.strings.Md5;
+
+import java.io.File;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+public class FormDefCompilerTest {
+
+    private File cacheDir;
+    private FormDefCompiler formDefCompiler;
+
+    @Before
+    public void setup() {
+        cacheDir = Files.createTempDir();
+        formDefCompiler = new FormDefCompiler(cacheDir, Runnable::run);
+    }
+
+    @Test
+    public void enqueue_writesFormToCache() throws Exception {
+        File formXml = File.createTempFile("form", ".xml");
+        FileUtils.write(formXml, SIMPLE_FORM.getBytes());
+
+        formDefCompiler.enqueue(formXml, null);
+
+        File cacheFile = FormDefCache.getCacheFile(cacheDir, Md5.getMd5Hash(formXml));
+        assertThat(cacheFile.exists(), is(true));
+    }
+
+    @Test
+    public void compile_whenFormIsAlreadyCached_returnsFalse() throws Exception {
+        File formXml = File.createTempFile("form", ".xml");
+        FileUtils.write(formXml, SIMPLE_FORM.getBytes());
+
+        assertThat(formDefCompiler.compile(formXml, null), is(true));
+        assertThat(formDefCompiler.compile(formXml, null), is(false));
+    }
+
+    @Test
+    public void compile_whenFormHasExternalInstance_doesNotWriteToCache() throws Exception {
+        File formXml = File.createTempFile("form", ".xml");
+        FileUtils.write(formXml, EXTERNAL_INSTANCE_FORM.getBytes());
+
+        assertThat(formDefCompiler.compile(formXml, null), is(false));
+
+        File cacheFile = FormDefCache.getCacheFile(cacheDir, Md5.getMd5Hash(formXml));
+        assertThat(cacheFile.exists(), is(false));
+    }
+
+    @Test
+    public void compile_whenFormCanNotBeParsed_doesNotTryAgain() throws Exception {
+        File formXml = File.createTempFile("form", ".xml");
+        FileUtils.write(formXml, "<h:html>".getBytes());
+
+        try {
+            formDefCompiler.compile(formXml, null);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        assertThat(formDefCompiler.compile(formXml, null), is(false));
+    }
+
+    private static final String SIMPLE_FORM = "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\">\n" +
+            "    <h:head>\n" +
+            "        <h:title>simple</h:title>\n" +
+            "        <model>\n" +
+            "            <instance>\n" +
+            "                <data id=\"simple\">\n" +
+            "                    <q1/>\n" +
+            "                </data>\n" +
+            "            </instance>\n" +
+            "            <bind nodeset=\"/data/q1\" type=\"string\"/>\n" +
+            "        </model>\n" +
+            "    </h:head>\n" +
+            "    <h:body>\n" +
+            "        <input ref=\"/data/q1\">\n" +
+            "            <label>Question</label>\n" +
+            "        </input>\n" +
+            "    </h:body>\n" +
+            "</h:html>";
+
+    private static final String EXTERNAL_INSTANCE_FORM = "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\">\n" +
+            "    <h:head>\n" +
+            "        <h:title>external-instance</h:title>\n" +
+            "        <model>\n" +
+            "            <instance>\n" +
+            "                <data id=\"external-instance\">\n" +
+            "                    <q1/>\n" +
+            "                </data>\n" +
+            "            </instance>\n" +
+            "            <instance id=\"external-csv\" src=\"jr://file-csv/external-data.csv\"/>\n" +
+            "            <bind nodeset=\"/data/q1\" type=\"string\"/>\n" +
+            "        </model>\n" +
+            "    </h:head>\n" +
+            "    <h:body>\n" +
+            "        <input ref=\"/data/q1\">\n" +
+            "            <label>Question</label>\n" +
+            "        </input>\n" +
+            "    </h:body>\n" +
+            "</h:html>";
+}
@@ -11,13 +11,17 @@ import org.odk.collect.forms.FormSourceException;
 import org.odk.collect.forms.FormsRepository;
 import org.odk.collect.forms.ManifestFile;
 import org.odk.collect.forms.MediaFile;
+import org.odk.collect.forms.RangeResponse;
 import org.odk.collect.formstest.FormUtils;
 import org.odk.collect.formstest.InMemFormsRepository;
+import org.odk.collect.shared.FileHashIndex;
 import org.odk.collect.shared.strings.Md5;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -65,7 +69,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
         downloader.downloadForm(serverFormDetails, null, null);
 
         List<Form> allForms = formsRepository.getAll();
@@ -94,7 +98,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
         downloader.downloadForm(serverFormDetails, null, null);
 
         String xformUpdate = createXFormBody("id", "updated");
@@ -135,7 +139,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
         downloader.downloadForm(serverFormDetails, null, null);
 
         String xformUpdate = FormUtils.createXFormBody("id", "version", "A different title");
@@ -176,7 +180,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
         try {
             downloader.downloadForm(serverFormDetails, null, null);
             fail("Expected exception because of missing form hash");
@@ -206,7 +210,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchMediaFile("http://file1")).thenReturn(new ByteArrayInputStream("contents1".getBytes()));
         when(formSource.fetchMediaFile("http://file2")).thenReturn(new ByteArrayInputStream("contents2".getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
         downloader.downloadForm(serverFormDetails, null, null);
 
         List<Form> allForms = formsRepository.getAll();
@@ -263,7 +267,7 @@ public class ServerFormDownloaderTest {
             }
         };
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), formMetadataParser, mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, formMetadataParser, mock(Analytics.class));
         downloader.downloadForm(serverFormDetails, null, null);
     }
 
@@ -286,7 +290,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
         when(formSource.fetchMediaFile("http://file1")).thenThrow(new FormSourceException.FetchError());
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
 
         try {
             downloader.downloadForm(serverFormDetails, null, null);
@@ -320,7 +324,7 @@ public class ServerFormDownloaderTest {
         // Create file where media dir would go
         assertThat(new File(formsDir, "Form-media").createNewFile(), is(true));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
 
         try {
             downloader.downloadForm(serverFormDetails, null, null);
@@ -353,7 +357,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchMediaFile("http://file1")).thenReturn(new ByteArrayInputStream("contents".getBytes()));
         when(formSource.fetchMediaFile("http://file2")).thenReturn(new ByteArrayInputStream("contents".getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
         RecordingProgressReporter progressReporter = new RecordingProgressReporter();
         downloader.downloadForm(serverFormDetails, progressReporter, null);
 
@@ -382,7 +386,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
         downloader.downloadForm(serverFormDetails, null, null);
         assertThat(formsRepository.get(1L).isDeleted(), is(false));
     }
@@ -414,7 +418,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform2.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
         downloader.downloadForm(serverFormDetails, null, null);
         assertThat(formsRepository.get(1L).isDeleted(), is(true));
         assertThat(formsRepository.get(2L).isDeleted(), is(false));
@@ -445,7 +449,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform2.getBytes()));
 
         Analytics mockAnalytics = mock(Analytics.class);
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mockAnalytics);
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mockAnalytics);
         downloader.downloadForm(serverFormDetails, null, null);
 
         String formIdentifier = form.getDisplayName() + " " + form.getFormId();
@@ -478,7 +482,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
         Analytics mockAnalytics = mock(Analytics.class);
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mockAnalytics);
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mockAnalytics);
         downloader.downloadForm(serverFormDetails, null, null);
         verifyNoInteractions(mockAnalytics);
     }
@@ -506,7 +510,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl/draft.xml")).thenReturn(new ByteArrayInputStream(xform2.getBytes()));
 
         Analytics mockAnalytics = mock(Analytics.class);
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mockAnalytics);
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mockAnalytics);
         downloader.downloadForm(serverFormDetails, null, null);
 
         verifyNoInteractions(mockAnalytics);
@@ -529,7 +533,7 @@ public class ServerFormDownloaderTest {
         FormSource formSource = mock(FormSource.class);
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
 
         // Initial download
         downloader.downloadForm(serverFormDetails, null, null);
@@ -574,7 +578,7 @@ public class ServerFormDownloaderTest {
         when(formSource.fetchForm("http://downloadUrl")).thenReturn(new ByteArrayInputStream(xform.getBytes()));
         when(formSource.fetchMediaFile("http://file1")).thenReturn(new ByteArrayInputStream("contents".getBytes()));
 
-        ServerFormDownloader downloader = new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
 
         // Initial download
         downloader.downloadForm(serverFormDetails, null, null);
@@ -623,7 +627,7 @@ public class ServerFormDownloaderTest {
                 null);
 
         CancelAfterFormDownloadFormSource formListApi = new CancelAfterFormDownloadFormSource(xform);
-        ServerFormDownloader downloader = new ServerFormDownloader(formListApi, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formListApi, new FormMetadataParser(), mock(Analytics.class));
 
         try {
             downloader.downloadForm(serverFormDetails, null, formListApi);
@@ -652,7 +656,7 @@ public class ServerFormDownloaderTest {
                 )));
 
         CancelAfterMediaFileDownloadFormSource formListApi = new CancelAfterMediaFileDownloadFormSource(xform);
-        ServerFormDownloader downloader = new ServerFormDownloader(formListApi, formsRepository, cacheDir, formsDir.getAbsolutePath(), new FormMetadataParser(), mock(Analytics.class));
+        ServerFormDownloader downloader = createDownloader(formListApi, new FormMetadataParser(), mock(Analytics.class));
 
         try {
             downloader.downloadForm(serverFormDetails, null, formListApi);
@@ -664,6 +668,109 @@ public class ServerFormDownloaderTest {
         }
     }
 
+    @Test
+    public void whenMediaFileDownloadFailsPartWayThrough_resumesFromWhereItLeftOff() throws Exception {
+        String xform = createXFormBody("id", "version");
+        ServerFormDetails serverFormDetails = new ServerFormDetails(
+                "Form",
+                "http://downloadUrl",
+                "id",
+                "version",
+                "md5:" + Md5.getMd5Hash(new ByteArrayInputStream(xform.getBytes())),
+                true,
+                false,
+                new ManifestFile("", asList(
+                        new MediaFile("file1", "md5:" + Md5.getMd5Hash(new ByteArrayInputStream("contents".getBytes())), "http://file1")
+                )));
+
+        InterruptedMediaFileFormSource formSource = new InterruptedMediaFileFormSource(xform, "contents", 4, "etag");
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
+        downloader.downloadForm(serverFormDetails, null, null);
+
+        assertThat(formSource.resumedFrom, is(4L));
+
+        Form form = formsRepository.getAll().get(0);
+        File mediaFile = new File(form.getFormMediaPath(), "file1");
+        assertThat(new String(read(mediaFile)), is("contents"));
+        assertThat(asList(new File(getCacheFilesPath()).listFiles()), is(empty()));
+    }
+
+    @Test
+    public void whenMediaFileDownloadFailsPartWayThrough_andServerDoesNotGiveAnEtag_downloadsFromStartAgain() throws Exception {
+        String xform = createXFormBody("id", "version");
+        ServerFormDetails serverFormDetails = createFormDetailsWithMediaFile(xform, "contents");
+
+        InterruptedMediaFileFormSource formSource = new InterruptedMediaFileFormSource(xform, "contents", 4, null);
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
+        downloader.downloadForm(serverFormDetails, null, null);
+
+        assertThat(formSource.resumedFrom, is(-1L));
+        assertThat(formSource.fetchCount, is(2));
+
+        Form form = formsRepository.getAll().get(0);
+        File mediaFile = new File(form.getFormMediaPath(), "file1");
+        assertThat(new String(read(mediaFile)), is("contents"));
+        assertThat(asList(new File(getCacheFilesPath()).listFiles()), is(empty()));
+    }
+
+    @Test
+    public void whenResumingMediaFileDownloadFailsToConnect_retriesFromWhereItLeftOff() throws Exception {
+        String xform = createXFormBody("id", "version");
+        ServerFormDetails serverFormDetails = createFormDetailsWithMediaFile(xform, "contents");
+
+        InterruptedMediaFileFormSource formSource = new InterruptedMediaFileFormSource(xform, "contents", 4, "etag");
+        formSource.failResume(new FormSourceException.FetchError());
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
+        downloader.downloadForm(serverFormDetails, null, null);
+
+        assertThat(formSource.resumedFrom, is(4L));
+        assertThat(formSource.fetchCount, is(3));
+
+        Form form = formsRepository.getAll().get(0);
+        File mediaFile = new File(form.getFormMediaPath(), "file1");
+        assertThat(new String(read(mediaFile)), is("contents"));
+        assertThat(asList(new File(getCacheFilesPath()).listFiles()), is(empty()));
+    }
+
+    @Test
+    public void whenResumedMediaFileRangeIsNotSatisfiable_downloadsFromStartAgain() throws Exception {
+        String xform = createXFormBody("id", "version");
+        ServerFormDetails serverFormDetails = createFormDetailsWithMediaFile(xform, "contents");
+
+        InterruptedMediaFileFormSource formSource = new InterruptedMediaFileFormSource(xform, "contents", 4, "etag");
+        formSource.failResume(new FormSourceException.ServerError(416, "http://server"));
+        ServerFormDownloader downloader = createDownloader(formSource, new FormMetadataParser(), mock(Analytics.class));
+        downloader.downloadForm(serverFormDetails, null, null);
+
+        assertThat(formSource.fetchCount, is(3));
+
+        Form form = formsRepository.getAll().get(0);
+        File mediaFile = new File(form.getFormMediaPath(), "file1");
+        assertThat(new String(read(mediaFile)), is("contents"));
+        assertThat(asList(new File(getCacheFilesPath()).listFiles()), is(empty()));
+    }
+
+    /**
+     * Creates a downloader that retries failed downloads straight away
+     */
+    private ServerFormDownloader createDownloader(FormSource formSource, FormMetadataParser formMetadataParser, Analytics analytics) {
+        return new ServerFormDownloader(formSource, formsRepository, cacheDir, formsDir.getAbsolutePath(), formMetadataParser, analytics, new FileHashIndex(), new TransferEngine(), null, 0);
+    }
+
+    private static ServerFormDetails createFormDetailsWithMediaFile(String xform, String mediaFileContents) {
+        return new ServerFormDetails(
+                "Form",
+                "http://downloadUrl",
+                "id",
+                "version",
+                "md5:" + Md5.getMd5Hash(new ByteArrayInputStream(xform.getBytes())),
+                true,
+                false,
+                new ManifestFile("", asList(
+                        new MediaFile("file1", "md5:" + Md5.getMd5Hash(new ByteArrayInputStream(mediaFileContents.getBytes())), "http://file1")
+                )));
+    }
+
     private String getFormFilesPath() {
         return formsDir.getAbsolutePath();
     }
@@ -753,4 +860,81 @@ public class ServerFormDownloaderTest {
             return isCancelled;
         }
     }
+
+    public static class InterruptedMediaFileFormSource implements FormSource {
+
+        private final String xform;
+        private final String mediaFileContents;
+        private final int failAfter;
+        private final String etag;
+        private final List<FormSourceException> resumeFailures = new ArrayList<>();
+
+        long resumedFrom = -1;
+        int fetchCount;
+
+        public InterruptedMediaFileFormSource(String xform, String mediaFileContents, int failAfter, String etag) {
+            this.xform = xform;
+            this.mediaFileContents = mediaFileContents;
+            this.failAfter = failAfter;
+            this.etag = etag;
+        }
+
+        /**
+         * Makes the next attempt to resume the download fail with the passed exception
+         */
+        public void failResume(FormSourceException exception) {
+            resumeFailures.add(exception);
+        }
+
+        @Override
+        public InputStream fetchForm(String formURL) throws FormSourceException {
+            return new ByteArrayInputStream(xform.getBytes());
+        }
+
+        @Override
+        public InputStream fetchMediaFile(String mediaFileURL) throws FormSourceException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean supportsRangeRequests() {
+            return true;
+        }
+
+        @Override
+        public RangeResponse fetchMediaFile(String mediaFileURL, long offset, String etag) throws FormSourceException {
+            fetchCount++;
+
+            if (offset > 0) {
+                resumedFrom = offset;
+
+                if (!resumeFailures.isEmpty()) {
+                    throw resumeFailures.remove(0);
+                }
+
+                return new RangeResponse(new ByteArrayInputStream(mediaFileContents.substring((int) offset).getBytes()), offset, this.etag);
+            } else if (fetchCount == 1) {
+                InputStream failing = new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                };
+
+                return new RangeResponse(new SequenceInputStream(new ByteArrayInputStream(mediaFileContents.substring(0, failAfter).getBytes()), failing), 0, this.etag);
+            } else {
+                return new RangeResponse(new ByteArrayInputStream(mediaFileContents.getBytes()), 0, this.etag);
+            }
+        }
+
+        @Override
+        public List<FormListItem> fetchFormList() throws FormSourceException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ManifestFile fetchManifest(String manifestURL) throws FormSourceException {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
@@ -6,11 +6,13 @@ import org.odk.collect.formstest.InMemFormsRepository;
 import org.odk.collect.forms.Form;
 import org.odk.collect.forms.FormListItem;
 import org.odk.collect.forms.FormSource;
+import org.odk.collect.forms.FormSourceException;
 import org.odk.collect.forms.FormsRepository;
 import org.odk.collect.forms.ManifestFile;
 import org.odk.collect.forms.MediaFile;
 import org.odk.collect.formstest.FormUtils;
 import org.odk.collect.shared.strings.Md5;
+import org.odk.collect.shared.FileHashIndex;
 import org.odk.collect.shared.TempFiles;
 
 import java.io.BufferedWriter;
@@ -18,6 +20,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.util.Arrays.asList;
@@ -25,6 +28,9 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -187,6 +193,44 @@ public class ServerFormsDetailsFetcherTest {
         assertThat(getForm(serverFormDetails, "form-2").isUpdated(), is(true));
     }
 
+    @Test
+    public void whenFetchingManifestsIsInterrupted_throwsFetchErrorAndKeepsInterruptedStatus() throws Exception {
+        FormSource formSource = mock(FormSource.class);
+        when(formSource.fetchFormList()).thenReturn(formList);
+
+        TransferEngine manifestTransferEngine = mock(TransferEngine.class);
+        when(manifestTransferEngine.runAll(any(), any(), anyBoolean())).thenThrow(new InterruptedException());
+
+        ServerFormsDetailsFetcher fetcher = new ServerFormsDetailsFetcher(formsRepository, formSource, mock(DiskFormsSynchronizer.class), new FileHashIndex(), manifestTransferEngine);
+
+        try {
+            fetcher.fetchFormDetails();
+            fail("Expected exception");
+        } catch (FormSourceException.FetchError e) {
+            assertThat(Thread.interrupted(), is(true));
+        }
+    }
+
+    @Test
+    public void whenManyFormsHaveManifests_eachFormGetsItsOwnManifest() throws Exception {
+        List<FormListItem> manyForms = new ArrayList<>();
+        FormSource formSource = mock(FormSource.class);
+        for (int i = 0; i < 20; i++) {
+            String manifestUrl = "http://example.com/form-" + i + "-manifest";
+            manyForms.add(new FormListItem("http://example.com/form-" + i, "form-" + i, "server", "md5:form-" + i + "-hash", "Form " + i, manifestUrl));
+            when(formSource.fetchManifest(manifestUrl)).thenReturn(new ManifestFile("manifest-" + i + "-hash", asList(mediaFile)));
+        }
+        when(formSource.fetchFormList()).thenReturn(manyForms);
+
+        ServerFormsDetailsFetcher fetcher = new ServerFormsDetailsFetcher(formsRepository, formSource, mock(DiskFormsSynchronizer.class), new FileHashIndex(), new TransferEngine(4, 4));
+        List<ServerFormDetails> serverFormDetails = fetcher.fetchFormDetails();
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(serverFormDetails.get(i).getFormId(), is("form-" + i));
+            assertThat(serverFormDetails.get(i).getManifest().getHash(), is("manifest-" + i + "-hash"));
+        }
+    }
+
     private void writeToFile(File mediaFile, String blah) throws IOException {
         BufferedWriter bw = new BufferedWriter(new FileWriter(mediaFile));
         bw.write(blah);
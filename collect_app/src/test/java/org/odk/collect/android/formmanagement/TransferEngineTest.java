@@ -0,0 +1,150 @@
+package org.odk.collect.android.formmanagement;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.fail;
+
+public class TransferEngineTest {
+
+    @Test
+    public void runAll_runsAllTasks() throws Exception {
+        List<String> downloaded = Collections.synchronizedList(new ArrayList<>());
+        List<TransferEngine.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String url = "http://example.com/file" + i;
+            tasks.add(new RecordingTask(url, () -> downloaded.add(url)));
+        }
+
+        Map<TransferEngine.Task, Exception> failures = new TransferEngine(4, 4).runAll(tasks, null, false);
+
+        assertThat(failures.isEmpty(), is(true));
+        assertThat(downloaded.size(), is(10));
+    }
+
+    @Test
+    public void runAll_doesNotRunMoreThanConnectionsPerHostAtOnce() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<TransferEngine.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            tasks.add(new RecordingTask("http://example.com/file" + i, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException ignored) {
+                    // Ignored
+                }
+                running.decrementAndGet();
+            }));
+        }
+
+        new TransferEngine(6, 2).runAll(tasks, null, false);
+        assertThat(maxRunning.get(), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    public void runAll_returnsFailures() throws Exception {
+        IOException exception = new IOException();
+        TransferEngine.Task failing = new FailingTask(exception);
+        TransferEngine.Task succeeding = new RecordingTask("http://example.com/file", () -> { });
+
+        Map<TransferEngine.Task, Exception> failures = new TransferEngine(2, 2).runAll(asList(failing, succeeding), null, false);
+
+        assertThat(failures.keySet(), containsInAnyOrder(failing));
+        assertThat(failures.get(failing), is(exception));
+    }
+
+    @Test
+    public void runAll_whenFailFast_doesNotStartTasksAfterFailure() throws Exception {
+        List<String> downloaded = new ArrayList<>();
+        TransferEngine.Task failing = new FailingTask(new IOException());
+        TransferEngine.Task succeeding = new RecordingTask("http://example.com/file", () -> downloaded.add("file"));
+
+        Map<TransferEngine.Task, Exception> failures = new TransferEngine(1, 1).runAll(asList(failing, succeeding), null, true);
+
+        assertThat(failures.size(), is(1));
+        assertThat(downloaded.isEmpty(), is(true));
+    }
+
+    @Test
+    public void runAll_whenCancelled_throwsInterruptedException() throws Exception {
+        List<String> downloaded = Collections.synchronizedList(new ArrayList<>());
+        List<TransferEngine.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(new RecordingTask("http://example.com/file" + i, () -> downloaded.add("file")));
+        }
+
+        try {
+            new TransferEngine(2, 2).runAll(tasks, () -> true, false);
+            fail("Expected exception");
+        } catch (InterruptedException e) {
+            assertThat(downloaded.isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void runAll_whenTaskIsInterrupted_throwsInterruptedException() throws Exception {
+        TransferEngine.Task interrupted = new FailingTask(new InterruptedException());
+
+        try {
+            new TransferEngine(2, 2).runAll(asList(interrupted, interrupted), null, false);
+            fail("Expected exception");
+        } catch (Exception e) {
+            assertThat(e, instanceOf(InterruptedException.class));
+        }
+    }
+
+    private static class RecordingTask implements TransferEngine.Task {
+
+        private final String url;
+        private final Runnable onRun;
+
+        RecordingTask(String url, Runnable onRun) {
+            this.url = url;
+            this.onRun = onRun;
+        }
+
+        @Override
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public void run() {
+            onRun.run();
+        }
+    }
+
+    private static class FailingTask implements TransferEngine.Task {
+
+        private final Exception exception;
+
+        FailingTask(Exception exception) {
+            this.exception = exception;
+        }
+
+        @Override
+        public String getUrl() {
+            return "http://example.com/failing";
+        }
+
+        @Override
+        public void run() throws Exception {
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.odk.collect.android.geo;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays a trace of the tiles a map asks for while it's panned and zoomed
+ * against {@link TileHttpServer}. Each frame's tiles are split between
+ * {@link #CONNECTIONS} clients (the most a map's HTTP client opens to one host)
+ * that either keep their connection open and pipeline their requests or open a
+ * connection for each tile (as the server used to make them). For each it
+ * reports the tiles served per millisecond and the median and 95th percentile
+ * time to load a frame (after a run that isn't counted). Run manually by removing
+ * the {@link Ignore}.
+ */
+@Ignore("Benchmark")
+public class TileHttpServerLoadTest {
+
+    private static final int CONNECTIONS = 5;
+    private static final int VIEWPORT_WIDTH = 6;
+    private static final int VIEWPORT_HEIGHT = 10;
+    private static final int TILE_SIZE = 20 * 1024;
+
+    @Test
+    public void replayPanAndZoomTrace() throws Exception {
+        TileHttpServer server = new TileHttpServer();
+        server.addSource("tiles", new FakeTileSource());
+        server.start();
+
+        try {
+            List<List<String>> trace = createTrace();
+            report("Keep-alive, pipelined", server.getPort(), trace, true);
+            report("Connection per tile", server.getPort(), trace, false);
+        } finally {
+            server.destroy();
+        }
+    }
+
+    /**
+     * Pans east and then south at zoom 14 before zooming in to 17 and back out to 11.
+     *
+     * @return the paths of the tiles needed for each frame
+     */
+    private static List<List<String>> createTrace() {
+        List<List<String>> trace = new ArrayList<>();
+        int x = 8000;
+        int y = 5000;
+
+        for (int i = 0; i < 100; i++) {
+            trace.add(getViewport(14, x + i / 4, y));
+        }
+        for (int i = 0; i < 100; i++) {
+            trace.add(getViewport(14, x + 25, y + i / 4));
+        }
+        for (int zoom = 15; zoom <= 17; zoom++) {
+            x *= 2;
+            y *= 2;
+            trace.add(getViewport(zoom, x, y));
+        }
+        for (int zoom = 16; zoom >= 11; zoom--) {
+            x /= 2;
+            y /= 2;
+            trace.add(getViewport(zoom, x, y));
+        }
+
+        return trace;
+    }
+
+    private static List<String> getViewport(int zoom, int left, int top) {
+        List<String> tiles = new ArrayList<>();
+        for (int x = left; x < left + VIEWPORT_WIDTH; x++) {
+            for (int y = top; y < top + VIEWPORT_HEIGHT; y++) {
+                tiles.add(String.format(Locale.US, "/tiles/%d/%d/%d", zoom, x, y));
+            }
+        }
+
+        return tiles;
+    }
+
+    private static void report(String name, int port, List<List<String>> trace, boolean keepAlive) throws Exception {
+        replay(port, trace, keepAlive);
+        List<Long> frameTimes = replay(port, trace, keepAlive);
+
+        long totalTime = 0;
+        int tileCount = 0;
+        for (int i = 0; i < trace.size(); i++) {
+            totalTime += frameTimes.get(i);
+            tileCount += trace.get(i).size();
+        }
+        Collections.sort(frameTimes);
+
+        System.out.println(String.format(Locale.US, "%s: %.1f tiles/ms, %.2f ms median frame, %.2f ms 95th percentile frame",
+                name, tileCount / (totalTime / 1_000_000.0),
+                frameTimes.get(frameTimes.size() / 2) / 1_000_000.0,
+                frameTimes.get(frameTimes.size() * 95 / 100) / 1_000_000.0));
+    }
+
+    /**
+     * @return the time in nanoseconds taken to load each frame
+     */
+    private static List<Long> replay(int port, List<List<String>> trace, boolean keepAlive) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CONNECTIONS);
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            clients.add(new Client(port, keepAlive));
+        }
+
+        try {
+            List<Long> frameTimes = new ArrayList<>();
+            for (List<String> frame : trace) {
+                long start = System.nanoTime();
+
+                List<Future<?>> loads = new ArrayList<>();
+                for (int i = 0; i < CONNECTIONS; i++) {
+                    Client client = clients.get(i);
+                    List<String> tiles = new ArrayList<>();
+                    for (int j = i; j < frame.size(); j += CONNECTIONS) {
+                        tiles.add(frame.get(j));
+                    }
+
+                    loads.add(executor.submit(() -> {
+                        client.load(tiles);
+                        return null;
+                    }));
+                }
+                for (Future<?> load : loads) {
+                    load.get();
+                }
+
+                frameTimes.add(System.nanoTime() - start);
+            }
+
+            return frameTimes;
+        } finally {
+            for (Client client : clients) {
+                client.close();
+            }
+            executor.shutdown();
+        }
+    }
+
+    private static class Client {
+        private final int port;
+        private final boolean keepAlive;
+        private Socket socket;
+
+        Client(int port, boolean keepAlive) {
+            this.port = port;
+            this.keepAlive = keepAlive;
+        }
+
+        void load(List<String> tiles) throws IOException {
+            if (keepAlive) {
+                if (socket == null) {
+                    socket = new Socket("localhost", port);
+                }
+
+                StringBuilder requests = new StringBuilder();
+                for (String tile : tiles) {
+                    requests.append("GET ").append(tile).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                }
+                send(socket, requests.toString());
+
+                InputStream input = new BufferedInputStream(socket.getInputStream());
+                for (int i = 0; i < tiles.size(); i++) {
+                    readResponse(input);
+                }
+            } else {
+                for (String tile : tiles) {
+                    try (Socket socket = new Socket("localhost", port)) {
+                        send(socket, "GET " + tile + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+                        readResponse(new BufferedInputStream(socket.getInputStream()));
+                    }
+                }
+            }
+        }
+
+        void close() throws IOException {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+
+        private static void send(Socket socket, String requests) throws IOException {
+            OutputStream output = socket.getOutputStream();
+            output.write(requests.getBytes(StandardCharsets.US_ASCII));
+            output.flush();
+        }
+
+        /**
+         * Reads a response, checking it's a tile. Reading stops at the end of the
+         * response so a buffered stream never holds data from the next one.
+         */
+        private static void readResponse(InputStream input) throws IOException {
+            StringBuilder head = new StringBuilder();
+            while (!head.toString().endsWith("\r\n\r\n")) {
+                int b = input.read();
+                if (b == -1) {
+                    throw new IOException("Connection closed");
+                }
+                head.append((char) b);
+            }
+
+            if (!head.toString().startsWith("HTTP/1.1 200")) {
+                throw new IOException("Unexpected response: " + head);
+            }
+
+            String lengthHeader = "Content-Length: ";
+            int lengthStart = head.indexOf(lengthHeader) + lengthHeader.length();
+            int length = Integer.parseInt(head.substring(lengthStart, head.indexOf("\r\n", lengthStart)));
+            for (long skipped = 0; skipped < length; ) {
+                long count = input.skip(length - skipped);
+                if (count <= 0) {
+                    throw new IOException("Connection closed");
+                }
+                skipped += count;
+            }
+        }
+    }
+
+    private static class FakeTileSource implements TileSource {
+        private final byte[] tile = new byte[TILE_SIZE];
+
+        @Override
+        public byte[] getTileBlob(int zoom, int x, int y) {
+            return tile;
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return "identity";
+        }
+    }
+}
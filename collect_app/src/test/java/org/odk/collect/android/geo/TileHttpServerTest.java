@@ -0,0 +1,206 @@
+package org.odk.collect.android.geo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class TileHttpServerTest {
+
+    private TileHttpServer server;
+    private Socket socket;
+
+    @Before
+    public void setup() throws Exception {
+        server = new TileHttpServer();
+        server.addSource("tiles", new FakeTileSource());
+        server.start();
+
+        socket = new Socket("localhost", server.getPort());
+        socket.setSoTimeout(5000);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        socket.close();
+        server.destroy();
+    }
+
+    @Test
+    public void servesTilesWithHeaders() throws Exception {
+        send("GET /tiles/3/1/2 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+
+        Response response = readResponse();
+        assertThat(response.status, is("HTTP/1.1 200 OK"));
+        assertThat(response.headers.get("content-type"), is("image/png"));
+        assertThat(response.headers.get("content-encoding"), is("identity"));
+        assertThat(response.body, is("3/1/2"));
+    }
+
+    @Test
+    public void keepsConnectionOpenBetweenRequests() throws Exception {
+        send("GET /tiles/3/1/2 HTTP/1.1\r\n\r\n");
+        assertThat(readResponse().body, is("3/1/2"));
+
+        send("GET /tiles/12/345/678 HTTP/1.1\r\n\r\n");
+        assertThat(readResponse().body, is("12/345/678"));
+    }
+
+    @Test
+    public void answersPipelinedRequestsInOrder() throws Exception {
+        StringBuilder requests = new StringBuilder();
+        for (int x = 0; x < 50; x++) {
+            requests.append(String.format(Locale.US, "GET /tiles/10/%d/7 HTTP/1.1\r\n\r\n", x));
+        }
+        send(requests.toString());
+
+        for (int x = 0; x < 50; x++) {
+            assertThat(readResponse().body, is("10/" + x + "/7"));
+        }
+    }
+
+    @Test
+    public void whenThereIsNoTile_returns404AndKeepsConnectionOpen() throws Exception {
+        send("GET /tiles/3/1/" + FakeTileSource.MISSING_Y + " HTTP/1.1\r\n\r\n");
+        assertThat(readResponse().status, is("HTTP/1.1 404 Not Found"));
+
+        send("GET /other/3/1/2 HTTP/1.1\r\n\r\n");
+        assertThat(readResponse().status, is("HTTP/1.1 404 Not Found"));
+
+        send("GET /tiles/3/1/2 HTTP/1.1\r\n\r\n");
+        assertThat(readResponse().body, is("3/1/2"));
+    }
+
+    @Test
+    public void whenRequestAsksToClose_closesConnectionAfterResponse() throws Exception {
+        send("GET /tiles/3/1/2 HTTP/1.1\r\nConnection: close\r\n\r\n");
+
+        Response response = readResponse();
+        assertThat(response.headers.get("connection"), is("close"));
+        assertThat(response.body, is("3/1/2"));
+        assertThat(readResponse(), is(nullValue()));
+    }
+
+    @Test
+    public void forHttp10Requests_closesConnectionAfterResponse() throws Exception {
+        send("GET /tiles/3/1/2 HTTP/1.0\r\n\r\n");
+
+        assertThat(readResponse().body, is("3/1/2"));
+        assertThat(readResponse(), is(nullValue()));
+    }
+
+    @Test
+    public void forBadRequests_returns400AndClosesConnection() throws Exception {
+        send("POST /tiles/3/1/2 HTTP/1.1\r\n\r\n");
+
+        assertThat(readResponse().status, is("HTTP/1.1 400 Bad Request"));
+        assertThat(readResponse(), is(nullValue()));
+    }
+
+    @Test
+    public void whenTileSourceFails_returns500AndClosesConnection() throws Exception {
+        send("GET /tiles/3/1/" + FakeTileSource.FAILING_Y + " HTTP/1.1\r\n\r\nGET /tiles/3/1/2 HTTP/1.1\r\n\r\n");
+
+        Response response = readResponse();
+        assertThat(response.status, is("HTTP/1.1 500 Internal Server Error"));
+        assertThat(response.headers.get("connection"), is("close"));
+        assertThat(readResponse(), is(nullValue()));
+
+        socket.close();
+        socket = new Socket("localhost", server.getPort());
+        socket.setSoTimeout(5000);
+        send("GET /tiles/3/1/2 HTTP/1.1\r\n\r\n");
+        assertThat(readResponse().body, is("3/1/2"));
+    }
+
+    private void send(String requests) throws IOException {
+        socket.getOutputStream().write(requests.getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+    }
+
+    /**
+     * @return the next response on the connection or null if the server closed it
+     */
+    private Response readResponse() throws IOException {
+        InputStream input = socket.getInputStream();
+        String status = readLine(input);
+        if (status == null) {
+            return null;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (String line = readLine(input); !line.isEmpty(); line = readLine(input)) {
+            String[] header = line.split(": ", 2);
+            headers.put(header[0].toLowerCase(Locale.US), header[1]);
+        }
+
+        byte[] body = new byte[Integer.parseInt(headers.get("content-length"))];
+        for (int read = 0; read < body.length; ) {
+            read += input.read(body, read, body.length - read);
+        }
+
+        return new Response(status, headers, new String(body, StandardCharsets.US_ASCII));
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = input.read(); b != '\n'; b = input.read()) {
+            if (b == -1) {
+                return null;
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    private static class Response {
+        final String status;
+        final Map<String, String> headers;
+        final String body;
+
+        Response(String status, Map<String, String> headers, String body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    /** Serves each tile's coordinates as its data (or fails for {@link #FAILING_Y}). */
+    private static class FakeTileSource implements TileSource {
+        static final int MISSING_Y = 999;
+        static final int FAILING_Y = 500;
+
+        @Override
+        public byte[] getTileBlob(int zoom, int x, int y) {
+            if (y == FAILING_Y) {
+                throw new IllegalStateException("Tile database is closed");
+            }
+
+            return y == MISSING_Y ? null : (zoom + "/" + x + "/" + y).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return "identity";
+        }
+    }
+}
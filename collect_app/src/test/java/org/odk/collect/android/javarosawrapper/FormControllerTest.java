@@ -2,6 +2,7 @@ package org.odk.collect.android.javarosawrapper;
 
 import com.google.common.io.Files;
 
+import org.javarosa.core.model.FormIndex;
 import org.javarosa.form.api.FormEntryController;
 import org.javarosa.form.api.FormEntryModel;
 import org.javarosa.xform.util.XFormUtils;
@@ -90,6 +91,61 @@ public class FormControllerTest {
     }
 
 
+    //region getIndexFromXPath
+    @Test
+    public void getIndexFromXPath_returnsIndexOfEventWithXPath() throws Exception {
+        FormController formController = createFormController(ONE_QUESTION_NESTED_REPEAT);
+
+        formController.stepToNextScreenEvent();
+        formController.stepToNextScreenEvent();
+        FormIndex index = formController.getFormIndex();
+        String xpath = formController.getXPath(index);
+
+        formController.jumpToIndex(FormIndex.createBeginningOfFormIndex());
+        assertThat(formController.getIndexFromXPath(xpath), equalTo(index));
+        assertThat(formController.getIndexFromXPath(xpath), equalTo(index));
+        assertThat(formController.getFormIndex(), equalTo(FormIndex.createBeginningOfFormIndex()));
+    }
+
+    @Test
+    public void getIndexFromXPath_afterNewRepeat_returnsIndexInNewRepeat() throws Exception {
+        FormController formController = createFormController(ONE_QUESTION_REPEAT);
+
+        formController.stepToNextScreenEvent();
+        formController.getIndexFromXPath(formController.getXPath(formController.getFormIndex()));
+
+        formController.jumpToNewRepeatPrompt();
+        String promptXPath = formController.getXPath(formController.getFormIndex());
+        formController.newRepeat();
+        formController.stepToNextEvent(true);
+        FormIndex newQuestion = formController.getFormIndex();
+        String newQuestionXPath = formController.getXPath(newQuestion);
+
+        formController.jumpToIndex(FormIndex.createBeginningOfFormIndex());
+        assertThat(formController.getIndexFromXPath(newQuestionXPath), equalTo(newQuestion));
+        assertThat(formController.getIndexFromXPath(promptXPath), is(nullValue()));
+    }
+
+    @Test
+    public void getIndexFromXPath_afterDeleteRepeat_doesNotReturnIndexInDeletedRepeat() throws Exception {
+        FormController formController = createFormController(ONE_QUESTION_REPEAT);
+
+        formController.stepToNextScreenEvent();
+        FormIndex firstQuestion = formController.getFormIndex();
+        String firstQuestionXPath = formController.getXPath(firstQuestion);
+        formController.jumpToNewRepeatPrompt();
+        formController.newRepeat();
+        formController.stepToNextEvent(true);
+        String secondQuestionXPath = formController.getXPath(formController.getFormIndex());
+        formController.getIndexFromXPath(secondQuestionXPath);
+
+        formController.deleteRepeat();
+
+        assertThat(formController.getIndexFromXPath(secondQuestionXPath), is(nullValue()));
+        assertThat(formController.getIndexFromXPath(firstQuestionXPath), equalTo(firstQuestion));
+    }
+    //endregion
+
     //region indexIsInFieldList
     @Test
     public void questionInGroupWithoutFieldListAppearance_isNotInFieldList() throws IOException {
@@ -152,6 +152,50 @@ public abstract class OpenRosaGetRequestTest {
         assertThat(result2.getStatusCode(), equalTo(304));
     }
 
+    @Test
+    public void withRangeStart_sendsRangeAndIfRangeHeaders() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(206));
+
+        subject.executeGetRequest(mockWebServer.url("").uri(), null, null, 100, "\"etag\"");
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getHeader("Range"), equalTo("bytes=100-"));
+        assertThat(request.getHeader("If-Range"), equalTo("\"etag\""));
+    }
+
+    @Test
+    public void withoutRangeStart_doesNotSendRangeHeaders() throws Exception {
+        mockWebServer.enqueue(new MockResponse());
+
+        subject.executeGetRequest(mockWebServer.url("").uri(), null, null);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getHeader("Range"), nullValue());
+        assertThat(request.getHeader("If-Range"), nullValue());
+    }
+
+    @Test
+    public void withRangeStart_whenResponseIsPartialContent_returnsBodyAndStatusCode() throws Exception {
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(206)
+                .addHeader("ETag", "\"etag\"")
+                .setBody("REST OF BODY"));
+
+        HttpGetResult result = subject.executeGetRequest(mockWebServer.url("").uri(), null, null, 100, null);
+        assertThat(result.getStatusCode(), equalTo(206));
+        assertThat(result.getHeader("etag"), equalTo("\"etag\""));
+        assertThat(IOUtils.toString(result.getInputStream(), Charset.defaultCharset()), equalTo("REST OF BODY"));
+    }
+
+    @Test
+    public void withRangeStart_whenResponseIsWholeBody_returnsBodyAndStatusCode() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setBody("WHOLE BODY"));
+
+        HttpGetResult result = subject.executeGetRequest(mockWebServer.url("").uri(), null, null, 100, null);
+        assertThat(result.getStatusCode(), equalTo(200));
+        assertThat(IOUtils.toString(result.getInputStream(), Charset.defaultCharset()), equalTo("WHOLE BODY"));
+    }
+
     private static byte[] gzip(String data) throws IOException {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length());
         GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream);
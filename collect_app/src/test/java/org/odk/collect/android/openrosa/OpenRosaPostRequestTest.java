@@ -243,6 +243,58 @@ public abstract class OpenRosaPostRequestTest {
         assertThat(response.getResponseCode(), equalTo(500));
     }
 
+    @Test
+    public void whenUploadProgressSaysFileWasAccepted_doesNotSendIt() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+
+        URI uri = mockWebServer.url("/blah").uri();
+        File attachment1 = createTempFile("blah blah blah");
+        File attachment2 = createTempFile("blah2 blah2 blah2");
+        RecordingUploadProgress uploadProgress = new RecordingUploadProgress(attachment1);
+        subject.uploadSubmissionAndFiles(createTempFile("<node>content</node>"), asList(attachment1, attachment2), uri, null, 1024, uploadProgress);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        List<String[]> parts = splitMultiPart(request);
+
+        assertThat(parts.size(), equalTo(2));
+        assertThat(parts.get(1)[1], containsString("name=\"" + attachment2.getName() + "\""));
+    }
+
+    @Test
+    public void whenMoreThanOneAttachment_andRequestIsLargerThanMaxContentLength_andSecondRequestIs500_onlyFirstPartIsAccepted() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+        URI uri = mockWebServer.url("/blah").uri();
+        File attachment1 = createTempFile("blah blah blah");
+        File attachment2 = createTempFile("blah2 blah2 blah2");
+        RecordingUploadProgress uploadProgress = new RecordingUploadProgress();
+        subject.uploadSubmissionAndFiles(createTempFile("<node>content</node>"), asList(attachment1, attachment2), uri, null, 0, uploadProgress);
+
+        assertThat(uploadProgress.accepted, equalTo(asList(attachment1)));
+    }
+
+    @Test
+    public void whenMoreThanOneAttachment_andEarlierPartWasAccepted_resumesFromNextPart() throws Exception {
+        mockWebServer.enqueue(new MockResponse().setResponseCode(201));
+
+        URI uri = mockWebServer.url("/blah").uri();
+        File attachment1 = createTempFile("blah blah blah");
+        File attachment2 = createTempFile("blah2 blah2 blah2");
+        RecordingUploadProgress uploadProgress = new RecordingUploadProgress(attachment1);
+        HttpPostResult response = subject.uploadSubmissionAndFiles(createTempFile("<node>content</node>"), asList(attachment1, attachment2), uri, null, 0, uploadProgress);
+
+        assertThat(response.getResponseCode(), equalTo(201));
+        assertThat(mockWebServer.getRequestCount(), equalTo(1));
+
+        List<String[]> parts = splitMultiPart(mockWebServer.takeRequest());
+        assertThat(parts.size(), equalTo(2));
+        assertThat(parts.get(1)[1], containsString("name=\"" + attachment2.getName() + "\""));
+        assertThat(uploadProgress.accepted, equalTo(asList(attachment2)));
+        assertThat(uploadProgress.metrics.getFilesSkipped(), equalTo(1));
+        assertThat(uploadProgress.metrics.getBytesSent() > 0, equalTo(true));
+    }
+
     private File createTempFile(String content) throws Exception {
         return createTempFile(content, ".tmp");
     }
@@ -277,6 +329,28 @@ public abstract class OpenRosaPostRequestTest {
         return compressed;
     }
 
+    private static class RecordingUploadProgress implements UploadProgress {
+
+        private final List<File> alreadyAccepted;
+        private final List<File> accepted = new ArrayList<>();
+        private UploadMetrics metrics;
+
+        RecordingUploadProgress(File... alreadyAccepted) {
+            this.alreadyAccepted = asList(alreadyAccepted);
+        }
+
+        @Override
+        public boolean isAccepted(@NonNull File file) {
+            return alreadyAccepted.contains(file);
+        }
+
+        @Override
+        public void onPartAccepted(@NonNull List<File> files, @NonNull UploadMetrics metrics) {
+            accepted.addAll(files);
+            this.metrics = metrics;
+        }
+    }
+
     private class XmlOrBlahContentTypeMapper implements OpenRosaHttpInterface.FileToContentTypeMapper {
 
         @NonNull
@@ -13,6 +13,7 @@ import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.odk.collect.android.database.DatabaseConnection;
 import org.odk.collect.android.injection.DaggerUtils;
 import org.odk.collect.android.storage.StoragePathProvider;
 import org.odk.collect.android.storage.StorageSubdirectory;
@@ -40,6 +41,7 @@ import static org.odk.collect.android.database.forms.DatabaseFormColumns.LANGUAG
 import static org.odk.collect.android.database.forms.DatabaseFormColumns.MD5_HASH;
 import static org.odk.collect.android.provider.FormsProviderAPI.CONTENT_ITEM_TYPE;
 import static org.odk.collect.android.provider.FormsProviderAPI.CONTENT_TYPE;
+import static org.odk.collect.android.provider.FormsProviderAPI.getContentNewestFormsByFormIdUri;
 import static org.odk.collect.android.provider.FormsProviderAPI.getUri;
 
 @RunWith(AndroidJUnit4.class)
@@ -281,6 +283,37 @@ public class FormsProviderTest {
         }
     }
 
+    @Test
+    public void query_withNewestFormsByFormIdUri_returnsOneFormForEachFormId() {
+        addFormsToDirAndDb(firstProjectId, "formA", "Form A", "1");
+        addFormsToDirAndDb(firstProjectId, "formA", "Form A", "2");
+        addFormsToDirAndDb(firstProjectId, "formB", "Form B", "1");
+
+        try (Cursor cursor = contentResolver.query(getContentNewestFormsByFormIdUri(firstProjectId), null, null, null, JR_FORM_ID + " ASC")) {
+            assertThat(cursor.getCount(), is(2));
+            assertThat(cursor.getColumnCount(), is(17));
+
+            cursor.moveToNext();
+            assertThat(cursor.getString(cursor.getColumnIndex(JR_FORM_ID)), is("formA"));
+            assertThat(cursor.getString(cursor.getColumnIndex(DATE)), is(notNullValue()));
+
+            cursor.moveToNext();
+            assertThat(cursor.getString(cursor.getColumnIndex(JR_FORM_ID)), is("formB"));
+        }
+    }
+
+    @Test
+    public void query_afterDatabaseIsClosed_returnsForms() {
+        addFormsToDirAndDb(firstProjectId, "formA", "Form A", "1");
+        contentResolver.query(getUri(firstProjectId), null, null, null, null).close();
+
+        DatabaseConnection.closeAll();
+
+        try (Cursor cursor = contentResolver.query(getUri(firstProjectId), null, null, null, null)) {
+            assertThat(cursor.getCount(), is(1));
+        }
+    }
+
     @Test
     public void getType_returnsFormAndAllFormsTypes() {
         assertThat(contentResolver.getType(getUri(firstProjectId)), is(CONTENT_TYPE));
@@ -0,0 +1,113 @@
+package org.odk.collect.android.provider;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.database.forms.DatabaseFormsRepository;
+import org.odk.collect.android.database.instances.DatabaseInstancesRepository;
+import org.odk.collect.android.injection.DaggerUtils;
+import org.odk.collect.android.injection.config.AppDependencyComponent;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.support.CollectHelpers;
+import org.odk.collect.forms.FormsRepository;
+import org.odk.collect.forms.instances.InstancesRepository;
+import org.odk.collect.formstest.FormUtils;
+import org.odk.collect.formstest.InstanceUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures how many queries {@link FormsProvider} and {@link InstanceProvider} answer when
+ * several callers query at once (as external apps and our own lists do). For comparison each is
+ * also queried the way the providers used to set up every query (injecting the provider and
+ * creating a new repository). For each it reports the queries per millisecond for
+ * {@link #THREADS} callers making {@link #QUERIES_PER_THREAD} queries each (after a run that
+ * isn't counted). Run manually by removing the {@link Ignore}.
+ */
+@Ignore("Benchmark")
+@RunWith(AndroidJUnit4.class)
+public class ProviderQueryBenchmark {
+
+    private static final int ROWS = 20;
+    private static final int THREADS = 4;
+    private static final int QUERIES_PER_THREAD = 500;
+
+    @Test
+    public void queryFormsAndInstances() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        AppDependencyComponent component = DaggerUtils.getComponent(context);
+        StoragePathProvider storagePathProvider = component.storagePathProvider();
+        ContentResolver contentResolver = context.getContentResolver();
+
+        String projectId = CollectHelpers.createDemoProject();
+        FormsRepository formsRepository = component.formsRepositoryProvider().get(projectId);
+        InstancesRepository instancesRepository = component.instancesRepositoryProvider().get(projectId);
+        for (int i = 0; i < ROWS; i++) {
+            formsRepository.save(FormUtils.buildForm("form" + i, "1", storagePathProvider.getOdkDirPath(StorageSubdirectory.FORMS, projectId)).build());
+            instancesRepository.save(InstanceUtils.buildInstance("form" + i, "1", storagePathProvider.getOdkDirPath(StorageSubdirectory.INSTANCES, projectId)).build());
+        }
+
+        report("Forms, setting up every query", () -> {
+            FormsProvider provider = new FormsProvider();
+            component.inject(provider);
+            return ((DatabaseFormsRepository) provider.formsRepositoryProvider.get(projectId)).rawQuery(null, null, null, null, null, null, null);
+        });
+        report("FormsProvider", () -> contentResolver.query(FormsProviderAPI.getUri(projectId), null, null, null, null));
+        report("FormsProvider newest forms", () -> contentResolver.query(FormsProviderAPI.getContentNewestFormsByFormIdUri(projectId), null, null, null, null));
+
+        report("Instances, setting up every query", () -> {
+            InstanceProvider provider = new InstanceProvider();
+            component.inject(provider);
+            return ((DatabaseInstancesRepository) provider.instancesRepositoryProvider.get(projectId)).rawQuery(null, null, null, null, null, null);
+        });
+        report("InstanceProvider", () -> contentResolver.query(InstanceProviderAPI.getUri(projectId), null, null, null, null));
+    }
+
+    private static void report(String name, Query query) throws Exception {
+        run(query);
+
+        long start = System.nanoTime();
+        run(query);
+        long time = System.nanoTime() - start;
+
+        System.out.println(String.format("%s: %.1f queries/ms", name, THREADS * QUERIES_PER_THREAD / (time / 1_000_000.0)));
+    }
+
+    private static void run(Query query) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> callers = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                callers.add(executor.submit(() -> {
+                    for (int j = 0; j < QUERIES_PER_THREAD; j++) {
+                        try (Cursor cursor = query.query()) {
+                            cursor.moveToLast();
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> caller : callers) {
+                caller.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface Query {
+        Cursor query();
+    }
+}
@@ -0,0 +1,136 @@
+package org.odk.collect.android.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.odk.collect.android.preferences.keys.MetaKeys;
+import org.odk.collect.android.projects.CurrentProjectProvider;
+import org.odk.collect.android.support.InMemSettingsProvider;
+import org.odk.collect.projects.Project;
+import org.odk.collect.projects.ProjectsRepository;
+import org.odk.collect.projects.SharedPreferencesProjectsRepository;
+import org.odk.collect.shared.Settings;
+import org.odk.collect.shared.strings.UUIDGenerator;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares resolving the current project's instances directory the way it used to be done
+ * (parsing the projects JSON and building the path on every call) with {@link StoragePathProvider}.
+ * A new provider is created for each resolution as it is on hot paths. For each it reports the
+ * resolutions per millisecond over {@link #ITERATIONS} calls (after {@link #ITERATIONS} that aren't
+ * counted) and the bytes allocated per call (where the JVM can report it). Run manually by removing
+ * the {@link Ignore}.
+ */
+@Ignore("Benchmark")
+public class StoragePathProviderBenchmark {
+
+    private static final int PROJECT_COUNT = 5;
+    private static final int ITERATIONS = 200_000;
+
+    @Test
+    public void resolveInstancesPath() {
+        InMemSettingsProvider settingsProvider = new InMemSettingsProvider();
+        Settings metaSettings = settingsProvider.getMetaSettings();
+        Gson gson = new Gson();
+
+        ProjectsRepository projectsRepository = new SharedPreferencesProjectsRepository(new UUIDGenerator(), gson, metaSettings, MetaKeys.KEY_PROJECTS);
+        for (int i = 0; i < PROJECT_COUNT; i++) {
+            projectsRepository.save(new Project.New("Project " + i, "P", "#3e9fcc"));
+        }
+
+        CurrentProjectProvider currentProjectProvider = new CurrentProjectProvider(settingsProvider, projectsRepository);
+        currentProjectProvider.setCurrentProject(projectsRepository.getAll().get(PROJECT_COUNT - 1).getUuid());
+
+        CurrentProjectProvider parsingCurrentProjectProvider = new CurrentProjectProvider(settingsProvider, new ParsingProjectsRepository(gson, metaSettings));
+
+        report("Parsing on every call", () -> "/root" + File.separator + StorageSubdirectory.PROJECTS.getDirectoryName() + File.separator
+                + parsingCurrentProjectProvider.getCurrentProject().getUuid() + File.separator + StorageSubdirectory.INSTANCES.getDirectoryName());
+        report("StoragePathProvider", () -> new StoragePathProvider(currentProjectProvider, "/root").getOdkDirPath(StorageSubdirectory.INSTANCES));
+    }
+
+    private static void report(String name, PathResolution resolution) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            resolution.resolve();
+        }
+
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            resolution.resolve();
+        }
+        long time = System.nanoTime() - start;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        System.out.println(String.format("%s: %.0f resolutions/ms, %s", name, ITERATIONS / (time / 1_000_000.0),
+                allocatedBefore >= 0 ? (allocated / ITERATIONS) + " bytes allocated per resolution" : "allocation not available"));
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far or -1 if the JVM doesn't support that
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        } else {
+            return -1;
+        }
+    }
+
+    private interface PathResolution {
+        String resolve();
+    }
+
+    /**
+     * Reads projects the way {@link SharedPreferencesProjectsRepository} did before it kept the
+     * parsed projects.
+     */
+    private static class ParsingProjectsRepository implements ProjectsRepository {
+
+        private final Gson gson;
+        private final Settings settings;
+
+        ParsingProjectsRepository(Gson gson, Settings settings) {
+            this.gson = gson;
+            this.settings = settings;
+        }
+
+        @Override
+        public Project.Saved get(String uuid) {
+            for (Project.Saved project : getAll()) {
+                if (project.getUuid().equals(uuid)) {
+                    return project;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        public List<Project.Saved> getAll() {
+            return gson.fromJson(settings.getString(MetaKeys.KEY_PROJECTS), TypeToken.getParameterized(ArrayList.class, Project.Saved.class).getType());
+        }
+
+        @Override
+        public Project.Saved save(Project project) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void delete(String uuid) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteAll() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.odk.collect.android.tasks;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.support.CollectHelpers;
+import org.odk.collect.android.utilities.FileUtils;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public class FormLoaderTaskTest {
+
+    private final List<Future<?>> stages = new CopyOnWriteArrayList<>();
+
+    /** Starts each stage on its own thread after a delay. */
+    private final Executor slowExecutor = runnable -> {
+        stages.add((Future<?>) runnable);
+        new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                // Run it anyway
+            }
+            runnable.run();
+        }).start();
+    };
+
+    private File formXml;
+
+    @Before
+    public void setup() {
+        CollectHelpers.setupDemoProject();
+
+        formXml = new File(new StoragePathProvider().getOdkDirPath(StorageSubdirectory.FORMS), "broken.xml");
+        File mediaDir = FileUtils.getFormMediaDir(formXml);
+        mediaDir.mkdirs();
+        FileUtils.write(new File(mediaDir, "itemsets.csv"), "list_name,name,label\nfruit,apple,Apple\n".getBytes());
+    }
+
+    @Test
+    public void whenFormCanNotBeRead_returnsOnlyOnceStartedStagesAreFinished() {
+        FileUtils.write(formXml, "<h:html>".getBytes());
+
+        FormLoaderTask task = new FormLoaderTask(null, null, null, slowExecutor);
+        assertThat(task.doInBackground(formXml.getAbsolutePath()), is(nullValue()));
+
+        // Extracting media and importing itemsets.csv
+        assertThat(stages.size(), is(2));
+        for (Future<?> stage : stages) {
+            assertThat(stage.isDone(), is(true));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.odk.collect.android.tasks;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.fail;
+
+public class FormLoadingStagesTest {
+
+    private final FormLoadingStages stages = new FormLoadingStages(Runnable::run);
+
+    @Test
+    public void await_returnsResultOfStartedStage() throws Exception {
+        Future<String> stage = stages.start("Stage", () -> "result");
+        assertThat(FormLoadingStages.await(stage), is("result"));
+    }
+
+    @Test
+    public void await_whenStageThrowsException_throwsSameException() throws Exception {
+        IOException exception = new IOException();
+        Future<String> stage = stages.start("Stage", () -> {
+            throw exception;
+        });
+
+        try {
+            FormLoadingStages.await(stage);
+            fail();
+        } catch (IOException e) {
+            assertThat(e, is(exception));
+        }
+    }
+
+    @Test
+    public void getTimings_includesStartedAndRunStages() throws Exception {
+        stages.start("First", () -> null);
+        stages.run("Second", () -> null);
+
+        assertThat(stages.getTimings(), contains(startsWith("First: "), startsWith("Second: ")));
+    }
+
+    @Test
+    public void getTimings_includesStagesThatThrow() {
+        try {
+            stages.run("Failing", () -> {
+                throw new IOException();
+            });
+        } catch (Exception e) {
+            // expected
+        }
+
+        assertThat(stages.getTimings(), contains(startsWith("Failing: ")));
+    }
+
+    @Test
+    public void cancelAndAwait_stopsStagesThatHaveNotStarted() {
+        List<Runnable> queued = new ArrayList<>();
+        FormLoadingStages queuingStages = new FormLoadingStages(queued::add);
+        Future<String> stage = queuingStages.start("Stage", () -> "result");
+
+        queuingStages.cancelAndAwait();
+        queued.forEach(Runnable::run);
+
+        assertThat(stage.isCancelled(), is(true));
+    }
+
+    @Test
+    public void cancelAndAwait_stopsStagesStartedAfterwards() {
+        stages.cancelAndAwait();
+        Future<String> stage = stages.start("Stage", () -> "result");
+
+        assertThat(stage.isCancelled(), is(true));
+    }
+}
@@ -0,0 +1,104 @@
+package org.odk.collect.android.tasks;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.javarosa.core.model.FormDef;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Compares importing large synthetic instances (of the form in {@link InstanceImporterTest}) the
+ * way it used to be done (reading the file into a byte array, restoring it as a tree and then
+ * populating the blank instance from that) with {@link InstanceImporter}. For each it reports
+ * the average time of {@link #ITERATIONS} imports after {@link #WARMUP_ITERATIONS} that aren't
+ * counted and the bytes allocated by a single import (where the JVM can report it). Run manually
+ * by removing the {@link Ignore}.
+ */
+@Ignore("Benchmark")
+@RunWith(AndroidJUnit4.class)
+public class InstanceImporterBenchmark {
+
+    private static final int[] REPEAT_COUNTS = {1_000, 10_000, 50_000};
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int ITERATIONS = 5;
+
+    @Test
+    public void importLargeInstances() throws Exception {
+        for (int repeatCount : REPEAT_COUNTS) {
+            File instanceFile = createInstance(repeatCount);
+
+            Import restoreAndPopulate = formDef -> InstanceImporterTest.restoreAndPopulate(formDef,
+                    org.apache.commons.io.FileUtils.readFileToByteArray(instanceFile));
+            Import streaming = formDef -> {
+                try (InputStream inputStream = new FileInputStream(instanceFile)) {
+                    new InstanceImporter(formDef).importInstance(inputStream);
+                }
+            };
+
+            System.out.println(repeatCount + " repeats (" + instanceFile.length() + " bytes):");
+            report("  Restore and populate", restoreAndPopulate);
+            report("  InstanceImporter", streaming);
+        }
+    }
+
+    private static void report(String name, Import instanceImport) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            instanceImport.run(InstanceImporterTest.createFormDef());
+        }
+
+        long time = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            FormDef formDef = InstanceImporterTest.createFormDef();
+            long start = System.nanoTime();
+            instanceImport.run(formDef);
+            time += System.nanoTime() - start;
+        }
+
+        FormDef formDef = InstanceImporterTest.createFormDef();
+        long allocatedBefore = getAllocatedBytes();
+        instanceImport.run(formDef);
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        System.out.println(String.format("%s: %.1f ms, %s", name, time / 1_000_000.0 / ITERATIONS,
+                allocatedBefore >= 0 ? (allocated / 1024) + " KB allocated" : "allocation not available"));
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far or -1 if the JVM doesn't support that
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        } else {
+            return -1;
+        }
+    }
+
+    private static File createInstance(int repeatCount) throws Exception {
+        File instanceFile = new File(TempFiles.createTempDir(), "instance.xml");
+        try (Writer writer = new FileWriter(instanceFile)) {
+            writer.write("<?xml version='1.0' ?><data id=\"importer\"><name>Benchmark</name><age>42</age>");
+            for (int i = 0; i < repeatCount; i++) {
+                writer.write("<person><first>Person " + i + "</first><pets>" + (i % 5) + "</pets></person>");
+            }
+            writer.write("<meta><instanceID>uuid:benchmark</instanceID></meta></data>");
+        }
+
+        return instanceFile;
+    }
+
+    private interface Import {
+        void run(FormDef formDef) throws Exception;
+    }
+}
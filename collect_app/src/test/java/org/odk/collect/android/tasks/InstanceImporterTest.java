@@ -0,0 +1,161 @@
+package org.odk.collect.android.tasks;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.instance.InstanceInitializationFactory;
+import org.javarosa.core.model.instance.TreeElement;
+import org.javarosa.core.model.instance.utils.DefaultAnswerResolver;
+import org.javarosa.model.xform.XFormSerializingVisitor;
+import org.javarosa.xform.parse.XFormParser;
+import org.javarosa.xform.util.XFormUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.external.ExternalAnswerResolver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class InstanceImporterTest {
+
+    @Test
+    public void importInstance_populatesBlankInstanceTheSameWayAsRestoringAndPopulating() throws Exception {
+        String instance = "<?xml version='1.0' ?>" +
+                "<data id=\"importer\" version=\"2\">" +
+                "<name>  Ada  </name>" +
+                "<age>36</age>" +
+                "<person><first>Alan</first><pets>2</pets></person>" +
+                "<unknown>ignored</unknown>" +
+                "<person><first>Grace</first><pets/></person>" +
+                "<person><first><![CDATA[Bob & Co]]></first><pets>0</pets></person>" +
+                "<meta><instanceID>uuid:1234</instanceID></meta>" +
+                "</data>";
+
+        assertThat(importAndSerialize(instance), is(restoreAndSerialize(instance)));
+    }
+
+    @Test
+    public void importInstance_whenSavedInstanceHasNoRepeats_removesDefaultRepeatInstances() throws Exception {
+        String instance = "<data id=\"importer\"><name>Ada</name><age/><meta><instanceID/></meta></data>";
+
+        assertThat(importAndSerialize(instance), is(restoreAndSerialize(instance)));
+    }
+
+    @Test
+    public void importInstance_whenSavedInstanceIsMissingElements_marksThemNonRelevant() throws Exception {
+        FormDef formDef = createFormDef();
+        TreeElement root = importInstance(formDef, "<data id=\"importer\"><name>Ada</name></data>");
+
+        assertThat(root.getChild("age", 0).isRelevant(), is(false));
+        assertThat(root.getChild("name", 0).getValue().getDisplayText(), is("Ada"));
+    }
+
+    @Test
+    public void importInstance_whenRootDoesNotMatchForm_returnsNull() throws Exception {
+        assertThat(importInstance(createFormDef(), "<other><name>Ada</name></other>"), is(nullValue()));
+    }
+
+    @Test
+    public void importInstance_whenSavedInstanceIsTruncated_throwsIOExceptionWithoutChangingForm() throws Exception {
+        FormDef formDef = createFormDef();
+        byte[] blankInstance = new XFormSerializingVisitor().serializeInstance(formDef.getInstance());
+
+        try {
+            importInstance(formDef, "<data id=\"importer\"><name>Ada</name><person><first>Al");
+            fail();
+        } catch (IOException e) {
+            assertThat(new XFormSerializingVisitor().serializeInstance(formDef.getInstance()), is(blankInstance));
+        }
+    }
+
+    private static String importAndSerialize(String instance) throws IOException {
+        FormDef formDef = createFormDef();
+        formDef.getInstance().setRoot(importInstance(formDef, instance));
+        return new String(new XFormSerializingVisitor().serializeInstance(formDef.getInstance()));
+    }
+
+    private static String restoreAndSerialize(String instance) throws IOException {
+        FormDef formDef = createFormDef();
+        formDef.getInstance().setRoot(restoreAndPopulate(formDef, instance.getBytes()));
+        return new String(new XFormSerializingVisitor().serializeInstance(formDef.getInstance()));
+    }
+
+    private static TreeElement importInstance(FormDef formDef, String instance) throws IOException {
+        return new InstanceImporter(formDef).importInstance(new ByteArrayInputStream(instance.getBytes()));
+    }
+
+    /**
+     * How saved instances were imported before {@link InstanceImporter}.
+     */
+    static TreeElement restoreAndPopulate(FormDef formDef, byte[] instance) {
+        TreeElement savedRoot = XFormParser.restoreDataModel(instance, null).getRoot();
+        TreeElement templateRoot = formDef.getInstance().getRoot().deepCopy(true);
+
+        XFormParser.setAnswerResolver(new ExternalAnswerResolver());
+        templateRoot.populate(savedRoot, formDef);
+        XFormParser.setAnswerResolver(new DefaultAnswerResolver());
+
+        return templateRoot;
+    }
+
+    static FormDef createFormDef() {
+        FormDef formDef = XFormUtils.getFormFromInputStream(new ByteArrayInputStream(FORM.getBytes()));
+        formDef.initialize(true, new InstanceInitializationFactory());
+        return formDef;
+    }
+
+    private static final String FORM = "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\" xmlns:jr=\"http://openrosa.org/javarosa\">\n" +
+            "    <h:head>\n" +
+            "        <h:title>Importer</h:title>\n" +
+            "        <model>\n" +
+            "            <instance>\n" +
+            "                <data id=\"importer\">\n" +
+            "                    <name/>\n" +
+            "                    <age/>\n" +
+            "                    <person jr:template=\"\">\n" +
+            "                        <first/>\n" +
+            "                        <pets/>\n" +
+            "                    </person>\n" +
+            "                    <person>\n" +
+            "                        <first/>\n" +
+            "                        <pets/>\n" +
+            "                    </person>\n" +
+            "                    <meta>\n" +
+            "                        <instanceID/>\n" +
+            "                    </meta>\n" +
+            "                </data>\n" +
+            "            </instance>\n" +
+            "            <bind nodeset=\"/data/name\" type=\"string\"/>\n" +
+            "            <bind nodeset=\"/data/age\" type=\"int\"/>\n" +
+            "            <bind nodeset=\"/data/person/first\" type=\"string\"/>\n" +
+            "            <bind nodeset=\"/data/person/pets\" type=\"int\"/>\n" +
+            "            <bind nodeset=\"/data/meta/instanceID\" type=\"string\" readonly=\"true()\"/>\n" +
+            "        </model>\n" +
+            "    </h:head>\n" +
+            "    <h:body>\n" +
+            "        <input ref=\"/data/name\">\n" +
+            "            <label>Name</label>\n" +
+            "        </input>\n" +
+            "        <input ref=\"/data/age\">\n" +
+            "            <label>Age</label>\n" +
+            "        </input>\n" +
+            "        <group ref=\"/data/person\">\n" +
+            "            <label>Person</label>\n" +
+            "            <repeat nodeset=\"/data/person\">\n" +
+            "                <input ref=\"/data/person/first\">\n" +
+            "                    <label>First name</label>\n" +
+            "                </input>\n" +
+            "                <input ref=\"/data/person/pets\">\n" +
+            "                    <label>Pets</label>\n" +
+            "                </input>\n" +
+            "            </repeat>\n" +
+            "        </group>\n" +
+            "    </h:body>\n" +
+            "</h:html>";
+}
@@ -0,0 +1,131 @@
+package org.odk.collect.android.tasks;
+
+import android.net.Uri;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.io.FileUtils;
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.services.transport.payload.ByteArrayPayload;
+import org.javarosa.form.api.FormEntryController;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.analytics.Analytics;
+import org.odk.collect.android.application.Collect;
+import org.odk.collect.android.external.ExternalDataManager;
+import org.odk.collect.android.javarosawrapper.FormController;
+import org.odk.collect.android.provider.FormsProviderAPI;
+import org.odk.collect.android.storage.StoragePathProvider;
+import org.odk.collect.android.storage.StorageSubdirectory;
+import org.odk.collect.android.support.CollectHelpers;
+import org.odk.collect.android.utilities.FormsRepositoryProvider;
+import org.odk.collect.android.utilities.InstancesRepositoryProvider;
+import org.odk.collect.android.utilities.MediaUtils;
+import org.odk.collect.forms.Form;
+import org.odk.collect.forms.instances.Instance;
+import org.odk.collect.formstest.FormUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class SaveFormToDiskTest {
+
+    private static final String INSTANCE_XML = "<data id=\"one\"><q1>answer</q1></data>";
+
+    private final FormController formController = mock(FormController.class);
+
+    private String projectId;
+    private Uri formUri;
+    private File instanceFile;
+    private File lastSavedFile;
+
+    @Before
+    public void setup() throws Exception {
+        projectId = CollectHelpers.setupDemoProject();
+        StoragePathProvider storagePathProvider = new StoragePathProvider();
+
+        Form form = new FormsRepositoryProvider(ApplicationProvider.getApplicationContext()).get()
+                .save(FormUtils.buildForm("one", "1", storagePathProvider.getOdkDirPath(StorageSubdirectory.FORMS)).build());
+        formUri = FormsProviderAPI.getUri(projectId, form.getDbId());
+
+        instanceFile = new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.INSTANCES), "one_2021/one_2021.xml");
+        lastSavedFile = new File(storagePathProvider.getOdkDirPath(StorageSubdirectory.FORMS), "one-media/last-saved.xml");
+
+        when(formController.validateAnswers(true)).thenReturn(FormEntryController.ANSWER_OK);
+        when(formController.validateAnswers(false)).thenReturn(FormEntryController.ANSWER_OK);
+        when(formController.getSubmissionMetadata()).thenReturn(new FormController.InstanceMetadata("uuid:one", null, null));
+        when(formController.getFilledInFormXml()).thenAnswer(invocation -> createPayload());
+        when(formController.getInstanceFile()).thenReturn(instanceFile);
+        when(formController.getLastSavedPath()).thenReturn(lastSavedFile.getAbsolutePath());
+        when(formController.getFormDef()).thenReturn(new FormDef());
+        when(formController.isSubmissionEntireForm()).thenReturn(true);
+
+        Collect.getInstance().setFormController(formController);
+        Collect.getInstance().setExternalDataManager(mock(ExternalDataManager.class));
+    }
+
+    @After
+    public void teardown() {
+        Collect.getInstance().setFormController(null);
+    }
+
+    @Test
+    public void whenFinalizingWholeForm_serializesInstanceOnce() throws Exception {
+        SaveToDiskResult result = saveForm(true);
+
+        assertThat(result.getSaveResult(), is(SaveFormToDisk.SAVED));
+        verify(formController, times(1)).getFilledInFormXml();
+        verify(formController, never()).getSubmissionXml();
+        assertThat(FileUtils.readFileToString(instanceFile, StandardCharsets.UTF_8), is(INSTANCE_XML));
+        assertThat(new File(instanceFile.getParentFile(), "submission.xml").exists(), is(false));
+
+        Instance instance = new InstancesRepositoryProvider(Collect.getInstance()).get().getOneByPath(instanceFile.getAbsolutePath());
+        assertThat(instance.getStatus(), is(Instance.STATUS_COMPLETE));
+    }
+
+    @Test
+    public void writesLastSavedInstanceInBackground() throws Exception {
+        saveForm(false);
+        SaveFormToDisk.awaitLastSavedWrites();
+
+        assertThat(FileUtils.readFileToString(lastSavedFile, StandardCharsets.UTF_8), is(INSTANCE_XML));
+        assertThat(new File(lastSavedFile.getAbsolutePath() + ".tmp").exists(), is(false));
+    }
+
+    @Test
+    public void whenFinalizingFails_instanceCanStillBeEdited() throws Exception {
+        when(formController.isSubmissionEntireForm()).thenReturn(false);
+        when(formController.getSubmissionXml()).thenThrow(new IOException());
+
+        SaveToDiskResult result = saveForm(true);
+
+        assertThat(result.getSaveResult(), is(SaveFormToDisk.SAVE_ERROR));
+        Instance instance = new InstancesRepositoryProvider(Collect.getInstance()).get().getOneByPath(instanceFile.getAbsolutePath());
+        assertThat(instance.getStatus(), is(Instance.STATUS_INCOMPLETE));
+        assertThat(instance.canEditWhenComplete(), is(true));
+    }
+
+    private SaveToDiskResult saveForm(boolean shouldFinalize) {
+        SaveFormToDisk saveFormToDisk = new SaveFormToDisk(formController, mock(MediaUtils.class), false, shouldFinalize,
+                null, formUri, mock(Analytics.class), new ArrayList<>(), projectId);
+        return saveFormToDisk.saveForm(message -> { });
+    }
+
+    private static ByteArrayPayload createPayload() {
+        return new ByteArrayPayload(INSTANCE_XML.getBytes(StandardCharsets.UTF_8), null, 0);
+    }
+}
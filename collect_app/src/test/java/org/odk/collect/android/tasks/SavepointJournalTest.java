@@ -0,0 +1,148 @@
+package org.odk.collect.android.tasks;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.model.FormIndex;
+import org.javarosa.core.model.data.IntegerData;
+import org.javarosa.core.model.data.StringData;
+import org.javarosa.core.model.instance.InstanceInitializationFactory;
+import org.javarosa.form.api.FormEntryController;
+import org.javarosa.form.api.FormEntryModel;
+import org.javarosa.xform.util.XFormUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.utilities.FileUtils;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public class SavepointJournalTest {
+
+    private File snapshotFile;
+    private File journalFile;
+
+    @Before
+    public void setup() {
+        File dir = TempFiles.createTempDir();
+        snapshotFile = new File(dir, "instance.xml.save");
+        journalFile = new File(dir, "instance.xml.journal");
+        FileUtils.write(snapshotFile, "<data/>".getBytes());
+    }
+
+    @Test
+    public void replay_savesAnswersAppendedSinceReset() throws Exception {
+        FormEntryController original = createFormEntryController();
+        FormIndex name = getQuestionIndex(original, 0);
+        FormIndex age = getQuestionIndex(original, 1);
+        original.saveAnswer(name, new StringData("Ada"), true);
+        original.saveAnswer(age, new IntegerData(36), true);
+
+        SavepointJournal journal = new SavepointJournal(snapshotFile, journalFile);
+        journal.reset();
+        journal.append(original.getModel().getForm(), Arrays.asList(name, age));
+
+        FormEntryController restored = createFormEntryController();
+        assertThat(journal.replay(restored), is(2));
+        assertThat(restored.getModel().getForm().getMainInstance().resolveReference(name.getReference()).getValue().getDisplayText(), is("Ada"));
+        assertThat(restored.getModel().getForm().getMainInstance().resolveReference(age.getReference()).getValue().getDisplayText(), is("36"));
+    }
+
+    @Test
+    public void replay_savesLatestValueForQuestionAnsweredMoreThanOnce() throws Exception {
+        FormEntryController original = createFormEntryController();
+        FormIndex name = getQuestionIndex(original, 0);
+
+        SavepointJournal journal = new SavepointJournal(snapshotFile, journalFile);
+        journal.reset();
+        original.saveAnswer(name, new StringData("Ada"), true);
+        journal.append(original.getModel().getForm(), Arrays.asList(name));
+        original.saveAnswer(name, null, true);
+        journal.append(original.getModel().getForm(), Arrays.asList(name));
+
+        FormEntryController restored = createFormEntryController();
+        journal.replay(restored);
+        assertThat(restored.getModel().getForm().getMainInstance().resolveReference(name.getReference()).getValue(), is(nullValue()));
+    }
+
+    @Test
+    public void replay_whenSnapshotHasChanged_doesNotSaveAnswers() throws Exception {
+        FormEntryController original = createFormEntryController();
+        FormIndex name = getQuestionIndex(original, 0);
+        original.saveAnswer(name, new StringData("Ada"), true);
+
+        SavepointJournal journal = new SavepointJournal(snapshotFile, journalFile);
+        journal.reset();
+        journal.append(original.getModel().getForm(), Arrays.asList(name));
+        FileUtils.write(snapshotFile, "<data><name/></data>".getBytes());
+
+        assertThat(journal.canAppend(), is(false));
+        assertThat(journal.replay(createFormEntryController()), is(0));
+    }
+
+    @Test
+    public void replay_whenLastEntryIsIncomplete_savesEntriesBeforeIt() throws Exception {
+        FormEntryController original = createFormEntryController();
+        FormIndex name = getQuestionIndex(original, 0);
+        FormIndex age = getQuestionIndex(original, 1);
+        original.saveAnswer(name, new StringData("Ada"), true);
+        original.saveAnswer(age, new IntegerData(36), true);
+
+        SavepointJournal journal = new SavepointJournal(snapshotFile, journalFile);
+        journal.reset();
+        journal.append(original.getModel().getForm(), Arrays.asList(name, age));
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        assertThat(journal.replay(createFormEntryController()), is(1));
+    }
+
+    private static FormEntryController createFormEntryController() {
+        FormDef formDef = XFormUtils.getFormFromInputStream(new ByteArrayInputStream(FORM.getBytes()));
+        formDef.initialize(true, new InstanceInitializationFactory());
+        return new FormEntryController(new FormEntryModel(formDef));
+    }
+
+    private static FormIndex getQuestionIndex(FormEntryController formEntryController, int question) {
+        formEntryController.jumpToIndex(FormIndex.createBeginningOfFormIndex());
+        for (int i = 0; i <= question; i++) {
+            formEntryController.stepToNextEvent();
+        }
+
+        return formEntryController.getModel().getFormIndex();
+    }
+
+    private static final String FORM = "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\">\n" +
+            "    <h:head>\n" +
+            "        <h:title>Journal</h:title>\n" +
+            "        <model>\n" +
+            "            <instance>\n" +
+            "                <data id=\"journal\">\n" +
+            "                    <name/>\n" +
+            "                    <age/>\n" +
+            "                </data>\n" +
+            "            </instance>\n" +
+            "            <bind nodeset=\"/data/name\" type=\"string\"/>\n" +
+            "            <bind nodeset=\"/data/age\" type=\"int\"/>\n" +
+            "        </model>\n" +
+            "    </h:head>\n" +
+            "    <h:body>\n" +
+            "        <input ref=\"/data/name\">\n" +
+            "            <label>Name</label>\n" +
+            "        </input>\n" +
+            "        <input ref=\"/data/age\">\n" +
+            "            <label>Age</label>\n" +
+            "        </input>\n" +
+            "    </h:body>\n" +
+            "</h:html>";
+}
@@ -0,0 +1,57 @@
+package org.odk.collect.android.upload;
+
+import android.net.Uri;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public class SubmissionEndpointCacheTest {
+
+    private final AtomicLong time = new AtomicLong(0);
+    private final SubmissionEndpointCache cache = new SubmissionEndpointCache(1000, time::get);
+
+    private final Uri submissionUri = Uri.parse("http://example.com/submission");
+    private final Uri redirectUri = Uri.parse("https://example.com/submission");
+
+    @Test
+    public void get_returnsResolvedUriAndContentLength() {
+        cache.put(submissionUri, redirectUri, 1024);
+
+        SubmissionEndpointCache.Endpoint endpoint = cache.get(submissionUri);
+        assertThat(endpoint.getUri(), is(redirectUri));
+        assertThat(endpoint.getContentLength(), is(1024L));
+    }
+
+    @Test
+    public void get_whenEndpointWasNotResolved_returnsNull() {
+        assertThat(cache.get(submissionUri), nullValue());
+    }
+
+    @Test
+    public void get_whenEntryIsOlderThanMaxAge_returnsNull() {
+        cache.put(submissionUri, redirectUri, 1024);
+
+        time.set(1000);
+        assertThat(cache.get(submissionUri).getUri(), is(redirectUri));
+
+        time.set(1001);
+        assertThat(cache.get(submissionUri), nullValue());
+    }
+
+    @Test
+    public void remove_removesEntry() {
+        cache.put(submissionUri, redirectUri, 1024);
+        cache.remove(submissionUri);
+
+        assertThat(cache.get(submissionUri), nullValue());
+    }
+}
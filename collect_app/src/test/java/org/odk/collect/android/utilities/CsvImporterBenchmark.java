@@ -0,0 +1,109 @@
+package org.odk.collect.android.utilities;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.Writer;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Compares importing a 500k row CSV with a ContentValues insert per row (what external data and
+ * itemset imports used to do) with importing it through {@link CsvImporter}. Run manually by
+ * removing the {@link Ignore}.
+ */
+@Ignore("Benchmark")
+@RunWith(AndroidJUnit4.class)
+public class CsvImporterBenchmark {
+
+    private static final int ROW_COUNT = 500_000;
+
+    @Test
+    public void import500kRows() throws Exception {
+        File dir = TempFiles.createTempDir();
+        File csvFile = new File(dir, "data.csv");
+        try (Writer writer = new BufferedWriter(new FileWriter(csvFile))) {
+            writer.write("name_key,name,color,region\n");
+            for (int i = 0; i < ROW_COUNT; i++) {
+                writer.write("key" + i + ",Name " + i + ",color" + (i % 12) + ",region" + (i % 100) + "\n");
+            }
+        }
+
+        long contentValuesTime = time(() -> {
+            SQLiteDatabase db = createDatabase(new File(dir, "contentValues.db"));
+            try (CSVReader reader = new CSVReader(new FileReader(csvFile))) {
+                String[] headers = reader.readNext();
+                db.beginTransaction();
+                String[] row;
+                while ((row = reader.readNext()) != null) {
+                    ContentValues values = new ContentValues();
+                    for (int i = 0; i < headers.length; i++) {
+                        values.put("\"" + headers[i] + "\"", row[i]);
+                    }
+                    db.insertOrThrow("data", null, values);
+                }
+                db.setTransactionSuccessful();
+                db.endTransaction();
+            } finally {
+                db.close();
+            }
+        });
+
+        long importerTime = time(() -> {
+            SQLiteDatabase db = createDatabase(new File(dir, "importer.db"));
+            CsvImporter.enableBulkWrites(db);
+            try (CsvImporter importer = CsvImporter.open(csvFile)) {
+                String[] headers = importer.readRow();
+                importer.importRows(db, "INSERT INTO data VALUES (?, ?, ?, ?);", (row, rowNumber, statement) -> {
+                    for (int i = 0; i < headers.length; i++) {
+                        statement.bindString(i + 1, row[i]);
+                    }
+                    return true;
+                }, new CsvImporter.Listener() {
+                    @Override
+                    public void onProgress(long bytesRead, long totalBytes, long rowCount) {
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return false;
+                    }
+                });
+            } finally {
+                db.close();
+            }
+        });
+
+        System.out.println("Importing " + ROW_COUNT + " rows (" + csvFile.length() + " bytes):");
+        System.out.println("  ContentValues per row: " + contentValuesTime + " ms");
+        System.out.println("  CsvImporter: " + importerTime + " ms");
+    }
+
+    private static SQLiteDatabase createDatabase(File file) {
+        file.delete();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+        db.execSQL("CREATE TABLE data (name_key text, name text, color text, region text);");
+        return db;
+    }
+
+    private static long time(Block block) throws Exception {
+        long start = System.nanoTime();
+        block.run();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private interface Block {
+        void run() throws Exception;
+    }
+}
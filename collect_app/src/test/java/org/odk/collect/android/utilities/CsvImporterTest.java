@@ -0,0 +1,124 @@
+package org.odk.collect.android.utilities;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@RunWith(AndroidJUnit4.class)
+public class CsvImporterTest {
+
+    private SQLiteDatabase db;
+    private File csvFile;
+
+    @Before
+    public void setup() throws Exception {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE data (name text, color text);");
+
+        csvFile = TempFiles.createTempFile("data", ".csv");
+        FileUtils.writeStringToFile(csvFile, "name,color\n"
+                + "mango,yellow\n"
+                + "kiwi,green\n"
+                + "\"cherry, sour\",red\n"
+                + "skip,me\n"
+                + "plum,purple\n", "UTF-8");
+    }
+
+    @Test
+    public void importRows_insertsEveryBoundRowAcrossTransactions() throws Exception {
+        try (CsvImporter importer = CsvImporter.open(csvFile, ',', '"', '\0', 2)) {
+            assertThat(asList(importer.readRow()), is(asList("name", "color")));
+
+            long rowCount = importer.importRows(db, "INSERT INTO data (name, color) VALUES (?, ?);", (row, rowNumber, statement) -> {
+                if (row[0].equals("skip")) {
+                    return false;
+                }
+
+                statement.bindString(1, row[0]);
+                statement.bindString(2, row[1]);
+                return true;
+            }, new RecordingListener());
+
+            assertThat(rowCount, is(4L));
+        }
+
+        assertThat(getNames(), is(asList("mango", "kiwi", "cherry, sour", "plum")));
+    }
+
+    @Test
+    public void importRows_reportsProgressByBytesRead() throws Exception {
+        RecordingListener listener = new RecordingListener();
+
+        try (CsvImporter importer = CsvImporter.open(csvFile)) {
+            importer.readRow();
+            importer.importRows(db, "INSERT INTO data (name) VALUES (?);", (row, rowNumber, statement) -> {
+                statement.bindString(1, row[0]);
+                return true;
+            }, listener);
+        }
+
+        assertThat(listener.bytesRead.get(listener.bytesRead.size() - 1), is(csvFile.length()));
+        for (int i = 1; i < listener.bytesRead.size(); i++) {
+            assertThat(listener.bytesRead.get(i) >= listener.bytesRead.get(i - 1), is(true));
+        }
+    }
+
+    @Test
+    public void importRows_whenCancelled_stopsReadingRows() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        listener.cancelled = true;
+
+        try (CsvImporter importer = CsvImporter.open(csvFile)) {
+            importer.readRow();
+            long rowCount = importer.importRows(db, "INSERT INTO data (name) VALUES (?);", (row, rowNumber, statement) -> {
+                statement.bindString(1, row[0]);
+                return true;
+            }, listener);
+
+            assertThat(rowCount, is(0L));
+        }
+
+        assertThat(getNames().isEmpty(), is(true));
+    }
+
+    private List<String> getNames() {
+        List<String> names = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery("SELECT name FROM data", null)) {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        }
+        return names;
+    }
+
+    private static class RecordingListener implements CsvImporter.Listener {
+
+        final List<Long> bytesRead = new ArrayList<>();
+        boolean cancelled;
+
+        @Override
+        public void onProgress(long bytesRead, long totalBytes, long rowCount) {
+            this.bytesRead.add(bytesRead);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
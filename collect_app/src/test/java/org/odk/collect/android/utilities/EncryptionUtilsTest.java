@@ -0,0 +1,122 @@
+package org.odk.collect.android.utilities;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.android.javarosawrapper.FormController.InstanceMetadata;
+import org.odk.collect.shared.TempFiles;
+import org.odk.collect.shared.strings.Md5;
+
+import java.io.File;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+@RunWith(AndroidJUnit4.class)
+public class EncryptionUtilsTest {
+
+    private File instanceDir;
+    private File instanceXml;
+    private File submissionXml;
+
+    @Before
+    public void setup() throws Exception {
+        instanceDir = TempFiles.createTempDir();
+        instanceXml = new File(instanceDir, "instance.xml");
+        submissionXml = new File(instanceDir, "submission.xml");
+
+        FileUtils.writeStringToFile(instanceXml, "<data/>", "UTF-8");
+        FileUtils.writeStringToFile(submissionXml, "<data id=\"form\"/>", "UTF-8");
+    }
+
+    @Test
+    public void generateEncryptedSubmission_encryptsEachFileSoItCanBeDecryptedWithItsIv() throws Exception {
+        for (boolean encryptInParallel : new boolean[]{false, true}) {
+            byte[] largeFile = randomBytes(300 * 1024 + 7);
+            byte[] smallFile = randomBytes(10);
+            FileUtils.writeByteArrayToFile(new File(instanceDir, "a.jpg"), largeFile);
+            FileUtils.writeByteArrayToFile(new File(instanceDir, "b.jpg"), smallFile);
+            FileUtils.writeStringToFile(submissionXml, "<data id=\"form\"/>", "UTF-8");
+
+            EncryptionUtils.EncryptedFormInformation formInfo = createFormInformation();
+            byte[] ivSeed = Arrays.copyOf(formInfo.ivSeedArray, formInfo.ivSeedArray.length);
+
+            EncryptionUtils.generateEncryptedSubmission(instanceXml, submissionXml, formInfo, encryptInParallel);
+
+            String[] mediaFiles = getMediaFilesInManifestOrder();
+            for (int i = 0; i < mediaFiles.length; i++) {
+                byte[] decrypted = decrypt(new File(instanceDir, mediaFiles[i] + ".enc"), formInfo, ivSeed, i);
+                byte[] expected = mediaFiles[i].equals("a.jpg") ? largeFile : smallFile;
+                assertThat(Arrays.equals(decrypted, expected), is(true));
+            }
+
+            assertThat(new String(decrypt(new File(instanceDir, "submission.xml.enc"), formInfo, ivSeed, 2), "UTF-8"), is("<data id=\"form\"/>"));
+            assertThat(FileUtils.readFileToString(submissionXml, "UTF-8"), startsWith("<data"));
+        }
+    }
+
+    @Test
+    public void generateEncryptedSubmission_signsFilesInTheOrderTheyAreListedInTheManifest() throws Exception {
+        FileUtils.writeStringToFile(new File(instanceDir, "a.jpg"), "a", "UTF-8");
+        FileUtils.writeStringToFile(new File(instanceDir, "b.jpg"), "b", "UTF-8");
+        String submissionMd5 = Md5.getMd5Hash(submissionXml);
+
+        EncryptionUtils.EncryptedFormInformation formInfo = createFormInformation();
+        String signatureSourceBefore = formInfo.elementSignatureSource.toString();
+        EncryptionUtils.generateEncryptedSubmission(instanceXml, submissionXml, formInfo, true);
+
+        String[] mediaFiles = getMediaFilesInManifestOrder();
+        assertThat(formInfo.elementSignatureSource.toString(), is(signatureSourceBefore
+                + mediaFiles[0] + "::" + Md5.getMd5Hash(mediaFiles[0].substring(0, 1)) + "\n"
+                + mediaFiles[1] + "::" + Md5.getMd5Hash(mediaFiles[1].substring(0, 1)) + "\n"
+                + "submission.xml::" + submissionMd5 + "\n"));
+    }
+
+    /**
+     * The media files are encrypted in the order they're listed in so the manifest tells us which
+     * iv each one used.
+     */
+    private String[] getMediaFilesInManifestOrder() throws Exception {
+        String manifest = FileUtils.readFileToString(submissionXml, "UTF-8");
+        return manifest.indexOf("a.jpg.enc") < manifest.indexOf("b.jpg.enc")
+                ? new String[]{"a.jpg", "b.jpg"}
+                : new String[]{"b.jpg", "a.jpg"};
+    }
+
+    private EncryptionUtils.EncryptedFormInformation createFormInformation() throws Exception {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(EncryptionUtils.RSA_ALGORITHM);
+        keyPairGenerator.initialize(2048);
+
+        InstanceMetadata instanceMetadata = new InstanceMetadata("uuid:instance", "Instance", null);
+        return new EncryptionUtils.EncryptedFormInformation("form", null, instanceMetadata, keyPairGenerator.generateKeyPair().getPublic());
+    }
+
+    private static byte[] decrypt(File file, EncryptionUtils.EncryptedFormInformation formInfo, byte[] ivSeed, int fileIndex) throws Exception {
+        byte[] iv = Arrays.copyOf(ivSeed, ivSeed.length);
+        for (int i = 0; i <= fileIndex; i++) {
+            ++iv[i % iv.length];
+        }
+
+        Cipher cipher = formInfo.isNotBouncyCastle()
+                ? Cipher.getInstance(EncryptionUtils.SYMMETRIC_ALGORITHM)
+                : Cipher.getInstance(EncryptionUtils.SYMMETRIC_ALGORITHM, "BC");
+        cipher.init(Cipher.DECRYPT_MODE, formInfo.symmetricKey, new IvParameterSpec(iv));
+        return cipher.doFinal(FileUtils.readFileToByteArray(file));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
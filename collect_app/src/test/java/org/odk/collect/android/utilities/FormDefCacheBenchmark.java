@@ -0,0 +1,86 @@
+package org.odk.collect.android.utilities;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.core.util.externalizable.ExtUtil;
+import org.javarosa.xform.util.XFormUtils;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+/**
+ * Compares loading each form in the test resources from a cache file written the way the cache
+ * used to be (an unbuffered stream with no header) with loading it through {@link FormDefCache}
+ * from disk and from memory. Each measurement is the average of {@link #ITERATIONS} loads after
+ * {@link #WARMUP_ITERATIONS} loads that aren't counted. Run manually by removing the
+ * {@link Ignore}.
+ */
+@Ignore("Benchmark")
+@RunWith(AndroidJUnit4.class)
+public class FormDefCacheBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void loadFormsFromCache() throws Exception {
+        File formsDir = new File(Thread.currentThread().getContextClassLoader().getResource("forms").toURI());
+        File cacheDir = TempFiles.createTempDir();
+
+        for (File formXml : formsDir.listFiles()) {
+            FormDef formDef = XFormUtils.getFormFromFormXml(formXml.getAbsolutePath(), "jr://file/" + FileUtils.LAST_SAVED_FILENAME);
+
+            File unbufferedCacheFile = new File(cacheDir, formXml.getName() + ".unbuffered");
+            try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(unbufferedCacheFile))) {
+                formDef.writeExternal(dos);
+            }
+
+            File cacheFile = FormDefCache.getCacheFile(cacheDir, formXml.getName());
+            FormDefCache.writeCache(formDef, cacheFile);
+
+            double unbufferedTime = time(() -> {
+                try (DataInputStream dis = new DataInputStream(new FileInputStream(unbufferedCacheFile))) {
+                    new FormDef().readExternal(dis, ExtUtil.defaultPrototypes());
+                }
+            });
+
+            double diskTime = time(() -> {
+                FormDefCache.clearMemoryCache();
+                FormDefCache.readCachedForm(cacheFile);
+            });
+
+            double memoryTime = time(() -> FormDefCache.readCachedForm(cacheFile));
+
+            System.out.println(formXml.getName() + " (" + cacheFile.length() + " bytes cached):");
+            System.out.println(String.format("  Unbuffered file: %.3f ms", unbufferedTime));
+            System.out.println(String.format("  FormDefCache (disk): %.3f ms", diskTime));
+            System.out.println(String.format("  FormDefCache (memory): %.3f ms", memoryTime));
+        }
+
+        FormDefCache.clearMemoryCache();
+    }
+
+    private static double time(Block block) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            block.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            block.run();
+        }
+        return (System.nanoTime() - start) / 1_000_000.0 / ITERATIONS;
+    }
+
+    private interface Block {
+        void run() throws Exception;
+    }
+}
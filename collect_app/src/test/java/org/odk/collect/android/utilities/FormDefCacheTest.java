@@ -0,0 +1,105 @@
+package org.odk.collect.android.utilities;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.javarosa.core.model.FormDef;
+import org.javarosa.xform.util.XFormUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.odk.collect.shared.TempFiles;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+@RunWith(AndroidJUnit4.class)
+public class FormDefCacheTest {
+
+    private File cacheFile;
+    private FormDef formDef;
+
+    @Before
+    public void setup() throws Exception {
+        File dir = TempFiles.createTempDir();
+        File formXml = new File(dir, "form.xml");
+        FileUtils.write(formXml, FORM.getBytes());
+
+        formDef = XFormUtils.getFormFromFormXml(formXml.getAbsolutePath(), "jr://file/" + FileUtils.LAST_SAVED_FILENAME);
+        cacheFile = FormDefCache.getCacheFile(dir, "formmd5");
+        FormDefCache.clearMemoryCache();
+    }
+
+    @After
+    public void teardown() {
+        FormDefCache.clearMemoryCache();
+    }
+
+    @Test
+    public void readCachedForm_returnsFormWrittenToCacheFile() throws Exception {
+        FormDefCache.writeCache(formDef, cacheFile);
+        FormDefCache.clearMemoryCache();
+
+        FormDef cachedFormDef = FormDefCache.readCachedForm(cacheFile);
+        assertThat(cachedFormDef.getTitle(), is("cached"));
+    }
+
+    @Test
+    public void readCachedForm_afterWriting_doesNotReadCacheFile() throws Exception {
+        FormDefCache.writeCache(formDef, cacheFile);
+        cacheFile.delete();
+
+        assertThat(FormDefCache.readCachedForm(cacheFile).getTitle(), is("cached"));
+    }
+
+    @Test
+    public void readCachedForm_whenCacheFileIsDamaged_returnsNullAndDeletesFile() throws Exception {
+        FormDefCache.writeCache(formDef, cacheFile);
+        FormDefCache.clearMemoryCache();
+
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.seek(file.length() - 1);
+            int lastByte = file.read();
+            file.seek(file.length() - 1);
+            file.write(lastByte ^ 0xFF);
+        }
+
+        assertThat(FormDefCache.readCachedForm(cacheFile), is(nullValue()));
+        assertThat(cacheFile.exists(), is(false));
+    }
+
+    @Test
+    public void readCachedForm_whenCacheFileHasNoHeader_returnsNullAndDeletesFile() throws Exception {
+        try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(cacheFile))) {
+            formDef.writeExternal(dos);
+        }
+
+        assertThat(FormDefCache.readCachedForm(cacheFile), is(nullValue()));
+        assertThat(cacheFile.exists(), is(false));
+    }
+
+    private static final String FORM = "<h:html xmlns=\"http://www.w3.org/2002/xforms\" xmlns:h=\"http://www.w3.org/1999/xhtml\">\n" +
+            "    <h:head>\n" +
+            "        <h:title>cached</h:title>\n" +
+            "        <model>\n" +
+            "            <instance>\n" +
+            "                <data id=\"cached\">\n" +
+            "                    <q1/>\n" +
+            "                </data>\n" +
+            "            </instance>\n" +
+            "            <bind nodeset=\"/data/q1\" type=\"string\"/>\n" +
+            "        </model>\n" +
+            "    </h:head>\n" +
+            "    <h:body>\n" +
+            "        <input ref=\"/data/q1\">\n" +
+            "            <label>Question</label>\n" +
+            "        </input>\n" +
+            "    </h:body>\n" +
+            "</h:html>";
+}
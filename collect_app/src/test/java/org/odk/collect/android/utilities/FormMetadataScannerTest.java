@@ -0,0 +1,92 @@
+package org.odk.collect.android.utilities;
+
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FormMetadataScannerTest {
+
+    private final FormMetadataScanner scanner = new FormMetadataScanner();
+
+    @Test
+    public void scan_readsMetadataFromMainInstanceAndSubmission() throws Exception {
+        File form = createForm("<h:title> My Survey </h:title>",
+                "<instance><data id=\"mysurvey\" orx:version=\"3\"><name/></data></instance>" +
+                        "<instance id=\"other\"><root id=\"not-this-one\"/></instance>" +
+                        "<submission action=\"https://example.com\" orx:auto-send=\"true\" orx:auto-delete=\"false\" base64RsaPublicKey=\" key \"/>" +
+                        "<bind nodeset=\"/data/name\" type=\"string\"/>");
+
+        HashMap<String, String> fields = scanner.scan(form);
+        assertThat(fields.get(FileUtils.TITLE), is("My Survey"));
+        assertThat(fields.get(FileUtils.FORMID), is("mysurvey"));
+        assertThat(fields.get(FileUtils.VERSION), is("3"));
+        assertThat(fields.get(FileUtils.SUBMISSIONURI), is("https://example.com"));
+        assertThat(fields.get(FileUtils.AUTO_SEND), is("true"));
+        assertThat(fields.get(FileUtils.AUTO_DELETE), is("false"));
+        assertThat(fields.get(FileUtils.BASE64_RSA_PUBLIC_KEY), is("key"));
+        assertThat(scanner.hasGeopoint(), is(false));
+    }
+
+    @Test
+    public void scan_whenSecondaryInstanceComesFirst_readsMainInstance() throws Exception {
+        File form = createForm("<h:title>My Survey</h:title>",
+                "<instance><data id=\"mysurvey\"/></instance>" +
+                        "<instance id=\"other\" src=\"jr://file/other.xml\"/>");
+
+        assertThat(scanner.scan(form).get(FileUtils.FORMID), is("mysurvey"));
+    }
+
+    @Test
+    public void scan_whenFormBindsGeopoint_reportsGeopoint() throws Exception {
+        File form = createForm("<h:title>My Survey</h:title>",
+                "<instance><data id=\"mysurvey\"><location/></data></instance>" +
+                        "<bind nodeset=\"/data/location\" type=\"geopoint\"/>");
+
+        assertThat(scanner.scan(form).get(FileUtils.GEOMETRY_XPATH), is(nullValue()));
+        assertThat(scanner.hasGeopoint(), is(true));
+    }
+
+    @Test
+    public void scan_whenFormHasNoTitle_returnsNull() throws Exception {
+        File form = createForm("", "<instance><data id=\"mysurvey\"/></instance>");
+        assertThat(scanner.scan(form), is(nullValue()));
+    }
+
+    @Test
+    public void scan_whenMainInstanceHasNoId_returnsNull() throws Exception {
+        File form = createForm("<h:title>My Survey</h:title>", "<instance><data/></instance>");
+        assertThat(scanner.scan(form), is(nullValue()));
+    }
+
+    private static File createForm(String title, String model) throws IOException {
+        String form = "<?xml version=\"1.0\"?>\n" +
+                "<h:html xmlns=\"http://www.w3.org/2002/xforms\"\n" +
+                "        xmlns:h=\"http://www.w3.org/1999/xhtml\"\n" +
+                "        xmlns:orx=\"http://openrosa.org/xforms\">\n" +
+                "    <h:head>\n" +
+                "        " + title + "\n" +
+                "        <model>" + model + "</model>\n" +
+                "    </h:head>\n" +
+                "    <h:body>\n" +
+                "        <h:title>Not the title</h:title>\n" +
+                "    </h:body>\n" +
+                "</h:html>";
+
+        File temp = File.createTempFile("form", ".xml");
+        temp.deleteOnExit();
+
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(temp))) {
+            out.write(form);
+        }
+
+        return temp;
+    }
+}
@@ -1,6 +1,7 @@
 package org.odk.collect.forms;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.InputStream;
 import java.util.List;
@@ -20,4 +21,33 @@ public interface FormSource {
 
     @NotNull
     InputStream fetchMediaFile(String mediaFileURL) throws FormSourceException;
+
+    /**
+     * Whether this source can serve part of a file (and give a validator for it) so that
+     * interrupted downloads can be resumed. Downloads from sources that can't are always started
+     * from scratch using {@link #fetchForm(String)} and {@link #fetchMediaFile(String)}.
+     */
+    default boolean supportsRangeRequests() {
+        return false;
+    }
+
+    /**
+     * Fetches the form starting from {@code offset} bytes in as long as it still matches
+     * {@code etag} (if there is one). Sources that can't serve part of a file return the whole
+     * thing (with an offset of 0).
+     */
+    @NotNull
+    default RangeResponse fetchForm(String formURL, long offset, @Nullable String etag) throws FormSourceException {
+        return new RangeResponse(fetchForm(formURL), 0, null);
+    }
+
+    /**
+     * Fetches the media file starting from {@code offset} bytes in as long as it still matches
+     * {@code etag} (if there is one). Sources that can't serve part of a file return the whole
+     * thing (with an offset of 0).
+     */
+    @NotNull
+    default RangeResponse fetchMediaFile(String mediaFileURL, long offset, @Nullable String etag) throws FormSourceException {
+        return new RangeResponse(fetchMediaFile(mediaFileURL), 0, null);
+    }
 }
@@ -29,6 +29,12 @@ public interface FormsRepository {
 
     List<Form> getAllNotDeletedByFormIdAndVersion(String formId, @Nullable String version);
 
+    /**
+     * Forms (including deleted ones) whose display name matches {@code query} as described in
+     * {@link TextSearch}. A query without any words returns every form.
+     */
+    List<Form> search(String query);
+
     Form save(@NotNull Form form);
 
     void delete(Long id);
@@ -0,0 +1,40 @@
+package org.odk.collect.forms;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.InputStream;
+
+/**
+ * The response to a request for a file starting from a specific offset.
+ */
+public class RangeResponse {
+
+    private final InputStream inputStream;
+    private final long offset;
+    private final String etag;
+
+    public RangeResponse(@NotNull InputStream inputStream, long offset, @Nullable String etag) {
+        this.inputStream = inputStream;
+        this.offset = offset;
+        this.etag = etag;
+    }
+
+    @NotNull
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * The offset in the file that the stream starts at. This will be 0 if the whole file was
+     * returned instead of the requested range.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    @Nullable
+    public String getEtag() {
+        return etag;
+    }
+}
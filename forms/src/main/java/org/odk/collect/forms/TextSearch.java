@@ -0,0 +1,74 @@
+package org.odk.collect.forms;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Matches names against search queries by word prefix: a name matches if every word in the query
+ * is the start of one of the name's words. Words are runs of ASCII letters and digits or non-ASCII
+ * characters and ASCII letters are compared case insensitively. This is the way SQLite's "simple"
+ * full-text tokenizer splits text so repositories that search with a full-text index match the
+ * same things as those that use this directly.
+ */
+public final class TextSearch {
+
+    private TextSearch() {
+
+    }
+
+    /**
+     * @return the words in {@code text} with ASCII letters in lower case
+     */
+    public static List<String> getWords(@Nullable CharSequence text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (c >= 'A' && c <= 'Z') {
+                word.append((char) (c - 'A' + 'a'));
+            } else if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c > 127) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+
+        return words;
+    }
+
+    /**
+     * @return true if every word in {@code query} starts one of the words in {@code text}. A
+     * query without any words matches everything.
+     */
+    public static boolean matches(@Nullable CharSequence text, CharSequence query) {
+        List<String> textWords = getWords(text);
+
+        for (String queryWord : getWords(query)) {
+            boolean found = false;
+            for (String textWord : textWords) {
+                if (textWord.startsWith(queryWord)) {
+                    found = true;
+                    break;
+                }
+            }
+
+            if (!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
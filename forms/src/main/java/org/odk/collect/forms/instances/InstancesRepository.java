@@ -1,6 +1,7 @@
 package org.odk.collect.forms.instances;
 
 import org.jetbrains.annotations.Nullable;
+import org.odk.collect.forms.TextSearch;
 
 import java.util.List;
 
@@ -36,12 +37,27 @@ public interface InstancesRepository {
 
     List<Instance> getAllNotDeletedByFormIdAndVersion(String formId, String version);
 
+    /**
+     * Instances (including deleted ones) whose display name (the instance name from the form's
+     * {@code meta/instanceName} if it has one) matches {@code query} as described in
+     * {@link TextSearch}. A query without any words returns every instance.
+     */
+    List<Instance> search(String query);
+
     void delete(Long id);
 
     void deleteAll();
 
     Instance save(Instance instance);
 
+    /**
+     * Saves each of {@code instances} as {@link #save(Instance)} would but all together so that
+     * either all of them are saved or none are.
+     *
+     * @return the saved instances in the same order as {@code instances}
+     */
+    List<Instance> saveAll(List<Instance> instances);
+
     /**
      * Deletes any sensitive data (the submission file and geometry data) but leaves the Instance
      * record in place.
@@ -13,6 +13,8 @@ import java.util.function.Supplier;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
@@ -325,4 +327,47 @@ public abstract class FormsRepositoryTest {
         assertThat(forms.size(), is(2));
         assertThat(forms, contains(form1, form2));
     }
+
+    @Test
+    public void search_returnsFormsWithWordsStartingWithEachQueryWord() {
+        FormsRepository formsRepository = buildSubject();
+        Form form1 = formsRepository.save(FormUtils.buildForm("id1", "version", getFormFilesPath()).displayName("Household survey").build());
+        formsRepository.save(FormUtils.buildForm("id2", "version", getFormFilesPath()).displayName("House visits").build());
+        Form form3 = formsRepository.save(FormUtils.buildForm("id3", "version", getFormFilesPath()).displayName("Survey of HOUSEHOLDS (2021)").build());
+
+        assertThat(formsRepository.search("hou SUR"), containsInAnyOrder(form1, form3));
+        assertThat(formsRepository.search("ouse"), is(empty()));
+    }
+
+    @Test
+    public void search_withoutWords_returnsAllForms() {
+        FormsRepository formsRepository = buildSubject();
+        Form form1 = formsRepository.save(FormUtils.buildForm("id1", "version", getFormFilesPath()).displayName("Household survey").build());
+        Form form2 = formsRepository.save(FormUtils.buildForm("id2", "version", getFormFilesPath()).displayName("House visits").build());
+
+        assertThat(formsRepository.search(" - "), containsInAnyOrder(form1, form2));
+    }
+
+    @Test
+    public void search_afterDisplayNameChanges_matchesNewDisplayName() {
+        FormsRepository formsRepository = buildSubject();
+        Form form = formsRepository.save(FormUtils.buildForm("id1", "version", getFormFilesPath()).displayName("Household survey").build());
+
+        Form renamedForm = formsRepository.save(new Form.Builder(form).displayName("Crop survey").build());
+        assertThat(formsRepository.search("household"), is(empty()));
+        assertThat(formsRepository.search("crop"), contains(renamedForm));
+    }
+
+    @Test
+    public void search_afterDelete_doesNotReturnForm() {
+        FormsRepository formsRepository = buildSubject();
+        Form form1 = formsRepository.save(FormUtils.buildForm("id1", "version", getFormFilesPath()).displayName("Household survey").build());
+        Form form2 = formsRepository.save(FormUtils.buildForm("id2", "version", getFormFilesPath()).displayName("Crop survey").build());
+
+        formsRepository.delete(form1.getDbId());
+        assertThat(formsRepository.search("survey"), contains(form2));
+
+        formsRepository.deleteAll();
+        assertThat(formsRepository.search("survey"), is(empty()));
+    }
 }
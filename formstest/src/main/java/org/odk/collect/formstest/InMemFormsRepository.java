@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.odk.collect.forms.Form;
 import org.odk.collect.forms.FormsRepository;
+import org.odk.collect.forms.TextSearch;
 import org.odk.collect.shared.strings.Md5;
 import org.odk.collect.shared.TempFiles;
 
@@ -92,6 +93,11 @@ public class InMemFormsRepository implements FormsRepository {
         return forms.stream().filter(f -> f.getFormId().equals(jrFormId) && Objects.equals(f.getVersion(), jrVersion) && !f.isDeleted()).collect(toList());
     }
 
+    @Override
+    public List<Form> search(String query) {
+        return forms.stream().filter(f -> TextSearch.matches(f.getDisplayName(), query)).collect(toList());
+    }
+
     @Override
     public Form save(@NotNull Form form) {
         Form.Builder builder = new Form.Builder(form);
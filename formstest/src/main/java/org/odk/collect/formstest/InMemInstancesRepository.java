@@ -1,6 +1,7 @@
 package org.odk.collect.formstest;
 
 import org.apache.commons.io.FileUtils;
+import org.odk.collect.forms.TextSearch;
 import org.odk.collect.forms.instances.Instance;
 import org.odk.collect.forms.instances.InstancesRepository;
 
@@ -15,7 +16,7 @@ import java.util.stream.Collectors;
 
 public final class InMemInstancesRepository implements InstancesRepository {
 
-    private final List<Instance> instances;
+    private List<Instance> instances;
     private final Supplier<Long> clock;
 
     private long idCounter = 1L;
@@ -118,6 +119,13 @@ public final class InMemInstancesRepository implements InstancesRepository {
         }).collect(Collectors.toList());
     }
 
+    @Override
+    public List<Instance> search(String query) {
+        return instances.stream()
+                .filter(instance -> TextSearch.matches(instance.getDisplayName(), query))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void delete(Long id) {
         Instance instance = get(id);
@@ -135,8 +143,54 @@ public final class InMemInstancesRepository implements InstancesRepository {
         instances.clear();
     }
 
+    @Override
+    public List<Instance> saveAll(List<Instance> instances) {
+        // Save into a copy so that none of the instances are saved if one of them can't be
+        List<Instance> updatedInstances = new ArrayList<>(this.instances);
+        long originalIdCounter = idCounter;
+
+        List<Instance> savedInstances = new ArrayList<>();
+        try {
+            for (Instance instance : instances) {
+                savedInstances.add(save(instance, updatedInstances));
+            }
+        } catch (RuntimeException e) {
+            idCounter = originalIdCounter;
+            throw e;
+        }
+
+        this.instances = updatedInstances;
+        return savedInstances;
+    }
+
     @Override
     public Instance save(Instance instance) {
+        return save(instance, instances);
+    }
+
+    @Override
+    public void deleteWithLogging(Long id) {
+        Instance instance = new Instance.Builder(get(id))
+                .geometry(null)
+                .geometryType(null)
+                .deletedDate(clock.get())
+                .build();
+
+        instances.removeIf(i -> i.getDbId().equals(id));
+        instances.add(instance);
+        deleteInstanceFiles(instance);
+    }
+
+    public void removeInstanceById(Long databaseId) {
+        for (int i = 0; i < instances.size(); i++) {
+            if (instances.get(i).getDbId().equals(databaseId)) {
+                instances.remove(i);
+                return;
+            }
+        }
+    }
+
+    private Instance save(Instance instance, List<Instance> into) {
         if (instance.getStatus() == null) {
             instance = new Instance.Builder(instance)
                     .status(Instance.STATUS_INCOMPLETE)
@@ -154,7 +208,7 @@ public final class InMemInstancesRepository implements InstancesRepository {
             Instance newInstance = new Instance.Builder(instance)
                     .dbId(idCounter++)
                     .build();
-            instances.add(newInstance);
+            into.add(newInstance);
             return newInstance;
         } else {
             if (instance.getDeletedDate() == null) {
@@ -163,34 +217,12 @@ public final class InMemInstancesRepository implements InstancesRepository {
                         .build();
             }
 
-            instances.removeIf(i -> i.getDbId().equals(id));
-            instances.add(instance);
+            into.removeIf(i -> i.getDbId().equals(id));
+            into.add(instance);
             return instance;
         }
     }
 
-    @Override
-    public void deleteWithLogging(Long id) {
-        Instance instance = new Instance.Builder(get(id))
-                .geometry(null)
-                .geometryType(null)
-                .deletedDate(clock.get())
-                .build();
-
-        instances.removeIf(i -> i.getDbId().equals(id));
-        instances.add(instance);
-        deleteInstanceFiles(instance);
-    }
-
-    public void removeInstanceById(Long databaseId) {
-        for (int i = 0; i < instances.size(); i++) {
-            if (instances.get(i).getDbId().equals(databaseId)) {
-                instances.remove(i);
-                return;
-            }
-        }
-    }
-
     private void deleteInstanceFiles(Instance instance) {
         try {
             FileUtils.deleteDirectory(new File(instance.getInstanceFilePath()).getParentFile());
@@ -19,15 +19,20 @@ import org.odk.collect.forms.instances.Instance;
 import org.odk.collect.forms.instances.InstancesRepository;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Supplier;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -243,6 +248,38 @@ public abstract class InstancesRepositoryTest {
         assertThat(instancesRepository.get(instance.getDbId()).getLastStatusChangeDate(), is(notNullValue()));
     }
 
+    @Test
+    public void saveAll_savesEachInstanceAndReturnsThemInOrder() {
+        InstancesRepository instancesRepository = buildSubject();
+
+        List<Instance> instances = instancesRepository.saveAll(Arrays.asList(
+                InstanceUtils.buildInstance("formid1", "1", getInstancesDir()).build(),
+                InstanceUtils.buildInstance("formid2", "1", getInstancesDir()).build()
+        ));
+
+        assertThat(instances.size(), is(2));
+        assertThat(instancesRepository.get(instances.get(0).getDbId()).getFormId(), is("formid1"));
+        assertThat(instancesRepository.get(instances.get(1).getDbId()).getFormId(), is("formid2"));
+        assertThat(instancesRepository.getAll().size(), is(2));
+    }
+
+    @Test
+    public void saveAll_whenAnInstanceCanNotBeSaved_savesNone() {
+        InstancesRepository instancesRepository = buildSubject();
+
+        try {
+            instancesRepository.saveAll(Arrays.asList(
+                    InstanceUtils.buildInstance("formid1", "1", getInstancesDir()).build(),
+                    null
+            ));
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        assertThat(instancesRepository.getAll().size(), is(0));
+    }
+
     @Test
     public void save_whenInstanceHasDeletedDate_doesNotUpdateLastChangesStatusDate() {
         Supplier<Long> clock = mock(Supplier.class);
@@ -317,4 +354,39 @@ public abstract class InstancesRepositoryTest {
         instancesRepository.delete(instance.getDbId());
         assertThat(instanceDir.exists(), is(false));
     }
+
+    @Test
+    public void search_returnsInstancesWithWordsStartingWithEachQueryWord() {
+        InstancesRepository instancesRepository = buildSubject();
+
+        Instance instance1 = instancesRepository.save(InstanceUtils.buildInstance("formid", "1", "Ada Lovelace", Instance.STATUS_INCOMPLETE, null, getInstancesDir()).build());
+        instancesRepository.save(InstanceUtils.buildInstance("formid", "1", "Charles Babbage", Instance.STATUS_INCOMPLETE, null, getInstancesDir()).build());
+        Instance instance3 = instancesRepository.save(InstanceUtils.buildInstance("formid", "1", "LOVELACE, Ada (deleted)", Instance.STATUS_COMPLETE, System.currentTimeMillis(), getInstancesDir()).build());
+
+        assertThat(instancesRepository.search("love a"), containsInAnyOrder(instance1, instance3));
+        assertThat(instancesRepository.search("lace"), is(empty()));
+    }
+
+    @Test
+    public void search_afterDisplayNameChanges_matchesNewDisplayName() {
+        InstancesRepository instancesRepository = buildSubject();
+        Instance instance = instancesRepository.save(InstanceUtils.buildInstance("formid", "1", "Ada Lovelace", Instance.STATUS_INCOMPLETE, null, getInstancesDir()).build());
+
+        Instance renamedInstance = instancesRepository.save(new Instance.Builder(instance).displayName("Charles Babbage").build());
+        assertThat(instancesRepository.search("ada"), is(empty()));
+        assertThat(instancesRepository.search("charles"), contains(renamedInstance));
+    }
+
+    @Test
+    public void search_afterDelete_doesNotReturnInstance() {
+        InstancesRepository instancesRepository = buildSubject();
+        Instance instance1 = instancesRepository.save(InstanceUtils.buildInstance("formid", "1", "Ada Lovelace", Instance.STATUS_INCOMPLETE, null, getInstancesDir()).build());
+        Instance instance2 = instancesRepository.save(InstanceUtils.buildInstance("formid", "1", "Ada Byron", Instance.STATUS_INCOMPLETE, null, getInstancesDir()).build());
+
+        instancesRepository.delete(instance1.getDbId());
+        assertThat(instancesRepository.search("ada"), contains(instance2));
+
+        instancesRepository.deleteAll();
+        assertThat(instancesRepository.search("ada"), is(empty()));
+    }
 }
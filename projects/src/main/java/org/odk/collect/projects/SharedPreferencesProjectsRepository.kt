@@ -4,6 +4,7 @@ import com.google.gson.Gson
 import com.google.gson.reflect.TypeToken
 import org.odk.collect.shared.Settings
 import org.odk.collect.shared.strings.UUIDGenerator
+import java.util.Collections
 
 class SharedPreferencesProjectsRepository(
     private val uuidGenerator: UUIDGenerator,
@@ -12,17 +13,35 @@ class SharedPreferencesProjectsRepository(
     private val key: String
 ) : ProjectsRepository {
 
+    /**
+     * The projects parsed from the last JSON read from [settings]. Projects are looked up every
+     * time a storage path is resolved so they're only parsed again when the stored JSON changes.
+     * Comparing the stored string (which [Settings] hands back as the same instance until it's
+     * written again) catches changes made by anyone, whenever their change listeners run.
+     */
+    @Volatile
+    private var cache: ParsedProjects? = null
+
     override fun get(uuid: String): Project.Saved? {
         return getAll().firstOrNull { it.uuid == uuid }
     }
 
     override fun getAll(): List<Project.Saved> {
-        val projects = settings.getString(key)
-        return if (projects != null && projects.isNotBlank()) {
-            gson.fromJson(projects, TypeToken.getParameterized(ArrayList::class.java, Project.Saved::class.java).type)
+        val json = settings.getString(key)
+
+        val cached = cache
+        if (cached != null && cached.json == json) {
+            return cached.projects
+        }
+
+        val projects: List<Project.Saved> = if (json != null && json.isNotBlank()) {
+            Collections.unmodifiableList(gson.fromJson<List<Project.Saved>>(json, TypeToken.getParameterized(ArrayList::class.java, Project.Saved::class.java).type))
         } else {
             emptyList()
         }
+
+        cache = ParsedProjects(json, projects)
+        return projects
     }
 
     override fun save(project: Project): Project.Saved {
@@ -59,4 +78,6 @@ class SharedPreferencesProjectsRepository(
     override fun deleteAll() {
         settings.remove(key)
     }
+
+    private class ParsedProjects(val json: String?, val projects: List<Project.Saved>)
 }
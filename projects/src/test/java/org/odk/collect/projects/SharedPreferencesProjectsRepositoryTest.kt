@@ -2,13 +2,39 @@ package org.odk.collect.projects
 
 import androidx.test.ext.junit.runners.AndroidJUnit4
 import com.google.gson.Gson
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.`is`
+import org.hamcrest.Matchers.sameInstance
+import org.junit.Test
 import org.junit.runner.RunWith
 import org.odk.collect.shared.strings.UUIDGenerator
 import org.odk.collect.testshared.InMemSettings
 
 @RunWith(AndroidJUnit4::class)
 class SharedPreferencesProjectsRepositoryTest : ProjectsRepositoryTest() {
+
+    private val settings = InMemSettings()
+
     override fun buildSubject(): ProjectsRepository {
-        return SharedPreferencesProjectsRepository(UUIDGenerator(), Gson(), InMemSettings(), "test")
+        return SharedPreferencesProjectsRepository(UUIDGenerator(), Gson(), settings, "test")
+    }
+
+    @Test
+    fun `getAll() does not parse projects again when they have not changed`() {
+        projectsRepository.save(Project.New("ProjectX", "X", "#FF0000"))
+        assertThat(projectsRepository.getAll(), `is`(sameInstance(projectsRepository.getAll())))
+    }
+
+    @Test
+    fun `getAll() returns projects changed outside the repository`() {
+        projectsRepository.save(Project.New("ProjectX", "X", "#FF0000"))
+        projectsRepository.getAll()
+
+        val projectY = Project.Saved("2", "ProjectY", "Y", "#00FF00")
+        settings.save("test", Gson().toJson(listOf(projectY)))
+        assertThat(projectsRepository.getAll(), `is`(listOf(projectY)))
+
+        settings.clear()
+        assertThat(projectsRepository.getAll(), `is`(emptyList()))
     }
 }
@@ -0,0 +1,229 @@
+package org.odk.collect.shared;
+
+import org.odk.collect.shared.strings.Md5;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of MD5 hashes for files. A file is only re-hashed when its size, last modified
+ * time or file key (inode where the platform exposes one) changed since the hash was recorded, so
+ * repeated scans over unchanged files only cost a stat per file.
+ * <p>
+ * Instances that refer to the same index file are shared (see {@link #getInstance(File, FileKeyReader)})
+ * so that different components hashing the same files agree on their fingerprints.
+ */
+public class FileHashIndex {
+
+    private static final String FORMAT_VERSION = "1";
+    private static final Map<String, FileHashIndex> INSTANCES = new HashMap<>();
+
+    private final File indexFile;
+    private final FileKeyReader fileKeyReader;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private boolean loaded;
+    private boolean dirty;
+
+    /**
+     * Creates an index that is only kept in memory.
+     */
+    public FileHashIndex() {
+        this(null, FileKeyReader.NONE);
+    }
+
+    public FileHashIndex(File indexFile, FileKeyReader fileKeyReader) {
+        this.indexFile = indexFile;
+        this.fileKeyReader = fileKeyReader;
+    }
+
+    /**
+     * Returns the index backed by {@code indexFile}, creating it the first time it's requested.
+     */
+    public static FileHashIndex getInstance(File indexFile, FileKeyReader fileKeyReader) {
+        synchronized (INSTANCES) {
+            String key = indexFile.getAbsolutePath();
+            FileHashIndex index = INSTANCES.get(key);
+            if (index == null) {
+                index = new FileHashIndex(indexFile, fileKeyReader);
+                INSTANCES.put(key, index);
+            }
+
+            return index;
+        }
+    }
+
+    public static void clearInstances() {
+        synchronized (INSTANCES) {
+            INSTANCES.clear();
+        }
+    }
+
+    /**
+     * Returns the MD5 hash of {@code file}, reusing the recorded hash if the file hasn't changed.
+     * Returns null if the file doesn't exist or can't be read.
+     */
+    public String getMd5Hash(File file) {
+        ensureLoaded();
+
+        String path = file.getAbsolutePath();
+        if (!file.exists()) {
+            if (entries.remove(path) != null) {
+                markDirty();
+            }
+            return null;
+        }
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+        long fileKey = fileKeyReader.read(file);
+
+        Entry entry = entries.get(path);
+        if (entry != null && entry.matches(size, lastModified, fileKey)) {
+            return entry.md5Hash;
+        }
+
+        String md5Hash = Md5.getMd5Hash(file);
+        if (md5Hash != null) {
+            entries.put(path, new Entry(size, lastModified, fileKey, md5Hash));
+            markDirty();
+        }
+
+        return md5Hash;
+    }
+
+    public void remove(File file) {
+        ensureLoaded();
+
+        if (entries.remove(file.getAbsolutePath()) != null) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Drops entries for files that no longer exist (forms that were deleted or renamed outside
+     * the app for example) so the index doesn't keep growing. This stats every recorded file so
+     * it should be called once per scan rather than after each change.
+     */
+    public void prune() {
+        ensureLoaded();
+
+        for (Iterator<String> paths = entries.keySet().iterator(); paths.hasNext();) {
+            if (!new File(paths.next()).exists()) {
+                paths.remove();
+                markDirty();
+            }
+        }
+    }
+
+    /**
+     * Writes the index to disk if anything changed since it was last read or written.
+     */
+    public synchronized void flush() {
+        if (indexFile == null || !dirty) {
+            return;
+        }
+
+        File parent = indexFile.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        dirty = false;
+
+        File tempFile = new File(indexFile.getAbsolutePath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            writer.write(FORMAT_VERSION);
+            writer.newLine();
+
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                writer.write(entry.size + "\t" + entry.lastModified + "\t" + entry.fileKey + "\t" + entry.md5Hash + "\t" + mapEntry.getKey());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            dirty = true;
+            return;
+        }
+
+        if (!tempFile.renameTo(indexFile)) {
+            tempFile.delete();
+            dirty = true;
+        }
+    }
+
+    private synchronized void markDirty() {
+        dirty = true;
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        loaded = true;
+        if (indexFile == null || !indexFile.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+            if (!FORMAT_VERSION.equals(reader.readLine())) {
+                return;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 5);
+                if (parts.length == 5) {
+                    entries.put(parts[4], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // A corrupt index just means everything gets hashed again
+            entries.clear();
+        }
+    }
+
+    /**
+     * Reads an identifier for the underlying storage of a file (such as an inode number) so that
+     * a file replaced with one of the same size and timestamp is still detected. Implementations
+     * should return 0 when no such identifier is available.
+     */
+    public interface FileKeyReader {
+
+        FileKeyReader NONE = file -> 0;
+
+        long read(File file);
+    }
+
+    private static class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final long fileKey;
+        private final String md5Hash;
+
+        Entry(long size, long lastModified, long fileKey, String md5Hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+            this.md5Hash = md5Hash;
+        }
+
+        boolean matches(long size, long lastModified, long fileKey) {
+            return this.size == size && this.lastModified == lastModified && this.fileKey == fileKey;
+        }
+    }
+}
@@ -42,16 +42,25 @@ object Md5 {
                 }
                 md.update(buffer, 0, result)
             }
-            val md5 = StringBuilder(BigInteger(1, md.digest()).toString(16))
-            while (md5.length < 32) {
-                md5.insert(0, "0")
-            }
             inputStream.close()
-            md5.toString()
+            toHexString(md.digest())
         } catch (e: NoSuchAlgorithmException) {
             null
         } catch (e: IOException) {
             null
         }
     }
+
+    /**
+     * Formats an MD5 digest the same way as the hashes returned by [getMd5Hash] (as a zero-padded
+     * 32-character hex string) for code that computes the digest itself.
+     */
+    @JvmStatic
+    fun toHexString(digest: ByteArray): String {
+        val md5 = StringBuilder(BigInteger(1, digest).toString(16))
+        while (md5.length < 32) {
+            md5.insert(0, "0")
+        }
+        return md5.toString()
+    }
 }
@@ -0,0 +1,54 @@
+package org.odk.collect.shared
+
+import org.junit.Ignore
+import org.junit.Test
+import org.odk.collect.shared.strings.Md5
+import java.io.File
+import kotlin.random.Random
+
+/**
+ * Compares scanning unchanged form files by re-hashing them (what disk sync used to do) with
+ * scanning them through a warm [FileHashIndex]. Run manually by removing the [Ignore].
+ */
+@Ignore("Benchmark")
+class FileHashIndexBenchmark {
+
+    private val formCount = 1000
+    private val formSize = 256 * 1024
+    private val iterations = 5
+
+    @Test
+    fun scanUnchangedForms() {
+        val dir = TempFiles.createTempDir()
+        val forms = (1..formCount).map {
+            File(dir, "form$it.xml").apply { writeBytes(Random.nextBytes(formSize)) }
+        }
+
+        val rehashTime = time {
+            forms.forEach { Md5.getMd5Hash(it) }
+        }
+
+        val index = FileHashIndex(File(dir, "index"), FileHashIndex.FileKeyReader.NONE)
+        forms.forEach { index.getMd5Hash(it) }
+        index.flush()
+
+        val indexTime = time {
+            val coldIndex = FileHashIndex(File(dir, "index"), FileHashIndex.FileKeyReader.NONE)
+            forms.forEach { coldIndex.getMd5Hash(it) }
+        }
+
+        println("Scanning $formCount unchanged forms ($formSize bytes each):")
+        println("  Re-hashing every file: $rehashTime ms")
+        println("  Loading index from disk and checking stat data: $indexTime ms")
+
+        dir.deleteRecursively()
+    }
+
+    private fun time(block: () -> Unit): Long {
+        block() // Warm up
+
+        val start = System.nanoTime()
+        repeat(iterations) { block() }
+        return (System.nanoTime() - start) / iterations / 1_000_000
+    }
+}
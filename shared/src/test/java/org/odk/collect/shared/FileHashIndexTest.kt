@@ -0,0 +1,157 @@
+package org.odk.collect.shared
+
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.equalTo
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import org.odk.collect.shared.strings.Md5
+import java.io.File
+
+class FileHashIndexTest {
+
+    private val dir = TempFiles.createTempDir()
+    private val indexFile = File(dir, "index")
+
+    @Test
+    fun getMd5Hash_returnsHashOfFile() {
+        val file = createFile("file.xml", "Hello, world")
+
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        assertThat(index.getMd5Hash(file), equalTo(Md5.getMd5Hash(file)))
+    }
+
+    @Test
+    fun getMd5Hash_whenFileDoesNotExist_returnsNull() {
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        assertThat(index.getMd5Hash(File(dir, "missing.xml")), nullValue())
+    }
+
+    @Test
+    fun getMd5Hash_whenFileChanges_returnsNewHash() {
+        val file = createFile("file.xml", "Hello, world")
+
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        index.getMd5Hash(file)
+
+        file.writeText("Goodbye, world")
+        assertThat(index.getMd5Hash(file), equalTo(Md5.getMd5Hash(file)))
+    }
+
+    @Test
+    fun getMd5Hash_whenFileKeyChanges_returnsNewHash() {
+        val file = createFile("file.xml", "Hello, world")
+        var fileKey = 1L
+
+        val index = FileHashIndex(indexFile) { fileKey }
+        index.getMd5Hash(file)
+
+        // Same size and timestamp but a different file on disk
+        val lastModified = file.lastModified()
+        file.writeText("Hello, World")
+        file.setLastModified(lastModified)
+        fileKey = 2L
+
+        assertThat(index.getMd5Hash(file), equalTo(Md5.getMd5Hash(file)))
+    }
+
+    @Test
+    fun getMd5Hash_whenStatDataIsUnchanged_returnsRecordedHash() {
+        val file = createFile("file.xml", "Hello, world")
+
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        val originalHash = index.getMd5Hash(file)
+
+        val lastModified = file.lastModified()
+        file.writeText("Hello, World")
+        file.setLastModified(lastModified)
+
+        assertThat(index.getMd5Hash(file), equalTo(originalHash))
+    }
+
+    @Test
+    fun flush_persistsHashesForNewInstances() {
+        val file = createFile("file.xml", "Hello, world")
+
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        val originalHash = index.getMd5Hash(file)
+        index.flush()
+
+        val lastModified = file.lastModified()
+        file.writeText("Hello, World")
+        file.setLastModified(lastModified)
+
+        val newIndex = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        assertThat(newIndex.getMd5Hash(file), equalTo(originalHash))
+    }
+
+    @Test
+    fun prune_dropsEntriesForFilesThatNoLongerExist() {
+        val keptFile = createFile("kept.xml", "Hello, world")
+        val deletedFile = createFile("deleted.xml", "Goodbye, world")
+
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        index.getMd5Hash(keptFile)
+        index.getMd5Hash(deletedFile)
+        index.flush()
+
+        deletedFile.delete()
+        FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE).also {
+            it.prune()
+            it.flush()
+        }
+
+        assertThat(indexFile.readLines().size, equalTo(2))
+        assertThat(indexFile.readLines()[1].endsWith(keptFile.absolutePath), equalTo(true))
+    }
+
+    @Test
+    fun flush_whenNothingChanged_doesNotRewriteIndex() {
+        val file = createFile("file.xml", "Hello, world")
+
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        index.getMd5Hash(file)
+        index.flush()
+
+        indexFile.delete()
+        index.getMd5Hash(file)
+        index.flush()
+
+        assertThat(indexFile.exists(), equalTo(false))
+    }
+
+    @Test
+    fun remove_meansFileIsHashedAgain() {
+        val file = createFile("file.xml", "Hello, world")
+
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        index.getMd5Hash(file)
+
+        val lastModified = file.lastModified()
+        file.writeText("Hello, World")
+        file.setLastModified(lastModified)
+        index.remove(file)
+
+        assertThat(index.getMd5Hash(file), equalTo(Md5.getMd5Hash(file)))
+    }
+
+    @Test
+    fun whenIndexFileIsCorrupt_filesAreHashedAgain() {
+        val file = createFile("file.xml", "Hello, world")
+        indexFile.writeText("1\nnot\ta\tnumber\thash\t${file.absolutePath}\n")
+
+        val index = FileHashIndex(indexFile, FileHashIndex.FileKeyReader.NONE)
+        assertThat(index.getMd5Hash(file), equalTo(Md5.getMd5Hash(file)))
+    }
+
+    @Test
+    fun getInstance_returnsSameIndexForSameFile() {
+        val index = FileHashIndex.getInstance(indexFile, FileHashIndex.FileKeyReader.NONE)
+        assertThat(FileHashIndex.getInstance(File(dir, "index"), FileHashIndex.FileKeyReader.NONE), equalTo(index))
+    }
+
+    private fun createFile(name: String, contents: String): File {
+        val file = File(dir, name)
+        file.writeText(contents)
+        return file
+    }
+}
@@ -23,4 +23,12 @@ class Md5Test {
             Assert.assertEquals(expectedResult, Md5.getMd5Hash(tempFile, bufSize))
         }
     }
+
+    @Test
+    fun toHexString_zeroPadsDigest() {
+        val digest = ByteArray(16)
+        digest[15] = 1
+
+        Assert.assertEquals("00000000000000000000000000000001", Md5.toHexString(digest))
+    }
 }